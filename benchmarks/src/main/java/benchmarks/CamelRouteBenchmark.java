@@ -0,0 +1,82 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import broker.EmbeddedAmqpBroker;
+
+/**
+ * Measures the withcamel routes: <code>from(...).transform(simple("${body}"))</code> on its own, and<br/>
+ * followed by the <code>rabbitmq</code> endpoint of the producer sample pointed at<br/>
+ * {@link EmbeddedAmqpBroker}. The <code>timer</code> trigger is replaced by a <code>direct</code><br/>
+ * endpoint so each benchmark invocation is one exchange.<br/>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CamelRouteBenchmark {
+
+    private EmbeddedAmqpBroker broker;
+
+    private CamelContext camelContext;
+
+    private ProducerTemplate producerTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = new EmbeddedAmqpBroker();
+        broker.start();
+        final String rabbitUri = "rabbitmq://localhost:" + broker.getPort()
+                + "/spring-boot-exchange?queue=spring-boot&username=guest&password=guest";
+        camelContext = new DefaultCamelContext();
+        camelContext.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() {
+                from("direct:transform")
+                        .transform(simple("${body}"));
+
+                from("direct:rabbitmq")
+                        .transform(simple("${body}"))
+                        .to(rabbitUri);
+            }
+        });
+        camelContext.start();
+        producerTemplate = camelContext.createProducerTemplate();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        producerTemplate.stop();
+        camelContext.stop();
+        broker.stop();
+    }
+
+    @Benchmark
+    public Object transform() {
+        return producerTemplate.requestBody("direct:transform", "I'm Spring bean!");
+    }
+
+    @Benchmark
+    public void transformToRabbitMq() {
+        producerTemplate.sendBody("direct:rabbitmq", "I'm Spring bean!");
+    }
+}
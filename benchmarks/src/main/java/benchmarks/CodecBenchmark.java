@@ -0,0 +1,194 @@
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Session;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.openwire.OpenWireFormat;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.impl.StringDataFormat;
+import org.apache.camel.spi.DataFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import codec.amqp.EnvelopeMessageConverter;
+import codec.camel.EnvelopeDataFormat;
+import codec.jms.EnvelopeJmsMessageConverter;
+
+/**
+ * Encode plus decode of one payload, the text path the samples use today against the binary envelope<br/>
+ * of the <code>message-codec</code> module, without a broker:<br/>
+ * <code>amqp*</code>: Spring AMQP <code>SimpleMessageConverter</code> / <code>EnvelopeMessageConverter</code>.<br/>
+ * <code>jms*</code>: Spring JMS converters, <code>TextMessage</code> / <code>BytesMessage</code>, through the<br/>
+ * OpenWire marshalling ActiveMQ does on the wire.<br/>
+ * <code>camel*</code>: <code>StringDataFormat</code> / <code>EnvelopeDataFormat</code> marshal and unmarshal.<br/>
+ * The wire sizes of the same messages are printed by <code>CodecWireSize</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({ "16", "256", "4096" })
+    public int payloadSize;
+
+    private String payload;
+
+    private org.springframework.amqp.support.converter.MessageConverter amqpText;
+
+    private org.springframework.amqp.support.converter.MessageConverter amqpEnvelope;
+
+    private MessageConverter jmsText;
+
+    private MessageConverter jmsEnvelope;
+
+    private Session session;
+
+    private OpenWireFormat wireFormat;
+
+    private DefaultCamelContext camelContext;
+
+    private DataFormat camelText;
+
+    private DataFormat camelEnvelope;
+
+    @Setup
+    public void setUp() throws Exception {
+        payload = payload(payloadSize);
+        amqpText = new SimpleMessageConverter();
+        amqpEnvelope = new EnvelopeMessageConverter();
+        jmsText = new org.springframework.jms.support.converter.SimpleMessageConverter();
+        jmsEnvelope = new EnvelopeJmsMessageConverter();
+        session = messageFactory();
+        wireFormat = new OpenWireFormat();
+        camelContext = new DefaultCamelContext();
+        camelContext.start();
+        camelText = new StringDataFormat("UTF-8");
+        camelEnvelope = new EnvelopeDataFormat();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        camelContext.stop();
+    }
+
+    @Benchmark
+    public Object amqpText() {
+        return amqpRoundTrip(amqpText);
+    }
+
+    @Benchmark
+    public Object amqpEnvelope() {
+        return amqpRoundTrip(amqpEnvelope);
+    }
+
+    @Benchmark
+    public Object jmsText() throws Exception {
+        return jmsRoundTrip(jmsText);
+    }
+
+    @Benchmark
+    public Object jmsEnvelope() throws Exception {
+        return jmsRoundTrip(jmsEnvelope);
+    }
+
+    @Benchmark
+    public Object camelText() throws Exception {
+        return camelRoundTrip(camelText);
+    }
+
+    @Benchmark
+    public Object camelEnvelope() throws Exception {
+        return camelRoundTrip(camelEnvelope);
+    }
+
+    private Object amqpRoundTrip(org.springframework.amqp.support.converter.MessageConverter converter) {
+        Message message = converter.toMessage(payload, new MessageProperties());
+        return converter.fromMessage(new Message(message.getBody(), message.getMessageProperties()));
+    }
+
+    private Object jmsRoundTrip(MessageConverter converter) throws Exception {
+        ActiveMQMessage sent = (ActiveMQMessage) converter.toMessage(payload, session);
+        sent.onSend();
+        ByteSequence frame = wireFormat.marshal(sent);
+        ActiveMQMessage received = (ActiveMQMessage) wireFormat.unmarshal(frame);
+        // as the consumer does before handing the message to the listener
+        received.setReadOnlyBody(true);
+        return converter.fromMessage(received);
+    }
+
+    private Object camelRoundTrip(DataFormat dataFormat) throws Exception {
+        Exchange exchange = new DefaultExchange(camelContext);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payloadSize + 64);
+        dataFormat.marshal(exchange, payload, out);
+        exchange.getIn().setBody(out.toByteArray());
+        return dataFormat.unmarshal(exchange, new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    /**
+     * @return an ASCII text of <code>size</code> characters, like the samples' messages
+     */
+    static String payload(int size) {
+        char[] text = new char[size];
+        Arrays.fill(text, 'x');
+        return new String(text);
+    }
+
+    /**
+     * @return a <code>Session</code> that only creates ActiveMQ messages, enough for the converters
+     */
+    static Session messageFactory() {
+        return (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[] { Session.class },
+                new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                        case "createTextMessage":
+                            ActiveMQTextMessage textMessage = new ActiveMQTextMessage();
+                            if (args != null) {
+                                try {
+                                    textMessage.setText((String) args[0]);
+                                } catch (Exception e) {
+                                    throw new IllegalStateException(e);
+                                }
+                            }
+                            return textMessage;
+                        case "createBytesMessage":
+                            return new ActiveMQBytesMessage();
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                    }
+                });
+    }
+}
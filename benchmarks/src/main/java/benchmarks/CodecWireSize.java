@@ -0,0 +1,96 @@
+package benchmarks;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.jms.Session;
+
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.openwire.OpenWireFormat;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import com.rabbitmq.client.impl.AMQContentHeader;
+
+import codec.amqp.EnvelopeMessageConverter;
+import codec.compress.PayloadCompressor;
+import codec.jms.EnvelopeJmsMessageConverter;
+
+/**
+ * Prints the bytes on the wire of one message per payload size, text against envelope, for the payloads<br/>
+ * of <code>CodecBenchmark</code>:<br/>
+ * AMQP: content header frame plus content body frame of a <code>basic.publish</code> (the method frame,<br/>
+ * exchange and routing key, is the same for both). The text message carries the <code>sendTimestamp</code><br/>
+ * header the samples set, the envelope carries the timestamp in its own header.<br/>
+ * JMS: the OpenWire frame of the message as ActiveMQ marshals it, same <code>sendTimestamp</code> rule.<br/>
+ * Then the body sizes of the JSON documents of <code>CompressionBenchmark</code>, compressed.<br/>
+ * <br/>
+ * java -cp target/benchmarks.jar benchmarks.CodecWireSize [size ...]
+ */
+public class CodecWireSize {
+
+    /** type, channel and size before the payload of a frame, end marker after it */
+    private static final int FRAME_OVERHEAD = 7 + 1;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length == 0 ? new int[] { 16, 256, 4096 } : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        System.out.printf("%8s %12s %16s %12s %16s%n", "payload", "amqp text", "amqp envelope", "jms text",
+                "jms envelope");
+        for (int size : sizes) {
+            String payload = CodecBenchmark.payload(size);
+            System.out.printf("%8d %12d %16d %12d %16d%n", size,
+                    amqpSize(new SimpleMessageConverter(), payload, true),
+                    amqpSize(new EnvelopeMessageConverter(), payload, false),
+                    jmsSize(new org.springframework.jms.support.converter.SimpleMessageConverter(), payload, true),
+                    jmsSize(new EnvelopeJmsMessageConverter(), payload, false));
+        }
+        System.out.printf("%n%8s", "json");
+        for (String compression : CompressionBenchmark.COMPRESSIONS) {
+            System.out.printf(" %16s", compression);
+        }
+        System.out.println();
+        PayloadCompressor[] compressors = new PayloadCompressor[CompressionBenchmark.COMPRESSIONS.length];
+        for (int i = 0; i < compressors.length; i++) {
+            String compression = CompressionBenchmark.COMPRESSIONS[i];
+            compressors[i] = CompressionBenchmark.registry(compression)
+                    .compressor(CompressionBenchmark.algorithm(compression), 0);
+        }
+        for (int size : new int[] { 512, 2048, 16384, 51200 }) {
+            byte[] document = CompressionBenchmark.document(size, 1).getBytes(StandardCharsets.UTF_8);
+            System.out.printf("%8d", document.length);
+            for (PayloadCompressor compressor : compressors) {
+                byte[] compressed = compressor.compress(document);
+                System.out.printf(" %16d", compressed != null ? compressed.length : document.length);
+            }
+            System.out.println();
+        }
+    }
+
+    private static int amqpSize(org.springframework.amqp.support.converter.MessageConverter converter, String payload,
+            boolean timestampHeader) throws Exception {
+        MessageProperties properties = new MessageProperties();
+        if (timestampHeader) {
+            properties.setHeader("sendTimestamp", System.currentTimeMillis());
+        }
+        Message message = converter.toMessage(payload, properties);
+        AMQContentHeader header = (AMQContentHeader) new DefaultMessagePropertiesConverter()
+                .fromMessageProperties(message.getMessageProperties(), "UTF-8");
+        int headerFrame = header.toFrame(1, message.getBody().length).getPayload().length + FRAME_OVERHEAD;
+        return headerFrame + message.getBody().length + FRAME_OVERHEAD;
+    }
+
+    private static int jmsSize(MessageConverter converter, String payload, boolean timestampHeader) throws Exception {
+        Session session = CodecBenchmark.messageFactory();
+        ActiveMQMessage message = (ActiveMQMessage) converter.toMessage(payload, session);
+        if (timestampHeader) {
+            message.setLongProperty("sendTimestamp", System.currentTimeMillis());
+        }
+        message.onSend();
+        return new OpenWireFormat().marshal(message).getLength();
+    }
+}
@@ -0,0 +1,164 @@
+package benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Session;
+
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.openwire.OpenWireFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+
+import codec.compress.Compression;
+import codec.compress.CompressionRegistry;
+import codec.compress.PayloadCompressor;
+import codec.compress.PayloadDecompressor;
+import codec.compress.ZstdCompression;
+import codec.jms.CompressingJmsMessageConverter;
+
+/**
+ * Compression of JSON documents of 0.5 to 50 KB with the <code>message-codec</code> compressions:<br/>
+ * <code>compress</code> and <code>decompress</code> (into a pooled buffer) of the body alone, and<br/>
+ * <code>jmsRoundTrip</code>, the services path: <code>CompressingJmsMessageConverter</code> around the<br/>
+ * text converter, through the OpenWire marshalling ActiveMQ does on the wire. <code>none</code> is the<br/>
+ * uncompressed text path. The compressed sizes are printed by <code>CodecWireSize</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    static final String[] COMPRESSIONS = { "lz4", "zstd", "zstd-dictionary" };
+
+    @Param({ "none", "lz4", "zstd", "zstd-dictionary" })
+    public String compression;
+
+    @Param({ "512", "2048", "16384", "51200" })
+    public int payloadSize;
+
+    private String document;
+
+    private byte[] body;
+
+    private PayloadCompressor compressor;
+
+    private PayloadDecompressor decompressor;
+
+    private byte[] compressed;
+
+    private Compression decompression;
+
+    private CompressingJmsMessageConverter converter;
+
+    private Session session;
+
+    private OpenWireFormat wireFormat;
+
+    @Setup
+    public void setUp() {
+        document = document(payloadSize, 1);
+        body = document.getBytes(StandardCharsets.UTF_8);
+        CompressionRegistry compressions = registry(compression);
+        // threshold 0: every size is compressed, the threshold is the application's decision
+        compressor = compressions.compressor(algorithm(compression), 0);
+        decompressor = new PayloadDecompressor(compressions);
+        if (compressor != null) {
+            compressed = compressor.compress(body);
+            decompression = compressor.getCompression();
+        }
+        converter = new CompressingJmsMessageConverter(new SimpleMessageConverter(), compressor, decompressor);
+        session = CodecBenchmark.messageFactory();
+        wireFormat = new OpenWireFormat();
+    }
+
+    @Benchmark
+    public Object compress() {
+        return compressor != null ? compressor.compress(body) : body;
+    }
+
+    @Benchmark
+    public int decompress() {
+        if (compressed == null) {
+            return body.length;
+        }
+        ByteBuffer buffer = decompressor.decompress(decompression, compressed, 0, compressed.length);
+        int length = buffer.limit();
+        decompressor.release(buffer);
+        return length;
+    }
+
+    @Benchmark
+    public Object jmsRoundTrip() throws Exception {
+        ActiveMQMessage sent = (ActiveMQMessage) converter.toMessage(document, session);
+        sent.onSend();
+        ActiveMQMessage received = (ActiveMQMessage) wireFormat.unmarshal(wireFormat.marshal(sent));
+        received.setReadOnlyBody(true);
+        return converter.fromMessage(received);
+    }
+
+    /**
+     * @return the compressions of the setting, <code>zstd-dictionary</code> with a dictionary trained on
+     *         other documents than the measured ones
+     */
+    static CompressionRegistry registry(String compression) {
+        if ("zstd-dictionary".equals(compression)) {
+            List<byte[]> samples = new ArrayList<byte[]>();
+            for (int i = 0; i < 2000; i++) {
+                samples.add(document(512 + i % 1536, 1000 + i).getBytes(StandardCharsets.UTF_8));
+            }
+            return CompressionRegistry.create(ZstdCompression.DEFAULT_LEVEL,
+                    ZstdCompression.trainDictionary(samples, 16 * 1024));
+        }
+        return CompressionRegistry.withDefaults();
+    }
+
+    static String algorithm(String compression) {
+        return "zstd-dictionary".equals(compression) ? ZstdCompression.NAME : compression;
+    }
+
+    /**
+     * @return a JSON array of product records of about <code>size</code> characters, the same for a seed
+     */
+    static String document(int size, long seed) {
+        Random random = new Random(seed);
+        String[] currencies = { "USD", "EUR", "COP", "MXN" };
+        String[] tags = { "new", "sale", "outlet", "featured", "clearance", "seasonal" };
+        StringBuilder json = new StringBuilder(size + 256).append('[');
+        while (json.length() < size - 1) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            int id = random.nextInt(1000000);
+            json.append("{\"id\":").append(id)
+                    .append(",\"sku\":\"SKU-").append(random.nextInt(100000))
+                    .append("\",\"name\":\"Product ").append(id)
+                    .append("\",\"price\":").append(random.nextInt(100000) / 100.0)
+                    .append(",\"currency\":\"").append(currencies[random.nextInt(currencies.length)])
+                    .append("\",\"stock\":").append(random.nextInt(500))
+                    .append(",\"tags\":[\"").append(tags[random.nextInt(tags.length)])
+                    .append("\",\"").append(tags[random.nextInt(tags.length)])
+                    .append("\"],\"warehouse\":\"WH-").append(random.nextInt(20))
+                    .append("\",\"updated\":\"2016-03-").append(10 + random.nextInt(20))
+                    .append("T").append(10 + random.nextInt(13)).append(":00:00Z\"}");
+        }
+        return json.append(']').toString();
+    }
+}
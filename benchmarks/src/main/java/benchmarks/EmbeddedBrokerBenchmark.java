@@ -0,0 +1,176 @@
+package benchmarks;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.jms.config.JmsListenerContainerFactory;
+import org.springframework.jms.config.SimpleJmsListenerContainerFactory;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessageCreator;
+import org.springframework.util.FileSystemUtils;
+
+import hello.EmbeddedBrokerConfiguration;
+import hello.JmsPoolConfiguration;
+
+/**
+ * Throughput of the <code>services</code> embedded broker (<code>jms.broker.embedded=true</code>) per store and<br/>
+ * transport: <code>JmsTemplate.send("mailbox-destination", ...)</code> of a persistent message and the round<br/>
+ * trip through a <code>@JmsListener</code>, with the pooled connection factory of the application.<br/>
+ * <br/>
+ * <code>store</code> is <code>jms.broker.store</code>: <code>MEMORY</code> or <code>KAHADB</code> in a temporary<br/>
+ * directory (<code>LEVELDB</code> needs the activemq-leveldb-store dependencies in the jar, <code>-p</code> it in<br/>
+ * once they are). <code>transport</code> is <code>jms.broker.client</code>: <code>vm</code>, the message objects<br/>
+ * handed over in the JVM, or <code>tcp</code>, OpenWire over a socket to the NIO connector.<br/>
+ * <code>journalSync=false</code> acknowledges a KahaDB send before the journal reaches the disk; it changes<br/>
+ * nothing for <code>MEMORY</code>.<br/>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmbeddedBrokerBenchmark {
+
+    static final String destination = "mailbox-destination";
+
+    @Param({ "MEMORY", "KAHADB" })
+    public String store;
+
+    @Param({ "vm", "tcp" })
+    public String transport;
+
+    @Param({ "true", "false" })
+    public boolean journalSync;
+
+    @Configuration
+    @EnableJms
+    @Import({ EmbeddedBrokerConfiguration.class, JmsPoolConfiguration.class })
+    static class JmsConfiguration {
+
+        @Bean
+        static PropertySourcesPlaceholderConfigurer placeholderConfigurer() {
+            return new PropertySourcesPlaceholderConfigurer();
+        }
+
+        @Bean
+        JmsListenerContainerFactory<?> myJmsContainerFactory(ConnectionFactory connectionFactory) {
+            SimpleJmsListenerContainerFactory factory = new SimpleJmsListenerContainerFactory();
+            factory.setConnectionFactory(connectionFactory);
+            return factory;
+        }
+
+        @Bean
+        JmsTemplate jmsTemplate(ConnectionFactory connectionFactory) {
+            return new JmsTemplate(connectionFactory);
+        }
+
+        @Bean
+        Receiver receiver() {
+            return new Receiver();
+        }
+    }
+
+    static class Receiver {
+
+        final BlockingQueue<String> messages = new LinkedBlockingQueue<String>();
+
+        @JmsListener(destination = destination, containerFactory = "myJmsContainerFactory")
+        public void receiveMessage(String message) {
+            messages.add(message);
+        }
+    }
+
+    private final MessageCreator messageCreator = new MessageCreator() {
+        @Override
+        public Message createMessage(Session session) throws JMSException {
+            return session.createTextMessage("ping!");
+        }
+    };
+
+    private File dataDirectory;
+
+    private AnnotationConfigApplicationContext context;
+
+    private JmsTemplate jmsTemplate;
+
+    private Receiver receiver;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataDirectory = Files.createTempDirectory("broker-benchmark").toFile();
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        context = new AnnotationConfigApplicationContext();
+        Map<String, Object> settings = new HashMap<String, Object>();
+        settings.put("jms.broker.embedded", true);
+        settings.put("jms.broker.name", "benchmark");
+        settings.put("jms.broker.store", store);
+        settings.put("jms.broker.client", transport);
+        settings.put("jms.broker.nio-uri", "nio://localhost:" + port);
+        settings.put("jms.broker.data-dir", dataDirectory.getPath());
+        settings.put("jms.broker.journal-sync", journalSync);
+        settings.put("spring.activemq.broker-url", "tcp://localhost:" + port);
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", settings));
+        context.register(JmsConfiguration.class);
+        context.refresh();
+        jmsTemplate = context.getBean(JmsTemplate.class);
+        receiver = context.getBean(Receiver.class);
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() {
+        receiver.messages.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        FileSystemUtils.deleteRecursively(dataDirectory);
+    }
+
+    @Benchmark
+    public void send() {
+        jmsTemplate.send(destination, messageCreator);
+    }
+
+    @Benchmark
+    public String sendAndReceive() throws InterruptedException {
+        jmsTemplate.send(destination, messageCreator);
+        return receiver.messages.take();
+    }
+}
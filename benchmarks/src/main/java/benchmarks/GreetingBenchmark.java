@@ -0,0 +1,233 @@
+package benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import hello.Greeting;
+import hello.GreetingController;
+import hello.GreetingJsonConverter;
+
+/**
+ * The <code>/greeting</code> endpoint of <code>services</code> in its two <code>greeting.mode</code> settings:<br/>
+ * <code>simple</code>: one shared <code>AtomicLong</code>, <code>String.format</code> and the Jackson converter.<br/>
+ * <code>fast</code>: ids from per-thread blocks of <code>idBlockSize</code>, the compiled template and
+ * {@link GreetingJsonConverter} ahead of Jackson.<br/>
+ * <br/>
+ * <code>render</code> calls the controller and writes the JSON into memory, the work of one request without
+ * the network; <code>http</code> is a GET through Tomcat and the <code>DispatcherServlet</code> over a
+ * keep-alive connection per thread, client and server in this JVM. The gap between the modes shows with the
+ * number of threads, run it with <code>-t</code> or through {@link GreetingScaling} for 1 to 64 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GreetingBenchmark {
+
+    @Param({ "simple", "fast" })
+    public String mode;
+
+    @Param({ "1024" })
+    public int idBlockSize;
+
+    @Configuration
+    @EnableWebMvc
+    static class WebConfiguration extends WebMvcConfigurerAdapter {
+
+        @Value("${mode}")
+        String mode;
+
+        @Bean
+        static PropertySourcesPlaceholderConfigurer placeholderConfigurer() {
+            return new PropertySourcesPlaceholderConfigurer();
+        }
+
+        @Bean
+        GreetingController greetingController(@Value("${idBlockSize}") int idBlockSize) {
+            return new GreetingController(mode, idBlockSize);
+        }
+
+        @Override
+        public void configureMessageConverters(List<HttpMessageConverter<?>> converters) {
+            // the converters of the application: the greeting one is a bean Spring Boot puts first
+            if ("fast".equals(mode)) {
+                converters.add(new GreetingJsonConverter());
+            }
+            converters.add(new MappingJackson2HttpMessageConverter(Jackson2ObjectMapperBuilder.json().build()));
+        }
+    }
+
+    /**
+     * The response of one thread, reused: its headers are cleared and its body reset for every greeting
+     */
+    @State(Scope.Thread)
+    public static class Response implements HttpOutputMessage {
+
+        final HttpHeaders headers = new HttpHeaders();
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+
+        void reset() {
+            headers.clear();
+            body.reset();
+        }
+    }
+
+    /**
+     * The keep-alive connection of one thread is the one HttpURLConnection keeps for the URL once the body was read
+     */
+    @State(Scope.Thread)
+    public static class Client {
+
+        final byte[] buffer = new byte[1024];
+    }
+
+    private final MediaType json = MediaType.APPLICATION_JSON;
+
+    private GreetingController controller;
+
+    private GreetingJsonConverter greetingConverter;
+
+    private MappingJackson2HttpMessageConverter jacksonConverter;
+
+    private boolean fast;
+
+    private File baseDir;
+
+    private Tomcat tomcat;
+
+    private URL url;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fast = "fast".equals(mode);
+        controller = new GreetingController(mode, idBlockSize);
+        greetingConverter = new GreetingJsonConverter();
+        jacksonConverter = new MappingJackson2HttpMessageConverter(Jackson2ObjectMapperBuilder.json().build());
+        // both write the same JSON
+        Response response = new Response();
+        for (String name : new String[] { "World", "\"quoted\" \\ back", "tab\tnew\nline\u0001", "\u00f1and\u00fa",
+                "\ud83d\ude00" }) {
+            Greeting greeting = new Greeting(1234567890123L, "Hello, " + name + "!");
+            response.reset();
+            greetingConverter.write(greeting, json, response);
+            byte[] written = response.body.toByteArray();
+            response.reset();
+            jacksonConverter.write(greeting, json, response);
+            if (!Arrays.equals(written, response.body.toByteArray())) {
+                throw new IllegalStateException("GreetingJsonConverter and Jackson differ: "
+                        + new String(written, StandardCharsets.UTF_8) + " against "
+                        + new String(response.body.toByteArray(), StandardCharsets.UTF_8));
+            }
+        }
+
+        // one kept connection per thread, the default of 5 would open new ones beyond 5 threads
+        System.setProperty("http.maxConnections", "256");
+        baseDir = Files.createTempDirectory("greeting-benchmark").toFile();
+        AnnotationConfigWebApplicationContext web = new AnnotationConfigWebApplicationContext();
+        Map<String, Object> settings = new HashMap<String, Object>();
+        settings.put("mode", mode);
+        settings.put("idBlockSize", idBlockSize);
+        web.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", settings));
+        web.register(WebConfiguration.class);
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(baseDir.getAbsolutePath());
+        tomcat.setPort(0);
+        Context context = tomcat.addContext("", baseDir.getAbsolutePath());
+        Tomcat.addServlet(context, "dispatcher", new DispatcherServlet(web));
+        context.addServletMapping("/", "dispatcher");
+        tomcat.start();
+        url = new URL("http://localhost:" + tomcat.getConnector().getLocalPort() + "/greeting?name=World");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        tomcat.stop();
+        tomcat.destroy();
+        FileSystemUtils.deleteRecursively(baseDir);
+    }
+
+    @Benchmark
+    public int render(Response response) throws IOException {
+        response.reset();
+        Greeting greeting = controller.greeting("World");
+        if (fast) {
+            greetingConverter.write(greeting, json, response);
+        } else {
+            jacksonConverter.write(greeting, json, response);
+        }
+        return response.body.size();
+    }
+
+    @Benchmark
+    public int http(Client client) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (connection.getResponseCode() != 200) {
+            throw new IllegalStateException("GET " + url + ": " + connection.getResponseCode());
+        }
+        int length = 0;
+        try (InputStream body = connection.getInputStream()) {
+            int read;
+            while ((read = body.read(client.buffer)) != -1) {
+                length += read;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,76 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs {@link GreetingBenchmark} in throughput mode once per number of threads, JMH takes one thread count per
+ * run, and prints the scores of both <code>greeting.mode</code> settings side by side in ops/ms:<br/>
+ * <br/>
+ * java -cp target/benchmarks.jar benchmarks.GreetingScaling [render|http] [threads ...]<br/>
+ * <br/>
+ * Without arguments both benchmarks for 1, 2, 4, 8, 16, 32 and 64 threads.
+ */
+public class GreetingScaling {
+
+    public static void main(String[] args) throws Exception {
+        String benchmark = "render|http";
+        List<Integer> threads = new ArrayList<Integer>();
+        for (String arg : args) {
+            if (arg.matches("\\d+")) {
+                threads.add(Integer.valueOf(arg));
+            } else {
+                benchmark = arg;
+            }
+        }
+        if (threads.isEmpty()) {
+            for (int t = 1; t <= 64; t *= 2) {
+                threads.add(t);
+            }
+        }
+        // benchmark, then threads, then mode: the score
+        Map<String, Map<Integer, Map<String, Double>>> scores = new TreeMap<String, Map<Integer, Map<String, Double>>>();
+        for (int t : threads) {
+            Options options = new OptionsBuilder()
+                    .include(GreetingBenchmark.class.getName() + "\\.(" + benchmark + ")$")
+                    .mode(Mode.Throughput)
+                    .threads(t)
+                    .build();
+            Collection<RunResult> results = new Runner(options).run();
+            for (RunResult result : results) {
+                String label = result.getParams().getBenchmark();
+                label = label.substring(label.lastIndexOf('.') + 1);
+                Map<Integer, Map<String, Double>> byThreads = scores.get(label);
+                if (byThreads == null) {
+                    byThreads = new TreeMap<Integer, Map<String, Double>>();
+                    scores.put(label, byThreads);
+                }
+                Map<String, Double> byMode = byThreads.get(t);
+                if (byMode == null) {
+                    byMode = new TreeMap<String, Double>();
+                    byThreads.put(t, byMode);
+                }
+                byMode.put(result.getParams().getParam("mode"), result.getPrimaryResult().getScore());
+            }
+        }
+        for (Map.Entry<String, Map<Integer, Map<String, Double>>> entry : scores.entrySet()) {
+            System.out.printf("%n%-8s %8s %14s %14s %8s%n", entry.getKey(), "threads", "simple ops/ms", "fast ops/ms",
+                    "fast/simple");
+            for (Map.Entry<Integer, Map<String, Double>> row : entry.getValue().entrySet()) {
+                Double simple = row.getValue().get("simple");
+                Double fast = row.getValue().get("fast");
+                System.out.printf("%-8s %8d %14.1f %14.1f %8s%n", "", row.getKey(), simple, fast,
+                        simple != null && fast != null ? String.format("%.2fx", fast / simple) : "-");
+            }
+        }
+    }
+}
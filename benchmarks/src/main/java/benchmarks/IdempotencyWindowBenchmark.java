@@ -0,0 +1,98 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.processor.idempotent.MemoryIdempotentRepository;
+import org.apache.camel.spi.IdempotentRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import idempotent.IdempotencyWindow;
+import idempotent.MessageIds;
+import idempotent.camel.WindowIdempotentRepository;
+
+/**
+ * Duplicate check of the idempotent consumers, through the Camel <code>IdempotentRepository</code>
+ * interface both implement:<br/>
+ * <code>window</code>, the <code>idempotent-receiver</code> window of primitive keys, and<br/>
+ * <code>memory</code>, Camel's <code>MemoryIdempotentRepository</code>, an LRU map of the id strings.<br/>
+ * <code>addNew</code> adds and confirms an id not in the window, evicting the oldest once it is full, and
+ * <code>duplicate</code> adds an id already in it. The window holds <code>ids</code> ids.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class IdempotencyWindowBenchmark {
+
+    @Param({ "window", "memory" })
+    public String repository;
+
+    @Param({ "10000", "1000000" })
+    public int ids;
+
+    private IdempotentRepository<String> idempotentRepository;
+
+    private IdempotencyWindow window;
+
+    // twice the window: an id has been evicted by the time it comes round again
+    private String[] messageIds;
+
+    private int next;
+
+    private int duplicate;
+
+    @Setup
+    public void setUp() throws Exception {
+        if ("window".equals(repository)) {
+            window = new IdempotencyWindow(ids, TimeUnit.HOURS.toMillis(1));
+            idempotentRepository = new WindowIdempotentRepository(window);
+        } else {
+            idempotentRepository = MemoryIdempotentRepository.memoryIdempotentRepository(ids);
+        }
+        MessageIds generator = new MessageIds();
+        messageIds = new String[2 * ids];
+        for (int i = 0; i < messageIds.length; i++) {
+            messageIds[i] = generator.next();
+        }
+        for (next = 0; next < ids; next++) {
+            idempotentRepository.add(messageIds[next]);
+            idempotentRepository.confirm(messageIds[next]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (window != null) {
+            window.close();
+        }
+    }
+
+    @Benchmark
+    public boolean addNew() {
+        String id = messageIds[next];
+        next = next + 1 == messageIds.length ? 0 : next + 1;
+        boolean added = idempotentRepository.add(id);
+        idempotentRepository.confirm(id);
+        return added;
+    }
+
+    @Benchmark
+    public boolean duplicate() {
+        // the first ids stay in the window, addNew is not run in the same trial
+        duplicate = (duplicate + 7919) % ids;
+        return idempotentRepository.add(messageIds[duplicate]);
+    }
+}
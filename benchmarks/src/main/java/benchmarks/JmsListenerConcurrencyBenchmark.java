@@ -0,0 +1,206 @@
+package benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.jms.config.DefaultJmsListenerContainerFactory;
+import org.springframework.jms.config.JmsListenerContainerFactory;
+import org.springframework.jms.config.SimpleJmsListenerContainerFactory;
+import org.springframework.jms.connection.CachingConnectionFactory;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessageCreator;
+import org.springframework.jms.listener.SimpleMessageListenerContainer;
+
+import hello.PermitBoundedExecutor;
+
+/**
+ * Compares the <code>jms.listener.mode</code> settings of <code>services</code> with a listener that<br/>
+ * blocks for <code>blockMillis</code>, like a listener waiting on a database or a remote service:<br/>
+ * <br/>
+ * <code>session</code>: <code>SimpleJmsListenerContainerFactory</code>, the listener runs on the session thread.<br/>
+ * <code>per-message</code>: the same factory handing each message to a {@link PermitBoundedExecutor} with<br/>
+ * <code>permits</code> permits.<br/>
+ * <code>pooled</code>: <code>DefaultJmsListenerContainerFactory</code> with concurrency <code>concurrency</code>.<br/>
+ * <br/>
+ * Each invocation sends a batch of messages and waits until the listener has handled all of them,<br/>
+ * the scores are per message.<br/>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JmsListenerConcurrencyBenchmark {
+
+    static final String destination = "mailbox-destination";
+
+    static final int batch = 256;
+
+    @Param({ "session", "per-message", "pooled" })
+    public String mode;
+
+    @Param({ "0", "1" })
+    public int blockMillis;
+
+    @Param({ "64" })
+    public int permits;
+
+    @Param({ "4-16" })
+    public String concurrency;
+
+    @Configuration
+    @EnableJms
+    static class JmsConfiguration {
+
+        @Bean
+        static PropertySourcesPlaceholderConfigurer placeholderConfigurer() {
+            return new PropertySourcesPlaceholderConfigurer();
+        }
+
+        @Bean
+        ConnectionFactory connectionFactory() {
+            return new ActiveMQConnectionFactory("vm://benchmark?create=false");
+        }
+
+        @Bean(destroyMethod = "close")
+        PermitBoundedExecutor listenerExecutor(@Value("${permits}") int permits) {
+            return new PermitBoundedExecutor(permits, "jms-listener-");
+        }
+
+        @Bean
+        JmsListenerContainerFactory<?> myJmsContainerFactory(ConnectionFactory connectionFactory,
+                @Value("${mode}") String mode, @Value("${concurrency}") String concurrency,
+                final PermitBoundedExecutor listenerExecutor) {
+            if ("pooled".equals(mode)) {
+                DefaultJmsListenerContainerFactory factory = new DefaultJmsListenerContainerFactory();
+                factory.setConnectionFactory(connectionFactory);
+                factory.setConcurrency(concurrency);
+                return factory;
+            }
+            SimpleJmsListenerContainerFactory factory = new SimpleJmsListenerContainerFactory();
+            if ("per-message".equals(mode)) {
+                factory = new SimpleJmsListenerContainerFactory() {
+                    @Override
+                    protected void initializeContainer(SimpleMessageListenerContainer container) {
+                        super.initializeContainer(container);
+                        container.setTaskExecutor(listenerExecutor);
+                    }
+                };
+            }
+            factory.setConnectionFactory(connectionFactory);
+            return factory;
+        }
+
+        @Bean
+        JmsTemplate jmsTemplate(ConnectionFactory connectionFactory) {
+            // one cached connection for the sends, so the listener side is what is measured
+            return new JmsTemplate(new CachingConnectionFactory(connectionFactory));
+        }
+
+        @Bean
+        Receiver receiver(@Value("${blockMillis}") int blockMillis) {
+            return new Receiver(blockMillis);
+        }
+    }
+
+    static class Receiver {
+
+        final Semaphore handled = new Semaphore(0);
+
+        final long blockMillis;
+
+        Receiver(long blockMillis) {
+            this.blockMillis = blockMillis;
+        }
+
+        @JmsListener(destination = destination, containerFactory = "myJmsContainerFactory")
+        public void receiveMessage(String message) throws InterruptedException {
+            if (blockMillis > 0) {
+                Thread.sleep(blockMillis);
+            }
+            handled.release();
+        }
+    }
+
+    private final MessageCreator messageCreator = new MessageCreator() {
+        @Override
+        public Message createMessage(Session session) throws JMSException {
+            return session.createTextMessage("ping!");
+        }
+    };
+
+    private BrokerService broker;
+
+    private AnnotationConfigApplicationContext context;
+
+    private JmsTemplate jmsTemplate;
+
+    private Receiver receiver;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = new BrokerService();
+        broker.setBrokerName("benchmark");
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.start();
+        context = new AnnotationConfigApplicationContext();
+        Map<String, Object> settings = new HashMap<String, Object>();
+        settings.put("mode", mode);
+        settings.put("blockMillis", blockMillis);
+        settings.put("permits", permits);
+        settings.put("concurrency", concurrency);
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", settings));
+        context.register(JmsConfiguration.class);
+        context.refresh();
+        jmsTemplate = context.getBean(JmsTemplate.class);
+        receiver = context.getBean(Receiver.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+        broker.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(batch)
+    public void sendAndHandle() throws InterruptedException {
+        for (int i = 0; i < batch; i++) {
+            jmsTemplate.send(destination, messageCreator);
+        }
+        receiver.handled.acquire(batch);
+    }
+}
@@ -0,0 +1,158 @@
+package benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.apache.activemq.broker.BrokerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.jms.config.JmsListenerContainerFactory;
+import org.springframework.jms.config.SimpleJmsListenerContainerFactory;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessageCreator;
+
+import hello.JmsPoolConfiguration;
+
+/**
+ * Measures the <code>services</code> JMS path against an embedded ActiveMQ broker reached over<br/>
+ * <code>vm://</code>: <code>JmsTemplate.send("mailbox-destination", ...)</code> and the round trip through<br/>
+ * the <code>@JmsListener</code> registered on <code>myJmsContainerFactory</code>.<br/>
+ * <br/>
+ * The connection factory comes from the <code>JmsPoolConfiguration</code> of <code>services</code>, with<br/>
+ * <code>pooled=true</code> the connection/session pool (the default of the application) and with<br/>
+ * <code>pooled=false</code> the plain <code>ActiveMQConnectionFactory</code>, where every send opens and closes<br/>
+ * a connection, a session and a producer.<br/>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JmsTemplateBenchmark {
+
+    static final String destination = "mailbox-destination";
+
+    @Param({ "false", "true" })
+    public boolean pooled;
+
+    @Configuration
+    @EnableJms
+    @Import(JmsPoolConfiguration.class)
+    static class JmsConfiguration {
+
+        @Bean
+        static PropertySourcesPlaceholderConfigurer placeholderConfigurer() {
+            return new PropertySourcesPlaceholderConfigurer();
+        }
+
+        @Bean
+        JmsListenerContainerFactory<?> myJmsContainerFactory(ConnectionFactory connectionFactory) {
+            SimpleJmsListenerContainerFactory factory = new SimpleJmsListenerContainerFactory();
+            factory.setConnectionFactory(connectionFactory);
+            return factory;
+        }
+
+        @Bean
+        JmsTemplate jmsTemplate(ConnectionFactory connectionFactory) {
+            return new JmsTemplate(connectionFactory);
+        }
+
+        @Bean
+        Receiver receiver() {
+            return new Receiver();
+        }
+    }
+
+    static class Receiver {
+
+        final BlockingQueue<String> messages = new LinkedBlockingQueue<String>();
+
+        @JmsListener(destination = destination, containerFactory = "myJmsContainerFactory")
+        public void receiveMessage(String message) {
+            messages.add(message);
+        }
+    }
+
+    private final MessageCreator messageCreator = new MessageCreator() {
+        @Override
+        public Message createMessage(Session session) throws JMSException {
+            return session.createTextMessage("ping!");
+        }
+    };
+
+    private BrokerService broker;
+
+    private AnnotationConfigApplicationContext context;
+
+    private JmsTemplate jmsTemplate;
+
+    private Receiver receiver;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = new BrokerService();
+        broker.setBrokerName("benchmark");
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.start();
+        context = new AnnotationConfigApplicationContext();
+        Map<String, Object> settings = new HashMap<String, Object>();
+        settings.put("spring.activemq.broker-url", "vm://benchmark?create=false");
+        settings.put("jms.pool.enabled", pooled);
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", settings));
+        context.register(JmsConfiguration.class);
+        context.refresh();
+        jmsTemplate = context.getBean(JmsTemplate.class);
+        receiver = context.getBean(Receiver.class);
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() {
+        receiver.messages.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+        broker.stop();
+    }
+
+    @Benchmark
+    public void send() {
+        jmsTemplate.send(destination, messageCreator);
+    }
+
+    @Benchmark
+    public String sendAndReceive() throws InterruptedException {
+        jmsTemplate.send(destination, messageCreator);
+        return receiver.messages.take();
+    }
+}
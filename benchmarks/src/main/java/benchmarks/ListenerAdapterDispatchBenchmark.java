@@ -0,0 +1,117 @@
+package benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.listener.adapter.MessageListenerAdapter;
+
+import listener.DirectMessageListener;
+import listener.MessageBodyHandler;
+import listener.MessageTextHandler;
+
+/**
+ * Measures the <code>MessageListenerAdapter</code> to <code>Receiver.receiveMessage</code> dispatch wired<br/>
+ * by the withspring consumers, without a broker: message conversion plus the reflective lookup and<br/>
+ * invocation. <code>directInvocation</code> is the same work without the adapter, as a reference.<br/>
+ * <code>directListenerBytes</code> and <code>directListenerText</code> measure the<br/>
+ * <code>DirectMessageListener</code> of <code>message-listener</code>, with the raw body and with the body decoded into a reused buffer.<br/>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerAdapterDispatchBenchmark {
+
+    /**
+     * Same signature as the samples' <code>Receiver</code>, keeping the message instead of printing it.
+     */
+    public static class Receiver implements MessageBodyHandler, MessageTextHandler {
+
+        private String lastMessage;
+
+        private int lastLength;
+
+        public void receiveMessage(String message) {
+            lastMessage = message;
+        }
+
+        @Override
+        public void handleMessage(ByteBuffer body) {
+            lastLength = body.remaining();
+        }
+
+        @Override
+        public void handleMessage(CharSequence text) {
+            lastLength = text.length();
+        }
+
+        public String getLastMessage() {
+            return lastMessage;
+        }
+
+        public int getLastLength() {
+            return lastLength;
+        }
+    }
+
+    private Receiver receiver;
+
+    private MessageListenerAdapter listenerAdapter;
+
+    private DirectMessageListener bytesListener;
+
+    private DirectMessageListener textListener;
+
+    private Message message;
+
+    @Setup
+    public void setUp() {
+        receiver = new Receiver();
+        listenerAdapter = new MessageListenerAdapter(receiver, "receiveMessage");
+        bytesListener = new DirectMessageListener((MessageBodyHandler) receiver);
+        textListener = new DirectMessageListener((MessageTextHandler) receiver);
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_TEXT_PLAIN);
+        properties.setContentEncoding("UTF-8");
+        message = new Message("Hello from RabbitMQ again!".getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+    @Benchmark
+    public String listenerAdapter() throws Exception {
+        listenerAdapter.onMessage(message);
+        return receiver.getLastMessage();
+    }
+
+    @Benchmark
+    public String directInvocation() {
+        receiver.receiveMessage(new String(message.getBody(), StandardCharsets.UTF_8));
+        return receiver.getLastMessage();
+    }
+
+    @Benchmark
+    public int directListenerBytes() {
+        bytesListener.onMessage(message);
+        return receiver.getLastLength();
+    }
+
+    @Benchmark
+    public int directListenerText() {
+        textListener.onMessage(message);
+        return receiver.getLastLength();
+    }
+}
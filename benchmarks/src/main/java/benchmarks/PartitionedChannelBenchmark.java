@@ -0,0 +1,207 @@
+package benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import broker.EmbeddedAmqpBroker;
+import partition.PartitionTopology;
+import partition.Partitioner;
+import partition.amqp.PartitionedConsumer;
+
+/**
+ * Throughput of the partitioned channel of <code>message-partition</code> for 1 to 8 consumers sharing its<br/>
+ * <code>partitions</code> partitions, against {@link EmbeddedAmqpBroker}. Each consumer is a<br/>
+ * {@link PartitionedConsumer} with a connection of its own and handles one message at a time, like a consumer<br/>
+ * process with one worker: its listener parks for <code>workMicros</code> per message, like a listener<br/>
+ * waiting on a database, holding a lock of the consumer. The consumers start one after the other.<br/>
+ * <br/>
+ * Each invocation sends a batch of messages of <code>keys</code> keys, numbered per key, and waits until the<br/>
+ * consumers have handled all of them, the scores are per message. Past <code>partitions</code> consumers the<br/>
+ * extra ones get no partition. Fails if a consumer got the messages of a key out of order.<br/>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PartitionedChannelBenchmark {
+
+    static final String exchangeName = "spring-boot-exchange";
+
+    static final String queueName = "spring-boot";
+
+    static final int batch = 1000;
+
+    static final int keys = 1000;
+
+    @Param({ "1", "2", "4", "8" })
+    public int consumers;
+
+    @Param({ "8" })
+    public int partitions;
+
+    @Param({ "0", "1000" })
+    public int workMicros;
+
+    private final Semaphore handled = new Semaphore(0);
+
+    private EmbeddedAmqpBroker broker;
+
+    private CachingConnectionFactory producerConnectionFactory;
+
+    private RabbitTemplate rabbitTemplate;
+
+    private RabbitAdmin rabbitAdmin;
+
+    private PartitionTopology topology;
+
+    private Partitioner partitioner;
+
+    private String[] partitionQueues;
+
+    private final List<CachingConnectionFactory> consumerConnectionFactories = new ArrayList<CachingConnectionFactory>();
+
+    private final List<PartitionedConsumer> members = new ArrayList<PartitionedConsumer>();
+
+    private final byte[] body = "ping!".getBytes(StandardCharsets.UTF_8);
+
+    private long sent;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = new EmbeddedAmqpBroker();
+        broker.start();
+        producerConnectionFactory = new CachingConnectionFactory("localhost", broker.getPort());
+        rabbitAdmin = new RabbitAdmin(producerConnectionFactory);
+        rabbitAdmin.declareExchange(new TopicExchange(exchangeName, false, false));
+        rabbitTemplate = new RabbitTemplate(producerConnectionFactory);
+        topology = new PartitionTopology(exchangeName, queueName, partitions);
+        partitioner = new Partitioner(partitions, 160);
+        partitionQueues = new String[partitions];
+        for (int partition = 0; partition < partitions; partition++) {
+            partitionQueues[partition] = topology.partitionQueue(partition);
+        }
+        for (int i = 0; i < consumers; i++) {
+            CachingConnectionFactory connectionFactory = new CachingConnectionFactory("localhost", broker.getPort());
+            consumerConnectionFactories.add(connectionFactory);
+            PartitionedConsumer member = new PartitionedConsumer(connectionFactory, topology, worker(), "member-" + i,
+                    1000);
+            member.setHeartbeatMillis(100);
+            member.setOrderCheckKeys(keys);
+            member.start();
+            members.add(member);
+            awaitAssigned(30000);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        long outOfOrder = 0;
+        for (PartitionedConsumer member : members) {
+            member.stop();
+            outOfOrder += member.getOutOfOrder();
+        }
+        for (CachingConnectionFactory connectionFactory : consumerConnectionFactories) {
+            connectionFactory.destroy();
+        }
+        producerConnectionFactory.destroy();
+        broker.stop();
+        if (outOfOrder > 0) {
+            throw new IllegalStateException(outOfOrder + " messages came out of order");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(batch)
+    public void sendAndHandle() throws InterruptedException {
+        for (int i = 0; i < batch; i++) {
+            String key = "key-" + (sent % keys);
+            MessageProperties properties = new MessageProperties();
+            properties.setHeader(PartitionTopology.PARTITION_KEY, key);
+            properties.setHeader(PartitionTopology.KEY_SEQUENCE, sent / keys);
+            String partitionQueue = partitionQueues[partitioner.partition(key)];
+            rabbitTemplate.send(exchangeName, partitionQueue, new Message(body, properties));
+            sent++;
+        }
+        if (!handled.tryAcquire(batch, 30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("The consumers did not handle the batch in 30 s");
+        }
+    }
+
+    /**
+     * @return the listener of one consumer, handling the messages of all its partitions one at a time
+     */
+    private MessageListener worker() {
+        final long workNanos = TimeUnit.MICROSECONDS.toNanos(workMicros);
+        return new MessageListener() {
+            @Override
+            public synchronized void onMessage(Message message) {
+                if (workNanos > 0) {
+                    LockSupport.parkNanos(workNanos);
+                }
+                handled.release();
+            }
+        };
+    }
+
+    /**
+     * Waits until the members agree on the group and every partition has its consumer.
+     */
+    private void awaitAssigned(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!assigned()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("The partitions were not assigned in " + timeoutMillis + " ms");
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    private boolean assigned() {
+        int owned = 0;
+        for (PartitionedConsumer member : members) {
+            if (member.getMembers().size() != members.size()) {
+                return false;
+            }
+            owned += member.getOwned().cardinality();
+        }
+        if (owned != partitions) {
+            return false;
+        }
+        for (String partitionQueue : partitionQueues) {
+            Properties queue = rabbitAdmin.getQueueProperties(partitionQueue);
+            if (queue == null || ((Number) queue.get(RabbitAdmin.QUEUE_CONSUMER_COUNT)).intValue() != 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,78 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import broker.EmbeddedAmqpBroker;
+
+/**
+ * Measures <code>RabbitTemplate.convertAndSend</code> as used by the withspring producer and the<br/>
+ * <code>complete</code> sample: default exchange, routing key <code>spring-boot</code>, String body<br/>
+ * converted by the <code>SimpleMessageConverter</code>. Runs against {@link EmbeddedAmqpBroker}.<br/>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RabbitTemplateSendBenchmark {
+
+    static final String queueName = "spring-boot";
+
+    private EmbeddedAmqpBroker broker;
+
+    private CachingConnectionFactory connectionFactory;
+
+    private RabbitAdmin rabbitAdmin;
+
+    private RabbitTemplate rabbitTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = new EmbeddedAmqpBroker();
+        broker.start();
+        connectionFactory = new CachingConnectionFactory("localhost", broker.getPort());
+        rabbitAdmin = new RabbitAdmin(connectionFactory);
+        Queue queue = new Queue(queueName, false);
+        TopicExchange exchange = new TopicExchange("spring-boot-exchange");
+        rabbitAdmin.declareQueue(queue);
+        rabbitAdmin.declareExchange(exchange);
+        rabbitAdmin.declareBinding(BindingBuilder.bind(queue).to(exchange).with(queueName));
+        rabbitTemplate = new RabbitTemplate(connectionFactory);
+    }
+
+    @TearDown(Level.Iteration)
+    public void purge() {
+        rabbitAdmin.purgeQueue(queueName, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connectionFactory.destroy();
+        broker.stop();
+    }
+
+    @Benchmark
+    public void convertAndSend() {
+        rabbitTemplate.convertAndSend(queueName, "Hello from RabbitMQ again!");
+    }
+}
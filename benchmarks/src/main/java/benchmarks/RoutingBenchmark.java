@@ -0,0 +1,140 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import router.Destination;
+import router.HeaderPredicate;
+import router.Routes;
+import router.RoutingRule;
+import router.RoutingTable;
+
+/**
+ * Resolving the destinations of a message with <code>rules</code> routing rules of the
+ * <code>message-router</code> module, topic patterns of 3 to 5 words with <code>*</code> and
+ * <code>#</code> and, for a third of them, header predicates:<br/>
+ * <code>compiled</code> follows the words of the routing key through the compiled {@link RoutingTable}, and<br/>
+ * <code>linear</code> matches every rule in turn word by word and collects the destinations in a new list,
+ * like a list of rules evaluated per message would.<br/>
+ * The routing keys cycle through 1024 keys built from the same words, most of them match a few rules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark {
+
+    private static final String[] domains = { "orders", "payments", "shipments", "users", "stock", "audit" };
+
+    private static final String[] regions = { "eu", "us", "apac", "latam" };
+
+    private static final String[] events = { "created", "updated", "cancelled", "failed", "completed" };
+
+    private static final String[] priorities = { "low", "normal", "high" };
+
+    @Param({ "10", "100", "1000" })
+    public int rules;
+
+    private List<RoutingRule> routingRules;
+
+    private RoutingTable table;
+
+    private Routes routes;
+
+    private String[] keys;
+
+    private List<Map<String, Object>> headers;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        routingRules = new ArrayList<RoutingRule>(rules);
+        for (int r = 0; r < rules; r++) {
+            String pattern = domains[random.nextInt(domains.length)] + "."
+                    + pick(random, regions) + "." + pick(random, events)
+                    + (random.nextInt(4) == 0 ? ".#" : "");
+            List<HeaderPredicate> predicates = random.nextInt(3) == 0
+                    ? Collections.singletonList(HeaderPredicate.equalTo("priority", pick(random, priorities)))
+                    : Collections.<HeaderPredicate> emptyList();
+            routingRules.add(new RoutingRule(pattern, predicates, new Destination("queue-" + r, null)));
+        }
+        table = RoutingTable.compile(routingRules);
+        routes = table.newRoutes();
+        keys = new String[1024];
+        headers = new ArrayList<Map<String, Object>>(keys.length);
+        for (int k = 0; k < keys.length; k++) {
+            keys[k] = domains[random.nextInt(domains.length)] + "." + regions[random.nextInt(regions.length)]
+                    + "." + events[random.nextInt(events.length)] + (random.nextBoolean() ? ".v2" : "");
+            Map<String, Object> messageHeaders = new HashMap<String, Object>();
+            messageHeaders.put("priority", priorities[random.nextInt(priorities.length)]);
+            messageHeaders.put("sendTimestamp", System.currentTimeMillis());
+            headers.add(messageHeaders);
+        }
+        // both find the same destinations
+        for (int k = 0; k < keys.length; k++) {
+            table.route(keys[k], headers.get(k), routes);
+            List<Destination> compiled = new ArrayList<Destination>();
+            for (int i = 0; i < routes.size(); i++) {
+                compiled.add(routes.get(i));
+            }
+            if (!compiled.equals(linear(keys[k], headers.get(k)))) {
+                throw new IllegalStateException("Routing table and rules differ for " + keys[k]);
+            }
+        }
+    }
+
+    @Benchmark
+    public int compiled() {
+        int k = next();
+        table.route(keys[k], headers.get(k), routes);
+        return routes.size();
+    }
+
+    @Benchmark
+    public int linear() {
+        int k = next();
+        return linear(keys[k], headers.get(k)).size();
+    }
+
+    private List<Destination> linear(String key, Map<String, Object> messageHeaders) {
+        LinkedHashSet<Destination> destinations = new LinkedHashSet<Destination>();
+        for (RoutingRule rule : routingRules) {
+            if (rule.matches(key, messageHeaders)) {
+                destinations.add(rule.getDestination());
+            }
+        }
+        return new ArrayList<Destination>(destinations);
+    }
+
+    private int next() {
+        next = (next + 1) & (keys.length - 1);
+        return next;
+    }
+
+    // a word of the pattern: a wildcard once in four
+    private static String pick(Random random, String[] words) {
+        return random.nextInt(4) == 0 ? "*" : words[random.nextInt(words.length)];
+    }
+}
@@ -0,0 +1,129 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import com.rabbitmq.client.AMQP;
+
+import broker.EmbeddedAmqpBroker;
+import spool.Spool;
+import spool.SpoolDrainer;
+import spool.amqp.AmqpMessages;
+import spool.amqp.RabbitTemplateTarget;
+
+/**
+ * Latency of a send of the withspring producer as the caller sees it:<br/>
+ * <code>confirmedSend</code> publishes on a channel of the <code>RabbitTemplate</code> and waits for the
+ * publisher confirm, and<br/>
+ * <code>spooledSend</code> appends the message to the <code>message-spool</code> spool and returns, a
+ * {@link SpoolDrainer} publishes it to the same broker in the background.<br/>
+ * Both run against {@link EmbeddedAmqpBroker}, the queue is purged after each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpoolBenchmark {
+
+    static final String queueName = "spring-boot";
+
+    @Param({ "128", "4096" })
+    public int payloadSize;
+
+    private EmbeddedAmqpBroker broker;
+
+    private CachingConnectionFactory connectionFactory;
+
+    private RabbitAdmin rabbitAdmin;
+
+    private RabbitTemplate rabbitTemplate;
+
+    private File directory;
+
+    private Spool spool;
+
+    private SpoolDrainer drainer;
+
+    private static final AMQP.BasicProperties TEXT = new AMQP.BasicProperties.Builder()
+            .contentType(MessageProperties.CONTENT_TYPE_TEXT_PLAIN).build();
+
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = new EmbeddedAmqpBroker();
+        broker.start();
+        connectionFactory = new CachingConnectionFactory("localhost", broker.getPort());
+        connectionFactory.setPublisherConfirms(true);
+        rabbitAdmin = new RabbitAdmin(connectionFactory);
+        rabbitAdmin.declareQueue(new Queue(queueName, false));
+        rabbitTemplate = new RabbitTemplate(connectionFactory);
+        directory = Files.createTempDirectory("spool").toFile();
+        spool = new Spool(directory, 16 * 1024 * 1024, 16, 10000);
+        drainer = new SpoolDrainer(spool, new RabbitTemplateTarget(new RabbitTemplate(connectionFactory)), 256, 5000,
+                1000);
+        drainer.start();
+        body = new byte[payloadSize];
+    }
+
+    @TearDown(Level.Iteration)
+    public void purge() throws InterruptedException {
+        drainer.awaitDrained(30000);
+        rabbitAdmin.purgeQueue(queueName, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        drainer.close();
+        spool.close();
+        FileSystemUtils.deleteRecursively(directory);
+        connectionFactory.destroy();
+        broker.stop();
+    }
+
+    @Benchmark
+    public Object confirmedSend() {
+        return rabbitTemplate.execute(channel -> {
+            channel.basicPublish("", queueName, TEXT, body);
+            channel.waitForConfirmsOrDie(5000);
+            return null;
+        });
+    }
+
+    @Benchmark
+    public long spooledSend() throws IOException, InterruptedException {
+        return spool.append(AmqpMessages.spooled("", queueName, message()).encode());
+    }
+
+    private Message message() {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_TEXT_PLAIN);
+        properties.setHeader("sendTimestamp", System.currentTimeMillis());
+        return new Message(body, properties);
+    }
+}
@@ -0,0 +1,95 @@
+package broker;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+
+import org.apache.qpid.server.Broker;
+import org.apache.qpid.server.BrokerOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * In-process AMQP 0-9-1 broker (Apache Qpid) with an in-memory store, so the RabbitMQ<br/>
+ * samples can run and be measured without the network and without the external RabbitMQ server.<br/>
+ * The broker accepts the user <code>guest</code>/<code>guest</code> on the default virtual host.<br/>
+ * <br/>
+ * When the port is already taken, typically by the embedded broker of another sample started with<br/>
+ * the same local profile, {@link #start()} does nothing and the clients share that broker.<br/>
+ */
+public class EmbeddedAmqpBroker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedAmqpBroker.class);
+
+    private final int port;
+
+    private Broker broker;
+
+    private File workDir;
+
+    public EmbeddedAmqpBroker() {
+        this(freePort());
+    }
+
+    public EmbeddedAmqpBroker(int port) {
+        this.port = port;
+    }
+
+    public void start() throws Exception {
+        if (inUse(port)) {
+            LOG.info("Port {} already in use, using the AMQP broker listening on it", port);
+            return;
+        }
+        workDir = Files.createTempDirectory("embedded-amqp-broker").toFile();
+        BrokerOptions options = new BrokerOptions();
+        options.setConfigProperty(BrokerOptions.QPID_WORK_DIR, workDir.getAbsolutePath());
+        options.setConfigProperty("qpid.amqp_port", String.valueOf(port));
+        options.setConfigurationStoreType("Memory");
+        options.setInitialConfigurationLocation(
+                EmbeddedAmqpBroker.class.getResource("/embedded-amqp-broker.json").toExternalForm());
+        options.setStartupLoggedToSystemOut(false);
+        broker = new Broker();
+        broker.startup(options);
+        LOG.info("Embedded AMQP broker listening on port {}", port);
+    }
+
+    public void stop() {
+        if (broker != null) {
+            broker.shutdown();
+            broker = null;
+        }
+        if (workDir != null) {
+            FileSystemUtils.deleteRecursively(workDir);
+            workDir = null;
+        }
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public boolean isRunning() {
+        return broker != null;
+    }
+
+    private static boolean inUse(int port) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", port), 200);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new IllegalStateException("No free port for the embedded AMQP broker", e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package broker;
+
+import org.apache.qpid.server.Broker;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Starts an {@link EmbeddedAmqpBroker} inside the application when <code>embedded.amqp.enabled=true</code>,<br/>
+ * which is what the <code>local</code> Spring profile of the RabbitMQ samples sets.<br/>
+ * <br/>
+ * The broker listens on <code>embedded.amqp.port</code>, by default the port the application already<br/>
+ * connects to (<code>spring.rabbitmq.port</code> or <code>rabbitmq.port</code>), so only the host has to<br/>
+ * point to <code>localhost</code>. The Spring AMQP connection factories and the Camel context depend on<br/>
+ * the broker bean: the broker is up before they connect and is stopped after they disconnect.<br/>
+ */
+@Configuration
+@ConditionalOnClass(Broker.class)
+@ConditionalOnProperty(prefix = "embedded.amqp", name = "enabled", havingValue = "true")
+public class EmbeddedAmqpBrokerAutoConfiguration {
+
+    static final String brokerBeanName = "embeddedAmqpBroker";
+
+    private static final String[] clientTypes = { "org.springframework.amqp.rabbit.connection.ConnectionFactory",
+            "org.apache.camel.CamelContext" };
+
+    @Bean(name = brokerBeanName, initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnMissingBean
+    public EmbeddedAmqpBroker embeddedAmqpBroker(
+            @Value("${embedded.amqp.port:${spring.rabbitmq.port:${rabbitmq.port:5672}}}") int port) {
+        return new EmbeddedAmqpBroker(port);
+    }
+
+    @Bean
+    public static BeanFactoryPostProcessor embeddedAmqpBrokerDependencies() {
+        return new BeanFactoryPostProcessor() {
+            @Override
+            public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+                ClassLoader classLoader = beanFactory.getBeanClassLoader();
+                for (String typeName : clientTypes) {
+                    if (!ClassUtils.isPresent(typeName, classLoader)) {
+                        continue;
+                    }
+                    Class<?> type = ClassUtils.resolveClassName(typeName, classLoader);
+                    for (String name : beanFactory.getBeanNamesForType(type, true, false)) {
+                        if (!beanFactory.containsBeanDefinition(name)) {
+                            continue;
+                        }
+                        BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                        definition.setDependsOn(ObjectUtils.addObjectToArray(definition.getDependsOn(), brokerBeanName));
+                    }
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,217 @@
+package broker;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+/**
+ * Runs producers and consumers in one JVM against the {@link EmbeddedAmqpBroker} (or against the<br/>
+ * broker given by <code>-Damqp.host</code>) and reports the end-to-end throughput and latency percentiles.<br/>
+ * <br/>
+ * Each message carries its send time (<code>System.nanoTime()</code>) in the first 8 bytes of the body,<br/>
+ * the consumer records <code>now - sendTime</code>, which is valid because both sides share the clock.<br/>
+ * The first <code>warmup</code> messages are sent and consumed but not recorded.<br/>
+ * <br/>
+ * Without <code>rate</code> the producers send as fast as they can, which measures the saturation<br/>
+ * throughput, the latency then includes the time spent in the queue. With <code>rate</code> (messages<br/>
+ * per second, all producers together) each message is stamped with the time it was scheduled to be<br/>
+ * sent, so a stalled producer shows up in the percentiles instead of hiding the delay.<br/>
+ * <br/>
+ * Settings, as system properties: <code>messages</code>, <code>warmup</code>, <code>rate</code>,<br/>
+ * <code>producers</code>, <code>consumers</code>, <code>payloadSize</code>, <code>prefetch</code>,<br/>
+ * <code>txSize</code>, <code>amqp.host</code>, <code>amqp.port</code>. Negative values, and zero<br/>
+ * <code>messages</code>, <code>producers</code>, <code>consumers</code> or <code>txSize</code>, are refused.<br/>
+ * If the consumers time out the measured interval ends at the timeout.<br/>
+ */
+public class LoadDriver {
+
+    static final String queueName = "load-driver";
+
+    private final long messages = Long.getLong("messages", 200000);
+
+    private final long warmup = Long.getLong("warmup", 20000);
+
+    private final long rate = Long.getLong("rate", 0);
+
+    private final int producers = Integer.getInteger("producers", 2);
+
+    private final int consumers = Integer.getInteger("consumers", 4);
+
+    private final int payloadSize = Math.max(Integer.getInteger("payloadSize", 128), 8);
+
+    private final int prefetch = Integer.getInteger("prefetch", 250);
+
+    private final int txSize = Integer.getInteger("txSize", 50);
+
+    private final Recorder recorder = new Recorder(TimeUnit.SECONDS.toNanos(60), 3);
+
+    private final AtomicLong received = new AtomicLong();
+
+    private final AtomicLong firstMeasuredNanos = new AtomicLong();
+
+    private volatile long lastReceivedNanos;
+
+    private CountDownLatch done;
+
+    public LoadDriver() {
+        require("messages", messages, 1);
+        require("warmup", warmup, 0);
+        require("rate", rate, 0);
+        require("producers", producers, 1);
+        require("consumers", consumers, 1);
+        require("prefetch", prefetch, 0);
+        require("txSize", txSize, 1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = System.getProperty("amqp.host", "");
+        EmbeddedAmqpBroker broker = null;
+        if (host.isEmpty()) {
+            broker = new EmbeddedAmqpBroker(Integer.getInteger("amqp.port", 5672));
+            broker.start();
+            host = "localhost";
+        }
+        try {
+            new LoadDriver().run(host, Integer.getInteger("amqp.port", 5672));
+        } finally {
+            if (broker != null) {
+                broker.stop();
+            }
+        }
+    }
+
+    public void run(String host, int port) throws Exception {
+        CachingConnectionFactory connectionFactory = new CachingConnectionFactory(host, port);
+        connectionFactory.setChannelCacheSize(producers + consumers);
+        RabbitAdmin rabbitAdmin = new RabbitAdmin(connectionFactory);
+        rabbitAdmin.declareQueue(new Queue(queueName, false));
+        rabbitAdmin.purgeQueue(queueName, false);
+
+        long total = warmup + messages;
+        done = new CountDownLatch(1);
+
+        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer(connectionFactory);
+        container.setQueueNames(queueName);
+        container.setConcurrentConsumers(consumers);
+        container.setPrefetchCount(Math.max(prefetch, txSize));
+        container.setTxSize(txSize);
+        container.setMessageListener(new LatencyListener(total));
+        container.afterPropertiesSet();
+        container.start();
+
+        RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
+        Thread[] threads = new Thread[producers];
+        for (int i = 0; i < producers; i++) {
+            long share = total / producers + (i < total % producers ? 1 : 0);
+            threads[i] = new Thread(new Producer(rabbitTemplate, share), "load-producer-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!done.await(5, TimeUnit.MINUTES)) {
+            lastReceivedNanos = System.nanoTime();
+            System.out.println("Timed out, received " + received.get() + " of " + total + " messages");
+        }
+        container.stop();
+        container.destroy();
+        connectionFactory.destroy();
+        report();
+    }
+
+    private void report() {
+        Histogram histogram = recorder.getIntervalHistogram();
+        if (histogram.getTotalCount() == 0) {
+            System.out.println("No message received after the warmup, nothing to report");
+            return;
+        }
+        double seconds = (lastReceivedNanos - firstMeasuredNanos.get()) / 1e9;
+        System.out.printf("Producers %d, consumers %d, payload %d bytes, prefetch %d, txSize %d, rate %s%n",
+                producers, consumers, payloadSize, prefetch, txSize, rate > 0 ? rate + " msgs/sec" : "unbounded");
+        System.out.printf("Received %d messages in %.2f s: %.0f msgs/sec%n", histogram.getTotalCount(), seconds,
+                histogram.getTotalCount() / seconds);
+        System.out.printf("Latency (us) p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                micros(histogram.getValueAtPercentile(50)), micros(histogram.getValueAtPercentile(90)),
+                micros(histogram.getValueAtPercentile(99)), micros(histogram.getValueAtPercentile(99.9)),
+                micros(histogram.getMaxValue()));
+    }
+
+    private static void require(String name, long value, long min) {
+        if (value < min) {
+            throw new IllegalArgumentException(name + " must be at least " + min + ", was " + value);
+        }
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    private class Producer implements Runnable {
+
+        private final RabbitTemplate rabbitTemplate;
+
+        private final long count;
+
+        Producer(RabbitTemplate rabbitTemplate, long count) {
+            this.rabbitTemplate = rabbitTemplate;
+            this.count = count;
+        }
+
+        @Override
+        public void run() {
+            long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(producers) / rate : 0;
+            long start = System.nanoTime();
+            for (long i = 0; i < count; i++) {
+                long sendTime = System.nanoTime();
+                if (interval > 0) {
+                    long scheduled = start + i * interval;
+                    while (sendTime < scheduled) {
+                        LockSupport.parkNanos(scheduled - sendTime);
+                        sendTime = System.nanoTime();
+                    }
+                    sendTime = scheduled;
+                }
+                byte[] body = new byte[payloadSize];
+                ByteBuffer.wrap(body).putLong(sendTime);
+                rabbitTemplate.send(queueName, new Message(body, new MessageProperties()));
+            }
+        }
+    }
+
+    private class LatencyListener implements MessageListener {
+
+        private final long total;
+
+        LatencyListener(long total) {
+            this.total = total;
+        }
+
+        @Override
+        public void onMessage(Message message) {
+            long now = System.nanoTime();
+            long sent = ByteBuffer.wrap(message.getBody()).getLong();
+            long count = received.incrementAndGet();
+            if (count > warmup) {
+                firstMeasuredNanos.compareAndSet(0, now);
+                recorder.recordValue(Math.min(now - sent, TimeUnit.SECONDS.toNanos(60)));
+            }
+            if (count == total) {
+                lastReceivedNanos = now;
+                done.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package idempotent;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The keys ({@link MessageIds#key 64-bit hashes} of the message ids) of the last <code>capacity</code>
+ * messages received in the last <code>ttlMillis</code> milliseconds, for idempotent receivers: a message
+ * whose key is in the window is a redelivery.
+ * <br/>
+ * The keys are kept without boxing in two structures: a ring of (key, receive time) entries in the order
+ * they were added, from which the oldest or expired ones are evicted, and an open addressing table of
+ * the keys for the lookups, at most half full. About 40 bytes per key, a million keys in 40 MB.
+ * <br/>
+ * A key is added pending, then confirmed when its message was processed or removed when it failed. With
+ * a file the ring is memory-mapped and survives a crash or restart of the receiver (not of the machine,
+ * the pages are written back by the operating system); reopening it drops the keys left pending, whose
+ * messages were not processed, and rebuilds the table from the rest. Thread safe.
+ */
+public class IdempotencyWindow implements Closeable {
+
+    private static final long MAGIC = 0x4944454d57494e31L;
+
+    // header of the ring: magic, capacity, sequence of the oldest entry (head), of the next one (tail)
+    private static final int HEADER_LONGS = 4;
+
+    private static final int HEAD = 2;
+
+    private static final int TAIL = 3;
+
+    private static final long REMOVED = 0;
+
+    private final int capacity;
+
+    private final long ttlMillis;
+
+    private final LongBuffer ring;
+
+    private final MappedByteBuffer mapped;
+
+    private final long[] keys;
+
+    // ring slot of the entry of each key
+    private final int[] slots;
+
+    private final int mask;
+
+    private final int shift;
+
+    private long head;
+
+    private long tail;
+
+    private int size;
+
+    /**
+     * A window in memory only.
+     */
+    public IdempotencyWindow(int capacity, long ttlMillis) {
+        this(capacity, ttlMillis, LongBuffer.allocate(HEADER_LONGS + 2 * capacity), null);
+    }
+
+    private IdempotencyWindow(int capacity, long ttlMillis, LongBuffer ring, MappedByteBuffer mapped) {
+        if (capacity <= 0 || capacity > 1 << 29) {
+            throw new IllegalArgumentException("Capacity " + capacity + " out of 1.." + (1 << 29));
+        }
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+        this.ring = ring;
+        this.mapped = mapped;
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        this.keys = new long[tableSize];
+        this.slots = new int[tableSize];
+        this.mask = tableSize - 1;
+        this.shift = 64 - Integer.numberOfTrailingZeros(tableSize);
+        if (ring.get(0) == MAGIC && ring.get(1) == capacity && restore()) {
+            return;
+        }
+        head = 0;
+        tail = 0;
+        for (int i = 0; i < ring.capacity(); i++) {
+            ring.put(i, 0);
+        }
+        ring.put(0, MAGIC);
+        ring.put(1, capacity);
+    }
+
+    /**
+     * @param path memory-mapped file of the window, created if it does not exist; empty or null for a
+     *        window in memory only. A file written with another capacity starts empty.
+     */
+    public static IdempotencyWindow open(String path, int capacity, long ttlMillis) throws IOException {
+        if (path == null || path.isEmpty()) {
+            return new IdempotencyWindow(capacity, ttlMillis);
+        }
+        long length = (HEADER_LONGS + 2L * capacity) * 8;
+        RandomAccessFile file = new RandomAccessFile(new File(path), "rw");
+        try {
+            if (file.length() != length) {
+                file.setLength(0);
+            }
+            // the mapping stays valid after the file is closed
+            MappedByteBuffer mapped = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            mapped.order(ByteOrder.nativeOrder());
+            return new IdempotencyWindow(capacity, ttlMillis, mapped.asLongBuffer(), mapped);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Adds a key pending, unless it is in the window.
+     *
+     * @return false if the key is in the window: the message is a duplicate
+     */
+    public synchronized boolean add(long key) {
+        key = nonZero(key);
+        long now = System.currentTimeMillis();
+        expire(now);
+        if (find(key) >= 0) {
+            return false;
+        }
+        if (tail - head == capacity) {
+            evictOldest();
+        }
+        int slot = (int) (tail % capacity);
+        ring.put(entry(slot), key);
+        ring.put(entry(slot) + 1, -now);
+        insert(key, slot);
+        ring.put(TAIL, ++tail);
+        return true;
+    }
+
+    /**
+     * Marks a pending key as processed, so it is kept when the window is reopened.
+     *
+     * @return false if the key is not in the window
+     */
+    public synchronized boolean confirm(long key) {
+        int index = find(nonZero(key));
+        if (index < 0) {
+            return false;
+        }
+        int entry = entry(slots[index]);
+        ring.put(entry + 1, Math.abs(ring.get(entry + 1)));
+        return true;
+    }
+
+    /**
+     * Removes a key, its message is received again as a new one.
+     *
+     * @return false if the key is not in the window
+     */
+    public synchronized boolean remove(long key) {
+        int index = find(nonZero(key));
+        if (index < 0) {
+            return false;
+        }
+        // the entry stays in the ring until it is the oldest one
+        ring.put(entry(slots[index]), REMOVED);
+        delete(index);
+        return true;
+    }
+
+    public synchronized boolean contains(long key) {
+        expire(System.currentTimeMillis());
+        return find(nonZero(key)) >= 0;
+    }
+
+    /**
+     * @return keys in the window, expired ones included until the next add
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * Writes a memory-mapped window back to its file.
+     */
+    @Override
+    public synchronized void close() {
+        if (mapped != null) {
+            mapped.force();
+        }
+    }
+
+    private boolean restore() {
+        head = ring.get(HEAD);
+        tail = ring.get(TAIL);
+        if (head < 0 || tail < head || tail - head > capacity) {
+            return false;
+        }
+        for (long sequence = head; sequence < tail; sequence++) {
+            int slot = (int) (sequence % capacity);
+            long key = ring.get(entry(slot));
+            if (key == REMOVED) {
+                continue;
+            }
+            if (ring.get(entry(slot) + 1) < 0 || find(key) >= 0) {
+                // pending: the receiver stopped before processing its message (and a key is in the table once)
+                ring.put(entry(slot), REMOVED);
+            } else {
+                insert(key, slot);
+            }
+        }
+        return true;
+    }
+
+    private void expire(long now) {
+        long oldHead = head;
+        while (head < tail) {
+            int entry = entry((int) (head % capacity));
+            long key = ring.get(entry);
+            if (key != REMOVED) {
+                if (Math.abs(ring.get(entry + 1)) > now - ttlMillis) {
+                    break;
+                }
+                delete(find(key));
+            }
+            head++;
+        }
+        if (head != oldHead) {
+            ring.put(HEAD, head);
+        }
+    }
+
+    private void evictOldest() {
+        long key = ring.get(entry((int) (head % capacity)));
+        if (key != REMOVED) {
+            delete(find(key));
+        }
+        ring.put(HEAD, ++head);
+    }
+
+    private int find(long key) {
+        for (int i = index(key);; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return i;
+            }
+            if (k == 0) {
+                return -1;
+            }
+        }
+    }
+
+    private void insert(long key, int slot) {
+        int i = index(key);
+        while (keys[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        slots[i] = slot;
+        size++;
+    }
+
+    // linear probing deletion: moves back the following keys that can take the freed place
+    private void delete(int index) {
+        int free = index;
+        for (int i = (index + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+            if (((i - index(keys[i])) & mask) >= ((i - free) & mask)) {
+                keys[free] = keys[i];
+                slots[free] = slots[i];
+                free = i;
+            }
+        }
+        keys[free] = 0;
+        size--;
+    }
+
+    private int index(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    private static int entry(int slot) {
+        return HEADER_LONGS + 2 * slot;
+    }
+
+    // 0 marks the free places of the table and the removed entries of the ring
+    private static long nonZero(long key) {
+        return key != 0 ? key : 1;
+    }
+}
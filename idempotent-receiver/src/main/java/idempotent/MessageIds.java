@@ -0,0 +1,48 @@
+package idempotent;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Message ids of the producers and the keys of the {@link IdempotencyWindow}.
+ */
+public final class MessageIds {
+
+    private final String prefix = UUID.randomUUID() + "-";
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @return a unique id: a random prefix of this generator and a sequence, cheaper than a random UUID
+     *         per message
+     */
+    public String next() {
+        return prefix + sequence.incrementAndGet();
+    }
+
+    /**
+     * @return 64-bit hash of a message id (FNV-1a of the chars, then the MurmurHash3 finalizer). Two of a
+     *         million ids have the same key with a probability of about 3e-8.
+     */
+    public static long key(CharSequence id) {
+        return key(id, 0);
+    }
+
+    /**
+     * @return key of the <code>fragment</code>-th message of a batch sent with the id of the batch, the
+     *         same as {@link #key(CharSequence)} for the first one
+     */
+    public static long key(CharSequence id, int fragment) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash = (hash ^ id.charAt(i)) * 0x100000001b3L;
+        }
+        if (fragment != 0) {
+            // above the 16 bits of a char, so it is not the key of a longer id
+            hash = (hash ^ (long) fragment << 32) * 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
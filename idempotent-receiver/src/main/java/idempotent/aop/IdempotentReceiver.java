@@ -0,0 +1,17 @@
+package idempotent.aop;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a listener method advised by the {@link IdempotentReceiverAdvisor}. The method needs a parameter
+ * with the message id, see {@link IdempotentReceiverInterceptor}.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface IdempotentReceiver {
+}
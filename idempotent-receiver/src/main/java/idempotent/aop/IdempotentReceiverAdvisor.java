@@ -0,0 +1,17 @@
+package idempotent.aop;
+
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+
+/**
+ * Applies the {@link IdempotentReceiverInterceptor} to the methods annotated with
+ * {@link IdempotentReceiver}, through an auto proxy creator such as
+ * <code>DefaultAdvisorAutoProxyCreator</code>.
+ */
+@SuppressWarnings("serial")
+public class IdempotentReceiverAdvisor extends DefaultPointcutAdvisor {
+
+    public IdempotentReceiverAdvisor(IdempotentReceiverInterceptor interceptor) {
+        super(AnnotationMatchingPointcut.forMethodAnnotation(IdempotentReceiver.class), interceptor);
+    }
+}
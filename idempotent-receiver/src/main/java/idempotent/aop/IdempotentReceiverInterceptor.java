@@ -0,0 +1,88 @@
+package idempotent.aop;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import idempotent.IdempotencyWindow;
+import idempotent.MessageIds;
+
+/**
+ * Spring AOP advice skipping the messages whose id is in the {@link IdempotencyWindow}: the advised
+ * method is not called and returns null, so the container acknowledges the duplicate. The id is added
+ * before the call, confirmed when it returns and removed when it throws, so a failed message is processed
+ * again when it is redelivered.
+ * <br/>
+ * The message id comes from the first argument of the advised method that is an AMQP or JMS
+ * <code>Message</code>, or a parameter annotated <code>@Header(JmsHeaders.MESSAGE_ID)</code> or
+ * <code>@Header(AmqpHeaders.MESSAGE_ID)</code>. Calls without one, or with a null id, are not checked. The
+ * messages of a de-batched AMQP batch share the id of the batch and are told apart by their position in it.
+ * <br/>
+ * <code>container.setAdviceChain(...)</code> for a Spring AMQP listener container, or an
+ * {@link IdempotentReceiverAdvisor} for {@link IdempotentReceiver} methods.
+ */
+public class IdempotentReceiverInterceptor implements MethodInterceptor {
+
+    private static final Log logger = LogFactory.getLog(IdempotentReceiverInterceptor.class);
+
+    private final IdempotencyWindow window;
+
+    private final ConcurrentMap<Method, Integer> idParameters = new ConcurrentHashMap<Method, Integer>();
+
+    private final AtomicLong duplicates = new AtomicLong();
+
+    public IdempotentReceiverInterceptor(IdempotencyWindow window) {
+        this.window = window;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Integer parameter = idParameters.get(invocation.getMethod());
+        if (parameter == null) {
+            parameter = MessageIdParameters.indexOf(invocation.getMethod());
+            idParameters.put(invocation.getMethod(), parameter);
+        }
+        Object argument = parameter >= 0 ? invocation.getArguments()[parameter] : null;
+        String messageId = MessageIdParameters.messageId(argument);
+        if (messageId == null) {
+            return invocation.proceed();
+        }
+        long key = MessageIds.key(messageId, MessageIdParameters.fragment(argument));
+        if (!window.add(key)) {
+            duplicates.incrementAndGet();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Skipped the duplicate message " + messageId);
+            }
+            return null;
+        }
+        boolean processed = false;
+        try {
+            Object result = invocation.proceed();
+            processed = true;
+            return result;
+        } finally {
+            if (processed) {
+                window.confirm(key);
+            } else {
+                window.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @return messages skipped as duplicates
+     */
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    public IdempotencyWindow getWindow() {
+        return window;
+    }
+}
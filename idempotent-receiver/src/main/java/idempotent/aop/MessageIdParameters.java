@@ -0,0 +1,114 @@
+package idempotent.aop;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+
+import javax.jms.JMSException;
+
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.jms.support.JmsHeaders;
+import org.springframework.util.ClassUtils;
+
+import listener.BatchFragments;
+
+/**
+ * Finds the message id among the arguments of a listener method. The AMQP and JMS classes are only
+ * loaded when they are on the class path.
+ */
+final class MessageIdParameters {
+
+    private static final ClassLoader classLoader = MessageIdParameters.class.getClassLoader();
+
+    private static final Class<?> amqpMessage = load("org.springframework.amqp.core.Message");
+
+    private static final Class<?> jmsMessage = load("javax.jms.Message");
+
+    private static final String HEADER = "org.springframework.messaging.handler.annotation.Header";
+
+    private MessageIdParameters() {
+    }
+
+    /**
+     * @return index of the parameter with the message id, -1 if there is none
+     */
+    static int indexOf(Method method) {
+        Class<?>[] types = method.getParameterTypes();
+        Annotation[][] annotations = method.getParameterAnnotations();
+        for (int i = 0; i < types.length; i++) {
+            if (amqpMessage != null && amqpMessage.isAssignableFrom(types[i])
+                    || jmsMessage != null && jmsMessage.isAssignableFrom(types[i])) {
+                return i;
+            }
+            for (Annotation annotation : annotations[i]) {
+                if (HEADER.equals(annotation.annotationType().getName()) && isMessageIdHeader(annotation)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    static String messageId(Object argument) {
+        if (argument == null || argument instanceof String) {
+            return (String) argument;
+        }
+        if (amqpMessage != null && amqpMessage.isInstance(argument)) {
+            return AmqpMessageId.of(argument);
+        }
+        if (jmsMessage != null && jmsMessage.isInstance(argument)) {
+            return JmsMessageId.of(argument);
+        }
+        return null;
+    }
+
+    /**
+     * @return position of the message in the batch it was sent in, 0 if it was sent alone
+     */
+    static int fragment(Object argument) {
+        return amqpMessage != null && amqpMessage.isInstance(argument) ? AmqpMessageId.fragment(argument) : 0;
+    }
+
+    // the constants are compiled in, their classes are not needed
+    private static boolean isMessageIdHeader(Annotation header) {
+        for (String attribute : new String[] { "value", "name" }) {
+            Object name = AnnotationUtils.getValue(header, attribute);
+            if (JmsHeaders.MESSAGE_ID.equals(name) || AmqpHeaders.MESSAGE_ID.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Class<?> load(String className) {
+        return ClassUtils.isPresent(className, classLoader) ? ClassUtils.resolveClassName(className, classLoader) : null;
+    }
+
+    /**
+     * The listener container splits a batch into messages sharing the properties of the batch, id
+     * included, see {@link BatchFragments}.
+     */
+    private static final class AmqpMessageId {
+
+        private static final BatchFragments fragments = new BatchFragments();
+
+        static String of(Object message) {
+            return ((org.springframework.amqp.core.Message) message).getMessageProperties().getMessageId();
+        }
+
+        static int fragment(Object message) {
+            return fragments.fragment((org.springframework.amqp.core.Message) message);
+        }
+    }
+
+    private static final class JmsMessageId {
+
+        static String of(Object message) {
+            try {
+                return ((javax.jms.Message) message).getJMSMessageID();
+            } catch (JMSException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package idempotent.camel;
+
+import org.apache.camel.spi.IdempotentRepository;
+import org.apache.camel.support.ServiceSupport;
+
+import idempotent.IdempotencyWindow;
+import idempotent.MessageIds;
+
+/**
+ * Camel {@link IdempotentRepository} over an {@link IdempotencyWindow}, for
+ * <code>idempotentConsumer(header(...), repository)</code>. The idempotent consumer adds the id before
+ * the exchange is routed, confirms it when the exchange completes and removes it when it fails.
+ * <br/>
+ * The window belongs to whoever created it, stopping the repository does not close it.
+ */
+public class WindowIdempotentRepository extends ServiceSupport implements IdempotentRepository<String> {
+
+    private final IdempotencyWindow window;
+
+    public WindowIdempotentRepository(IdempotencyWindow window) {
+        this.window = window;
+    }
+
+    @Override
+    public boolean add(String key) {
+        return window.add(MessageIds.key(key));
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return window.contains(MessageIds.key(key));
+    }
+
+    @Override
+    public boolean remove(String key) {
+        return window.remove(MessageIds.key(key));
+    }
+
+    @Override
+    public boolean confirm(String key) {
+        return window.confirm(MessageIds.key(key));
+    }
+
+    public IdempotencyWindow getWindow() {
+        return window;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+    }
+}
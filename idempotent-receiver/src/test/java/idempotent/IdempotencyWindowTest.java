@@ -0,0 +1,133 @@
+package idempotent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IdempotencyWindowTest extends Assert {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rejectsAKeyAlreadyInTheWindow() {
+        IdempotencyWindow window = new IdempotencyWindow(16, 60000);
+        assertTrue(window.add(42));
+        assertFalse(window.add(42));
+        assertTrue(window.contains(42));
+        assertEquals(1, window.size());
+    }
+
+    @Test
+    public void evictsTheOldestKeyWhenFull() {
+        IdempotencyWindow window = new IdempotencyWindow(3, 60000);
+        window.add(1);
+        window.add(2);
+        window.add(3);
+        window.add(4);
+        assertFalse(window.contains(1));
+        assertTrue(window.contains(2));
+        assertTrue(window.contains(4));
+        assertEquals(3, window.size());
+        assertTrue(window.add(1));
+    }
+
+    @Test
+    public void forgetsTheKeysOlderThanTheTtl() throws InterruptedException {
+        IdempotencyWindow window = new IdempotencyWindow(16, 50);
+        window.add(1);
+        Thread.sleep(100);
+        assertFalse(window.contains(1));
+        assertTrue(window.add(1));
+    }
+
+    @Test
+    public void receivesARemovedKeyAgain() {
+        IdempotencyWindow window = new IdempotencyWindow(16, 60000);
+        window.add(7);
+        assertTrue(window.remove(7));
+        assertFalse(window.remove(7));
+        assertFalse(window.confirm(7));
+        assertTrue(window.add(7));
+    }
+
+    @Test
+    public void matchesASetUnderRandomAddsAndRemoves() {
+        // a small table, so the keys collide and the deletions move the following keys back
+        int capacity = 64;
+        IdempotencyWindow window = new IdempotencyWindow(capacity, 60000);
+        Set<Long> present = new HashSet<Long>();
+        // mirror of the ring: a removed key leaves a 0 entry until it is the oldest one
+        LinkedList<Long> ring = new LinkedList<Long>();
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            long key = random.nextInt(200) + 1;
+            if (random.nextInt(4) == 0) {
+                boolean removed = present.remove(key);
+                assertEquals(removed, window.remove(key));
+                if (removed) {
+                    ring.set(ring.indexOf(key), 0L);
+                }
+            } else {
+                boolean added = window.add(key);
+                assertEquals(!present.contains(key), added);
+                if (added) {
+                    if (ring.size() == capacity) {
+                        present.remove(ring.removeFirst());
+                    }
+                    ring.addLast(key);
+                    present.add(key);
+                }
+            }
+            assertEquals(present.size(), window.size());
+        }
+        for (long key = 1; key <= 200; key++) {
+            assertEquals(present.contains(key), window.contains(key));
+        }
+    }
+
+    @Test
+    public void keepsTheConfirmedKeysAcrossAReopen() throws IOException {
+        String path = new File(folder.getRoot(), "window").getPath();
+        IdempotencyWindow window = IdempotencyWindow.open(path, 16, 60000);
+        window.add(1);
+        window.confirm(1);
+        window.add(2);
+        window.close();
+
+        IdempotencyWindow reopened = IdempotencyWindow.open(path, 16, 60000);
+        assertTrue(reopened.contains(1));
+        // pending when the receiver stopped: its message was not processed
+        assertFalse(reopened.contains(2));
+        assertEquals(1, reopened.size());
+        assertTrue(reopened.add(2));
+        reopened.close();
+    }
+
+    @Test
+    public void startsEmptyWhenReopenedWithAnotherCapacity() throws IOException {
+        String path = new File(folder.getRoot(), "window").getPath();
+        IdempotencyWindow window = IdempotencyWindow.open(path, 16, 60000);
+        window.add(1);
+        window.confirm(1);
+        window.close();
+
+        IdempotencyWindow reopened = IdempotencyWindow.open(path, 32, 60000);
+        assertFalse(reopened.contains(1));
+        assertEquals(0, reopened.size());
+        reopened.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesAnEmptyCapacity() {
+        new IdempotencyWindow(0, 60000);
+    }
+}
@@ -0,0 +1,124 @@
+package idempotent.aop;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import idempotent.IdempotencyWindow;
+import listener.BatchFragments;
+
+public class IdempotentReceiverInterceptorTest extends Assert {
+
+    private final IdempotentReceiverInterceptor interceptor =
+            new IdempotentReceiverInterceptor(new IdempotencyWindow(16, 60000));
+
+    private final List<Message> received = new ArrayList<Message>();
+
+    @Test
+    public void skipsAMessageAlreadyProcessed() throws Throwable {
+        Message message = message(properties("id-1"));
+        interceptor.invoke(invocation(message, false));
+        interceptor.invoke(invocation(message(properties("id-1")), false));
+        assertEquals(1, received.size());
+        assertEquals(1, interceptor.getDuplicates());
+    }
+
+    @Test
+    public void processesAFailedMessageAgain() throws Throwable {
+        try {
+            interceptor.invoke(invocation(message(properties("id-1")), true));
+            fail();
+        } catch (IllegalStateException expected) {
+            // removed from the window
+        }
+        interceptor.invoke(invocation(message(properties("id-1")), false));
+        assertEquals(1, received.size());
+        assertEquals(0, interceptor.getDuplicates());
+    }
+
+    @Test
+    public void tellsTheMessagesOfABatchApart() throws Throwable {
+        // the container hands the messages of a de-batched batch over with the same properties
+        MessageProperties batch = properties("batch-1");
+        interceptor.invoke(invocation(message(batch), false));
+        try {
+            interceptor.invoke(invocation(message(batch), true));
+            fail();
+        } catch (IllegalStateException expected) {
+            // republished on its own by a retry
+        }
+        interceptor.invoke(invocation(message(batch), false));
+        assertEquals(0, interceptor.getDuplicates());
+
+        MessageProperties retried = properties("batch-1");
+        retried.setHeader(BatchFragments.BATCH_FRAGMENT, 1);
+        interceptor.invoke(invocation(message(retried), false));
+        assertEquals(0, interceptor.getDuplicates());
+        assertEquals(3, received.size());
+
+        // redelivered on its own once more: a duplicate of the retry, not of the first message
+        MessageProperties again = properties("batch-1");
+        again.setHeader(BatchFragments.BATCH_FRAGMENT, 1);
+        interceptor.invoke(invocation(message(again), false));
+        assertEquals(1, interceptor.getDuplicates());
+    }
+
+    public void onMessage(Message message) {
+        received.add(message);
+    }
+
+    private static MessageProperties properties(String messageId) {
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId(messageId);
+        return properties;
+    }
+
+    private static Message message(MessageProperties properties) {
+        return new Message(new byte[] { 1 }, properties);
+    }
+
+    private MethodInvocation invocation(final Message message, final boolean fails) {
+        return new MethodInvocation() {
+
+            @Override
+            public Object proceed() {
+                if (fails) {
+                    throw new IllegalStateException("failed on purpose");
+                }
+                onMessage(message);
+                return null;
+            }
+
+            @Override
+            public Object[] getArguments() {
+                return new Object[] { message };
+            }
+
+            @Override
+            public Method getMethod() {
+                try {
+                    return IdempotentReceiverInterceptorTest.class.getMethod("onMessage", Message.class);
+                } catch (NoSuchMethodException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            public Object getThis() {
+                return IdempotentReceiverInterceptorTest.this;
+            }
+
+            @Override
+            public AccessibleObject getStaticPart() {
+                return getMethod();
+            }
+        };
+    }
+}
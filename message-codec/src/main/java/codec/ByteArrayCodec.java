@@ -0,0 +1,31 @@
+package codec;
+
+import java.util.Arrays;
+
+/**
+ * Byte arrays as they are, for payloads already serialized by the application.
+ */
+public class ByteArrayCodec implements PayloadCodec<byte[]> {
+
+    public static final byte ID = 0;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public Class<byte[]> getType() {
+        return byte[].class;
+    }
+
+    @Override
+    public byte[] encode(byte[] payload) {
+        return payload;
+    }
+
+    @Override
+    public byte[] decode(byte[] buffer, int offset, int length) {
+        return Arrays.copyOfRange(buffer, offset, offset + length);
+    }
+}
@@ -0,0 +1,58 @@
+package codec;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The {@link PayloadCodec}s an {@link EnvelopeCodec} can write and read, by payload class and by id.
+ * {@link #withDefaults()} has the String (UTF-8) and the byte array codecs, add more with {@link #register}.
+ * Register all the codecs before the registry is shared between threads.
+ */
+public class CodecRegistry {
+
+    private final PayloadCodec<?>[] byId = new PayloadCodec<?>[256];
+
+    private final Map<Class<?>, PayloadCodec<?>> byType = new LinkedHashMap<Class<?>, PayloadCodec<?>>();
+
+    public static CodecRegistry withDefaults() {
+        return new CodecRegistry().register(new ByteArrayCodec()).register(new Utf8StringCodec());
+    }
+
+    public CodecRegistry register(PayloadCodec<?> codec) {
+        int id = codec.getId() & 0xFF;
+        if (byId[id] != null && byId[id] != codec) {
+            throw new IllegalArgumentException("Codec id " + id + " already used by " + byId[id]);
+        }
+        byId[id] = codec;
+        byType.put(codec.getType(), codec);
+        return this;
+    }
+
+    /**
+     * @return the codec of the payload class, or of its closest registered supertype
+     */
+    @SuppressWarnings("unchecked")
+    public <T> PayloadCodec<T> forPayload(T payload) {
+        PayloadCodec<?> codec = byType.get(payload.getClass());
+        if (codec == null) {
+            for (Map.Entry<Class<?>, PayloadCodec<?>> entry : byType.entrySet()) {
+                if (entry.getKey().isInstance(payload)) {
+                    codec = entry.getValue();
+                    break;
+                }
+            }
+            if (codec == null) {
+                throw new IllegalArgumentException("No codec for " + payload.getClass().getName());
+            }
+        }
+        return (PayloadCodec<T>) codec;
+    }
+
+    public PayloadCodec<?> forId(byte id) {
+        PayloadCodec<?> codec = byId[id & 0xFF];
+        if (codec == null) {
+            throw new IllegalArgumentException("No codec with id " + (id & 0xFF));
+        }
+        return codec;
+    }
+}
@@ -0,0 +1,41 @@
+package codec;
+
+/**
+ * A decoded envelope: the header fields and the payload.
+ */
+public class Envelope {
+
+    private final byte codecId;
+
+    private final byte flags;
+
+    private final long timestamp;
+
+    private final Object payload;
+
+    public Envelope(byte codecId, byte flags, long timestamp, Object payload) {
+        this.codecId = codecId;
+        this.flags = flags;
+        this.timestamp = timestamp;
+        this.payload = payload;
+    }
+
+    public byte getCodecId() {
+        return codecId;
+    }
+
+    public byte getFlags() {
+        return flags;
+    }
+
+    /**
+     * @return the time the envelope was written, milliseconds since 1970, or 0 if the writer did not set it
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Object getPayload() {
+        return payload;
+    }
+}
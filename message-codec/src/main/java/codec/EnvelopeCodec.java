@@ -0,0 +1,94 @@
+package codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes and reads the binary envelope, a fixed 16 byte header followed by the length-prefixed body:
+ *
+ * <pre>
+ * offset  size  field
+ *      0     1  magic, 0xE7
+ *      1     1  version, 1
+ *      2     1  codec id of the body, see {@link PayloadCodec#getId()}
+ *      3     1  flags, 0
+ *      4     8  timestamp, milliseconds since 1970, 0 when not set
+ *     12     4  body length n
+ *     16     n  body, written by the codec
+ * </pre>
+ *
+ * All numbers are big-endian. The body is bytes as the codec wrote them: no UTF-16 to UTF-8 round trip
+ * through a text message and no Java serialization. Thread safe once the registry is complete.
+ */
+public class EnvelopeCodec {
+
+    public static final byte MAGIC = (byte) 0xE7;
+
+    public static final byte VERSION = 1;
+
+    public static final int HEADER_LENGTH = 16;
+
+    private final CodecRegistry registry;
+
+    public EnvelopeCodec() {
+        this(CodecRegistry.withDefaults());
+    }
+
+    public EnvelopeCodec(CodecRegistry registry) {
+        this.registry = registry;
+    }
+
+    public CodecRegistry getRegistry() {
+        return registry;
+    }
+
+    public byte[] encode(Object payload, long timestamp) {
+        PayloadCodec<Object> codec = registry.forPayload(payload);
+        byte[] body = codec.encode(payload);
+        byte[] envelope = new byte[HEADER_LENGTH + body.length];
+        ByteBuffer.wrap(envelope)
+                .put(MAGIC)
+                .put(VERSION)
+                .put(codec.getId())
+                .put((byte) 0)
+                .putLong(timestamp)
+                .putInt(body.length)
+                .put(body);
+        return envelope;
+    }
+
+    public Envelope decode(byte[] envelope) {
+        return decode(envelope, 0, envelope.length);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not an envelope of this version or are truncated
+     */
+    public Envelope decode(byte[] buffer, int offset, int length) {
+        if (length < HEADER_LENGTH || buffer[offset] != MAGIC) {
+            throw new IllegalArgumentException("Not a message envelope");
+        }
+        ByteBuffer header = ByteBuffer.wrap(buffer, offset, HEADER_LENGTH);
+        header.get();
+        byte version = header.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported envelope version " + version);
+        }
+        byte codecId = header.get();
+        byte flags = header.get();
+        long timestamp = header.getLong();
+        int bodyLength = header.getInt();
+        if (bodyLength < 0 || bodyLength > length - HEADER_LENGTH) {
+            throw new IllegalArgumentException("Envelope body of " + bodyLength + " bytes, only "
+                    + (length - HEADER_LENGTH) + " available");
+        }
+        Object payload = registry.forId(codecId).decode(buffer, offset + HEADER_LENGTH, bodyLength);
+        return new Envelope(codecId, flags, timestamp, payload);
+    }
+
+    /**
+     * @return true if the bytes start like an envelope of this version
+     */
+    public static boolean isEnvelope(byte[] buffer) {
+        return buffer.length >= HEADER_LENGTH && buffer[0] == MAGIC && buffer[1] == VERSION;
+    }
+}
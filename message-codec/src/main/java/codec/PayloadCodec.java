@@ -0,0 +1,24 @@
+package codec;
+
+/**
+ * Serializer of one payload type into the body of an {@link EnvelopeCodec envelope}. The id is written in
+ * the envelope header, so the receiver picks the same codec without knowing the type in advance.
+ *
+ * @param <T> payload type
+ */
+public interface PayloadCodec<T> {
+
+    /**
+     * @return identifier written in the envelope, unique within a {@link CodecRegistry}
+     */
+    byte getId();
+
+    /**
+     * @return the payload class this codec writes
+     */
+    Class<T> getType();
+
+    byte[] encode(T payload);
+
+    T decode(byte[] buffer, int offset, int length);
+}
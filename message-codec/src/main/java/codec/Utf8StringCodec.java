@@ -0,0 +1,31 @@
+package codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Strings as UTF-8, the payload of every sample in this repository.
+ */
+public class Utf8StringCodec implements PayloadCodec<String> {
+
+    public static final byte ID = 1;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public Class<String> getType() {
+        return String.class;
+    }
+
+    @Override
+    public byte[] encode(String payload) {
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String decode(byte[] buffer, int offset, int length) {
+        return new String(buffer, offset, length, StandardCharsets.UTF_8);
+    }
+}
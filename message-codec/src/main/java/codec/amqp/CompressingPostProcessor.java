@@ -0,0 +1,52 @@
+package codec.amqp;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.core.Ordered;
+
+import codec.compress.ContentEncoding;
+import codec.compress.PayloadCompressor;
+
+/**
+ * Compresses the bodies above the threshold of the {@link PayloadCompressor} before they are published,
+ * setting the content encoding to <code>&lt;compression&gt;:&lt;previous encoding&gt;</code> like the
+ * Spring AMQP <code>GZipPostProcessor</code>. Consumers undo it with the {@link DecompressingPostProcessor}.
+ * <br/>
+ * <code>rabbitTemplate.setBeforePublishPostProcessors(...)</code>
+ */
+public class CompressingPostProcessor implements MessagePostProcessor, Ordered {
+
+    private final PayloadCompressor compressor;
+
+    private int order = Ordered.LOWEST_PRECEDENCE;
+
+    public CompressingPostProcessor(PayloadCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    @Override
+    public Message postProcessMessage(Message message) {
+        byte[] compressed = compressor.compress(message.getBody());
+        if (compressed == null) {
+            return message;
+        }
+        MessageProperties properties = message.getMessageProperties();
+        properties.setContentEncoding(ContentEncoding.of(compressor.getCompression().getName(),
+                properties.getContentEncoding()));
+        properties.setContentLength(compressed.length);
+        return new Message(compressed, properties);
+    }
+
+    @Override
+    public int getOrder() {
+        return order;
+    }
+
+    /**
+     * Compression runs last by default, after the post processors that change the body.
+     */
+    public void setOrder(int order) {
+        this.order = order;
+    }
+}
@@ -0,0 +1,54 @@
+package codec.amqp;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.core.Ordered;
+
+import codec.compress.Compression;
+import codec.compress.ContentEncoding;
+import codec.compress.PayloadDecompressor;
+
+/**
+ * Decompresses the messages written by the {@link CompressingPostProcessor} and restores their content
+ * encoding, so the message converter sees the original body. Messages that are not compressed, or use a
+ * compression the decompressor does not know, pass unchanged.
+ * <br/>
+ * <code>container.setAfterReceivePostProcessors(...)</code>
+ */
+public class DecompressingPostProcessor implements MessagePostProcessor, Ordered {
+
+    private final PayloadDecompressor decompressor;
+
+    private int order = Ordered.HIGHEST_PRECEDENCE;
+
+    public DecompressingPostProcessor(PayloadDecompressor decompressor) {
+        this.decompressor = decompressor;
+    }
+
+    @Override
+    public Message postProcessMessage(Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        Compression compression = decompressor.compressionOf(properties.getContentEncoding());
+        if (compression == null) {
+            return message;
+        }
+        // the converters take the whole body array, it cannot be a pooled buffer
+        byte[] body = decompressor.decompress(compression, message.getBody());
+        properties.setContentEncoding(ContentEncoding.original(properties.getContentEncoding()));
+        properties.setContentLength(body.length);
+        return new Message(body, properties);
+    }
+
+    @Override
+    public int getOrder() {
+        return order;
+    }
+
+    /**
+     * Decompression runs first by default, before the post processors that read the body.
+     */
+    public void setOrder(int order) {
+        this.order = order;
+    }
+}
@@ -0,0 +1,59 @@
+package codec.amqp;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+
+import codec.EnvelopeCodec;
+
+/**
+ * Spring AMQP {@link MessageConverter} writing the payloads as {@link EnvelopeCodec envelopes}, with the
+ * content type {@value #CONTENT_TYPE}. Messages with another content type, from producers still sending
+ * text, are converted by the {@link SimpleMessageConverter}.
+ * <br/>
+ * <code>rabbitTemplate.setMessageConverter(...)</code> on the producer, <code>setMessageConverter(...)</code>
+ * on the <code>MessageListenerAdapter</code> of the consumer.
+ */
+public class EnvelopeMessageConverter implements MessageConverter {
+
+    public static final String CONTENT_TYPE = "application/x-envelope";
+
+    private final EnvelopeCodec codec;
+
+    private final MessageConverter fallback = new SimpleMessageConverter();
+
+    public EnvelopeMessageConverter() {
+        this(new EnvelopeCodec());
+    }
+
+    public EnvelopeMessageConverter(EnvelopeCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) throws MessageConversionException {
+        byte[] body;
+        try {
+            body = codec.encode(object, System.currentTimeMillis());
+        } catch (IllegalArgumentException e) {
+            throw new MessageConversionException("Cannot write " + object.getClass().getName() + " in an envelope", e);
+        }
+        messageProperties.setContentType(CONTENT_TYPE);
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        if (!CONTENT_TYPE.equals(message.getMessageProperties().getContentType())) {
+            return fallback.fromMessage(message);
+        }
+        try {
+            return codec.decode(message.getBody()).getPayload();
+        } catch (IllegalArgumentException e) {
+            throw new MessageConversionException("Cannot read the envelope", e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package codec.camel;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.spi.DataFormat;
+
+import codec.compress.Compression;
+import codec.compress.ContentEncoding;
+import codec.compress.PayloadCompressor;
+import codec.compress.PayloadDecompressor;
+
+/**
+ * Camel {@link DataFormat} compressing the body above the threshold of the {@link PayloadCompressor}.
+ * The compression is written in a content encoding header, for the rabbitmq endpoint
+ * <code>rabbitmq.CONTENT_ENCODING</code>, which it maps to the AMQP content encoding, so Spring AMQP
+ * consumers with the <code>DecompressingPostProcessor</code> read the same messages.
+ * <br/>
+ * Unmarshalling decompresses when the header names a known compression and leaves the body as it is
+ * otherwise. Without a compressor it only unmarshals.
+ */
+public class CompressionDataFormat implements DataFormat {
+
+    private final PayloadCompressor compressor;
+
+    private final PayloadDecompressor decompressor;
+
+    private final String headerName;
+
+    /**
+     * @param compressor null for a consumer route
+     * @param headerName header with the content encoding
+     */
+    public CompressionDataFormat(PayloadCompressor compressor, PayloadDecompressor decompressor, String headerName) {
+        this.compressor = compressor;
+        this.decompressor = decompressor;
+        this.headerName = headerName;
+    }
+
+    @Override
+    public void marshal(Exchange exchange, Object graph, OutputStream stream) throws Exception {
+        byte[] body = exchange.getContext().getTypeConverter().mandatoryConvertTo(byte[].class, exchange, graph);
+        byte[] compressed = compressor != null ? compressor.compress(body) : null;
+        if (compressed == null) {
+            stream.write(body);
+            return;
+        }
+        // the marshal processor has already copied the in message to the out message it returns
+        Message message = exchange.hasOut() ? exchange.getOut() : exchange.getIn();
+        message.setHeader(headerName, ContentEncoding.of(compressor.getCompression().getName(),
+                message.getHeader(headerName, String.class)));
+        stream.write(compressed);
+    }
+
+    @Override
+    public Object unmarshal(Exchange exchange, InputStream stream) throws Exception {
+        String contentEncoding = exchange.getIn().getHeader(headerName, String.class);
+        Compression compression = decompressor.compressionOf(contentEncoding);
+        if (compression == null) {
+            return exchange.getIn().getBody();
+        }
+        // the body leaves with the exchange, it cannot be a pooled buffer
+        byte[] body = decompressor.decompress(compression, exchange.getIn().getMandatoryBody(byte[].class));
+        Message message = exchange.hasOut() ? exchange.getOut() : exchange.getIn();
+        String original = ContentEncoding.original(contentEncoding);
+        if (original != null) {
+            message.setHeader(headerName, original);
+        } else {
+            message.removeHeader(headerName);
+        }
+        return body;
+    }
+}
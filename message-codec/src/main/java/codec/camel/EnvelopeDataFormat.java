@@ -0,0 +1,51 @@
+package codec.camel;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.spi.DataFormat;
+
+import codec.Envelope;
+import codec.EnvelopeCodec;
+
+/**
+ * Camel {@link DataFormat} for {@link EnvelopeCodec envelopes}: <code>.marshal(envelope)</code> before the
+ * producer endpoint, <code>.unmarshal(envelope)</code> after the consumer endpoint. Unmarshalling sets the
+ * header {@value #TIMESTAMP_HEADER} with the time the envelope was written. A body that is not an envelope, from a
+ * producer still sending plain text, goes through unchanged and without the header.
+ */
+public class EnvelopeDataFormat implements DataFormat {
+
+    public static final String TIMESTAMP_HEADER = "envelopeTimestamp";
+
+    private final EnvelopeCodec codec;
+
+    public EnvelopeDataFormat() {
+        this(new EnvelopeCodec());
+    }
+
+    public EnvelopeDataFormat(EnvelopeCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public void marshal(Exchange exchange, Object graph, OutputStream stream) throws Exception {
+        stream.write(codec.encode(graph, System.currentTimeMillis()));
+    }
+
+    @Override
+    public Object unmarshal(Exchange exchange, InputStream stream) throws Exception {
+        // the body is usually a byte[] already, converting it avoids copying it through the stream
+        byte[] bytes = exchange.getIn().getMandatoryBody(byte[].class);
+        if (!EnvelopeCodec.isEnvelope(bytes)) {
+            return exchange.getIn().getBody();
+        }
+        Envelope envelope = codec.decode(bytes);
+        // the unmarshal processor has already copied the in message to the out message it returns
+        Message message = exchange.hasOut() ? exchange.getOut() : exchange.getIn();
+        message.setHeader(TIMESTAMP_HEADER, envelope.getTimestamp());
+        return envelope.getPayload();
+    }
+}
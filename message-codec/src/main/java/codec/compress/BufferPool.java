@@ -0,0 +1,57 @@
+package codec.compress;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Heap buffers reused between messages, so decompressing a message does not allocate its body. Keeps at
+ * most <code>maxBuffers</code> buffers of at most <code>maxBufferSize</code> bytes: bigger bodies get a
+ * buffer of their own, which is dropped when released. Thread safe.
+ */
+public class BufferPool {
+
+    private static final int MIN_BUFFER_SIZE = 4096;
+
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    private final int maxBuffers;
+
+    private final int maxBufferSize;
+
+    public BufferPool(int maxBuffers, int maxBufferSize) {
+        this.maxBuffers = maxBuffers;
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    /**
+     * @return a buffer with position 0 and limit <code>length</code>, give it back with {@link #release}
+     */
+    public ByteBuffer acquire(int length) {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer != null) {
+            pooled.decrementAndGet();
+        }
+        if (buffer == null || buffer.capacity() < length) {
+            // a pooled buffer too small is dropped, the new one replaces it when released
+            buffer = ByteBuffer.allocate(Math.max(MIN_BUFFER_SIZE, Integer.highestOneBit(length - 1) << 1));
+        }
+        buffer.clear();
+        buffer.limit(length);
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() > maxBufferSize) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= maxBuffers) {
+            buffers.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+}
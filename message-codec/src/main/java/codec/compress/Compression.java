@@ -0,0 +1,32 @@
+package codec.compress;
+
+/**
+ * A block compression algorithm. Implementations only compress and decompress whole blocks: the
+ * original length is framed by {@link PayloadCompressor} and the threshold is its decision too.
+ * Implementations are thread safe.
+ */
+public interface Compression {
+
+    /**
+     * @return the name written in the content encoding of the compressed messages, unique within a
+     *         {@link CompressionRegistry}
+     */
+    String getName();
+
+    /**
+     * @return the size of the destination buffer {@link #compress} needs for <code>length</code> bytes
+     */
+    int maxCompressedLength(int length);
+
+    /**
+     * @return the compressed length written at <code>destOffset</code>
+     */
+    int compress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset);
+
+    /**
+     * Decompresses exactly <code>originalLength</code> bytes into <code>dest</code>.
+     *
+     * @throws IllegalArgumentException if the block is corrupt or does not have that length
+     */
+    void decompress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset, int originalLength);
+}
@@ -0,0 +1,88 @@
+package codec.compress;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The {@link Compression}s a consumer can decompress, by name. {@link #withDefaults()} has LZ4 and Zstd
+ * without a dictionary, {@link #create} a Zstd with the producer's level and dictionary, {@link #forSetting}
+ * only the compression a producer setting names. Register all the compressions before the registry is shared
+ * between threads.
+ */
+public class CompressionRegistry {
+
+    /** setting value of a producer that does not compress */
+    public static final String NONE = "none";
+
+    private final Map<String, Compression> byName = new LinkedHashMap<String, Compression>();
+
+    public static CompressionRegistry withDefaults() {
+        return create(ZstdCompression.DEFAULT_LEVEL, null);
+    }
+
+    /**
+     * @param zstdDictionary trained dictionary, null for none
+     */
+    public static CompressionRegistry create(int zstdLevel, byte[] zstdDictionary) {
+        return new CompressionRegistry()
+                .register(new Lz4Compression())
+                .register(new ZstdCompression(zstdLevel, zstdDictionary));
+    }
+
+    /**
+     * Builds only the compression of the setting, so a producer that does not use Zstd neither loads its
+     * native library nor reads its dictionary.
+     *
+     * @param name {@value Lz4Compression#NAME}, {@value ZstdCompression#NAME} or {@value #NONE} (empty registry)
+     * @param zstdDictionary path of the trained dictionary, empty or null for none
+     * @throws IllegalArgumentException if there is no compression with that name
+     */
+    public static CompressionRegistry forSetting(String name, int zstdLevel, String zstdDictionary)
+            throws IOException {
+        CompressionRegistry registry = new CompressionRegistry();
+        if (name == null || name.isEmpty() || NONE.equals(name)) {
+            return registry;
+        }
+        if (Lz4Compression.NAME.equals(name)) {
+            return registry.register(new Lz4Compression());
+        }
+        if (ZstdCompression.NAME.equals(name)) {
+            return registry.register(new ZstdCompression(zstdLevel, ZstdCompression.readDictionary(zstdDictionary)));
+        }
+        throw new IllegalArgumentException("Unknown compression " + name + ", expected " + Lz4Compression.NAME + ", "
+                + ZstdCompression.NAME + " or " + NONE);
+    }
+
+    /**
+     * Adds the compression, replacing the one registered with the same name.
+     */
+    public CompressionRegistry register(Compression compression) {
+        byName.put(compression.getName(), compression);
+        return this;
+    }
+
+    /**
+     * @return the compression, or null if none has that name
+     */
+    public Compression forName(String name) {
+        return name != null ? byName.get(name) : null;
+    }
+
+    /**
+     * @param name a registered compression or {@value #NONE}
+     * @return the compressor of a producer setting, null for {@value #NONE}
+     * @throws IllegalArgumentException if there is no compression with that name
+     */
+    public PayloadCompressor compressor(String name, int threshold) {
+        if (name == null || name.isEmpty() || NONE.equals(name)) {
+            return null;
+        }
+        Compression compression = forName(name);
+        if (compression == null) {
+            throw new IllegalArgumentException("Unknown compression " + name + ", expected one of " + byName.keySet()
+                    + " or " + NONE);
+        }
+        return new PayloadCompressor(compression, threshold);
+    }
+}
@@ -0,0 +1,37 @@
+package codec.compress;
+
+/**
+ * Content encoding of the compressed messages, in the format of the Spring AMQP compressing post
+ * processors: the compression, a colon and the content encoding the message had before, as in
+ * <code>lz4:UTF-8</code>, or only the compression when it had none.
+ */
+public final class ContentEncoding {
+
+    public static final char SEPARATOR = ':';
+
+    private ContentEncoding() {
+    }
+
+    public static String of(String compression, String original) {
+        return original == null || original.isEmpty() ? compression : compression + SEPARATOR + original;
+    }
+
+    /**
+     * @return the compression part, null if there is no content encoding
+     */
+    public static String compression(String contentEncoding) {
+        if (contentEncoding == null) {
+            return null;
+        }
+        int separator = contentEncoding.indexOf(SEPARATOR);
+        return separator < 0 ? contentEncoding : contentEncoding.substring(0, separator);
+    }
+
+    /**
+     * @return the content encoding before the compression, null if there was none
+     */
+    public static String original(String contentEncoding) {
+        int separator = contentEncoding == null ? -1 : contentEncoding.indexOf(SEPARATOR);
+        return separator < 0 ? null : contentEncoding.substring(separator + 1);
+    }
+}
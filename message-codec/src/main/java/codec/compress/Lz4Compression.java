@@ -0,0 +1,58 @@
+package codec.compress;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * LZ4 blocks, the fastest to compress and decompress, for payloads where the CPU matters more than the
+ * last bytes of the ratio. Uses the native library when it loads, the pure Java port otherwise. Blocks come
+ * from the broker, so they are decompressed with the safe decompressor, bounded by the compressed length and
+ * the recorded original length: a corrupt block fails instead of reading or writing past them.
+ */
+public class Lz4Compression implements Compression {
+
+    public static final String NAME = "lz4";
+
+    private final LZ4Compressor compressor;
+
+    private final LZ4SafeDecompressor decompressor;
+
+    public Lz4Compression() {
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.safeDecompressor();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return compressor.maxCompressedLength(length);
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset) {
+        return compressor.compress(src, srcOffset, length, dest, destOffset, dest.length - destOffset);
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset, int originalLength) {
+        if (dest.length - destOffset < originalLength) {
+            throw new IllegalArgumentException("No room for the " + originalLength + " bytes of the LZ4 block");
+        }
+        int written;
+        try {
+            written = decompressor.decompress(src, srcOffset, length, dest, destOffset, originalLength);
+        } catch (LZ4Exception e) {
+            throw new IllegalArgumentException("Corrupt LZ4 block", e);
+        }
+        if (written != originalLength) {
+            throw new IllegalArgumentException("LZ4 block of " + written + " bytes, " + originalLength + " expected");
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package codec.compress;
+
+import java.util.Arrays;
+
+/**
+ * Producer side of the compression: compresses the bodies of at least <code>threshold</code> bytes and
+ * frames them as a 4 byte big-endian original length followed by the compressed block, so the consumer
+ * allocates the exact buffer before decompressing. Smaller bodies, and bodies that would not get smaller,
+ * are sent as they are. Thread safe.
+ */
+public class PayloadCompressor {
+
+    public static final int FRAME_HEADER_LENGTH = 4;
+
+    private final Compression compression;
+
+    private final int threshold;
+
+    // compressed blocks are written here first, then copied to an array of their exact length
+    private final ThreadLocal<byte[]> scratch = new ThreadLocal<byte[]>();
+
+    public PayloadCompressor(Compression compression, int threshold) {
+        this.compression = compression;
+        this.threshold = threshold;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public byte[] compress(byte[] body) {
+        return compress(body, 0, body.length);
+    }
+
+    /**
+     * @return the framed compressed body, or null if the body is sent as it is
+     */
+    public byte[] compress(byte[] body, int offset, int length) {
+        if (length < threshold) {
+            return null;
+        }
+        int required = FRAME_HEADER_LENGTH + compression.maxCompressedLength(length);
+        byte[] buffer = scratch.get();
+        if (buffer == null || buffer.length < required) {
+            buffer = new byte[required];
+            scratch.set(buffer);
+        }
+        int compressed = FRAME_HEADER_LENGTH + compression.compress(body, offset, length, buffer, FRAME_HEADER_LENGTH);
+        if (compressed >= length) {
+            return null;
+        }
+        buffer[0] = (byte) (length >>> 24);
+        buffer[1] = (byte) (length >>> 16);
+        buffer[2] = (byte) (length >>> 8);
+        buffer[3] = (byte) length;
+        return Arrays.copyOf(buffer, compressed);
+    }
+}
@@ -0,0 +1,77 @@
+package codec.compress;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Consumer side of the compression: reads the bodies framed by {@link PayloadCompressor} with the
+ * compression named in their content encoding. {@link #decompress(Compression, byte[], int, int)} writes
+ * the body into a buffer of the {@link BufferPool}, for consumers that are done with it when the
+ * listener returns; {@link #decompress(Compression, byte[])} allocates it, for the ones that hand the
+ * body over. Thread safe.
+ */
+public class PayloadDecompressor {
+
+    /** bigger original lengths are taken as a corrupt frame rather than allocated */
+    public static final int MAX_ORIGINAL_LENGTH = 64 * 1024 * 1024;
+
+    private final CompressionRegistry registry;
+
+    private final BufferPool pool;
+
+    public PayloadDecompressor(CompressionRegistry registry) {
+        this(registry, new BufferPool(64, 1024 * 1024));
+    }
+
+    public PayloadDecompressor(CompressionRegistry registry, BufferPool pool) {
+        this.registry = registry;
+        this.pool = pool;
+    }
+
+    /**
+     * @return the compression named in the content encoding, or null if the body is not compressed
+     *         or was compressed with an algorithm this consumer does not know
+     */
+    public Compression compressionOf(String contentEncoding) {
+        return registry.forName(ContentEncoding.compression(contentEncoding));
+    }
+
+    public byte[] decompress(Compression compression, byte[] framed) {
+        int length = originalLength(framed, 0, framed.length);
+        byte[] body = new byte[length];
+        compression.decompress(framed, PayloadCompressor.FRAME_HEADER_LENGTH,
+                framed.length - PayloadCompressor.FRAME_HEADER_LENGTH, body, 0, length);
+        return body;
+    }
+
+    /**
+     * @return the body in a pooled buffer, from position 0 to its limit; {@link #release} it after use
+     */
+    public ByteBuffer decompress(Compression compression, byte[] framed, int offset, int length) {
+        int originalLength = originalLength(framed, offset, length);
+        ByteBuffer body = pool.acquire(originalLength);
+        try {
+            compression.decompress(framed, offset + PayloadCompressor.FRAME_HEADER_LENGTH,
+                    length - PayloadCompressor.FRAME_HEADER_LENGTH, body.array(), body.arrayOffset(), originalLength);
+        } catch (RuntimeException e) {
+            pool.release(body);
+            throw e;
+        }
+        return body;
+    }
+
+    public void release(ByteBuffer body) {
+        pool.release(body);
+    }
+
+    private static int originalLength(byte[] framed, int offset, int length) {
+        if (length < PayloadCompressor.FRAME_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Compressed body of " + length + " bytes, shorter than its header");
+        }
+        int originalLength = (framed[offset] & 0xFF) << 24 | (framed[offset + 1] & 0xFF) << 16
+                | (framed[offset + 2] & 0xFF) << 8 | framed[offset + 3] & 0xFF;
+        if (originalLength < 0 || originalLength > MAX_ORIGINAL_LENGTH) {
+            throw new IllegalArgumentException("Compressed body of " + originalLength + " bytes");
+        }
+        return originalLength;
+    }
+}
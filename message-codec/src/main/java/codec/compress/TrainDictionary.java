@@ -0,0 +1,41 @@
+package codec.compress;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Trains a Zstd dictionary from sample messages, one message per file:
+ *
+ * <pre>
+ * java -cp message-codec-0.1.0.jar:zstd-jni-1.3.8-6.jar codec.compress.TrainDictionary dictionary.zstd 65536 samples/
+ * </pre>
+ *
+ * Directories are read one level deep. The producers and the consumers load the file with
+ * {@link ZstdCompression#readDictionary}.
+ */
+public class TrainDictionary {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: TrainDictionary <dictionary file> <dictionary size> <sample file or directory>...");
+            System.exit(1);
+        }
+        List<byte[]> samples = new ArrayList<byte[]>();
+        for (int i = 2; i < args.length; i++) {
+            File file = new File(args[i]);
+            File[] files = file.isDirectory() ? file.listFiles() : new File[] { file };
+            for (File sample : files) {
+                if (sample.isFile()) {
+                    samples.add(Files.readAllBytes(sample.toPath()));
+                }
+            }
+        }
+        byte[] dictionary = ZstdCompression.trainDictionary(samples, Integer.parseInt(args[1]));
+        Files.write(new File(args[0]).toPath(), dictionary);
+        System.out.println("Trained a dictionary of " + dictionary.length + " bytes from " + samples.size()
+                + " samples into " + args[0]);
+    }
+}
@@ -0,0 +1,123 @@
+package codec.jms;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Enumeration;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import codec.compress.Compression;
+import codec.compress.ContentEncoding;
+import codec.compress.PayloadCompressor;
+import codec.compress.PayloadDecompressor;
+
+/**
+ * Spring JMS {@link MessageConverter} compressing the text and bytes messages another converter creates,
+ * above the threshold of the {@link PayloadCompressor}. The compressed message is a {@link BytesMessage}
+ * with the JMS type and the properties of the original one, plus the property {@value #CONTENT_ENCODING}:
+ * <code>&lt;compression&gt;:UTF-8</code> for text, <code>&lt;compression&gt;</code> for bytes.
+ * <br/>
+ * Reading decompresses into a pooled buffer and builds the payload from it: the String of a text message,
+ * the payload of an {@link EnvelopeJmsMessageConverter envelope}, or a copy of the bytes. Messages without
+ * the property go to the other converter. Without a compressor it only decompresses.
+ */
+public class CompressingJmsMessageConverter implements MessageConverter {
+
+    public static final String CONTENT_ENCODING = "contentEncoding";
+
+    private static final String TEXT_ENCODING = "UTF-8";
+
+    private final MessageConverter delegate;
+
+    private final PayloadCompressor compressor;
+
+    private final PayloadDecompressor decompressor;
+
+    /**
+     * @param compressor null to send the messages of the delegate as they are
+     */
+    public CompressingJmsMessageConverter(MessageConverter delegate, PayloadCompressor compressor,
+            PayloadDecompressor decompressor) {
+        this.delegate = delegate;
+        this.compressor = compressor;
+        this.decompressor = decompressor;
+    }
+
+    @Override
+    public Message toMessage(Object object, Session session) throws JMSException, MessageConversionException {
+        Message message = delegate.toMessage(object, session);
+        if (compressor == null) {
+            return message;
+        }
+        byte[] body;
+        String encoding;
+        if (message instanceof TextMessage) {
+            String text = ((TextMessage) message).getText();
+            body = text != null ? text.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            encoding = TEXT_ENCODING;
+        } else if (message instanceof BytesMessage) {
+            BytesMessage bytesMessage = (BytesMessage) message;
+            bytesMessage.reset();
+            body = new byte[(int) bytesMessage.getBodyLength()];
+            bytesMessage.readBytes(body);
+            encoding = null;
+        } else {
+            return message;
+        }
+        byte[] compressed = compressor.compress(body);
+        if (compressed == null) {
+            return message;
+        }
+        BytesMessage compressedMessage = session.createBytesMessage();
+        compressedMessage.setJMSType(message.getJMSType());
+        for (Enumeration<?> names = message.getPropertyNames(); names.hasMoreElements();) {
+            String name = (String) names.nextElement();
+            compressedMessage.setObjectProperty(name, message.getObjectProperty(name));
+        }
+        compressedMessage.setStringProperty(CONTENT_ENCODING,
+                ContentEncoding.of(compressor.getCompression().getName(), encoding));
+        compressedMessage.writeBytes(compressed);
+        return compressedMessage;
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws JMSException, MessageConversionException {
+        String contentEncoding = message.getStringProperty(CONTENT_ENCODING);
+        Compression compression = decompressor.compressionOf(contentEncoding);
+        if (!(message instanceof BytesMessage) || compression == null) {
+            return delegate.fromMessage(message);
+        }
+        BytesMessage bytesMessage = (BytesMessage) message;
+        byte[] framed = new byte[(int) bytesMessage.getBodyLength()];
+        bytesMessage.readBytes(framed);
+        ByteBuffer body;
+        try {
+            body = decompressor.decompress(compression, framed, 0, framed.length);
+        } catch (IllegalArgumentException e) {
+            throw new MessageConversionException("Cannot decompress the " + contentEncoding + " message", e);
+        }
+        try {
+            String encoding = ContentEncoding.original(contentEncoding);
+            if (encoding != null) {
+                return new String(body.array(), body.arrayOffset(), body.limit(), encoding);
+            }
+            if (delegate instanceof EnvelopeJmsMessageConverter) {
+                return ((EnvelopeJmsMessageConverter) delegate).fromBytes(body.array(), body.arrayOffset(), body.limit());
+            }
+            return Arrays.copyOfRange(body.array(), body.arrayOffset(), body.arrayOffset() + body.limit());
+        } catch (UnsupportedEncodingException e) {
+            throw new MessageConversionException("Unsupported encoding of the " + contentEncoding + " message", e);
+        } finally {
+            decompressor.release(body);
+        }
+    }
+}
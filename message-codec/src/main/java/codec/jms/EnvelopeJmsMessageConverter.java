@@ -0,0 +1,72 @@
+package codec.jms;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+
+import codec.EnvelopeCodec;
+
+/**
+ * Spring JMS {@link MessageConverter} writing the payloads as {@link EnvelopeCodec envelopes} in a
+ * {@link BytesMessage} with the JMS type {@value #JMS_TYPE}, instead of the {@link javax.jms.TextMessage}
+ * the default converter creates for Strings. Other messages are converted by the {@link SimpleMessageConverter}.
+ * <br/>
+ * Set it on the <code>JmsTemplate</code> and on the listener container factory.
+ */
+public class EnvelopeJmsMessageConverter implements MessageConverter {
+
+    public static final String JMS_TYPE = "envelope";
+
+    private final EnvelopeCodec codec;
+
+    private final MessageConverter fallback = new SimpleMessageConverter();
+
+    public EnvelopeJmsMessageConverter() {
+        this(new EnvelopeCodec());
+    }
+
+    public EnvelopeJmsMessageConverter(EnvelopeCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public Message toMessage(Object object, Session session) throws JMSException, MessageConversionException {
+        byte[] envelope;
+        try {
+            envelope = codec.encode(object, System.currentTimeMillis());
+        } catch (IllegalArgumentException e) {
+            throw new MessageConversionException("Cannot write " + object.getClass().getName() + " in an envelope", e);
+        }
+        BytesMessage message = session.createBytesMessage();
+        message.setJMSType(JMS_TYPE);
+        message.writeBytes(envelope);
+        return message;
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws JMSException, MessageConversionException {
+        if (!(message instanceof BytesMessage) || !JMS_TYPE.equals(message.getJMSType())) {
+            return fallback.fromMessage(message);
+        }
+        BytesMessage bytesMessage = (BytesMessage) message;
+        byte[] envelope = new byte[(int) bytesMessage.getBodyLength()];
+        bytesMessage.readBytes(envelope);
+        return fromBytes(envelope, 0, envelope.length);
+    }
+
+    /**
+     * @return the payload of an envelope already read from its message
+     */
+    public Object fromBytes(byte[] buffer, int offset, int length) throws MessageConversionException {
+        try {
+            return codec.decode(buffer, offset, length).getPayload();
+        } catch (IllegalArgumentException e) {
+            throw new MessageConversionException("Cannot read the envelope", e);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EnvelopeCodecTest extends Assert {
+
+    private final EnvelopeCodec codec = new EnvelopeCodec();
+
+    @Test
+    public void roundTripsStringsAsUtf8() {
+        for (String text : new String[] { "", "ping!", "café 日本 😀" }) {
+            byte[] envelope = codec.encode(text, 1458000000000L);
+            assertEquals(EnvelopeCodec.HEADER_LENGTH + text.getBytes(StandardCharsets.UTF_8).length, envelope.length);
+            assertTrue(EnvelopeCodec.isEnvelope(envelope));
+            Envelope decoded = codec.decode(envelope);
+            assertEquals(text, decoded.getPayload());
+            assertEquals(Utf8StringCodec.ID, decoded.getCodecId());
+            assertEquals(0, decoded.getFlags());
+            assertEquals(1458000000000L, decoded.getTimestamp());
+        }
+    }
+
+    @Test
+    public void roundTripsByteArraysAsTheyAre() {
+        byte[] payload = new byte[1000];
+        new Random(1).nextBytes(payload);
+        byte[] envelope = codec.encode(payload, 0);
+        Envelope decoded = codec.decode(envelope);
+        assertEquals(ByteArrayCodec.ID, decoded.getCodecId());
+        assertEquals(0, decoded.getTimestamp());
+        assertArrayEquals(payload, (byte[]) decoded.getPayload());
+        assertNotSame(payload, decoded.getPayload());
+    }
+
+    @Test
+    public void writesTheDocumentedHeader() {
+        ByteBuffer envelope = ByteBuffer.wrap(codec.encode("ab", 0x0102030405060708L));
+        assertEquals(EnvelopeCodec.MAGIC, envelope.get());
+        assertEquals(EnvelopeCodec.VERSION, envelope.get());
+        assertEquals(Utf8StringCodec.ID, envelope.get());
+        assertEquals(0, envelope.get());
+        assertEquals(0x0102030405060708L, envelope.getLong());
+        assertEquals(2, envelope.getInt());
+        assertEquals('a', envelope.get());
+        assertEquals('b', envelope.get());
+        assertFalse(envelope.hasRemaining());
+    }
+
+    @Test
+    public void decodesAnEnvelopeInsideALargerBuffer() {
+        byte[] envelope = codec.encode("inside", 7);
+        byte[] buffer = new byte[envelope.length + 10];
+        Arrays.fill(buffer, (byte) 0x55);
+        System.arraycopy(envelope, 0, buffer, 3, envelope.length);
+        Envelope decoded = codec.decode(buffer, 3, envelope.length);
+        assertEquals("inside", decoded.getPayload());
+        assertEquals(7, decoded.getTimestamp());
+    }
+
+    @Test
+    public void picksTheCodecOfARegisteredSupertype() {
+        CodecRegistry registry = new CodecRegistry().register(new PayloadCodec<CharSequence>() {
+
+            @Override
+            public byte getId() {
+                return 42;
+            }
+
+            @Override
+            public Class<CharSequence> getType() {
+                return CharSequence.class;
+            }
+
+            @Override
+            public byte[] encode(CharSequence payload) {
+                return payload.toString().getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public CharSequence decode(byte[] buffer, int offset, int length) {
+                return new StringBuilder(new String(buffer, offset, length, StandardCharsets.UTF_8));
+            }
+        });
+        EnvelopeCodec builders = new EnvelopeCodec(registry);
+        Envelope decoded = builders.decode(builders.encode(new StringBuilder("built"), 0));
+        assertEquals(42, decoded.getCodecId());
+        assertEquals("built", decoded.getPayload().toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesAPayloadWithoutCodec() {
+        codec.encode(Integer.valueOf(1), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesTwoCodecsWithTheSameId() {
+        CodecRegistry.withDefaults().register(new ByteArrayCodec() {
+
+            @Override
+            public Class<byte[]> getType() {
+                return byte[].class;
+            }
+        });
+    }
+
+    @Test
+    public void refusesCorruptEnvelopes() {
+        byte[] envelope = codec.encode("corrupt me", 1);
+
+        assertRefused(Arrays.copyOf(envelope, EnvelopeCodec.HEADER_LENGTH - 1), "Not a message envelope");
+        assertRefused(new byte[0], "Not a message envelope");
+        assertRefused("plain text, not an envelope".getBytes(StandardCharsets.UTF_8), "Not a message envelope");
+
+        byte[] version = envelope.clone();
+        version[1] = 2;
+        assertRefused(version, "Unsupported envelope version 2");
+        assertFalse(EnvelopeCodec.isEnvelope(version));
+
+        byte[] unknown = envelope.clone();
+        unknown[2] = 99;
+        assertRefused(unknown, "No codec with id 99");
+
+        // the last byte of the body missing
+        assertRefused(Arrays.copyOf(envelope, envelope.length - 1), "Envelope body of 10 bytes, only 9 available");
+
+        byte[] negative = envelope.clone();
+        ByteBuffer.wrap(negative).putInt(12, -1);
+        assertRefused(negative, "Envelope body of -1 bytes");
+
+        byte[] huge = envelope.clone();
+        ByteBuffer.wrap(huge).putInt(12, Integer.MAX_VALUE);
+        assertRefused(huge, "Envelope body of " + Integer.MAX_VALUE + " bytes");
+    }
+
+    @Test
+    public void refusesRandomBytesOrDecodesThemWithinTheirBounds() {
+        Random random = new Random(2);
+        for (int i = 0; i < 10000; i++) {
+            byte[] bytes = codec.encode("random", i);
+            // corrupt one to four bytes of the header or the body
+            for (int flips = 1 + random.nextInt(4); flips > 0; flips--) {
+                bytes[random.nextInt(bytes.length)] = (byte) random.nextInt(256);
+            }
+            try {
+                Envelope decoded = codec.decode(bytes);
+                assertNotNull(decoded.getPayload());
+            } catch (IllegalArgumentException e) {
+                // refused, never an index out of bounds
+            }
+        }
+    }
+
+    private void assertRefused(byte[] bytes, String message) {
+        try {
+            codec.decode(bytes);
+            fail(message);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package codec.compress;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PayloadCompressionTest extends Assert {
+
+    private static final byte[] DICTIONARY = ZstdCompression.trainDictionary(samples(2000, new Random(1)), 4096);
+
+    private final Compression[] compressions = { new Lz4Compression(), new ZstdCompression(),
+            new ZstdCompression(ZstdCompression.DEFAULT_LEVEL, DICTIONARY) };
+
+    @Test
+    public void roundTripsBodiesPastTheThreshold() {
+        Random random = new Random(2);
+        for (Compression compression : compressions) {
+            PayloadCompressor compressor = new PayloadCompressor(compression, 64);
+            PayloadDecompressor decompressor = new PayloadDecompressor(registry(compression));
+            for (int i = 0; i < 200; i++) {
+                byte[] body = documents(random, i);
+                byte[] framed = compressor.compress(body);
+                assertNotNull(compression.getName(), framed);
+                assertTrue(framed.length < body.length);
+                assertEquals(body.length, ByteBuffer.wrap(framed).getInt());
+                assertArrayEquals(compression.getName(), body, decompressor.decompress(compression, framed));
+
+                // framed inside a larger buffer, into a pooled one
+                byte[] buffer = new byte[framed.length + 7];
+                System.arraycopy(framed, 0, buffer, 5, framed.length);
+                ByteBuffer pooled = decompressor.decompress(compression, buffer, 5, framed.length);
+                assertEquals(body.length, pooled.remaining());
+                assertArrayEquals(body, Arrays.copyOfRange(pooled.array(), pooled.arrayOffset(),
+                        pooled.arrayOffset() + pooled.remaining()));
+                decompressor.release(pooled);
+            }
+        }
+    }
+
+    @Test
+    public void sendsSmallOrIncompressibleBodiesAsTheyAre() {
+        byte[] noise = new byte[4096];
+        new Random(3).nextBytes(noise);
+        for (Compression compression : compressions) {
+            PayloadCompressor compressor = new PayloadCompressor(compression, 1024);
+            assertNull(compressor.compress(new byte[1023]));
+            assertNotNull(compressor.compress(new byte[1024]));
+            assertNull(compression.getName(), compressor.compress(noise));
+        }
+    }
+
+    @Test
+    public void readsOnlyTheDictionaryItWasWrittenWith() {
+        byte[] body = documents(new Random(4), 0);
+        byte[] framed = new PayloadCompressor(compressions[2], 0).compress(body);
+        try {
+            byte[] read = new PayloadDecompressor(registry(compressions[1])).decompress(compressions[1], framed);
+            assertFalse(Arrays.equals(body, read));
+        } catch (IllegalArgumentException e) {
+            // refused
+        }
+    }
+
+    @Test
+    public void refusesCorruptFrames() {
+        byte[] body = documents(new Random(5), 0);
+        for (Compression compression : compressions) {
+            PayloadDecompressor decompressor = new PayloadDecompressor(registry(compression));
+            byte[] framed = new PayloadCompressor(compression, 0).compress(body);
+
+            assertRefused(decompressor, compression, new byte[3], "Compressed body of 3 bytes, shorter than its header");
+
+            byte[] negative = framed.clone();
+            ByteBuffer.wrap(negative).putInt(0, -1);
+            assertRefused(decompressor, compression, negative, "Compressed body of -1 bytes");
+
+            byte[] huge = framed.clone();
+            ByteBuffer.wrap(huge).putInt(0, PayloadDecompressor.MAX_ORIGINAL_LENGTH + 1);
+            assertRefused(decompressor, compression, huge, "Compressed body of " + (PayloadDecompressor.MAX_ORIGINAL_LENGTH + 1));
+
+            byte[] longer = framed.clone();
+            ByteBuffer.wrap(longer).putInt(0, body.length + 1);
+            assertRefused(decompressor, compression, longer, null);
+
+            byte[] shorter = framed.clone();
+            ByteBuffer.wrap(shorter).putInt(0, body.length - 1);
+            assertRefused(decompressor, compression, shorter, null);
+
+            assertRefused(decompressor, compression, Arrays.copyOf(framed, framed.length - 1), null);
+            assertRefused(decompressor, compression, Arrays.copyOf(framed, PayloadCompressor.FRAME_HEADER_LENGTH), null);
+
+            byte[] garbage = Arrays.copyOf(framed, framed.length);
+            Arrays.fill(garbage, PayloadCompressor.FRAME_HEADER_LENGTH, garbage.length, (byte) 0xFF);
+            assertRefused(decompressor, compression, garbage, null);
+        }
+    }
+
+    @Test
+    public void refusesRandomlyCorruptedFramesOrDecompressesThemWithinTheirLength() {
+        Random random = new Random(6);
+        for (Compression compression : compressions) {
+            PayloadCompressor compressor = new PayloadCompressor(compression, 0);
+            PayloadDecompressor decompressor = new PayloadDecompressor(registry(compression));
+            for (int i = 0; i < 2000; i++) {
+                byte[] body = documents(random, i);
+                byte[] framed = compressor.compress(body);
+                // the length header stays, the block is corrupt
+                for (int flips = 1 + random.nextInt(4); flips > 0; flips--) {
+                    int at = PayloadCompressor.FRAME_HEADER_LENGTH
+                            + random.nextInt(framed.length - PayloadCompressor.FRAME_HEADER_LENGTH);
+                    framed[at] = (byte) random.nextInt(256);
+                }
+                try {
+                    assertEquals(body.length, decompressor.decompress(compression, framed).length);
+                } catch (IllegalArgumentException e) {
+                    // refused, never an index out of bounds nor a crash of the native library
+                }
+            }
+        }
+    }
+
+    @Test
+    public void buildsOnlyTheCompressionOfASetting() throws Exception {
+        assertNull(CompressionRegistry.forSetting(CompressionRegistry.NONE, 3, null).forName(Lz4Compression.NAME));
+        CompressionRegistry lz4 = CompressionRegistry.forSetting(Lz4Compression.NAME, 3, "");
+        assertNotNull(lz4.forName(Lz4Compression.NAME));
+        assertNull(lz4.forName(ZstdCompression.NAME));
+        assertNull(lz4.compressor(CompressionRegistry.NONE, 0));
+        assertEquals(100, lz4.compressor(Lz4Compression.NAME, 100).getThreshold());
+        try {
+            lz4.compressor(ZstdCompression.NAME, 100);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Unknown compression zstd"));
+        }
+        try {
+            CompressionRegistry.forSetting("gzip", 3, null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Unknown compression gzip"));
+        }
+    }
+
+    @Test
+    public void keepsTheContentEncodingBeforeTheCompression() {
+        assertEquals("lz4:UTF-8", ContentEncoding.of("lz4", "UTF-8"));
+        assertEquals("zstd", ContentEncoding.of("zstd", null));
+        assertEquals("zstd", ContentEncoding.of("zstd", ""));
+        assertEquals("lz4", ContentEncoding.compression("lz4:UTF-8"));
+        assertEquals("UTF-8", ContentEncoding.original("lz4:UTF-8"));
+        assertEquals("zstd", ContentEncoding.compression("zstd"));
+        assertNull(ContentEncoding.original("zstd"));
+        assertNull(ContentEncoding.compression(null));
+        assertNull(ContentEncoding.original(null));
+        PayloadDecompressor decompressor = new PayloadDecompressor(CompressionRegistry.withDefaults());
+        assertEquals(Lz4Compression.NAME, decompressor.compressionOf("lz4:UTF-8").getName());
+        assertNull(decompressor.compressionOf("gzip"));
+        assertNull(decompressor.compressionOf(null));
+    }
+
+    private static void assertRefused(PayloadDecompressor decompressor, Compression compression, byte[] framed,
+            String message) {
+        try {
+            decompressor.decompress(compression, framed);
+            fail(compression.getName() + " " + message);
+        } catch (IllegalArgumentException e) {
+            if (message != null) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+            }
+        }
+        try {
+            decompressor.decompress(compression, framed, 0, framed.length);
+            fail(compression.getName() + " " + message);
+        } catch (IllegalArgumentException e) {
+            // the pooled buffer went back to the pool
+        }
+    }
+
+    private static CompressionRegistry registry(Compression compression) {
+        return new CompressionRegistry().register(compression);
+    }
+
+    private static List<byte[]> samples(int count, Random random) {
+        List<byte[]> samples = new ArrayList<byte[]>();
+        for (int i = 0; i < count; i++) {
+            samples.add(json(random, i));
+        }
+        return samples;
+    }
+
+    // a few documents, as a body of the batching producer
+    private static byte[] documents(Random random, int id) {
+        StringBuilder documents = new StringBuilder("[");
+        for (int i = 2 + random.nextInt(8); i > 0; i--) {
+            documents.append(new String(json(random, id), StandardCharsets.UTF_8)).append(i > 1 ? "," : "]");
+        }
+        return documents.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // a small JSON document like the greetings of the samples
+    private static byte[] json(Random random, int id) {
+        StringBuilder json = new StringBuilder("{\"id\":").append(id).append(",\"content\":\"Hello, ");
+        for (int i = 10 + random.nextInt(40); i > 0; i--) {
+            json.append((char) ('a' + random.nextInt(26)));
+        }
+        json.append("!\",\"tags\":[\"greeting\",\"sample\"],\"timestamp\":").append(1458000000000L + id)
+                .append(",\"status\":\"").append(random.nextBoolean() ? "NEW" : "RETRIED").append("\"}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
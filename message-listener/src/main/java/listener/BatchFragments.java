@@ -0,0 +1,51 @@
+package listener;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+/**
+ * Numbers the messages of a batch the listener container split: it calls the listener with each of them in
+ * turn, on the same thread, each a new {@link Message} sharing the properties of the batch, its id included.
+ * A redelivered batch has new properties, so its messages are numbered from 0 again, and the same message
+ * handed over again, as a retry in place does, keeps its number. A message of a batch republished on its own
+ * carries its position in {@link #BATCH_FRAGMENT}.
+ * <p>
+ * One per advice or listener, each keeps the last message of every thread. Thread-safe.
+ */
+public final class BatchFragments {
+
+    /**
+     * Header of a message of a batch republished on its own, a retry for instance, with its position in the
+     * batch: it keeps the id of the batch and is a new message for the broker.
+     */
+    public static final String BATCH_FRAGMENT = "batchFragment";
+
+    // the last message of the thread, its properties and its position
+    private final ThreadLocal<Object[]> last = new ThreadLocal<Object[]>() {
+
+        @Override
+        protected Object[] initialValue() {
+            return new Object[] { null, null, 0 };
+        }
+    };
+
+    /**
+     * @return position of the message in the batch it was sent in, 0 if it was sent alone
+     */
+    public int fragment(Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        Object[] previous = last.get();
+        if (previous[0] == message) {
+            return (Integer) previous[2];
+        }
+        int fragment = previous[1] == properties ? (Integer) previous[2] + 1 : 0;
+        Object republished = properties.getHeaders().get(BATCH_FRAGMENT);
+        if (fragment == 0 && republished instanceof Number) {
+            fragment = ((Number) republished).intValue();
+        }
+        previous[0] = message;
+        previous[1] = properties;
+        previous[2] = fragment;
+        return fragment;
+    }
+}
@@ -0,0 +1,81 @@
+package listener;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+
+/**
+ * Delivers messages straight to a {@link MessageBodyHandler} or {@link MessageTextHandler}, without the
+ * reflective lookup and per-message String conversion of the MessageListenerAdapter. Text handlers get
+ * the body decoded into a CharBuffer reused by each consumer thread.
+ */
+public class DirectMessageListener implements MessageListener {
+
+    private static final String DEFAULT_ENCODING = "UTF-8";
+
+    private final MessageBodyHandler bodyHandler;
+
+    private final MessageTextHandler textHandler;
+
+    private final ThreadLocal<TextDecoder> decoders = new ThreadLocal<TextDecoder>() {
+        @Override
+        protected TextDecoder initialValue() {
+            return new TextDecoder();
+        }
+    };
+
+    public DirectMessageListener(MessageBodyHandler bodyHandler) {
+        this.bodyHandler = bodyHandler;
+        this.textHandler = null;
+    }
+
+    public DirectMessageListener(MessageTextHandler textHandler) {
+        this.bodyHandler = null;
+        this.textHandler = textHandler;
+    }
+
+    @Override
+    public void onMessage(Message message) {
+        ByteBuffer body = ByteBuffer.wrap(message.getBody());
+        if (bodyHandler != null) {
+            bodyHandler.handleMessage(body);
+        } else {
+            String encoding = message.getMessageProperties().getContentEncoding();
+            textHandler.handleMessage(decoders.get().decode(body, encoding != null ? encoding : DEFAULT_ENCODING));
+        }
+    }
+
+    private static final class TextDecoder {
+
+        private String encoding;
+
+        private CharsetDecoder decoder;
+
+        private CharBuffer buffer = CharBuffer.allocate(256);
+
+        CharBuffer decode(ByteBuffer body, String encoding) {
+            if (!encoding.equals(this.encoding)) {
+                decoder = Charset.forName(encoding).newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                this.encoding = encoding;
+            }
+            int required = (int) Math.ceil(body.remaining() * (double) decoder.maxCharsPerByte());
+            if (buffer.capacity() < required) {
+                buffer = CharBuffer.allocate(required);
+            }
+            buffer.clear();
+            decoder.reset();
+            decoder.decode(body, buffer, true);
+            decoder.flush(buffer);
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+}
@@ -0,0 +1,13 @@
+package listener;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the raw body of a consumed message, invoked by {@link DirectMessageListener}.
+ * The buffer is a view over the message body, valid only during the call.
+ */
+public interface MessageBodyHandler {
+
+    void handleMessage(ByteBuffer body);
+
+}
@@ -0,0 +1,11 @@
+package listener;
+
+/**
+ * Receives the body of a consumed message decoded as text, invoked by {@link DirectMessageListener}.
+ * The text lives in a buffer reused for the next message, call toString() to keep it.
+ */
+public interface MessageTextHandler {
+
+    void handleMessage(CharSequence text);
+
+}
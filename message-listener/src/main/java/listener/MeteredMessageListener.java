@@ -0,0 +1,63 @@
+package listener;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+
+/**
+ * Records actuator metrics for each message before handing it to the delegate listener: end-to-end
+ * latency from the {@link #SEND_TIMESTAMP} header (timer.rabbit.&lt;queue&gt;.latency), received messages
+ * (meter.rabbit.&lt;queue&gt;.received), messages being processed (counter.rabbit.&lt;queue&gt;.in-flight)
+ * and redeliveries (counter.rabbit.&lt;queue&gt;.redelivered).
+ */
+public class MeteredMessageListener implements MessageListener {
+
+    public static final String SEND_TIMESTAMP = "sendTimestamp";
+
+    private final MessageListener delegate;
+
+    private final CounterService counterService;
+
+    private final GaugeService gaugeService;
+
+    private final String latencyName;
+
+    private final String receivedName;
+
+    private final String inFlightName;
+
+    private final String redeliveredName;
+
+    public MeteredMessageListener(MessageListener delegate, String queueName, CounterService counterService,
+            GaugeService gaugeService) {
+        this.delegate = delegate;
+        this.counterService = counterService;
+        this.gaugeService = gaugeService;
+        this.latencyName = "timer.rabbit." + queueName + ".latency";
+        this.receivedName = "meter.rabbit." + queueName + ".received";
+        this.inFlightName = "counter.rabbit." + queueName + ".in-flight";
+        this.redeliveredName = "counter.rabbit." + queueName + ".redelivered";
+    }
+
+    @Override
+    public void onMessage(Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        Object sent = properties.getHeaders().get(SEND_TIMESTAMP);
+        if (sent instanceof Number) {
+            gaugeService.submit(latencyName, Math.max(System.currentTimeMillis() - ((Number) sent).longValue(), 0));
+        }
+        counterService.increment(receivedName);
+        if (Boolean.TRUE.equals(properties.isRedelivered())) {
+            counterService.increment(redeliveredName);
+        }
+        counterService.increment(inFlightName);
+        try {
+            delegate.onMessage(message);
+        } finally {
+            counterService.decrement(inFlightName);
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package listener;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+public class BatchFragmentsTest extends Assert {
+
+    private final BatchFragments fragments = new BatchFragments();
+
+    @Test
+    public void numbersTheMessagesSharingTheProperties() {
+        MessageProperties batch = new MessageProperties();
+        assertEquals(0, fragments.fragment(message(batch)));
+        assertEquals(1, fragments.fragment(message(batch)));
+        assertEquals(2, fragments.fragment(message(batch)));
+        // a redelivered batch comes with new properties
+        MessageProperties redelivered = new MessageProperties();
+        assertEquals(0, fragments.fragment(message(redelivered)));
+        assertEquals(0, fragments.fragment(message(new MessageProperties())));
+    }
+
+    @Test
+    public void keepsTheNumberOfAMessageHandedOverAgain() {
+        MessageProperties batch = new MessageProperties();
+        fragments.fragment(message(batch));
+        Message second = message(batch);
+        assertEquals(1, fragments.fragment(second));
+        assertEquals(1, fragments.fragment(second));
+        assertEquals(2, fragments.fragment(message(batch)));
+    }
+
+    @Test
+    public void readsThePositionOfARepublishedMessage() {
+        MessageProperties republished = new MessageProperties();
+        republished.setHeader(BatchFragments.BATCH_FRAGMENT, 3);
+        assertEquals(3, fragments.fragment(message(republished)));
+    }
+
+    @Test
+    public void numbersEachThreadApart() throws InterruptedException {
+        final MessageProperties batch = new MessageProperties();
+        fragments.fragment(message(batch));
+        final int[] other = new int[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                other[0] = fragments.fragment(message(batch));
+            }
+        });
+        thread.start();
+        thread.join();
+        assertEquals(0, other[0]);
+        assertEquals(1, fragments.fragment(message(batch)));
+    }
+
+    private static Message message(MessageProperties properties) {
+        return new Message(new byte[] { 1 }, properties);
+    }
+}
@@ -0,0 +1,147 @@
+package partition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A consistent hash ring: every node is placed on the ring at <code>virtualNodes</code> points, the hashes of
+ * <code>node#0</code>, <code>node#1</code>..., and a key belongs to the node of the first point at or after
+ * the hash of the key, wrapping around. Adding or removing one of <code>n</code> nodes moves about
+ * <code>1/n</code> of the keys, all of them to or from that node, and the virtual nodes spread every node
+ * over the ring so they get about the same share.
+ * <p>
+ * Immutable: a ring with other nodes is a new ring. The points are kept in a sorted array, a lookup is a
+ * binary search. The hash is the 32-bit Murmur3 of the UTF-16 code units of the string, the same on every JVM,
+ * so every producer puts a key on the same node.
+ */
+public final class ConsistentHashRing<T> {
+
+    private final int[] points;
+
+    private final Object[] nodes;
+
+    /**
+     * @param nodes the nodes, their <code>toString</code> places them on the ring
+     * @param virtualNodes points of each node on the ring, a hundred or more for an even spread
+     */
+    public ConsistentHashRing(Collection<? extends T> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A ring needs at least one node");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Invalid virtual nodes: " + virtualNodes);
+        }
+        List<Point> ring = new ArrayList<Point>(nodes.size() * virtualNodes);
+        for (T node : nodes) {
+            String name = node.toString();
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.add(new Point(hash(name + '#' + i), name, node));
+            }
+        }
+        // by name on the same hash, so every process builds the same ring from the same nodes
+        Collections.sort(ring, new Comparator<Point>() {
+            @Override
+            public int compare(Point a, Point b) {
+                int order = Integer.compare(a.hash, b.hash);
+                return order != 0 ? order : a.name.compareTo(b.name);
+            }
+        });
+        this.points = new int[ring.size()];
+        this.nodes = new Object[ring.size()];
+        for (int i = 0; i < ring.size(); i++) {
+            points[i] = ring.get(i).hash;
+            this.nodes[i] = ring.get(i).node;
+        }
+    }
+
+    /**
+     * @return the node of the key
+     */
+    public T node(CharSequence key) {
+        return nodeAt(indexOf(hash(key)));
+    }
+
+    /**
+     * @return the index of the first point at or after the hash, 0 past the last one
+     */
+    public int indexOf(int hash) {
+        int low = 0;
+        int high = points.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (points[middle] < hash) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low == points.length ? 0 : low;
+    }
+
+    /**
+     * @return the node of the point, the ring goes on at <code>(index + 1) % size()</code>
+     */
+    @SuppressWarnings("unchecked")
+    public T nodeAt(int index) {
+        return (T) nodes[index];
+    }
+
+    /**
+     * @return the points on the ring, nodes times virtual nodes
+     */
+    public int size() {
+        return points.length;
+    }
+
+    /**
+     * 32-bit Murmur3 (seed 0) of the UTF-16 code units of the string, two per block.
+     */
+    public static int hash(CharSequence key) {
+        int length = key.length();
+        int h = 0;
+        int i = 0;
+        for (; i + 1 < length; i += 2) {
+            h = mixH(h, mixK(key.charAt(i) | (key.charAt(i + 1) << 16)));
+        }
+        if (i < length) {
+            h ^= mixK(key.charAt(i));
+        }
+        h ^= length * 2;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int mixK(int k) {
+        k *= 0xcc9e2d51;
+        k = Integer.rotateLeft(k, 15);
+        return k * 0x1b873593;
+    }
+
+    private static int mixH(int h, int k) {
+        h ^= k;
+        h = Integer.rotateLeft(h, 13);
+        return h * 5 + 0xe6546b64;
+    }
+
+    private static final class Point {
+
+        final int hash;
+
+        final String name;
+
+        final Object node;
+
+        Point(int hash, String name, Object node) {
+            this.hash = hash;
+            this.name = name;
+            this.node = node;
+        }
+    }
+}
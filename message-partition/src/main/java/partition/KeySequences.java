@@ -0,0 +1,60 @@
+package partition;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Checks the order of the messages of each key: the producer numbers the messages of a key from 0 and a
+ * consumer that gets a lower number than the last one of the key got them out of order. The same number
+ * again is a redelivery, a higher one may follow messages the previous owner of the partition processed.
+ * <p>
+ * Keeps the last number of the <code>maxKeys</code> keys seen last: a key forgotten is checked again from its
+ * next message. Every call takes the same lock, meant for tests and benchmarks. Thread-safe.
+ */
+public final class KeySequences {
+
+    private final Map<String, Long> last;
+
+    private long outOfOrder;
+
+    public KeySequences(final int maxKeys) {
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("maxKeys must be positive: " + maxKeys);
+        }
+        this.last = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxKeys;
+            }
+        };
+    }
+
+    /**
+     * @return false if the message came after a later one of its key
+     */
+    public synchronized boolean accept(String key, long sequence) {
+        Long seen = last.get(key);
+        if (seen != null && sequence < seen) {
+            outOfOrder++;
+            return false;
+        }
+        if (seen == null || sequence > seen) {
+            last.put(key, sequence);
+        }
+        return true;
+    }
+
+    /**
+     * @return the messages that came after a later one of their key
+     */
+    public synchronized long getOutOfOrder() {
+        return outOfOrder;
+    }
+
+    public synchronized int getKeys() {
+        return last.size();
+    }
+}
@@ -0,0 +1,74 @@
+package partition;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The members of a consumer group as one member sees them: itself, plus every member heard from in the last
+ * <code>timeoutMillis</code>. Members announce themselves with heartbeats and leave with a last message; one
+ * that stops without it is dropped once its heartbeats are missing for the timeout. Thread-safe.
+ */
+public final class Membership {
+
+    private final String self;
+
+    private final long timeoutMillis;
+
+    private final Map<String, Long> lastSeen = new HashMap<String, Long>();
+
+    public Membership(String self, long timeoutMillis) {
+        this.self = self;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * A heartbeat of the member.
+     *
+     * @return true if the member just joined
+     */
+    public synchronized boolean seen(String member, long now) {
+        if (self.equals(member)) {
+            return false;
+        }
+        return lastSeen.put(member, now) == null;
+    }
+
+    /**
+     * @return true if the member was in the group
+     */
+    public synchronized boolean left(String member) {
+        return lastSeen.remove(member) != null;
+    }
+
+    /**
+     * Drops the members not heard from in the timeout.
+     *
+     * @return true if any was dropped
+     */
+    public synchronized boolean expire(long now) {
+        boolean expired = false;
+        for (Iterator<Long> seen = lastSeen.values().iterator(); seen.hasNext();) {
+            if (now - seen.next() > timeoutMillis) {
+                seen.remove();
+                expired = true;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @return the members, this one included, in order
+     */
+    public synchronized SortedSet<String> members() {
+        SortedSet<String> members = new TreeSet<String>(lastSeen.keySet());
+        members.add(self);
+        return members;
+    }
+
+    public String getSelf() {
+        return self;
+    }
+}
@@ -0,0 +1,80 @@
+package partition;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Which member of a consumer group owns each partition: every partition is placed on a
+ * {@link ConsistentHashRing} of the members and goes to the first member after it on the ring that owns fewer
+ * than <code>ceil(partitions / members)</code> partitions (consistent hashing with bounded loads). The loads
+ * stay even however few the partitions, and a member joining or leaving moves few partitions besides its own.
+ * <p>
+ * The assignment depends only on the members and the partitions, so every member computes the same one from
+ * the same membership without asking the others.
+ */
+public final class PartitionAssignment {
+
+    private final List<String> members;
+
+    private final int[] owners;
+
+    private PartitionAssignment(List<String> members, int[] owners) {
+        this.members = members;
+        this.owners = owners;
+    }
+
+    /**
+     * @param members the members of the group, at least one
+     * @param virtualNodes points of each member on the ring
+     */
+    public static PartitionAssignment of(Collection<String> members, int partitions, int virtualNodes) {
+        List<String> sorted = new ArrayList<String>(new TreeSet<String>(members));
+        ConsistentHashRing<String> ring = new ConsistentHashRing<String>(sorted, virtualNodes);
+        Map<String, Integer> indexes = new HashMap<String, Integer>();
+        for (int i = 0; i < sorted.size(); i++) {
+            indexes.put(sorted.get(i), i);
+        }
+        int capacity = (partitions + sorted.size() - 1) / sorted.size();
+        int[] loads = new int[sorted.size()];
+        int[] owners = new int[partitions];
+        for (int partition = 0; partition < partitions; partition++) {
+            int point = ring.indexOf(ConsistentHashRing.hash("partition-" + partition));
+            int owner = indexes.get(ring.nodeAt(point));
+            // the members owning capacity partitions are full, the total capacity covers every partition
+            while (loads[owner] >= capacity) {
+                point = (point + 1) % ring.size();
+                owner = indexes.get(ring.nodeAt(point));
+            }
+            loads[owner]++;
+            owners[partition] = owner;
+        }
+        return new PartitionAssignment(sorted, owners);
+    }
+
+    /**
+     * @return the partitions of the member, none if it is not in the group
+     */
+    public BitSet owned(String member) {
+        BitSet owned = new BitSet(owners.length);
+        int index = members.indexOf(member);
+        for (int partition = 0; partition < owners.length; partition++) {
+            if (owners[partition] == index) {
+                owned.set(partition);
+            }
+        }
+        return owned;
+    }
+
+    public String owner(int partition) {
+        return members.get(owners[partition]);
+    }
+
+    public int getPartitions() {
+        return owners.length;
+    }
+}
@@ -0,0 +1,67 @@
+package partition;
+
+/**
+ * The queues and exchanges of a partitioned channel, all named after its queue:
+ * <ul>
+ * <li><code>&lt;queue&gt;.p&lt;n&gt;</code>: the queue of partition <code>n</code>, bound to the exchange of the
+ * channel with its own name as routing key. The producers send each message there for the partition of its
+ * key, see {@link Partitioner}</li>
+ * <li><code>&lt;queue&gt;.members</code>: fanout exchange of the heartbeats of the consumers, each consumer binds
+ * a queue of its own to it</li>
+ * </ul>
+ * Every producer and consumer of the channel must use the same number of partitions.
+ */
+public final class PartitionTopology {
+
+    /**
+     * Header with the key of a message, which decides its partition.
+     */
+    public static final String PARTITION_KEY = "partitionKey";
+
+    /**
+     * Header with the number of a message among the messages of its key, from 0, see {@link KeySequences}.
+     */
+    public static final String KEY_SEQUENCE = "keySequence";
+
+    private final String exchange;
+
+    private final String queue;
+
+    private final int partitions;
+
+    /**
+     * @param exchange the exchange the producers send to, a direct or topic exchange
+     * @param queue the name of the channel
+     */
+    public PartitionTopology(String exchange, String queue, int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("Invalid partitions: " + partitions);
+        }
+        this.exchange = exchange;
+        this.queue = queue;
+        this.partitions = partitions;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public String getQueue() {
+        return queue;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * @return the name of the queue of the partition, also its routing key on the exchange
+     */
+    public String partitionQueue(int partition) {
+        return queue + ".p" + partition;
+    }
+
+    public String getMembersExchange() {
+        return queue + ".members";
+    }
+}
@@ -0,0 +1,43 @@
+package partition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Puts each message key on one of <code>partitions</code> partitions through a {@link ConsistentHashRing}:
+ * all the messages of a key go to the same partition, so one consumer gets them in the order they were sent.
+ * Changing the number of partitions from <code>n</code> to <code>n + 1</code> moves about
+ * <code>1/(n + 1)</code> of the keys instead of nearly all of them with <code>hash % n</code>; a key that
+ * moves may still have messages in its old partition, so change it with the consumers drained.
+ * <p>
+ * Every producer of a channel must use the same partitions and virtual nodes. Thread-safe.
+ */
+public final class Partitioner {
+
+    private final int partitions;
+
+    private final ConsistentHashRing<Integer> ring;
+
+    public Partitioner(int partitions, int virtualNodes) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("Invalid partitions: " + partitions);
+        }
+        List<Integer> nodes = new ArrayList<Integer>(partitions);
+        for (int partition = 0; partition < partitions; partition++) {
+            nodes.add(partition);
+        }
+        this.partitions = partitions;
+        this.ring = new ConsistentHashRing<Integer>(nodes, virtualNodes);
+    }
+
+    /**
+     * @return the partition of the key, from 0 to <code>partitions - 1</code>
+     */
+    public int partition(CharSequence key) {
+        return ring.node(key);
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+}
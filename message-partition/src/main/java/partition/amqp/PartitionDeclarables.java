@@ -0,0 +1,35 @@
+package partition.amqp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Binding.DestinationType;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Queue;
+
+import partition.PartitionTopology;
+
+/**
+ * The partition queues, their bindings and the members exchange of a {@link PartitionTopology} for a
+ * RabbitAdmin: returned from a <code>@Bean</code> method, the admin declares them with the other beans and
+ * again after reconnecting. The exchange of the channel is declared by the application, like without
+ * partitions. The partition queues are not durable, like the queue of the channel.
+ */
+public final class PartitionDeclarables {
+
+    private PartitionDeclarables() {
+    }
+
+    public static List<Declarable> of(PartitionTopology topology) {
+        List<Declarable> declarables = new ArrayList<Declarable>();
+        for (int partition = 0; partition < topology.getPartitions(); partition++) {
+            String name = topology.partitionQueue(partition);
+            declarables.add(new Queue(name, false));
+            declarables.add(new Binding(name, DestinationType.QUEUE, topology.getExchange(), name, null));
+        }
+        declarables.add(new FanoutExchange(topology.getMembersExchange(), false, false));
+        return declarables;
+    }
+}
@@ -0,0 +1,507 @@
+package partition.amqp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.aopalliance.aop.Advice;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.support.ConditionalExceptionLogger;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.core.Ordered;
+
+import com.rabbitmq.client.Channel;
+
+import listener.BatchFragments;
+import partition.KeySequences;
+import partition.Membership;
+import partition.PartitionAssignment;
+import partition.PartitionTopology;
+
+/**
+ * One member of the group of consumers of a partitioned channel. Every member owns some of the partitions,
+ * see {@link PartitionAssignment}, and consumes each of them with a container of its own with one exclusive
+ * consumer: the messages of a partition, and so of each key, are processed one at a time in the order they
+ * were sent, and the partitions of the member in parallel. More partitions than members leave room to add
+ * members; a member gets no partition once there are more members than partitions.
+ * <p>
+ * The members find each other through heartbeats on the members exchange, every
+ * <code>heartbeatMillis</code>, see {@link Membership}. When one joins or leaves every member computes the
+ * new assignment and stops the containers of the partitions it no longer owns, finishing the message in
+ * progress; the messages they had not acknowledged go back to their queue, in order. It starts the containers
+ * of its new partitions once their queue has no consumer, checked every heartbeat from one heartbeat later.
+ * Their consumer is exclusive: if the previous owner still consumes it is refused and tried again every
+ * heartbeat, so a partition never has two consumers even while the members disagree. Some brokers, Qpid
+ * among them, close the whole connection on that refusal; the heartbeat queue is exclusive to the connection
+ * and is declared again on every new one. A member that stops without leaving keeps its partitions until
+ * <code>memberTimeoutMillis</code> without heartbeats.
+ * <p>
+ * A starting member waits one heartbeat to hear the others before it computes its partitions. As a bean it
+ * stops when its context closes, before the connection factory refuses the last message.
+ */
+public class PartitionedConsumer implements MessageListener, ApplicationListener<ContextClosedEvent>, Ordered {
+
+    private static final Log logger = LogFactory.getLog(PartitionedConsumer.class);
+
+    // header of the heartbeats, absent on a heartbeat, "leave" on the last message of a member
+    private static final String MEMBER_EVENT = "memberEvent";
+
+    private final ConnectionFactory connectionFactory;
+
+    private final PartitionTopology topology;
+
+    private final MessageListener listener;
+
+    private final Membership membership;
+
+
+    private final Map<Integer, SimpleMessageListenerContainer> containers = new HashMap<Integer, SimpleMessageListenerContainer>();
+
+    // the partitions of the last assignment, started one heartbeat after they were assigned
+    private BitSet assigned = new BitSet();
+
+    private final ConnectionListener declaringHeartbeats = new ConnectionListener() {
+        @Override
+        public void onCreate(Connection connection) {
+            declareHeartbeats(connection);
+        }
+
+        @Override
+        public void onClose(Connection connection) {
+        }
+    };
+
+    private int virtualNodes = 160;
+
+    private long heartbeatMillis = 1000;
+
+    private int prefetch = 250;
+
+    private int batchAckSize = 1;
+
+    private Advice[] adviceChain;
+
+    // null unless the order is checked
+    private KeySequences sequences;
+
+    private MessagePostProcessor[] afterReceivePostProcessors;
+
+    private RabbitAdmin admin;
+
+    private RabbitTemplate rabbitTemplate;
+
+    private SimpleMessageListenerContainer membersContainer;
+
+    private ScheduledExecutorService scheduler;
+
+    private boolean running;
+
+    // false until the first assignment, the heartbeats heard before only fill the membership
+    private boolean assigning;
+
+    /**
+     * @param listener processes the messages of every partition, called by one thread per partition
+     * @param member the name of this member, unique in the group
+     * @param memberTimeoutMillis a member not heard from for this long has left, several heartbeats
+     */
+    public PartitionedConsumer(ConnectionFactory connectionFactory, PartitionTopology topology,
+            MessageListener listener, String member, long memberTimeoutMillis) {
+        this.connectionFactory = connectionFactory;
+        this.topology = topology;
+        this.listener = listener;
+        this.membership = new Membership(member, memberTimeoutMillis);
+    }
+
+    public void setVirtualNodes(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    public void setHeartbeatMillis(long heartbeatMillis) {
+        this.heartbeatMillis = heartbeatMillis;
+    }
+
+    /**
+     * Messages the broker sends to the consumer of a partition before they are acknowledged.
+     */
+    public void setPrefetch(int prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Messages acknowledged at once, the ones of an incomplete batch are processed again by the next owner.
+     */
+    public void setBatchAckSize(int batchAckSize) {
+        this.batchAckSize = batchAckSize;
+    }
+
+    /**
+     * The advice chain of the container of every partition. A retry must hold the partition while it waits, as
+     * <code>retry.amqp.InPlaceRetryInterceptor</code> does, or the retried message comes after the later ones
+     * of its key.
+     */
+    public void setAdviceChain(Advice... adviceChain) {
+        this.adviceChain = adviceChain;
+    }
+
+    /**
+     * Counts the messages that come after a later one of their key, among the last <code>maxKeys</code> keys,
+     * see {@link #getOutOfOrder()}. Off by default: for tests and benchmarks, every message of every partition
+     * takes the same lock.
+     */
+    public void setOrderCheckKeys(int maxKeys) {
+        this.sequences = new KeySequences(maxKeys);
+    }
+
+    public void setAfterReceivePostProcessors(MessagePostProcessor... afterReceivePostProcessors) {
+        this.afterReceivePostProcessors = afterReceivePostProcessors;
+    }
+
+    /**
+     * Declares the partition queues, joins the group and takes its partitions after two heartbeats. The
+     * exchange of the channel must exist.
+     */
+    public synchronized void start() {
+        admin = new RabbitAdmin(connectionFactory);
+        for (Declarable declarable : PartitionDeclarables.of(topology)) {
+            if (declarable instanceof Queue) {
+                admin.declareQueue((Queue) declarable);
+            } else if (declarable instanceof Exchange) {
+                admin.declareExchange((Exchange) declarable);
+            } else {
+                admin.declareBinding((Binding) declarable);
+            }
+        }
+        // called at once if the connection is open, else when the members container opens it
+        connectionFactory.addConnectionListener(declaringHeartbeats);
+        rabbitTemplate = new RabbitTemplate(connectionFactory);
+        membersContainer = new SimpleMessageListenerContainer(connectionFactory);
+        membersContainer.setQueueNames(heartbeatQueue());
+        membersContainer.setMissingQueuesFatal(false);
+        membersContainer.setRecoveryInterval(heartbeatMillis);
+        membersContainer.setMessageListener(this);
+        membersContainer.start();
+        running = true;
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "partition-members");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                beat();
+            }
+        }, 0, heartbeatMillis, TimeUnit.MILLISECONDS);
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (PartitionedConsumer.this) {
+                    assigning = true;
+                    rebalance();
+                }
+            }
+        }, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the partitions, finishing the messages in progress, and leaves the group so the others take
+     * them at once.
+     */
+    public void stop() {
+        List<SimpleMessageListenerContainer> stopping;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            stopping = new ArrayList<SimpleMessageListenerContainer>(containers.values());
+            containers.clear();
+        }
+        scheduler.shutdownNow();
+        stopAll(stopping);
+        announce("leave");
+        // not under the lock, the heartbeat in progress may be waiting for it
+        membersContainer.stop();
+        connectionFactory.removeConnectionListener(declaringHeartbeats);
+        if (sequences != null && sequences.getOutOfOrder() > 0) {
+            logger.warn(sequences.getOutOfOrder() + " messages of " + topology.getQueue() + " came out of order");
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(ContextClosedEvent event) {
+        stop();
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    /**
+     * A heartbeat or the last message of a member.
+     */
+    @Override
+    public void onMessage(Message message) {
+        String member = new String(message.getBody(), StandardCharsets.UTF_8);
+        boolean changed = "leave".equals(message.getMessageProperties().getHeaders().get(MEMBER_EVENT))
+                ? membership.left(member) : membership.seen(member, System.currentTimeMillis());
+        if (changed) {
+            rebalance();
+        }
+    }
+
+    /**
+     * @return the partitions this member consumes
+     */
+    public synchronized BitSet getOwned() {
+        BitSet owned = new BitSet(topology.getPartitions());
+        for (Integer partition : containers.keySet()) {
+            owned.set(partition);
+        }
+        return owned;
+    }
+
+    public SortedSet<String> getMembers() {
+        return membership.members();
+    }
+
+    public String getMember() {
+        return membership.getSelf();
+    }
+
+    /**
+     * @return the messages with a {@link PartitionTopology#KEY_SEQUENCE} lower than the last one of their key, 0
+     *         unless the order is checked
+     */
+    public long getOutOfOrder() {
+        return sequences == null ? 0 : sequences.getOutOfOrder();
+    }
+
+    private void beat() {
+        try {
+            announce(null);
+            if (membership.expire(System.currentTimeMillis())) {
+                rebalance();
+            }
+        } catch (RuntimeException e) {
+            // the next beat tries again, an exception would cancel them
+            logger.warn("Heartbeat of " + membership.getSelf() + " failed", e);
+        }
+    }
+
+    private void announce(String event) {
+        MessageProperties properties = new MessageProperties();
+        if (event != null) {
+            properties.setHeader(MEMBER_EVENT, event);
+        }
+        try {
+            rabbitTemplate.send(topology.getMembersExchange(), "",
+                    new Message(membership.getSelf().getBytes(StandardCharsets.UTF_8), properties));
+        } catch (AmqpException | IllegalStateException e) {
+            logger.debug("Failed to send the heartbeat of " + membership.getSelf(), e);
+        }
+    }
+
+    private synchronized void rebalance() {
+        if (!running || !assigning) {
+            return;
+        }
+        SortedSet<String> members = membership.members();
+        BitSet owned = PartitionAssignment.of(members, topology.getPartitions(), virtualNodes)
+                .owned(membership.getSelf());
+        // first the partitions given away, so their new owners can start
+        List<SimpleMessageListenerContainer> givenAway = new ArrayList<SimpleMessageListenerContainer>();
+        for (Integer partition : new ArrayList<Integer>(containers.keySet())) {
+            if (!owned.get(partition)) {
+                givenAway.add(containers.remove(partition));
+            }
+        }
+        stopAll(givenAway);
+        if (owned.equals(assigned)) {
+            return;
+        }
+        assigned = owned;
+        logger.info(membership.getSelf() + " owns partitions " + owned + " of " + topology.getQueue() + ", "
+                + members.size() + " members");
+        // the previous owners heard of the change at the same time, they stop meanwhile
+        scheduleTakeAssigned();
+    }
+
+    private void scheduleTakeAssigned() {
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                takeAssigned();
+            }
+        }, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void takeAssigned() {
+        if (!running) {
+            return;
+        }
+        boolean waiting = false;
+        for (int partition = assigned.nextSetBit(0); partition >= 0; partition = assigned.nextSetBit(partition + 1)) {
+            if (containers.containsKey(partition)) {
+                continue;
+            }
+            // the previous owner still consumes, some brokers would close the connection on the refusal
+            if (hasConsumers(partition)) {
+                waiting = true;
+                continue;
+            }
+            SimpleMessageListenerContainer container = container(partition);
+            containers.put(partition, container);
+            container.start();
+        }
+        if (waiting) {
+            scheduleTakeAssigned();
+        }
+    }
+
+    private boolean hasConsumers(int partition) {
+        try {
+            Properties queue = admin.getQueueProperties(topology.partitionQueue(partition));
+            return queue != null && ((Number) queue.get(RabbitAdmin.QUEUE_CONSUMER_COUNT)).intValue() > 0;
+        } catch (AmqpException e) {
+            logger.debug("Failed to count the consumers of partition " + partition, e);
+            return false;
+        }
+    }
+
+    /**
+     * Stops the containers at the same time, each finishes the messages it already received.
+     */
+    private void stopAll(Collection<SimpleMessageListenerContainer> stopping) {
+        List<Thread> threads = new ArrayList<Thread>();
+        for (final SimpleMessageListenerContainer container : stopping) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    container.stop();
+                }
+            }, "partition-stop");
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private String heartbeatQueue() {
+        return topology.getMembersExchange() + "." + membership.getSelf();
+    }
+
+    private void declareHeartbeats(Connection connection) {
+        Channel channel = connection.createChannel(false);
+        try {
+            channel.exchangeDeclare(topology.getMembersExchange(), "fanout", false, false, null);
+            channel.queueDeclare(heartbeatQueue(), false, true, true, null);
+            channel.queueBind(heartbeatQueue(), topology.getMembersExchange(), "");
+        } catch (IOException e) {
+            // the members container tries again on its next connection
+            logger.warn("Failed to declare the heartbeat queue of " + membership.getSelf(), e);
+        } finally {
+            try {
+                channel.close();
+            } catch (Exception e) {
+                logger.debug("Failed to close the channel", e);
+            }
+        }
+    }
+
+    private SimpleMessageListenerContainer container(int partition) {
+        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer(connectionFactory);
+        container.setQueueNames(topology.partitionQueue(partition));
+        container.setExclusive(true);
+        container.setConcurrentConsumers(1);
+        container.setPrefetchCount(Math.max(prefetch, batchAckSize));
+        container.setTxSize(batchAckSize);
+        // a partition given away stops within a tenth of a heartbeat, before its new owner takes it
+        container.setReceiveTimeout(Math.max(1, heartbeatMillis / 10));
+        // refused while the previous owner still consumes, tried again every heartbeat
+        container.setRecoveryInterval(heartbeatMillis);
+        container.setExclusiveConsumerExceptionLogger(new ConditionalExceptionLogger() {
+            @Override
+            public void log(Log containerLogger, String message, Throwable cause) {
+                containerLogger.debug(message + ": the previous owner still consumes");
+            }
+        });
+        container.setMessageListener(sequences == null ? listener : new OrderCheckingListener());
+        if (adviceChain != null) {
+            container.setAdviceChain(adviceChain);
+        }
+        if (afterReceivePostProcessors != null) {
+            container.setAfterReceivePostProcessors(afterReceivePostProcessors);
+        }
+        container.afterPropertiesSet();
+        return container;
+    }
+
+    /**
+     * Counts the messages out of order, see {@link KeySequences}, and hands all of them to the listener. A
+     * redelivered message is not checked, it may repeat the ones after it that were processed. A message retried
+     * in place comes with its number again.
+     * <p>
+     * A batch of the producer has a single key and the sequence of its first message, the container hands its
+     * messages over one after the other with the same properties: they get the next numbers, see
+     * {@link BatchFragments}.
+     */
+    private class OrderCheckingListener implements MessageListener {
+
+        private final BatchFragments fragments = new BatchFragments();
+
+        @Override
+        public void onMessage(Message message) {
+            MessageProperties properties = message.getMessageProperties();
+            int fragment = fragments.fragment(message);
+            Map<String, Object> headers = properties.getHeaders();
+            Object key = headers.get(PartitionTopology.PARTITION_KEY);
+            Object sequence = headers.get(PartitionTopology.KEY_SEQUENCE);
+            boolean redelivered = Boolean.TRUE.equals(properties.getRedelivered());
+            if (key != null && sequence instanceof Number && !redelivered
+                    && !sequences.accept(key.toString(), ((Number) sequence).longValue() + fragment)) {
+                logger.debug("Message " + sequence + "+" + fragment + " of key " + key + " came out of order");
+            }
+            listener.onMessage(message);
+        }
+    }
+}
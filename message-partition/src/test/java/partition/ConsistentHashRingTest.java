@@ -0,0 +1,157 @@
+package partition;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConsistentHashRingTest extends Assert {
+
+    @Test
+    public void hashesLikeMurmur3OfTheUtf16CodeUnits() {
+        assertEquals(0x2e4ff723, murmur3("The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(0, ConsistentHashRing.hash(""));
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            char[] chars = new char[random.nextInt(20)];
+            for (int c = 0; c < chars.length; c++) {
+                chars[c] = (char) random.nextInt(Character.MAX_VALUE + 1);
+            }
+            // lone surrogates included, the hash takes the code units as they are
+            byte[] units = new byte[chars.length * 2];
+            for (int c = 0; c < chars.length; c++) {
+                units[c * 2] = (byte) chars[c];
+                units[c * 2 + 1] = (byte) (chars[c] >>> 8);
+            }
+            assertEquals(murmur3(units), ConsistentHashRing.hash(new String(chars)));
+        }
+    }
+
+    @Test
+    public void placesTheNodesTheSameWhateverTheirOrder() {
+        List<String> nodes = nodes(8);
+        ConsistentHashRing<String> ring = new ConsistentHashRing<String>(nodes, 100);
+        Collections.shuffle(nodes, new Random(2));
+        ConsistentHashRing<String> shuffled = new ConsistentHashRing<String>(nodes, 100);
+        assertEquals(800, ring.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(ring.node("key-" + i), shuffled.node("key-" + i));
+        }
+    }
+
+    @Test
+    public void movesOnlyTheKeysOfTheNodeAddedOrRemoved() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<String>(nodes(5), 160);
+        ConsistentHashRing<String> added = new ConsistentHashRing<String>(nodes(6), 160);
+        int moved = 0;
+        for (int i = 0; i < 10000; i++) {
+            String key = "key-" + i;
+            if (!ring.node(key).equals(added.node(key))) {
+                assertEquals("node-5", added.node(key));
+                moved++;
+            }
+        }
+        // about a sixth of the keys
+        assertTrue(String.valueOf(moved), moved > 1000 && moved < 2400);
+
+        List<String> nodes = nodes(5);
+        nodes.remove("node-2");
+        ConsistentHashRing<String> removed = new ConsistentHashRing<String>(nodes, 160);
+        for (int i = 0; i < 10000; i++) {
+            String key = "key-" + i;
+            if (!ring.node(key).equals("node-2")) {
+                assertEquals(ring.node(key), removed.node(key));
+            }
+        }
+    }
+
+    @Test
+    public void spreadsTheKeysEvenlyWithVirtualNodes() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<String>(nodes(10), 160);
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < 100000; i++) {
+            String node = ring.node("key-" + i);
+            Integer count = counts.get(node);
+            counts.put(node, count == null ? 1 : count + 1);
+        }
+        assertEquals(10, counts.size());
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            assertTrue(count.toString(), count.getValue() > 7000 && count.getValue() < 13000);
+        }
+    }
+
+    @Test
+    public void wrapsAroundPastTheLastPoint() {
+        ConsistentHashRing<Integer> ring = new ConsistentHashRing<Integer>(Arrays.asList(1, 2, 3), 4);
+        int last = ring.indexOf(Integer.MAX_VALUE);
+        assertTrue(last == 0 || last == ring.size() - 1);
+        assertEquals(0, ring.indexOf(Integer.MIN_VALUE));
+        for (int i = 0; i < 1000; i++) {
+            int index = ring.indexOf(ConsistentHashRing.hash("key-" + i));
+            assertTrue(index >= 0 && index < ring.size());
+            assertEquals(ring.nodeAt(index), ring.node("key-" + i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesARingWithoutNodes() {
+        new ConsistentHashRing<String>(Collections.<String> emptyList(), 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesANodeWithoutPoints() {
+        new ConsistentHashRing<String>(nodes(2), 0);
+    }
+
+    private static List<String> nodes(int count) {
+        List<String> nodes = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            nodes.add("node-" + i);
+        }
+        return nodes;
+    }
+
+    // the 32-bit Murmur3 of the reference implementation, seed 0, over the bytes
+    private static int murmur3(byte[] data) {
+        int h = 0;
+        int blocks = data.length / 4;
+        for (int i = 0; i < blocks; i++) {
+            int k = (data[i * 4] & 0xff) | (data[i * 4 + 1] & 0xff) << 8 | (data[i * 4 + 2] & 0xff) << 16
+                    | (data[i * 4 + 3] & 0xff) << 24;
+            h ^= mixK(k);
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+        int k = 0;
+        switch (data.length & 3) {
+        case 3:
+            k ^= (data[blocks * 4 + 2] & 0xff) << 16;
+        case 2:
+            k ^= (data[blocks * 4 + 1] & 0xff) << 8;
+        case 1:
+            k ^= data[blocks * 4] & 0xff;
+            h ^= mixK(k);
+        default:
+        }
+        h ^= data.length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int mixK(int k) {
+        k *= 0xcc9e2d51;
+        k = Integer.rotateLeft(k, 15);
+        return k * 0x1b873593;
+    }
+}
@@ -0,0 +1,44 @@
+package partition;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KeySequencesTest extends Assert {
+
+    @Test
+    public void countsTheMessagesAfterALaterOneOfTheirKey() {
+        KeySequences sequences = new KeySequences(10);
+        assertTrue(sequences.accept("a", 0));
+        assertTrue(sequences.accept("b", 5));
+        assertTrue(sequences.accept("a", 2));
+        // a redelivery
+        assertTrue(sequences.accept("a", 2));
+        assertFalse(sequences.accept("a", 1));
+        assertFalse(sequences.accept("b", 4));
+        assertTrue(sequences.accept("a", 3));
+        assertEquals(2, sequences.getOutOfOrder());
+        assertEquals(2, sequences.getKeys());
+    }
+
+    @Test
+    public void forgetsTheKeysSeenLeastRecently() {
+        KeySequences sequences = new KeySequences(2);
+        sequences.accept("a", 5);
+        sequences.accept("b", 5);
+        sequences.accept("a", 6);
+        sequences.accept("c", 5);
+        assertEquals(2, sequences.getKeys());
+        // b was forgotten, a was kept
+        assertTrue(sequences.accept("b", 0));
+        assertFalse(sequences.accept("c", 0));
+        for (int i = 0; i < 1000; i++) {
+            sequences.accept("key-" + i, 0);
+        }
+        assertEquals(2, sequences.getKeys());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesNoKeys() {
+        new KeySequences(0);
+    }
+}
@@ -0,0 +1,101 @@
+package partition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PartitionAssignmentTest extends Assert {
+
+    @Test
+    public void givesEveryPartitionToOneMemberWithEvenLoads() {
+        for (int members = 1; members <= 10; members++) {
+            for (int partitions : new int[] { 1, 3, 8, 31, 64 }) {
+                PartitionAssignment assignment = PartitionAssignment.of(members(members), partitions, 160);
+                assertEquals(partitions, assignment.getPartitions());
+                int capacity = (partitions + members - 1) / members;
+                BitSet all = new BitSet();
+                for (String member : members(members)) {
+                    BitSet owned = assignment.owned(member);
+                    assertTrue(members + " members, " + partitions + " partitions", owned.cardinality() <= capacity);
+                    assertFalse(all.intersects(owned));
+                    all.or(owned);
+                    for (int partition = owned.nextSetBit(0); partition >= 0; partition = owned.nextSetBit(partition + 1)) {
+                        assertEquals(member, assignment.owner(partition));
+                    }
+                }
+                assertEquals(partitions, all.cardinality());
+            }
+        }
+    }
+
+    @Test
+    public void isTheSameWhateverTheOrderOfTheMembers() {
+        List<String> members = members(6);
+        PartitionAssignment assignment = PartitionAssignment.of(members, 32, 160);
+        Collections.shuffle(members, new Random(1));
+        // a member heard twice counts once
+        members.add(members.get(0));
+        PartitionAssignment shuffled = PartitionAssignment.of(members, 32, 160);
+        for (int partition = 0; partition < 32; partition++) {
+            assertEquals(assignment.owner(partition), shuffled.owner(partition));
+        }
+    }
+
+    @Test
+    public void movesFewPartitionsWhenAMemberJoinsOrLeaves() {
+        PartitionAssignment before = PartitionAssignment.of(members(4), 64, 160);
+        PartitionAssignment joined = PartitionAssignment.of(members(5), 64, 160);
+        int moved = 0;
+        for (int partition = 0; partition < 64; partition++) {
+            if (!before.owner(partition).equals(joined.owner(partition))) {
+                moved++;
+            }
+        }
+        // the new member takes 12 or 13, the bounded loads move a few more among the others
+        assertTrue(String.valueOf(moved), moved >= 12 && moved <= 24);
+
+        List<String> left = members(5);
+        left.remove("member-1");
+        PartitionAssignment after = PartitionAssignment.of(left, 64, 160);
+        moved = 0;
+        for (int partition = 0; partition < 64; partition++) {
+            if (!joined.owner(partition).equals(after.owner(partition))) {
+                moved++;
+            }
+        }
+        assertTrue(String.valueOf(moved), moved >= joined.owned("member-1").cardinality() && moved <= 24);
+    }
+
+    @Test
+    public void leavesTheMembersPastThePartitionsWithout() {
+        PartitionAssignment assignment = PartitionAssignment.of(members(5), 3, 160);
+        int owning = 0;
+        for (String member : members(5)) {
+            int owned = assignment.owned(member).cardinality();
+            assertTrue(owned <= 1);
+            owning += owned;
+        }
+        assertEquals(3, owning);
+    }
+
+    @Test
+    public void givesNothingToAStranger() {
+        PartitionAssignment assignment = PartitionAssignment.of(Arrays.asList("a", "b"), 8, 160);
+        assertTrue(assignment.owned("c").isEmpty());
+        assertEquals(8, PartitionAssignment.of(Arrays.asList("a"), 8, 160).owned("a").cardinality());
+    }
+
+    private static List<String> members(int count) {
+        List<String> members = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            members.add("member-" + i);
+        }
+        return members;
+    }
+}
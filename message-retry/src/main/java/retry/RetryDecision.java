@@ -0,0 +1,112 @@
+package retry;
+
+/**
+ * Where a failed message goes next: the exchange and routing key to publish it to, with the headers it takes.
+ */
+public final class RetryDecision {
+
+    private final int retry;
+
+    private final int tier;
+
+    private final String exchange;
+
+    private final String routingKey;
+
+    private final String expiration;
+
+    private RetryDecision(int retry, int tier, String exchange, String routingKey, String expiration) {
+        this.retry = retry;
+        this.tier = tier;
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.expiration = expiration;
+    }
+
+    /**
+     * Decides for a message that failed with <code>failure</code> after <code>retries</code> retries.
+     *
+     * @param retries the {@link RetryTopology#RETRY_COUNT} header of the message, null before the first retry
+     */
+    public static RetryDecision of(RetryTopology topology, Object retries, Throwable failure) {
+        int done = retries instanceof Number ? ((Number) retries).intValue()
+                : retries != null ? parse(retries.toString()) : 0;
+        RetryPolicy policy = topology.getPolicy();
+        int tier = policy.isRetryable(failure) ? policy.tierOf(done + 1) : 0;
+        if (tier == 0) {
+            return new RetryDecision(done, 0, topology.getDeadLetterExchange(), topology.getQueue(), null);
+        }
+        return new RetryDecision(done + 1, tier, topology.getRetryExchange(), topology.tierQueue(tier),
+                Long.toString(policy.delayOfTier(tier)));
+    }
+
+    /**
+     * Tells the listener, once the message was published where the decision sends it.
+     *
+     * @param listener null for none
+     */
+    public void report(RetryListener listener, Throwable failure) {
+        if (listener == null) {
+            return;
+        }
+        if (isRetry()) {
+            listener.retried(retry, tier, failure);
+        } else {
+            listener.deadLettered(retry, failure);
+        }
+    }
+
+    /**
+     * @return false when the message is dead-lettered
+     */
+    public boolean isRetry() {
+        return tier > 0;
+    }
+
+    /**
+     * @return the new {@link RetryTopology#RETRY_COUNT} of a retried message, the retries done of a
+     *         dead-lettered one
+     */
+    public int getRetry() {
+        return retry;
+    }
+
+    public int getTier() {
+        return tier;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    /**
+     * @return the per-message TTL of a retried message in milliseconds, as AMQP wants it; null when dead-lettered
+     */
+    public String getExpiration() {
+        return expiration;
+    }
+
+    /**
+     * @return the {@link RetryTopology#RETRY_FAILURE} header of a dead-lettered message
+     */
+    public static String describe(Throwable failure) {
+        Throwable cause = failure;
+        // the listener and route exceptions wrap the one that tells what happened
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause.getClass().getName() + ": " + cause.getMessage();
+    }
+
+    private static int parse(String retries) {
+        try {
+            return Integer.parseInt(retries);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
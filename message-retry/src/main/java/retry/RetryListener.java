@@ -0,0 +1,19 @@
+package retry;
+
+/**
+ * Told of each message sent to a retry tier or dead-lettered, to count them. Called on the consumer thread,
+ * it must be quick.
+ */
+public interface RetryListener {
+
+    /**
+     * @param retry 1 for the first retry of the message
+     */
+    void retried(int retry, int tier, Throwable failure);
+
+    /**
+     * @param retries retries of the message before it was dead-lettered
+     */
+    void deadLettered(int retries, Throwable failure);
+
+}
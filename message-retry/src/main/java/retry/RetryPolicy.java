@@ -0,0 +1,108 @@
+package retry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * How often and after how long a failed message is retried. Retry <code>n</code> waits
+ * <code>initialDelayMillis * multiplier^(n - 1)</code>, at most <code>maxDelayMillis</code>; each distinct delay
+ * is a tier, a delay queue of its own, so the retries past the cap share the last tier. A message that failed
+ * <code>maxRetries</code> retries, or with one of the fatal exceptions anywhere in its causes, is not retried.
+ * Immutable.
+ */
+public final class RetryPolicy {
+
+    private final long[] tierDelays;
+
+    private final int maxRetries;
+
+    private final List<Class<? extends Throwable>> fatal;
+
+    /**
+     * @param maxRetries retries of a message before it is dead-lettered, 0 for none
+     */
+    public RetryPolicy(long initialDelayMillis, double multiplier, long maxDelayMillis, int maxRetries) {
+        this(tierDelays(initialDelayMillis, multiplier, maxDelayMillis, maxRetries), maxRetries,
+                Collections.<Class<? extends Throwable>>emptyList());
+    }
+
+    private RetryPolicy(long[] tierDelays, int maxRetries, List<Class<? extends Throwable>> fatal) {
+        this.tierDelays = tierDelays;
+        this.maxRetries = maxRetries;
+        this.fatal = fatal;
+    }
+
+    /**
+     * @return this policy, dead-lettering at once the messages that failed with <code>type</code>
+     */
+    public RetryPolicy withFatal(Class<? extends Throwable> type) {
+        List<Class<? extends Throwable>> types = new ArrayList<Class<? extends Throwable>>(fatal);
+        types.add(type);
+        return new RetryPolicy(tierDelays, maxRetries, Collections.unmodifiableList(types));
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public int getTiers() {
+        return tierDelays.length;
+    }
+
+    /**
+     * @param tier from 1 to {@link #getTiers()}
+     */
+    public long delayOfTier(int tier) {
+        return tierDelays[tier - 1];
+    }
+
+    /**
+     * @param retry 1 for the first retry of a message
+     * @return the tier the retry waits in, 0 if the message is not retried any more
+     */
+    public int tierOf(int retry) {
+        if (retry < 1 || retry > maxRetries) {
+            return 0;
+        }
+        return Math.min(retry, tierDelays.length);
+    }
+
+    /**
+     * @return whether the failure can be retried, none of its causes is fatal
+     */
+    public boolean isRetryable(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            for (Class<? extends Throwable> type : fatal) {
+                if (type.isInstance(cause)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static long[] tierDelays(long initialDelayMillis, double multiplier, long maxDelayMillis,
+            int maxRetries) {
+        if (initialDelayMillis < 1 || multiplier < 1 || maxDelayMillis < initialDelayMillis || maxRetries < 0) {
+            throw new IllegalArgumentException("Invalid retry policy: initial delay " + initialDelayMillis
+                    + " ms, multiplier " + multiplier + ", max delay " + maxDelayMillis + " ms, " + maxRetries
+                    + " retries");
+        }
+        List<Long> delays = new ArrayList<Long>();
+        double delay = initialDelayMillis;
+        while (delays.size() < maxRetries) {
+            long tierDelay = (long) Math.min(delay, maxDelayMillis);
+            if (!delays.isEmpty() && delays.get(delays.size() - 1) == tierDelay) {
+                break;
+            }
+            delays.add(tierDelay);
+            delay *= multiplier;
+        }
+        long[] result = new long[delays.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = delays.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,97 @@
+package retry;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.rabbitmq.client.Channel;
+
+/**
+ * The exchanges and queues retrying the messages of a queue, all named after it:
+ * <ul>
+ * <li><code>&lt;queue&gt;.retry</code>: direct exchange taking the failed messages, routed by tier</li>
+ * <li><code>&lt;queue&gt;.retry.&lt;tier&gt;</code>: delay queue of each tier, without consumers. Its messages
+ * expire after the delay of the tier and are dead-lettered through the default exchange straight back to
+ * <code>&lt;queue&gt;</code>, not to the other queues bound like it</li>
+ * <li><code>&lt;queue&gt;.dlx</code>: fanout exchange taking the messages that are not retried any more</li>
+ * <li><code>&lt;queue&gt;.dead</code>: durable queue keeping them until someone looks at them</li>
+ * </ul>
+ * Each message carries its delay as its own expiration, which is also the TTL of its tier queue. The messages
+ * of a tier all wait as long, so the ones at the head of the queue always expire first and none waits
+ * behind a longer one. Every consumer of the queue must use the same policy: the broker refuses to declare
+ * a tier queue again with another TTL.
+ */
+public final class RetryTopology {
+
+    /**
+     * Header with the retries of a message so far, absent before the first one.
+     */
+    public static final String RETRY_COUNT = "retryCount";
+
+    /**
+     * Header of a dead-lettered message with the last failure, <code>class: message</code>.
+     */
+    public static final String RETRY_FAILURE = "retryFailure";
+
+    private final String queue;
+
+    private final RetryPolicy policy;
+
+    public RetryTopology(String queue, RetryPolicy policy) {
+        this.queue = queue;
+        this.policy = policy;
+    }
+
+    public String getQueue() {
+        return queue;
+    }
+
+    public RetryPolicy getPolicy() {
+        return policy;
+    }
+
+    public String getRetryExchange() {
+        return queue + ".retry";
+    }
+
+    /**
+     * @return the name of the delay queue of the tier, also its routing key on the retry exchange
+     */
+    public String tierQueue(int tier) {
+        return queue + ".retry." + tier;
+    }
+
+    public String getDeadLetterExchange() {
+        return queue + ".dlx";
+    }
+
+    public String getDeadLetterQueue() {
+        return queue + ".dead";
+    }
+
+    /**
+     * @return the arguments of the delay queue of the tier
+     */
+    public Map<String, Object> tierArguments(int tier) {
+        Map<String, Object> arguments = new HashMap<String, Object>();
+        arguments.put("x-message-ttl", policy.delayOfTier(tier));
+        arguments.put("x-dead-letter-exchange", "");
+        arguments.put("x-dead-letter-routing-key", queue);
+        return arguments;
+    }
+
+    /**
+     * Declares the exchanges and queues with the RabbitMQ client, for the applications without a
+     * RabbitAdmin. Declaring them again is harmless.
+     */
+    public void declare(Channel channel) throws IOException {
+        channel.exchangeDeclare(getRetryExchange(), "direct", true);
+        for (int tier = 1; tier <= policy.getTiers(); tier++) {
+            channel.queueDeclare(tierQueue(tier), true, false, false, tierArguments(tier));
+            channel.queueBind(tierQueue(tier), getRetryExchange(), tierQueue(tier));
+        }
+        channel.exchangeDeclare(getDeadLetterExchange(), "fanout", true);
+        channel.queueDeclare(getDeadLetterQueue(), true, false, false, null);
+        channel.queueBind(getDeadLetterQueue(), getDeadLetterExchange(), "");
+    }
+}
@@ -0,0 +1,95 @@
+package retry.amqp;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.amqp.core.Message;
+import org.springframework.aop.ProxyMethodInvocation;
+
+import com.rabbitmq.client.Channel;
+
+import listener.BatchFragments;
+import retry.RetryDecision;
+import retry.RetryListener;
+import retry.RetryTopology;
+
+/**
+ * Spring AOP advice of a listener container retrying a message whose listener throws on the consumer thread
+ * itself, after the delays of the {@link retry.RetryPolicy} of its {@link RetryTopology}, and sending it to
+ * the dead-letter exchange of the topology once it is not retried any more. The advised call then returns and
+ * the container acknowledges the message.
+ * <p>
+ * Unlike the {@link RetryInterceptor} the consumer holds the message while it waits, and gets no other message
+ * of its queue before it was processed or dead-lettered: the order of the queue is kept, at the price of
+ * stopping it for at most the sum of the delays. For a queue with a single consumer whose order matters, such
+ * as a partition. The delay queues of the topology are not used. If the thread is interrupted while it waits,
+ * or the message cannot be dead-lettered, the failure is thrown as before and the message goes back to the
+ * head of its queue.
+ * <p>
+ * <code>container.setAdviceChain(...)</code>, first in the chain: every retry goes through the advices after
+ * it again, an <code>IdempotentReceiverInterceptor</code> forgets the failed message each time.
+ */
+public class InPlaceRetryInterceptor implements MethodInterceptor {
+
+    private final RetryTopology topology;
+
+    private final RetryListener listener;
+
+    private final BatchFragments fragments = new BatchFragments();
+
+    /**
+     * @param listener null for none
+     */
+    public InPlaceRetryInterceptor(RetryTopology topology, RetryListener listener) {
+        this.topology = topology;
+        this.listener = listener;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Channel channel = null;
+        Message message = null;
+        for (Object argument : invocation.getArguments()) {
+            if (argument instanceof Channel) {
+                channel = (Channel) argument;
+            } else if (argument instanceof Message) {
+                message = (Message) argument;
+            }
+        }
+        if (channel == null || message == null) {
+            return invocation.proceed();
+        }
+        int fragment = fragments.fragment(message);
+        Object retries = message.getMessageProperties().getHeaders().get(RetryTopology.RETRY_COUNT);
+        MethodInvocation attempt = invocation;
+        while (true) {
+            try {
+                return attempt.proceed();
+            } catch (Throwable failure) {
+                RetryDecision decision = RetryDecision.of(topology, retries, failure);
+                if (!decision.isRetry()) {
+                    if (!RetryInterceptor.publish(channel, message, fragment, decision, failure)) {
+                        throw failure;
+                    }
+                    decision.report(listener, failure);
+                    return null;
+                }
+                try {
+                    Thread.sleep(topology.getPolicy().delayOfTier(decision.getTier()));
+                } catch (InterruptedException e) {
+                    // stopping: the message goes back to its queue
+                    Thread.currentThread().interrupt();
+                    throw failure;
+                }
+                decision.report(listener, failure);
+                retries = decision.getRetry();
+                // the advices after this one run again
+                attempt = invocation instanceof ProxyMethodInvocation
+                        ? ((ProxyMethodInvocation) invocation).invocableClone() : invocation;
+            }
+        }
+    }
+
+    public RetryTopology getTopology() {
+        return topology;
+    }
+}
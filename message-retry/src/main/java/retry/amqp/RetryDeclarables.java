@@ -0,0 +1,41 @@
+package retry.amqp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Queue;
+
+import retry.RetryTopology;
+
+/**
+ * The exchanges, queues and bindings of a {@link RetryTopology} for a RabbitAdmin: returned from a
+ * <code>@Bean</code> method, the admin declares them with the other beans and again after reconnecting.
+ */
+public final class RetryDeclarables {
+
+    private RetryDeclarables() {
+    }
+
+    public static List<Declarable> of(RetryTopology topology) {
+        List<Declarable> declarables = new ArrayList<Declarable>();
+        DirectExchange retryExchange = new DirectExchange(topology.getRetryExchange());
+        declarables.add(retryExchange);
+        for (int tier = 1; tier <= topology.getPolicy().getTiers(); tier++) {
+            Queue tierQueue = new Queue(topology.tierQueue(tier), true, false, false, topology.tierArguments(tier));
+            declarables.add(tierQueue);
+            declarables.add(BindingBuilder.bind(tierQueue).to(retryExchange).with(topology.tierQueue(tier)));
+        }
+        FanoutExchange deadLetterExchange = new FanoutExchange(topology.getDeadLetterExchange());
+        Queue deadLetterQueue = new Queue(topology.getDeadLetterQueue(), true);
+        declarables.add(deadLetterExchange);
+        declarables.add(deadLetterQueue);
+        Binding binding = BindingBuilder.bind(deadLetterQueue).to(deadLetterExchange);
+        declarables.add(binding);
+        return declarables;
+    }
+}
@@ -0,0 +1,123 @@
+package retry.amqp;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+
+import listener.BatchFragments;
+import retry.RetryDecision;
+import retry.RetryListener;
+import retry.RetryTopology;
+
+/**
+ * Spring AOP advice of a listener container sending the messages whose listener throws to a retry tier of
+ * their {@link RetryTopology}, or to its dead-letter exchange once they are not retried any more, instead of
+ * requeueing them. The message is republished on the channel of the consumer and the advised call returns,
+ * so the container acknowledges it: the consumer thread goes on with the next message at once, the broker
+ * holds the retry until its delay expires. If it cannot be republished the failure is thrown as before.
+ * <br/>
+ * The republished message is the one the listener got, after the post processors of the container, with
+ * a copy of its properties and headers, {@link RetryTopology#RETRY_COUNT} counting the retries. The body of a
+ * decompressed message is republished decompressed. The messages of a de-batched batch share the properties
+ * and the id of the batch: a retried one also gets its position in the batch in
+ * {@link BatchFragments#BATCH_FRAGMENT}, so an idempotent receiver does not take it for the first one.
+ * <br/>
+ * <code>container.setAdviceChain(...)</code>, first in the chain: the advices after it see the failure, an
+ * <code>IdempotentReceiverInterceptor</code> forgets the message so its retry is not a duplicate.
+ */
+public class RetryInterceptor implements MethodInterceptor {
+
+    private static final Log logger = LogFactory.getLog(RetryInterceptor.class);
+
+    private final RetryTopology topology;
+
+    private final RetryListener listener;
+
+    private static final MessagePropertiesConverter converter = new DefaultMessagePropertiesConverter();
+
+    private final BatchFragments fragments = new BatchFragments();
+
+    /**
+     * @param listener null for none
+     */
+    public RetryInterceptor(RetryTopology topology, RetryListener listener) {
+        this.topology = topology;
+        this.listener = listener;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Channel channel = null;
+        Message message = null;
+        for (Object argument : invocation.getArguments()) {
+            if (argument instanceof Channel) {
+                channel = (Channel) argument;
+            } else if (argument instanceof Message) {
+                message = (Message) argument;
+            }
+        }
+        if (channel == null || message == null) {
+            return invocation.proceed();
+        }
+        int fragment = fragments.fragment(message);
+        try {
+            return invocation.proceed();
+        } catch (Throwable failure) {
+            RetryDecision decision = RetryDecision.of(topology,
+                    message.getMessageProperties().getHeaders().get(RetryTopology.RETRY_COUNT), failure);
+            if (!publish(channel, message, fragment, decision, failure)) {
+                throw failure;
+            }
+            decision.report(listener, failure);
+            return null;
+        }
+    }
+
+    /**
+     * Publishes the failed message where the decision sends it, with a copy of its properties and headers.
+     *
+     * @param fragment position of the message in its batch, 0 if it was sent alone
+     * @return false if it could not be published, the failure is to be thrown so the message is requeued
+     */
+    static boolean publish(Channel channel, Message message, int fragment, RetryDecision decision,
+            Throwable failure) {
+        try {
+            // the converter copies the headers, the properties of the message stay as they were
+            AMQP.BasicProperties received = converter.fromMessageProperties(message.getMessageProperties(), "UTF-8");
+            Map<String, Object> headers = new HashMap<String, Object>();
+            if (received.getHeaders() != null) {
+                headers.putAll(received.getHeaders());
+            }
+            headers.put(RetryTopology.RETRY_COUNT, decision.getRetry());
+            if (fragment > 0) {
+                headers.put(BatchFragments.BATCH_FRAGMENT, fragment);
+            }
+            if (!decision.isRetry()) {
+                headers.put(RetryTopology.RETRY_FAILURE, RetryDecision.describe(failure));
+            }
+            AMQP.BasicProperties basicProperties = received.builder().headers(headers)
+                    .expiration(decision.getExpiration()).build();
+            channel.basicPublish(decision.getExchange(), decision.getRoutingKey(), false, basicProperties,
+                    message.getBody());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Cannot send the failed message to " + decision.getExchange() + ", it is requeued", e);
+            return false;
+        }
+    }
+
+    public RetryTopology getTopology() {
+        return topology;
+    }
+}
@@ -0,0 +1,70 @@
+package retry.camel;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.component.rabbitmq.RabbitMQConstants;
+
+import retry.RetryDecision;
+import retry.RetryListener;
+import retry.RetryTopology;
+
+/**
+ * Readies a failed exchange for a rabbitmq producer that sends it to a retry tier of its
+ * {@link RetryTopology}, or to its dead-letter exchange once it is not retried any more: sets the exchange,
+ * the routing key, the expiration and {@link RetryTopology#RETRY_COUNT}. For an <code>onException()</code>
+ * that handles the failure with the original message, so the route acknowledges it and goes on:
+ * <pre>
+ * onException(Exception.class).handled(true).useOriginalMessage()
+ *     .process(retryProcessor)
+ *     .to("rabbitmq://host:port/&lt;queue&gt;.retry?declare=false")
+ * </pre>
+ * The Camel headers of the exchange are dropped, the others go with the message. The exchange is marked to
+ * be requeued, so a message that cannot be sent goes back to its queue when the route acknowledges by itself.
+ * The listener is told before the message is sent.
+ */
+public class RetryProcessor implements Processor {
+
+    private final RetryTopology topology;
+
+    private final RetryListener listener;
+
+    /**
+     * @param listener null for none
+     */
+    public RetryProcessor(RetryTopology topology, RetryListener listener) {
+        this.topology = topology;
+        this.listener = listener;
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        Throwable failure = exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Throwable.class);
+        Message in = exchange.getIn();
+        RetryDecision decision = RetryDecision.of(topology, in.getHeader(RetryTopology.RETRY_COUNT), failure);
+        in.removeHeaders("Camel*");
+        in.removeHeader(RabbitMQConstants.DELIVERY_TAG);
+        in.setHeader(RetryTopology.RETRY_COUNT, decision.getRetry());
+        in.setHeader(RabbitMQConstants.EXCHANGE_NAME, decision.getExchange());
+        in.setHeader(RabbitMQConstants.ROUTING_KEY, decision.getRoutingKey());
+        in.setHeader(RabbitMQConstants.REQUEUE, true);
+        if (decision.isRetry()) {
+            in.setHeader(RabbitMQConstants.EXPIRATION, decision.getExpiration());
+        } else {
+            in.removeHeader(RabbitMQConstants.EXPIRATION);
+            in.setHeader(RetryTopology.RETRY_FAILURE, RetryDecision.describe(failure));
+        }
+        decision.report(listener, failure);
+    }
+
+    /**
+     * @return the URI of the producer sending the exchanges this processor readied, without declaring anything
+     */
+    public String producerUri(String host, int port) {
+        return "rabbitmq://" + host + ":" + port + "/" + topology.getRetryExchange() + "?declare=false";
+    }
+
+    public RetryTopology getTopology() {
+        return topology;
+    }
+}
@@ -0,0 +1,157 @@
+package retry.amqp;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+
+import retry.RetryListener;
+import retry.RetryPolicy;
+import retry.RetryTopology;
+
+public class InPlaceRetryInterceptorTest extends Assert {
+
+    private final RetryTopology topology = new RetryTopology("q",
+            new RetryPolicy(1, 2, 4, 3).withFatal(IllegalArgumentException.class));
+
+    private final List<String> reported = new ArrayList<String>();
+
+    private final InPlaceRetryInterceptor interceptor = new InPlaceRetryInterceptor(topology, new RetryListener() {
+
+        @Override
+        public void retried(int retry, int tier, Throwable failure) {
+            reported.add("retry " + retry);
+        }
+
+        @Override
+        public void deadLettered(int retries, Throwable failure) {
+            reported.add("dead after " + retries);
+        }
+    });
+
+    private final List<Object[]> published = new ArrayList<Object[]>();
+
+    private final Channel channel = (Channel) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { Channel.class }, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("basicPublish".equals(method.getName())) {
+                        published.add(args);
+                    }
+                    return null;
+                }
+            });
+
+    @Test
+    public void retriesUntilTheListenerReturns() throws Throwable {
+        Attempts attempts = new Attempts(message(), 2, new IllegalStateException("failed on purpose"));
+        assertEquals("done", interceptor.invoke(attempts));
+        assertEquals(3, attempts.calls);
+        assertTrue(published.isEmpty());
+        assertEquals("[retry 1, retry 2]", reported.toString());
+    }
+
+    @Test
+    public void deadLettersAfterTheLastRetry() throws Throwable {
+        Attempts attempts = new Attempts(message(), Integer.MAX_VALUE, new IllegalStateException("failed on purpose"));
+        assertNull(interceptor.invoke(attempts));
+        assertEquals(4, attempts.calls);
+        assertEquals(1, published.size());
+        assertEquals("q.dlx", published.get(0)[0]);
+        AMQP.BasicProperties dead = (AMQP.BasicProperties) published.get(0)[3];
+        assertEquals(3, dead.getHeaders().get(RetryTopology.RETRY_COUNT));
+        assertNull(dead.getExpiration());
+        assertTrue(dead.getHeaders().get(RetryTopology.RETRY_FAILURE).toString().contains("failed on purpose"));
+        assertEquals("[retry 1, retry 2, retry 3, dead after 3]", reported.toString());
+    }
+
+    @Test
+    public void deadLettersAFatalFailureAtOnce() throws Throwable {
+        Attempts attempts = new Attempts(message(), Integer.MAX_VALUE, new IllegalArgumentException("malformed"));
+        assertNull(interceptor.invoke(attempts));
+        assertEquals(1, attempts.calls);
+        assertEquals("[dead after 0]", reported.toString());
+    }
+
+    @Test
+    public void throwsWhenInterruptedWhileWaiting() throws Throwable {
+        IllegalStateException failure = new IllegalStateException("failed on purpose");
+        Attempts attempts = new Attempts(message(), Integer.MAX_VALUE, failure);
+        Thread.currentThread().interrupt();
+        try {
+            interceptor.invoke(attempts);
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(1, attempts.calls);
+        assertTrue(published.isEmpty());
+    }
+
+    private static Message message() {
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId("m-1");
+        return new Message(new byte[] { 1 }, properties);
+    }
+
+    /**
+     * The listener call, failing the first <code>failures</code> times.
+     */
+    private final class Attempts implements MethodInvocation {
+
+        private final Message message;
+
+        private final int failures;
+
+        private final RuntimeException failure;
+
+        int calls;
+
+        Attempts(Message message, int failures, RuntimeException failure) {
+            this.message = message;
+            this.failures = failures;
+            this.failure = failure;
+        }
+
+        @Override
+        public Object proceed() {
+            if (calls++ < failures) {
+                throw failure;
+            }
+            return "done";
+        }
+
+        @Override
+        public Object[] getArguments() {
+            return new Object[] { channel, message };
+        }
+
+        @Override
+        public Method getMethod() {
+            return null;
+        }
+
+        @Override
+        public Object getThis() {
+            return null;
+        }
+
+        @Override
+        public AccessibleObject getStaticPart() {
+            return null;
+        }
+    }
+}
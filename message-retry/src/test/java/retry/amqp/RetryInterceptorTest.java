@@ -0,0 +1,149 @@
+package retry.amqp;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+
+import listener.BatchFragments;
+import retry.RetryPolicy;
+import retry.RetryTopology;
+
+public class RetryInterceptorTest extends Assert {
+
+    private final RetryTopology topology = new RetryTopology("q", new RetryPolicy(1000, 2, 60000, 2));
+
+    private final RetryInterceptor interceptor = new RetryInterceptor(topology, null);
+
+    private final List<Object[]> published = new ArrayList<Object[]>();
+
+    private final Channel channel = (Channel) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { Channel.class }, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("basicPublish".equals(method.getName())) {
+                        published.add(args);
+                    }
+                    return null;
+                }
+            });
+
+    @Test
+    public void publishesNothingWhenTheListenerReturns() throws Throwable {
+        assertEquals("done", interceptor.invoke(invocation(message(new MessageProperties()), false)));
+        assertTrue(published.isEmpty());
+    }
+
+    @Test
+    public void retriesACopyOfThePropertiesOfTheMessage() throws Throwable {
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId("batch-1");
+        properties.setHeader("tenant", "a");
+        assertNull(interceptor.invoke(invocation(message(properties), true)));
+
+        AMQP.BasicProperties retried = lastPublished("q.retry");
+        assertEquals(1, retried.getHeaders().get(RetryTopology.RETRY_COUNT));
+        assertEquals("1000", retried.getExpiration());
+        assertEquals("batch-1", retried.getMessageId());
+        assertEquals("a", retried.getHeaders().get("tenant").toString());
+        assertFalse(retried.getHeaders().containsKey(BatchFragments.BATCH_FRAGMENT));
+        // the message itself is left as it came
+        assertFalse(properties.getHeaders().containsKey(RetryTopology.RETRY_COUNT));
+        assertNull(properties.getExpiration());
+    }
+
+    @Test
+    public void numbersTheRetriedMessagesOfABatch() throws Throwable {
+        // the container hands the messages of a de-batched batch over with the same properties
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId("batch-1");
+        interceptor.invoke(invocation(message(properties), false));
+        interceptor.invoke(invocation(message(properties), true));
+        interceptor.invoke(invocation(message(properties), false));
+        interceptor.invoke(invocation(message(properties), true));
+
+        assertEquals(2, published.size());
+        assertEquals(1, ((AMQP.BasicProperties) published.get(0)[3]).getHeaders().get(BatchFragments.BATCH_FRAGMENT));
+        assertEquals(3, ((AMQP.BasicProperties) published.get(1)[3]).getHeaders().get(BatchFragments.BATCH_FRAGMENT));
+        assertTrue(properties.getHeaders().isEmpty());
+    }
+
+    @Test
+    public void keepsThePositionOfARetriedMessageOfABatch() throws Throwable {
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId("batch-1");
+        properties.setHeader(RetryTopology.RETRY_COUNT, 1);
+        properties.setHeader(BatchFragments.BATCH_FRAGMENT, 3);
+        interceptor.invoke(invocation(message(properties), true));
+
+        AMQP.BasicProperties retried = lastPublished("q.retry");
+        assertEquals(2, retried.getHeaders().get(RetryTopology.RETRY_COUNT));
+        assertEquals(3, retried.getHeaders().get(BatchFragments.BATCH_FRAGMENT));
+    }
+
+    @Test
+    public void deadLettersAfterTheLastRetry() throws Throwable {
+        MessageProperties properties = new MessageProperties();
+        properties.setHeader(RetryTopology.RETRY_COUNT, 2);
+        interceptor.invoke(invocation(message(properties), true));
+
+        AMQP.BasicProperties dead = lastPublished("q.dlx");
+        assertEquals(2, dead.getHeaders().get(RetryTopology.RETRY_COUNT));
+        assertNull(dead.getExpiration());
+        assertTrue(dead.getHeaders().get(RetryTopology.RETRY_FAILURE).toString().contains("failed on purpose"));
+    }
+
+    private AMQP.BasicProperties lastPublished(String exchange) {
+        Object[] args = published.get(published.size() - 1);
+        assertEquals(exchange, args[0]);
+        return (AMQP.BasicProperties) args[3];
+    }
+
+    private static Message message(MessageProperties properties) {
+        return new Message(new byte[] { 1 }, properties);
+    }
+
+    private MethodInvocation invocation(final Message message, final boolean fails) {
+        return new MethodInvocation() {
+
+            @Override
+            public Object proceed() {
+                if (fails) {
+                    throw new IllegalStateException("failed on purpose");
+                }
+                return "done";
+            }
+
+            @Override
+            public Object[] getArguments() {
+                return new Object[] { channel, message };
+            }
+
+            @Override
+            public Method getMethod() {
+                return null;
+            }
+
+            @Override
+            public Object getThis() {
+                return null;
+            }
+
+            @Override
+            public AccessibleObject getStaticPart() {
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,58 @@
+package router;
+
+/**
+ * Where a routed message is published: an exchange and the routing key to publish it with, or the
+ * routing key of the message itself when the rule does not set one.
+ */
+public final class Destination {
+
+    private final String exchange;
+
+    private final String routingKey;
+
+    public Destination(String exchange, String routingKey) {
+        if (exchange == null) {
+            throw new IllegalArgumentException("A destination needs an exchange, \"\" for the default one");
+        }
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    /**
+     * @return the routing key of the rule, null to keep the one of the message
+     */
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    /**
+     * @return the routing key to publish a message routed with <code>messageRoutingKey</code> with
+     */
+    public String routingKey(String messageRoutingKey) {
+        return routingKey != null ? routingKey : messageRoutingKey;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Destination)) {
+            return false;
+        }
+        Destination destination = (Destination) other;
+        return exchange.equals(destination.exchange) && (routingKey == null ? destination.routingKey == null
+                : routingKey.equals(destination.routingKey));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * exchange.hashCode() + (routingKey == null ? 0 : routingKey.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return routingKey == null ? exchange : exchange + " " + routingKey;
+    }
+}
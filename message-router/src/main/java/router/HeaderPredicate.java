@@ -0,0 +1,124 @@
+package router;
+
+import java.util.Map;
+
+/**
+ * A condition on one header of a message: present, absent, or equal to a value. The value is given as
+ * text and compared with the header without converting it: as a long with a Number header, as a boolean
+ * with a Boolean one and as text with a String one.
+ */
+public final class HeaderPredicate {
+
+    enum Kind {
+        EXISTS, ABSENT, EQUALS
+    }
+
+    private final Kind kind;
+
+    private final String name;
+
+    private final String value;
+
+    // value as a long, when it is one
+    private final long number;
+
+    private final boolean isNumber;
+
+    private HeaderPredicate(Kind kind, String name, String value) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("A header predicate needs a header name");
+        }
+        this.kind = kind;
+        this.name = name;
+        this.value = value;
+        long number = 0;
+        boolean isNumber = false;
+        if (value != null) {
+            try {
+                number = Long.parseLong(value);
+                isNumber = true;
+            } catch (NumberFormatException e) {
+                // compared as text or boolean only
+            }
+        }
+        this.number = number;
+        this.isNumber = isNumber;
+    }
+
+    public static HeaderPredicate exists(String name) {
+        return new HeaderPredicate(Kind.EXISTS, name, null);
+    }
+
+    public static HeaderPredicate absent(String name) {
+        return new HeaderPredicate(Kind.ABSENT, name, null);
+    }
+
+    public static HeaderPredicate equalTo(String name, String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Header " + name + " compared with no value");
+        }
+        return new HeaderPredicate(Kind.EQUALS, name, value);
+    }
+
+    /**
+     * @param text <code>name</code> (present), <code>!name</code> (absent) or <code>name=value</code>
+     */
+    public static HeaderPredicate parse(String text) {
+        String predicate = text.trim();
+        int equals = predicate.indexOf('=');
+        if (equals >= 0) {
+            return equalTo(predicate.substring(0, equals).trim(), predicate.substring(equals + 1).trim());
+        }
+        if (predicate.startsWith("!")) {
+            return absent(predicate.substring(1).trim());
+        }
+        return exists(predicate);
+    }
+
+    public boolean matches(Map<String, ?> headers) {
+        Object header = headers == null ? null : headers.get(name);
+        switch (kind) {
+        case EXISTS:
+            return header != null;
+        case ABSENT:
+            return header == null;
+        default:
+            return matchesValue(header);
+        }
+    }
+
+    private boolean matchesValue(Object header) {
+        if (header == null) {
+            return false;
+        }
+        if (header instanceof String) {
+            return value.equals(header);
+        }
+        if (header instanceof Long || header instanceof Integer || header instanceof Short
+                || header instanceof Byte) {
+            return isNumber && ((Number) header).longValue() == number;
+        }
+        if (header instanceof Boolean) {
+            return ((Boolean) header).booleanValue() ? "true".equalsIgnoreCase(value)
+                    : "false".equalsIgnoreCase(value);
+        }
+        // other types, like the LongString of a received AMQP header, by their text
+        return value.equals(header.toString());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+        case EXISTS:
+            return name;
+        case ABSENT:
+            return "!" + name;
+        default:
+            return name + "=" + value;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package router;
+
+import java.util.Arrays;
+
+/**
+ * The destinations a {@link RoutingTable} found for a message. Reused from one message to the next, so
+ * routing allocates nothing; not thread safe, keep one per thread.
+ */
+public final class Routes {
+
+    final RoutingTable table;
+
+    private final int[] destinations;
+
+    // destinations added for the current message: marks[d] == generation
+    private final int[] marks;
+
+    private int generation;
+
+    private int size;
+
+    Routes(RoutingTable table) {
+        this.table = table;
+        int count = table.getDestinations().size();
+        this.destinations = new int[count];
+        this.marks = new int[count];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Destination get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Route " + index + " of " + size);
+        }
+        return table.destination(destinations[index]);
+    }
+
+    void clear() {
+        size = 0;
+        if (++generation == 0) {
+            Arrays.fill(marks, 0);
+            generation = 1;
+        }
+    }
+
+    void add(int destination) {
+        if (marks[destination] != generation) {
+            marks[destination] = generation;
+            destinations[size++] = destination;
+        }
+    }
+}
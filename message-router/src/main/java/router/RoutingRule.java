@@ -0,0 +1,140 @@
+package router;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends the messages whose routing key matches a topic pattern and whose headers match all the predicates
+ * to a {@link Destination}. The pattern has the syntax of a RabbitMQ topic binding: words separated by dots,
+ * <code>*</code> matches one word and <code>#</code> zero or more.
+ * <br/>
+ * As text, for the properties of the samples:
+ * <pre>
+ * pattern [predicate, ...] -&gt; exchange [routing key]
+ *
+ * orders.*.eu -&gt; orders-eu
+ * orders.# [priority=high, !test] -&gt; orders-priority urgent
+ * </pre>
+ */
+public final class RoutingRule {
+
+    private final String pattern;
+
+    private final String[] words;
+
+    private final List<HeaderPredicate> predicates;
+
+    private final Destination destination;
+
+    public RoutingRule(String pattern, List<HeaderPredicate> predicates, Destination destination) {
+        if (pattern == null || destination == null) {
+            throw new IllegalArgumentException("A routing rule needs a pattern and a destination");
+        }
+        this.pattern = pattern;
+        this.words = words(pattern);
+        this.predicates = Collections.unmodifiableList(new ArrayList<HeaderPredicate>(predicates));
+        this.destination = destination;
+    }
+
+    public RoutingRule(String pattern, Destination destination) {
+        this(pattern, Collections.<HeaderPredicate> emptyList(), destination);
+    }
+
+    public static RoutingRule parse(String text) {
+        int arrow = text.indexOf("->");
+        if (arrow < 0) {
+            throw new IllegalArgumentException("Routing rule without -> destination: " + text);
+        }
+        String condition = text.substring(0, arrow).trim();
+        List<HeaderPredicate> predicates = new ArrayList<HeaderPredicate>();
+        int bracket = condition.indexOf('[');
+        if (bracket >= 0) {
+            if (!condition.endsWith("]")) {
+                throw new IllegalArgumentException("Header predicates not closed with ]: " + text);
+            }
+            for (String predicate : condition.substring(bracket + 1, condition.length() - 1).split(",")) {
+                if (!predicate.trim().isEmpty()) {
+                    predicates.add(HeaderPredicate.parse(predicate));
+                }
+            }
+            condition = condition.substring(0, bracket).trim();
+        }
+        String[] target = text.substring(arrow + 2).trim().split("\\s+");
+        if (target.length > 2 || target[0].isEmpty()) {
+            throw new IllegalArgumentException("Destination is not exchange [routing key]: " + text);
+        }
+        return new RoutingRule(condition, predicates,
+                new Destination(target[0], target.length > 1 ? target[1] : null));
+    }
+
+    public static List<RoutingRule> parse(List<String> texts) {
+        List<RoutingRule> rules = new ArrayList<RoutingRule>(texts.size());
+        for (String text : texts) {
+            rules.add(parse(text));
+        }
+        return rules;
+    }
+
+    /**
+     * Splits a routing key or pattern in its words, like RabbitMQ does: the empty key has no words.
+     */
+    static String[] words(String key) {
+        return key.isEmpty() ? new String[0] : key.split("\\.", -1);
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    String[] getWords() {
+        return words;
+    }
+
+    public List<HeaderPredicate> getPredicates() {
+        return predicates;
+    }
+
+    public Destination getDestination() {
+        return destination;
+    }
+
+    /**
+     * Evaluates the rule on its own, word by word, for the messages of a few rules or to check a
+     * {@link RoutingTable}; it allocates the words of the key.
+     */
+    public boolean matches(String routingKey, Map<String, ?> headers) {
+        return matches(words, 0, words(routingKey), 0) && matchesHeaders(headers);
+    }
+
+    boolean matchesHeaders(Map<String, ?> headers) {
+        for (int i = 0; i < predicates.size(); i++) {
+            if (!predicates.get(i).matches(headers)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(String[] pattern, int p, String[] key, int k) {
+        if (p == pattern.length) {
+            return k == key.length;
+        }
+        if ("#".equals(pattern[p])) {
+            for (int skip = k; skip <= key.length; skip++) {
+                if (matches(pattern, p + 1, key, skip)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return k < key.length && ("*".equals(pattern[p]) || pattern[p].equals(key[k]))
+                && matches(pattern, p + 1, key, k + 1);
+    }
+
+    @Override
+    public String toString() {
+        return pattern + (predicates.isEmpty() ? "" : " " + predicates) + " -> " + destination;
+    }
+}
@@ -0,0 +1,346 @@
+package router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@link RoutingRule}s compiled once into a deterministic automaton over the words of the routing key:
+ * routing a message reads each word of its key once, finds its number in a table of the words the patterns
+ * name and follows one transition, then checks the header predicates of the rules whose pattern matched.
+ * The time is linear in the length of the key whatever the number of rules, and nothing is allocated.
+ * <br/>
+ * Each state of the automaton is the set of the positions the patterns can be at after the words read so
+ * far (a <code>#</code> can be at several), built from the rules at compile time. Patterns with many
+ * <code>#</code> can need many states, compiling fails past <code>maxStates</code>. Thread safe.
+ */
+public final class RoutingTable {
+
+    public static final int DEFAULT_MAX_STATES = 100000;
+
+    private static final int DEAD = -1;
+
+    private final List<RoutingRule> rules;
+
+    private final List<Destination> destinations;
+
+    // word table: open addressing, slot -> word number + 1
+    private final String[] words;
+
+    private final int[] wordSlots;
+
+    private final int wordMask;
+
+    // per state: the word numbers with their own transition, sorted, their target and the target of any other word
+    private final int[][] stateWords;
+
+    private final int[][] stateTargets;
+
+    private final int[] stateOther;
+
+    // per state: the rules whose pattern matched when the key ends there, in the order of the rules
+    private final int[][] stateRules;
+
+    private final HeaderPredicate[][] rulePredicates;
+
+    private final int[] ruleDestinations;
+
+    private RoutingTable(List<RoutingRule> rules, int maxStates) {
+        this.rules = Collections.unmodifiableList(new ArrayList<RoutingRule>(rules));
+        Map<Destination, Integer> destinationNumbers = new LinkedHashMap<Destination, Integer>();
+        this.rulePredicates = new HeaderPredicate[rules.size()][];
+        this.ruleDestinations = new int[rules.size()];
+        Map<String, Integer> wordNumbers = new LinkedHashMap<String, Integer>();
+        for (int r = 0; r < rules.size(); r++) {
+            RoutingRule rule = rules.get(r);
+            rulePredicates[r] = rule.getPredicates().toArray(new HeaderPredicate[0]);
+            Integer destination = destinationNumbers.get(rule.getDestination());
+            if (destination == null) {
+                destination = destinationNumbers.size();
+                destinationNumbers.put(rule.getDestination(), destination);
+            }
+            ruleDestinations[r] = destination;
+            for (String word : rule.getWords()) {
+                if (!"*".equals(word) && !"#".equals(word) && !wordNumbers.containsKey(word)) {
+                    wordNumbers.put(word, wordNumbers.size());
+                }
+            }
+        }
+        this.destinations = Collections.unmodifiableList(new ArrayList<Destination>(destinationNumbers.keySet()));
+
+        this.words = wordNumbers.keySet().toArray(new String[0]);
+        int tableSize = Integer.highestOneBit(Math.max(2, words.length * 2) - 1) << 1;
+        this.wordSlots = new int[tableSize];
+        this.wordMask = tableSize - 1;
+        for (int w = 0; w < words.length; w++) {
+            int slot = hash(words[w], 0, words[w].length()) & wordMask;
+            while (wordSlots[slot] != 0) {
+                slot = (slot + 1) & wordMask;
+            }
+            wordSlots[slot] = w + 1;
+        }
+
+        Automaton automaton = new Automaton(rules, wordNumbers, maxStates);
+        int states = automaton.states.size();
+        this.stateWords = new int[states][];
+        this.stateTargets = new int[states][];
+        this.stateOther = new int[states];
+        this.stateRules = new int[states][];
+        for (int s = 0; s < states; s++) {
+            TreeMap<Integer, Integer> transitions = automaton.transitions.get(s);
+            stateWords[s] = new int[transitions.size()];
+            stateTargets[s] = new int[transitions.size()];
+            int t = 0;
+            for (Map.Entry<Integer, Integer> transition : transitions.entrySet()) {
+                stateWords[s][t] = transition.getKey();
+                stateTargets[s][t++] = transition.getValue();
+            }
+            stateOther[s] = automaton.others.get(s);
+            stateRules[s] = automaton.accepted(s);
+        }
+    }
+
+    public static RoutingTable compile(List<RoutingRule> rules) {
+        return compile(rules, DEFAULT_MAX_STATES);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the patterns need more than <code>maxStates</code> states
+     */
+    public static RoutingTable compile(List<RoutingRule> rules, int maxStates) {
+        return new RoutingTable(rules, maxStates);
+    }
+
+    /**
+     * A result to route with, to reuse from one message to the next in the same thread.
+     */
+    public Routes newRoutes() {
+        return new Routes(this);
+    }
+
+    /**
+     * Puts in <code>routes</code> the destinations of the rules matching the message, each once and in
+     * the order of the rules.
+     *
+     * @return false if no rule matched
+     */
+    public boolean route(String routingKey, Map<String, ?> headers, Routes routes) {
+        if (routes.table != this) {
+            throw new IllegalArgumentException("Routes of another routing table");
+        }
+        routes.clear();
+        int state = 0;
+        int length = routingKey.length();
+        // the empty key has no words, like in RabbitMQ
+        if (length > 0) {
+            int start = 0;
+            for (int i = 0; i <= length; i++) {
+                if (i == length || routingKey.charAt(i) == '.') {
+                    state = next(state, word(routingKey, start, i));
+                    if (state == DEAD) {
+                        return false;
+                    }
+                    start = i + 1;
+                }
+            }
+        }
+        int[] accepted = stateRules[state];
+        for (int a = 0; a < accepted.length; a++) {
+            int rule = accepted[a];
+            if (matches(rulePredicates[rule], headers)) {
+                routes.add(ruleDestinations[rule]);
+            }
+        }
+        return routes.size() > 0;
+    }
+
+    public List<RoutingRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * @return the destinations of the rules, each once
+     */
+    public List<Destination> getDestinations() {
+        return destinations;
+    }
+
+    public int getStateCount() {
+        return stateOther.length;
+    }
+
+    Destination destination(int number) {
+        return destinations.get(number);
+    }
+
+    private int next(int state, int word) {
+        if (word >= 0) {
+            int t = Arrays.binarySearch(stateWords[state], word);
+            if (t >= 0) {
+                return stateTargets[state][t];
+            }
+        }
+        return stateOther[state];
+    }
+
+    /**
+     * @return the number of the word between <code>from</code> and <code>to</code>, -1 if no pattern names it
+     */
+    private int word(String key, int from, int to) {
+        int length = to - from;
+        int slot = hash(key, from, to) & wordMask;
+        int number;
+        while ((number = wordSlots[slot]) != 0) {
+            String word = words[number - 1];
+            if (word.length() == length && key.regionMatches(from, word, 0, length)) {
+                return number - 1;
+            }
+            slot = (slot + 1) & wordMask;
+        }
+        return -1;
+    }
+
+    private static int hash(String key, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + key.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(HeaderPredicate[] predicates, Map<String, ?> headers) {
+        for (int p = 0; p < predicates.length; p++) {
+            if (!predicates[p].matches(headers)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Subset construction of the automaton. The positions of the patterns are numbered one after the other,
+     * a rule of n words has the positions 0..n, n being the end of the pattern.
+     */
+    private static final class Automaton {
+
+        // kinds of the word at each position, the end of a pattern is END
+        private static final int END = -3;
+
+        private static final int HASH = -2;
+
+        private static final int STAR = -1;
+
+        private final int[] positionWords;
+
+        private final int[] positionRules;
+
+        private final List<BitSet> states = new ArrayList<BitSet>();
+
+        private final List<TreeMap<Integer, Integer>> transitions = new ArrayList<TreeMap<Integer, Integer>>();
+
+        private final List<Integer> others = new ArrayList<Integer>();
+
+        private final Map<BitSet, Integer> numbers = new HashMap<BitSet, Integer>();
+
+        private final int maxStates;
+
+        Automaton(List<RoutingRule> rules, Map<String, Integer> wordNumbers, int maxStates) {
+            this.maxStates = maxStates;
+            int count = 0;
+            for (RoutingRule rule : rules) {
+                count += rule.getWords().length + 1;
+            }
+            positionWords = new int[count];
+            positionRules = new int[count];
+            BitSet initial = new BitSet(count);
+            int position = 0;
+            for (int r = 0; r < rules.size(); r++) {
+                initial.set(position);
+                for (String word : rules.get(r).getWords()) {
+                    positionRules[position] = r;
+                    positionWords[position++] = "#".equals(word) ? HASH
+                            : "*".equals(word) ? STAR : wordNumbers.get(word);
+                }
+                positionRules[position] = r;
+                positionWords[position++] = END;
+            }
+            // the initial state exists even without rules, it routes nothing
+            initial = closure(initial);
+            numbers.put(initial, 0);
+            states.add(initial);
+            for (int s = 0; s < states.size(); s++) {
+                BitSet state = states.get(s);
+                TreeMap<Integer, Integer> wordTransitions = new TreeMap<Integer, Integer>();
+                for (int p = state.nextSetBit(0); p >= 0; p = state.nextSetBit(p + 1)) {
+                    int word = positionWords[p];
+                    if (word >= 0 && !wordTransitions.containsKey(word)) {
+                        wordTransitions.put(word, state(step(state, word)));
+                    }
+                }
+                transitions.add(wordTransitions);
+                others.add(state(step(state, -1)));
+            }
+        }
+
+        /**
+         * @param word the number of a word the patterns name, -1 for any other word
+         */
+        private BitSet step(BitSet state, int word) {
+            BitSet next = new BitSet(positionWords.length);
+            for (int p = state.nextSetBit(0); p >= 0; p = state.nextSetBit(p + 1)) {
+                int positionWord = positionWords[p];
+                if (positionWord == HASH) {
+                    next.set(p);
+                } else if (positionWord == STAR || (word >= 0 && positionWord == word)) {
+                    next.set(p + 1);
+                }
+            }
+            return closure(next);
+        }
+
+        // a # also matches no word: the position after it is reached too
+        private BitSet closure(BitSet positions) {
+            for (int p = positions.nextSetBit(0); p >= 0; p = positions.nextSetBit(p + 1)) {
+                if (positionWords[p] == HASH) {
+                    positions.set(p + 1);
+                }
+            }
+            return positions;
+        }
+
+        private int state(BitSet positions) {
+            if (positions.isEmpty()) {
+                return DEAD;
+            }
+            Integer number = numbers.get(positions);
+            if (number == null) {
+                if (states.size() == maxStates) {
+                    throw new IllegalArgumentException("The routing patterns need more than " + maxStates
+                            + " states, use fewer # in them");
+                }
+                number = states.size();
+                numbers.put(positions, number);
+                states.add(positions);
+            }
+            return number;
+        }
+
+        int[] accepted(int state) {
+            BitSet positions = states.get(state);
+            int[] rules = new int[positions.cardinality()];
+            int count = 0;
+            for (int p = positions.nextSetBit(0); p >= 0; p = positions.nextSetBit(p + 1)) {
+                if (positionWords[p] == END) {
+                    rules[count++] = positionRules[p];
+                }
+            }
+            return Arrays.copyOf(rules, count);
+        }
+    }
+}
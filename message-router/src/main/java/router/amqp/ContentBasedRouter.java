@@ -0,0 +1,106 @@
+package router.amqp;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.TopicExchange;
+
+import router.Destination;
+import router.Routes;
+import router.RoutingRule;
+import router.RoutingTable;
+
+/**
+ * Content-Based Router for Spring AMQP: publishes each message to the destinations of the
+ * {@link RoutingTable} rules that match its routing key and headers, through an {@link AmqpTemplate}. A
+ * message no rule matches goes to the default destination, or is dropped and counted when there is none.
+ * <br/>
+ * The rules are compiled once, when the router is created; routing a message allocates nothing besides
+ * what the template does to publish it. Thread safe, each thread routes with its own {@link Routes}.
+ */
+public class ContentBasedRouter {
+
+    private final AmqpTemplate template;
+
+    private final RoutingTable table;
+
+    private final Destination unrouted;
+
+    private final ThreadLocal<Routes> routes = new ThreadLocal<Routes>() {
+        @Override
+        protected Routes initialValue() {
+            return table.newRoutes();
+        }
+    };
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param unrouted where the messages no rule matches go, null to drop them
+     */
+    public ContentBasedRouter(AmqpTemplate template, List<RoutingRule> rules, Destination unrouted) {
+        this.template = template;
+        this.table = RoutingTable.compile(rules);
+        this.unrouted = unrouted;
+    }
+
+    /**
+     * Declares the exchanges of the destinations as durable topic exchanges, like the one of the samples;
+     * an exchange that already exists is left as it is if it was declared the same way.
+     */
+    public void declareExchanges(AmqpAdmin admin) {
+        for (Destination destination : table.getDestinations()) {
+            if (!destination.getExchange().isEmpty()) {
+                admin.declareExchange(new TopicExchange(destination.getExchange()));
+            }
+        }
+    }
+
+    /**
+     * @return the number of destinations the message was published to, 0 if it was dropped
+     */
+    public int send(String routingKey, Message message) {
+        Routes matched = routes.get();
+        if (!table.route(routingKey, message.getMessageProperties().getHeaders(), matched)) {
+            if (unrouted == null) {
+                dropped.incrementAndGet();
+                return 0;
+            }
+            template.send(unrouted.getExchange(), unrouted.routingKey(routingKey), message);
+            return 1;
+        }
+        for (int i = 0; i < matched.size(); i++) {
+            Destination destination = matched.get(i);
+            template.send(destination.getExchange(), destination.routingKey(routingKey), message);
+        }
+        return matched.size();
+    }
+
+    /**
+     * The destinations of a message, to publish it some other way, like in batches. The result is the
+     * {@link Routes} of the calling thread, valid until its next call.
+     */
+    public Routes route(String routingKey, Message message) {
+        Routes matched = routes.get();
+        table.route(routingKey, message.getMessageProperties().getHeaders(), matched);
+        return matched;
+    }
+
+    public RoutingTable getTable() {
+        return table;
+    }
+
+    public Destination getUnrouted() {
+        return unrouted;
+    }
+
+    /**
+     * @return messages no rule matched, dropped for lack of a default destination
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,174 @@
+package router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RoutingTableTest extends Assert {
+
+    private static final Map<String, Object> NO_HEADERS = Collections.emptyMap();
+
+    @Test
+    public void matchesOneWordWithAStar() {
+        RoutingTable table = table("orders.*.eu -> eu");
+        assertRoutes(table, "orders.books.eu", NO_HEADERS, "eu");
+        assertRoutes(table, "orders.eu", NO_HEADERS);
+        assertRoutes(table, "orders.books.music.eu", NO_HEADERS);
+        assertRoutes(table, "orders..eu", NO_HEADERS, "eu");
+    }
+
+    @Test
+    public void matchesZeroOrMoreWordsWithAHash() {
+        RoutingTable table = table("orders.#.eu -> eu", "# -> all", "#.audit -> audit");
+        assertRoutes(table, "orders.eu", NO_HEADERS, "eu", "all");
+        assertRoutes(table, "orders.books.music.eu", NO_HEADERS, "eu", "all");
+        assertRoutes(table, "orders.eu.audit", NO_HEADERS, "all", "audit");
+        assertRoutes(table, "audit", NO_HEADERS, "all", "audit");
+        assertRoutes(table, "", NO_HEADERS, "all");
+    }
+
+    @Test
+    public void routesTheEmptyKeyOnlyToPatternsWithoutWords() {
+        RoutingTable table = table(" -> empty", "* -> one");
+        assertRoutes(table, "", NO_HEADERS, "empty");
+        assertRoutes(table, "a", NO_HEADERS, "one");
+    }
+
+    @Test
+    public void checksTheHeadersOfTheMatchingRules() {
+        RoutingTable table = table("orders.# [priority=high, !test] -> urgent", "orders.# [region=3] -> three");
+        Map<String, Object> headers = new HashMap<String, Object>();
+        headers.put("priority", "high");
+        assertRoutes(table, "orders.new", headers, "urgent");
+        headers.put("test", Boolean.TRUE);
+        assertRoutes(table, "orders.new", headers);
+        headers.remove("test");
+        headers.put("region", 3L);
+        assertRoutes(table, "orders.new", headers, "urgent", "three");
+        assertRoutes(table, "invoices.new", headers);
+    }
+
+    @Test
+    public void givesEachDestinationOnceInTheOrderOfTheRules() {
+        RoutingTable table = table("b.# -> second", "a.# -> first", "#.x -> second", "# -> first");
+        assertEquals(2, table.getDestinations().size());
+        assertRoutes(table, "b.x", NO_HEADERS, "second", "first");
+        assertRoutes(table, "a.x", NO_HEADERS, "first", "second");
+    }
+
+    @Test
+    public void keepsTheRoutingKeyOfTheRuleOrOfTheMessage() {
+        RoutingTable table = table("orders.# -> urgent high", "orders.# -> archive");
+        Routes routes = table.newRoutes();
+        assertTrue(table.route("orders.new", NO_HEADERS, routes));
+        assertEquals("high", routes.get(0).routingKey("orders.new"));
+        assertEquals("orders.new", routes.get(1).routingKey("orders.new"));
+    }
+
+    @Test
+    public void routesNothingWithoutRules() {
+        RoutingTable table = RoutingTable.compile(Collections.<RoutingRule> emptyList());
+        assertRoutes(table, "orders.new", NO_HEADERS);
+        assertRoutes(table, "", NO_HEADERS);
+    }
+
+    @Test
+    public void matchesLikeTheRulesOnTheirOwn() {
+        // few words, so the random keys often match the random patterns
+        String[] vocabulary = { "a", "b", "c", "" };
+        Random random = new Random(1);
+        for (int round = 0; round < 200; round++) {
+            List<RoutingRule> rules = new ArrayList<RoutingRule>();
+            for (int r = 0, count = 1 + random.nextInt(20); r < count; r++) {
+                String pattern = join(random, 5, vocabulary, "*", "#");
+                List<HeaderPredicate> predicates = random.nextInt(3) == 0
+                        ? Collections.singletonList(HeaderPredicate.equalTo("h", String.valueOf(random.nextInt(2))))
+                        : Collections.<HeaderPredicate> emptyList();
+                rules.add(new RoutingRule(pattern, predicates, new Destination("x" + random.nextInt(8), null)));
+            }
+            RoutingTable table = RoutingTable.compile(rules);
+            Routes routes = table.newRoutes();
+            for (int k = 0; k < 200; k++) {
+                String key = join(random, 6, vocabulary);
+                Map<String, Object> headers = Collections.<String, Object> singletonMap("h", random.nextInt(2));
+                Set<Destination> expected = new LinkedHashSet<Destination>();
+                for (RoutingRule rule : rules) {
+                    if (rule.matches(key, headers)) {
+                        expected.add(rule.getDestination());
+                    }
+                }
+                assertEquals(!expected.isEmpty(), table.route(key, headers, routes));
+                assertEquals(rules + " on '" + key + "'", new ArrayList<Destination>(expected), list(routes));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failsWhenThePatternsNeedTooManyStates() {
+        RoutingTable.compile(RoutingRule.parse(Arrays.asList("#.a.#.b.#.c -> x", "#.b.#.c.#.a -> y",
+                "#.c.#.a.#.b -> z")), 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesTheRoutesOfAnotherTable() {
+        RoutingTable table = table("# -> all");
+        table.route("a", NO_HEADERS, table("# -> all").newRoutes());
+    }
+
+    @Test
+    public void parsesTheRulesOfTheProperties() {
+        RoutingRule rule = RoutingRule.parse("orders.# [priority=high, !test, vip] -> orders-priority urgent");
+        assertEquals("orders.#", rule.getPattern());
+        assertEquals(3, rule.getPredicates().size());
+        assertEquals(new Destination("orders-priority", "urgent"), rule.getDestination());
+        assertNull(RoutingRule.parse("orders.*.eu -> orders-eu").getDestination().getRoutingKey());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesARuleWithoutDestination() {
+        RoutingRule.parse("orders.#");
+    }
+
+    private static RoutingTable table(String... rules) {
+        return RoutingTable.compile(RoutingRule.parse(Arrays.asList(rules)));
+    }
+
+    private static void assertRoutes(RoutingTable table, String key, Map<String, ?> headers, String... exchanges) {
+        Routes routes = table.newRoutes();
+        assertEquals(exchanges.length > 0, table.route(key, headers, routes));
+        List<String> routed = new ArrayList<String>();
+        for (Destination destination : list(routes)) {
+            routed.add(destination.getExchange());
+        }
+        assertEquals("routes of '" + key + "'", Arrays.asList(exchanges), routed);
+    }
+
+    private static List<Destination> list(Routes routes) {
+        List<Destination> destinations = new ArrayList<Destination>();
+        for (int i = 0; i < routes.size(); i++) {
+            destinations.add(routes.get(i));
+        }
+        return destinations;
+    }
+
+    private static String join(Random random, int maxWords, String[] vocabulary, String... wildcards) {
+        StringBuilder text = new StringBuilder();
+        for (int w = 0, count = random.nextInt(maxWords + 1); w < count; w++) {
+            if (w > 0) {
+                text.append('.');
+            }
+            int pick = random.nextInt(vocabulary.length + wildcards.length);
+            text.append(pick < vocabulary.length ? vocabulary[pick] : wildcards[pick - vocabulary.length]);
+        }
+        return text.toString();
+    }
+}
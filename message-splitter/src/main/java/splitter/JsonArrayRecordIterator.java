@@ -0,0 +1,124 @@
+package splitter;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The elements of a JSON array, each record the UTF-8 text of an element as it is in the body, without
+ * the whitespace around it. Only the structure of the array is read: an element ends at the comma or the
+ * bracket outside of strings and nested objects and arrays, it is not parsed. An empty body has no records.
+ */
+class JsonArrayRecordIterator extends RecordIterator {
+
+    private static final int START = 0;
+
+    private static final int FIRST = 1;
+
+    private static final int NEXT = 2;
+
+    private static final int END = 3;
+
+    private int state = START;
+
+    JsonArrayRecordIterator(InputStream in, int maxRecordBytes) {
+        super(in, maxRecordBytes);
+    }
+
+    @Override
+    protected byte[] read() throws IOException {
+        if (state == START) {
+            int first = skipWhitespace();
+            if (first < 0) {
+                state = END;
+                return null;
+            }
+            if (first != '[') {
+                throw malformed("not a JSON array");
+            }
+            position++;
+            state = FIRST;
+        }
+        if (state == END) {
+            return null;
+        }
+        int start = skipWhitespace();
+        if (start < 0) {
+            throw malformed("unterminated JSON array");
+        }
+        if (start == ']' && state == FIRST) {
+            position++;
+            state = END;
+            return null;
+        }
+        if (start == ',' || start == ']') {
+            throw malformed("empty element in a JSON array");
+        }
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        int from = position;
+        while (true) {
+            if (position == limit) {
+                append(from, limit);
+                if (!fill()) {
+                    throw malformed("unterminated JSON array");
+                }
+                from = 0;
+            }
+            byte b = buffer[position];
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (depth == 0) {
+                    if (b == '}') {
+                        throw malformed("unbalanced } in a JSON array");
+                    }
+                    append(from, position++);
+                    state = END;
+                    break;
+                }
+                depth--;
+            } else if (b == ',' && depth == 0) {
+                append(from, position++);
+                state = NEXT;
+                break;
+            }
+            position++;
+        }
+        int length = recordLength();
+        while (isWhitespace(recordByte(length - 1))) {
+            length--;
+        }
+        truncateRecord(length);
+        return takeRecord();
+    }
+
+    /**
+     * @return the first byte that is not whitespace, left in the buffer, -1 at the end of the stream
+     */
+    private int skipWhitespace() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            if (!isWhitespace(buffer[position])) {
+                return buffer[position];
+            }
+            position++;
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+}
@@ -0,0 +1,45 @@
+package splitter;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Length-prefixed records: each record follows its length in bytes as a 4 byte big-endian int, like
+ * {@link java.io.DataOutputStream#writeInt(int)} writes it.
+ */
+class LengthPrefixedRecordIterator extends RecordIterator {
+
+    LengthPrefixedRecordIterator(InputStream in, int maxRecordBytes) {
+        super(in, maxRecordBytes);
+    }
+
+    @Override
+    protected byte[] read() throws IOException {
+        int length = 0;
+        for (int i = 0; i < 4; i++) {
+            if (position == limit && !fill()) {
+                if (i == 0) {
+                    return null;
+                }
+                throw malformed("truncated record length");
+            }
+            length = (length << 8) | (buffer[position++] & 0xff);
+        }
+        if (length < 0) {
+            throw malformed("negative record length " + length);
+        }
+        checkLength(length);
+        byte[] record = new byte[length];
+        int read = 0;
+        while (read < length) {
+            if (position == limit && !fill()) {
+                throw malformed("record of " + length + " bytes truncated after " + read);
+            }
+            int count = Math.min(limit - position, length - read);
+            System.arraycopy(buffer, position, record, read, count);
+            position += count;
+            read += count;
+        }
+        return record;
+    }
+}
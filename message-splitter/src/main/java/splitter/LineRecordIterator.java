@@ -0,0 +1,41 @@
+package splitter;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Newline-delimited records: each line is a record, without its <code>\n</code> or <code>\r\n</code>. Blank
+ * lines are skipped, the last line does not need a newline.
+ */
+class LineRecordIterator extends RecordIterator {
+
+    LineRecordIterator(InputStream in, int maxRecordBytes) {
+        super(in, maxRecordBytes);
+    }
+
+    @Override
+    protected byte[] read() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                return recordLength() > 0 ? takeRecord() : null;
+            }
+            int end = position;
+            while (end < limit && buffer[end] != '\n') {
+                end++;
+            }
+            append(position, end);
+            if (end == limit) {
+                position = limit;
+                continue;
+            }
+            position = end + 1;
+            int length = recordLength();
+            if (length > 0 && recordByte(length - 1) == '\r') {
+                truncateRecord(length - 1);
+            }
+            if (recordLength() > 0) {
+                return takeRecord();
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package splitter;
+
+/**
+ * A message body whose records cannot be read: not in its format, truncated or with a record longer than
+ * allowed. Redelivering the message would fail the same way.
+ */
+public class MalformedBodyException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    public MalformedBodyException(String message) {
+        super(message);
+    }
+}
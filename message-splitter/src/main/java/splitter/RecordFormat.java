@@ -0,0 +1,58 @@
+package splitter;
+
+import java.io.InputStream;
+
+/**
+ * How the records of a message body are delimited.
+ */
+public enum RecordFormat {
+
+    /**
+     * One record per line, see {@link LineRecordIterator}.
+     */
+    LINES {
+        @Override
+        public RecordIterator iterator(InputStream in, int maxRecordBytes) {
+            return new LineRecordIterator(in, maxRecordBytes);
+        }
+    },
+
+    /**
+     * Each record after its length as a 4 byte big-endian int, see {@link LengthPrefixedRecordIterator}.
+     */
+    LENGTH_PREFIXED {
+        @Override
+        public RecordIterator iterator(InputStream in, int maxRecordBytes) {
+            return new LengthPrefixedRecordIterator(in, maxRecordBytes);
+        }
+    },
+
+    /**
+     * The elements of a JSON array, see {@link JsonArrayRecordIterator}.
+     */
+    JSON_ARRAY {
+        @Override
+        public RecordIterator iterator(InputStream in, int maxRecordBytes) {
+            return new JsonArrayRecordIterator(in, maxRecordBytes);
+        }
+    };
+
+    public static final int DEFAULT_MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * @param maxRecordBytes length past which a record is refused, so a malformed body cannot take all the memory
+     */
+    public abstract RecordIterator iterator(InputStream in, int maxRecordBytes);
+
+    public RecordIterator iterator(InputStream in) {
+        return iterator(in, DEFAULT_MAX_RECORD_BYTES);
+    }
+
+    /**
+     * @param name the name of the format, case and <code>-</code> or <code>_</code> as in the properties
+     *        of the samples: lines, length-prefixed, json-array
+     */
+    public static RecordFormat parse(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
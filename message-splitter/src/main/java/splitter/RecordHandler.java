@@ -0,0 +1,13 @@
+package splitter;
+
+/**
+ * Processes one record of a message split by a {@link StreamingSplitter}, on a thread of its executor.
+ */
+public interface RecordHandler {
+
+    /**
+     * @param record the record, owned by the handler
+     * @param index the position of the record in the message, from 0
+     */
+    void handle(byte[] record, int index) throws Exception;
+}
@@ -0,0 +1,142 @@
+package splitter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The records of a body, read from its stream one at a time as they are asked for: only the record being
+ * read and a buffer of the stream are in memory, never the whole body nor its other records. Each record
+ * is a new array, it can be handed to another thread.
+ * <br/>
+ * A stream that cannot be read throws {@link IllegalStateException} from {@link #hasNext()}, a malformed
+ * body or a record longer than <code>maxRecordBytes</code> its {@link MalformedBodyException}. Not thread safe.
+ */
+public abstract class RecordIterator implements Iterator<byte[]>, Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+
+    private final int maxRecordBytes;
+
+    protected final byte[] buffer = new byte[BUFFER_SIZE];
+
+    protected int position;
+
+    protected int limit;
+
+    // the record being read, grows up to the longest record
+    private byte[] record = new byte[256];
+
+    private int recordLength;
+
+    private byte[] next;
+
+    private boolean done;
+
+    protected RecordIterator(InputStream in, int maxRecordBytes) {
+        this.in = in;
+        this.maxRecordBytes = maxRecordBytes;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !done) {
+            try {
+                next = read();
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot read the records of the message", e);
+            }
+            done = next == null;
+        }
+        return next != null;
+    }
+
+    @Override
+    public byte[] next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        byte[] result = next;
+        next = null;
+        return result;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * @return the next record, null at the end of the body
+     */
+    protected abstract byte[] read() throws IOException;
+
+    /**
+     * Refills the buffer once it has been consumed.
+     *
+     * @return false at the end of the stream
+     */
+    protected boolean fill() throws IOException {
+        int read;
+        do {
+            read = in.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    /**
+     * Adds <code>buffer[from, to)</code> to the record being read.
+     */
+    protected void append(int from, int to) {
+        int length = to - from;
+        checkLength(recordLength + length);
+        if (recordLength + length > record.length) {
+            record = Arrays.copyOf(record, Math.max(record.length * 2, recordLength + length));
+        }
+        System.arraycopy(buffer, from, record, recordLength, length);
+        recordLength += length;
+    }
+
+    protected int recordLength() {
+        return recordLength;
+    }
+
+    protected byte recordByte(int index) {
+        return record[index];
+    }
+
+    protected void truncateRecord(int length) {
+        recordLength = length;
+    }
+
+    /**
+     * @return a copy of the record being read, which is started again
+     */
+    protected byte[] takeRecord() {
+        byte[] result = Arrays.copyOf(record, recordLength);
+        recordLength = 0;
+        return result;
+    }
+
+    protected void checkLength(long length) {
+        if (length > maxRecordBytes) {
+            throw new MalformedBodyException("Record of more than " + maxRecordBytes + " bytes");
+        }
+    }
+
+    protected static MalformedBodyException malformed(String reason) {
+        return new MalformedBodyException("Malformed message body: " + reason);
+    }
+}
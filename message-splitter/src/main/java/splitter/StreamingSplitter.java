@@ -0,0 +1,83 @@
+package splitter;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands the records of a message to a {@link RecordHandler} on an {@link Executor}, reading the next record
+ * only while fewer than <code>maxInFlight</code> are being handled: a message of any size takes the memory
+ * of <code>maxInFlight</code> records plus the one being read. {@link #split} returns once all the records
+ * have been handled, so the message can be acknowledged then.
+ * <br/>
+ * The first record that fails stops the reading, the records already handed over finish and the failure is
+ * thrown; the message is to be redelivered whole, with the records that did not fail. Thread safe, each call
+ * has its own <code>maxInFlight</code> records.
+ */
+public class StreamingSplitter {
+
+    private final Executor executor;
+
+    private final int maxInFlight;
+
+    public StreamingSplitter(Executor executor, int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("At least one record in flight, not " + maxInFlight);
+        }
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * @return the number of records handled
+     * @throws Exception the failure of the first record that failed
+     */
+    public int split(Iterator<byte[]> records, final RecordHandler handler) throws Exception {
+        final Semaphore permits = new Semaphore(maxInFlight);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        int count = 0;
+        try {
+            while (failure.get() == null && records.hasNext()) {
+                final byte[] record = records.next();
+                final int index = count++;
+                permits.acquire();
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                if (failure.get() == null) {
+                                    handler.handle(record, index);
+                                }
+                            } catch (Throwable e) {
+                                failure.compareAndSet(null, e);
+                            } finally {
+                                permits.release();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    throw e;
+                }
+            }
+        } finally {
+            // the records handed over finish before the message is acknowledged or rejected
+            permits.acquireUninterruptibly(maxInFlight);
+        }
+        Throwable failed = failure.get();
+        if (failed instanceof Exception) {
+            throw (Exception) failed;
+        }
+        if (failed instanceof Error) {
+            throw (Error) failed;
+        }
+        return count;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+}
@@ -0,0 +1,66 @@
+package splitter.amqp;
+
+import java.io.ByteArrayInputStream;
+
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.MessageProperties;
+
+import splitter.MalformedBodyException;
+import splitter.RecordFormat;
+import splitter.RecordHandler;
+import splitter.StreamingSplitter;
+
+/**
+ * Splits the body of each message into its records and hands each one to the delegate as a message of its
+ * own, on the threads of the {@link StreamingSplitter} and with at most its <code>maxInFlight</code> records
+ * of a message at once. The records share the {@link MessageProperties} of the message, the delegate must
+ * not change them.
+ * <br/>
+ * The body is read in place, no String of it is made. The message returns once all its records have been
+ * handled, so the container acknowledges it after them. A record that fails fails the message, which is
+ * redelivered whole; a malformed body is rejected without requeueing.
+ */
+public class SplittingMessageListener implements MessageListener {
+
+    private final MessageListener delegate;
+
+    private final RecordFormat format;
+
+    private final StreamingSplitter splitter;
+
+    private final int maxRecordBytes;
+
+    public SplittingMessageListener(MessageListener delegate, RecordFormat format, StreamingSplitter splitter,
+            int maxRecordBytes) {
+        this.delegate = delegate;
+        this.format = format;
+        this.splitter = splitter;
+        this.maxRecordBytes = maxRecordBytes;
+    }
+
+    @Override
+    public void onMessage(Message message) {
+        final MessageProperties properties = message.getMessageProperties();
+        try {
+            splitter.split(format.iterator(new ByteArrayInputStream(message.getBody()), maxRecordBytes),
+                    new RecordHandler() {
+                        @Override
+                        public void handle(byte[] record, int index) {
+                            delegate.onMessage(new Message(record, properties));
+                        }
+                    });
+        } catch (MalformedBodyException e) {
+            throw new AmqpRejectAndDontRequeueException(e);
+        } catch (AmqpException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmqpException(e);
+        } catch (Exception e) {
+            throw new AmqpException(e);
+        }
+    }
+}
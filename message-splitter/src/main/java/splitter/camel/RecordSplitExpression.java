@@ -0,0 +1,45 @@
+package splitter.camel;
+
+import java.io.InputStream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Expression;
+
+import splitter.MalformedBodyException;
+import splitter.RecordFormat;
+
+/**
+ * Expression of the Camel splitter iterating the records of the body as they are read, each record a
+ * <code>byte[]</code> body of its own. With <code>streaming()</code> the splitter takes them one at a time
+ * instead of collecting them first, and closes the iterator at the end:
+ * <pre>
+ * .split(new RecordSplitExpression(RecordFormat.LINES, maxRecordBytes)).streaming()
+ * </pre>
+ * The body is read through its {@link InputStream}, a <code>byte[]</code> or String body is not copied.
+ * A malformed body fails the exchange with a {@link MalformedBodyException}.
+ */
+public class RecordSplitExpression implements Expression {
+
+    private final RecordFormat format;
+
+    private final int maxRecordBytes;
+
+    public RecordSplitExpression(RecordFormat format, int maxRecordBytes) {
+        this.format = format;
+        this.maxRecordBytes = maxRecordBytes;
+    }
+
+    @Override
+    public <T> T evaluate(Exchange exchange, Class<T> type) {
+        InputStream body = exchange.getIn().getBody(InputStream.class);
+        if (body == null) {
+            throw new MalformedBodyException("No body to split in " + exchange);
+        }
+        return type.cast(format.iterator(body, maxRecordBytes));
+    }
+
+    @Override
+    public String toString() {
+        return "records(" + format + ")";
+    }
+}
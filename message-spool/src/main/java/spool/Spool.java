@@ -0,0 +1,418 @@
+package spool;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Append-only log of records in a directory, in memory-mapped segment files of <code>segmentSize</code>
+ * bytes: the producers append their outgoing messages and go on, a {@link SpoolDrainer} reads them in order
+ * and commits them once the broker confirmed them. Segments whose records are all committed are deleted,
+ * and at most <code>maxSegments</code> exist: when they are full, appending waits for the drainer for up to
+ * <code>appendTimeoutMillis</code>, then fails with a {@link SpoolFullException}.
+ * <br/>
+ * A record is its length, the CRC-32 of its data and its data. A record is found by its position, the
+ * segment index times the segment size plus its offset in the segment; the position of the first
+ * uncommitted record is kept in the <code>checkpoint</code> file. Opening a spool scans its segments from
+ * there: the records up to the first one that is torn, or was never written, are read again, so a message
+ * appended before a crash of the producer is sent, maybe twice (at least once delivery). The pages are
+ * written back by the operating system: a crash of the machine can lose the last records.
+ * <br/>
+ * One reader. Thread safe.
+ */
+public class Spool implements Closeable {
+
+    private static final Log logger = LogFactory.getLog(Spool.class);
+
+    private static final long MAGIC = 0x53504f4f4c303031L;
+
+    private static final String SUFFIX = ".spool";
+
+    private static final String CHECKPOINT = "checkpoint";
+
+    // length and CRC-32 of a record
+    private static final int RECORD_HEADER = 8;
+
+    // the rest of the segment is empty, the next record is at the start of the next one
+    private static final int END_OF_SEGMENT = -1;
+
+    private final File directory;
+
+    private final int segmentSize;
+
+    private final int maxSegments;
+
+    private final long appendTimeoutMillis;
+
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<Long, MappedByteBuffer>();
+
+    private final MappedByteBuffer checkpoint;
+
+    private final CRC32 crc = new CRC32();
+
+    private long writePosition;
+
+    // end of the last record appended
+    private long appendedPosition;
+
+    private long readPosition;
+
+    private long committedPosition;
+
+    private boolean closed;
+
+    /**
+     * Opens the spool in a directory, created if it does not exist, and scans the records not committed
+     * yet. A spool written with another segment size keeps its size.
+     *
+     * @param segmentSize bytes of a segment file, the largest record is 8 bytes smaller
+     * @param maxSegments segment files at most, the disk used is about <code>segmentSize * maxSegments</code>
+     * @param appendTimeoutMillis how long an append waits for the drainer when the segments are full
+     */
+    public Spool(File directory, int segmentSize, int maxSegments, long appendTimeoutMillis) throws IOException {
+        if (segmentSize < 64 || maxSegments < 2) {
+            throw new IllegalArgumentException("Segments of " + segmentSize + " bytes, " + maxSegments
+                    + " at most: expected 64 bytes and 2 segments at least");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the spool directory " + directory);
+        }
+        this.directory = directory;
+        this.maxSegments = maxSegments;
+        this.appendTimeoutMillis = appendTimeoutMillis;
+        this.checkpoint = map(new File(directory, CHECKPOINT), 24);
+        if (checkpoint.getLong(0) == MAGIC) {
+            this.segmentSize = (int) checkpoint.getLong(8);
+            this.committedPosition = checkpoint.getLong(16);
+            if (this.segmentSize != segmentSize) {
+                logger.warn("The spool " + directory + " has segments of " + this.segmentSize + " bytes, not "
+                        + segmentSize);
+            }
+        } else {
+            this.segmentSize = segmentSize;
+            this.committedPosition = 0;
+            checkpoint.putLong(8, segmentSize);
+            checkpoint.putLong(16, 0);
+            checkpoint.putLong(0, MAGIC);
+        }
+        recover();
+    }
+
+    /**
+     * Appends a record, waiting for the drainer if the segments are full.
+     *
+     * @return position of the record
+     * @throws SpoolFullException if the segments are still full after <code>appendTimeoutMillis</code>
+     */
+    public synchronized long append(byte[] record) throws IOException, InterruptedException {
+        if (record.length > segmentSize - RECORD_HEADER) {
+            throw new IllegalArgumentException("Record of " + record.length + " bytes, the segments of "
+                    + directory + " hold " + (segmentSize - RECORD_HEADER));
+        }
+        long deadline = System.currentTimeMillis() + appendTimeoutMillis;
+        Map.Entry<Long, MappedByteBuffer> tail;
+        int offset;
+        while (true) {
+            // read again after every wait, other appenders may have moved to another segment meanwhile
+            checkOpen();
+            tail = segments.lastEntry();
+            offset = (int) (writePosition - tail.getKey() * segmentSize);
+            if (offset + RECORD_HEADER + record.length <= segmentSize) {
+                break;
+            }
+            if (offset < segmentSize) {
+                // close the segment, so no shorter record is appended after the mark while this one waits
+                if (offset + 4 <= segmentSize) {
+                    tail.getValue().putInt(offset, END_OF_SEGMENT);
+                }
+                writePosition = (tail.getKey() + 1) * segmentSize;
+            }
+            if (segments.size() < maxSegments) {
+                long index = tail.getKey() + 1;
+                segments.put(index, map(segmentFile(index), segmentSize));
+                writePosition = index * segmentSize;
+                continue;
+            }
+            awaitFreeSegment(deadline);
+        }
+        long position = writePosition;
+        MappedByteBuffer segment = tail.getValue();
+        crc.reset();
+        crc.update(record, 0, record.length);
+        ByteBuffer data = segment.duplicate();
+        data.position(offset + RECORD_HEADER);
+        data.put(record);
+        segment.putInt(offset + 4, (int) crc.getValue());
+        // the length last, a record without it was never written
+        segment.putInt(offset, record.length);
+        writePosition += RECORD_HEADER + record.length;
+        appendedPosition = writePosition;
+        notifyAll();
+        return position;
+    }
+
+    /**
+     * @return the record after the last one read, null if none was appended in <code>timeoutMillis</code>
+     */
+    public synchronized Record poll(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            checkOpen();
+            if (readPosition == writePosition) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+                wait(remaining);
+                continue;
+            }
+            long index = readPosition / segmentSize;
+            int offset = (int) (readPosition - index * segmentSize);
+            MappedByteBuffer segment = segments.get(index);
+            int length = offset + 4 <= segmentSize ? segment.getInt(offset) : END_OF_SEGMENT;
+            if (length == END_OF_SEGMENT) {
+                readPosition = (index + 1) * segmentSize;
+                continue;
+            }
+            byte[] data = new byte[length];
+            ByteBuffer source = segment.duplicate();
+            source.position(offset + RECORD_HEADER);
+            source.get(data);
+            Record record = new Record(readPosition, readPosition + RECORD_HEADER + length, data);
+            readPosition = record.nextPosition;
+            return record;
+        }
+    }
+
+    /**
+     * Marks the records before <code>position</code> as sent and deletes the segments left without
+     * records to send.
+     */
+    public synchronized void commit(long position) {
+        if (position <= committedPosition || closed) {
+            return;
+        }
+        committedPosition = position;
+        checkpoint.putLong(16, position);
+        Iterator<Map.Entry<Long, MappedByteBuffer>> it = segments.entrySet().iterator();
+        while (it.hasNext()) {
+            long index = it.next().getKey();
+            if (index == segments.lastKey() || (index + 1) * segmentSize > position) {
+                break;
+            }
+            it.remove();
+            if (!segmentFile(index).delete()) {
+                logger.warn("Cannot delete the spool segment " + segmentFile(index));
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Reads again from the first record not committed, after the broker failed to take some of the
+     * records read.
+     */
+    public synchronized void rewind() {
+        readPosition = committedPosition;
+    }
+
+    /**
+     * @return true if every record appended was committed
+     */
+    public synchronized boolean isDrained() {
+        return committedPosition >= appendedPosition;
+    }
+
+    /**
+     * @return bytes of the records not committed yet, with the unused ends of their segments
+     */
+    public synchronized long getBacklog() {
+        return Math.max(0, writePosition - committedPosition);
+    }
+
+    public synchronized long getCommittedPosition() {
+        return committedPosition;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Writes the segments back to the disk and wakes the threads waiting on the spool. The segment files
+     * stay, the next spool opened on the directory sends their records.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (MappedByteBuffer segment : segments.values()) {
+            segment.force();
+        }
+        checkpoint.force();
+        segments.clear();
+        notifyAll();
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX);
+            }
+        });
+        Arrays.sort(files);
+        for (File file : files) {
+            long index = Long.parseLong(file.getName().substring(0, file.getName().length() - SUFFIX.length()));
+            if ((index + 1) * segmentSize <= committedPosition || file.length() != segmentSize) {
+                delete(index);
+                continue;
+            }
+            segments.put(index, map(file, segmentSize));
+        }
+        if (!segments.isEmpty()) {
+            committedPosition = Math.max(committedPosition, segments.firstKey() * segmentSize);
+        }
+        readPosition = committedPosition;
+        appendedPosition = committedPosition;
+        writePosition = -1;
+        long records = 0;
+        long expected = segments.isEmpty() ? -1 : segments.firstKey();
+        for (Iterator<Map.Entry<Long, MappedByteBuffer>> it = segments.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Long, MappedByteBuffer> entry = it.next();
+            long start = entry.getKey() * segmentSize;
+            if (writePosition >= 0 || entry.getKey() != expected) {
+                // after the last record written: never read, drop it
+                it.remove();
+                delete(entry.getKey());
+                continue;
+            }
+            MappedByteBuffer segment = entry.getValue();
+            int offset = (int) Math.max(0, committedPosition - start);
+            while (offset + RECORD_HEADER <= segmentSize) {
+                int length = segment.getInt(offset);
+                if (length == END_OF_SEGMENT) {
+                    break;
+                }
+                if (length <= 0 || offset + RECORD_HEADER + length > segmentSize
+                        || !checksumMatches(segment, offset, length)) {
+                    // clear a torn record, the records appended after it must not look valid
+                    segment.putInt(offset, 0);
+                    writePosition = start + offset;
+                    break;
+                }
+                offset += RECORD_HEADER + length;
+                appendedPosition = start + offset;
+                records++;
+            }
+            expected++;
+        }
+        if (segments.isEmpty()) {
+            long index = (committedPosition + segmentSize - 1) / segmentSize;
+            segments.put(index, map(segmentFile(index), segmentSize));
+            writePosition = index * segmentSize;
+            committedPosition = readPosition = appendedPosition = writePosition;
+        } else if (writePosition < 0) {
+            // every segment is complete, the next append starts a segment
+            writePosition = expected * segmentSize;
+        }
+        checkpoint.putLong(16, committedPosition);
+        if (records > 0) {
+            logger.info("Found " + records + " records to send in the spool " + directory);
+        }
+    }
+
+    private void delete(long index) throws IOException {
+        if (!segmentFile(index).delete()) {
+            throw new IOException("Cannot delete the spool segment " + segmentFile(index));
+        }
+    }
+
+    private boolean checksumMatches(MappedByteBuffer segment, int offset, int length) {
+        byte[] data = new byte[length];
+        ByteBuffer source = segment.duplicate();
+        source.position(offset + RECORD_HEADER);
+        source.get(data);
+        crc.reset();
+        crc.update(data, 0, length);
+        return segment.getInt(offset + 4) == (int) crc.getValue();
+    }
+
+    // one wait for a commit or an append, the caller checks the segments again
+    private void awaitFreeSegment(long deadline) throws InterruptedException, SpoolFullException {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new SpoolFullException("The " + maxSegments + " segments of the spool " + directory
+                    + " are full, " + getBacklog() + " bytes not sent");
+        }
+        wait(remaining);
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The spool " + directory + " is closed");
+        }
+    }
+
+    private File segmentFile(long index) {
+        return new File(directory, String.format("%019d%s", index, SUFFIX));
+    }
+
+    private static MappedByteBuffer map(File file, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            // the mapping stays valid after the file is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * A record read from the spool, to be committed with {@link Spool#commit} once sent.
+     */
+    public static final class Record {
+
+        private final long position;
+
+        private final long nextPosition;
+
+        private final byte[] data;
+
+        Record(long position, long nextPosition, byte[] data) {
+            this.position = position;
+            this.nextPosition = nextPosition;
+            this.data = data;
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * @return position after the record, to commit once every record up to this one was sent
+         */
+        public long getNextPosition() {
+            return nextPosition;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package spool;
+
+import java.io.Closeable;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Background thread sending the records of a {@link Spool} to the broker through a {@link Target}, with at
+ * most <code>window</code> of them waiting for their confirm. The spool is committed up to the first record
+ * not confirmed yet, so its segments are deleted as the broker confirms them.
+ * <br/>
+ * When the broker rejects a record, a send fails or no confirm arrives in <code>confirmTimeoutMillis</code>,
+ * the drainer waits <code>retryMillis</code> and sends again from the first record not confirmed: a broker
+ * that is down only delays the messages, and some may be received twice.
+ */
+public class SpoolDrainer implements Closeable {
+
+    private static final Log logger = LogFactory.getLog(SpoolDrainer.class);
+
+    /**
+     * Sends the messages of the spool to a broker.
+     */
+    public interface Target {
+
+        /**
+         * Sends a message and reports its outcome, now or later and from any thread, with
+         * {@link SpoolDrainer#confirm} or {@link SpoolDrainer#reject}.
+         *
+         * @param position to report the outcome with
+         * @throws Exception if the message could not be sent, it is sent again after <code>retryMillis</code>
+         */
+        void send(SpooledMessage message, long position, SpoolDrainer drainer) throws Exception;
+    }
+
+    private final Spool spool;
+
+    private final Target target;
+
+    private final int window;
+
+    private final long confirmTimeoutMillis;
+
+    private final long retryMillis;
+
+    // positions of the records sent and not confirmed
+    private final TreeSet<Long> outstanding = new TreeSet<Long>();
+
+    private final AtomicLong sent = new AtomicLong();
+
+    private final AtomicLong confirmed = new AtomicLong();
+
+    private final AtomicLong retries = new AtomicLong();
+
+    private final Thread thread;
+
+    // position after the last record sent
+    private long sentPosition;
+
+    private long lastProgress;
+
+    private boolean rewind;
+
+    private volatile boolean running;
+
+    public SpoolDrainer(Spool spool, Target target, int window, long confirmTimeoutMillis, long retryMillis) {
+        this.spool = spool;
+        this.target = target;
+        this.window = window;
+        this.confirmTimeoutMillis = confirmTimeoutMillis;
+        this.retryMillis = retryMillis;
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "spool-drainer");
+        this.thread.setDaemon(true);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        sentPosition = spool.getCommittedPosition();
+        lastProgress = System.currentTimeMillis();
+        thread.start();
+    }
+
+    /**
+     * The broker took the record at <code>position</code>.
+     */
+    public synchronized void confirm(long position) {
+        if (outstanding.remove(position)) {
+            confirmed.incrementAndGet();
+            lastProgress = System.currentTimeMillis();
+            spool.commit(outstanding.isEmpty() ? sentPosition : outstanding.first());
+            notifyAll();
+        }
+    }
+
+    /**
+     * The broker did not take the record at <code>position</code>: it is sent again, with the records after it.
+     */
+    public synchronized void reject(long position) {
+        if (outstanding.contains(position)) {
+            rewind = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until every record appended to the spool was confirmed.
+     *
+     * @return false if some were not confirmed in <code>timeoutMillis</code>, they stay in the spool
+     */
+    public boolean awaitDrained(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!spool.isDrained()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            synchronized (this) {
+                wait(Math.min(remaining, 100));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops the thread, the records not confirmed stay in the spool.
+     */
+    @Override
+    public void close() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(confirmTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return messages sent, with the ones sent again
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getConfirmed() {
+        return confirmed.get();
+    }
+
+    /**
+     * @return times the drainer sent again from the first record not confirmed
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    private void drain() {
+        try {
+            while (running) {
+                if (!awaitWindow()) {
+                    retry(null);
+                    continue;
+                }
+                Spool.Record record = spool.poll(100);
+                if (record == null) {
+                    continue;
+                }
+                synchronized (this) {
+                    if (rewind) {
+                        // read before the rewind, it is read again after
+                        continue;
+                    }
+                    if (outstanding.isEmpty()) {
+                        lastProgress = System.currentTimeMillis();
+                    }
+                    outstanding.add(record.getPosition());
+                    sentPosition = record.getNextPosition();
+                }
+                try {
+                    target.send(SpooledMessage.decode(record.getData()), record.getPosition(), this);
+                    sent.incrementAndGet();
+                } catch (InterruptedException e) {
+                    break;
+                } catch (Exception e) {
+                    retry(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (IllegalStateException e) {
+            if (running) {
+                logger.error("The spool drainer stopped", e);
+            }
+        }
+    }
+
+    /**
+     * @return false if the records sent must be sent again
+     */
+    private synchronized boolean awaitWindow() throws InterruptedException {
+        while (!rewind && outstanding.size() >= window) {
+            long remaining = lastProgress + confirmTimeoutMillis - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return !rewind && (outstanding.isEmpty() || System.currentTimeMillis() - lastProgress < confirmTimeoutMillis);
+    }
+
+    private void retry(Exception cause) throws InterruptedException {
+        synchronized (this) {
+            rewind = true;
+        }
+        retries.incrementAndGet();
+        if (cause != null) {
+            logger.warn("Cannot send the spooled messages, again in " + retryMillis + " ms: " + cause);
+        } else {
+            logger.warn("Messages not confirmed, sending them again in " + retryMillis + " ms");
+        }
+        Thread.sleep(retryMillis);
+        synchronized (this) {
+            outstanding.clear();
+            sentPosition = spool.getCommittedPosition();
+            spool.rewind();
+            rewind = false;
+            lastProgress = System.currentTimeMillis();
+        }
+    }
+}
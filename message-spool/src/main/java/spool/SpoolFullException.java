@@ -0,0 +1,15 @@
+package spool;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a record cannot be appended because the segments of the spool are full of records the broker
+ * has not confirmed yet.
+ */
+@SuppressWarnings("serial")
+public class SpoolFullException extends IOException {
+
+    public SpoolFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,177 @@
+package spool;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A message as it is kept in a {@link Spool}: where it goes, the properties the samples set and its body.
+ * <code>destination</code> is the exchange of an AMQP message and the queue of a JMS one,
+ * <code>routingKey</code> is only used by AMQP. Header values are kept as String, Long, Integer, Double,
+ * Boolean or byte[], other values as their String.
+ */
+public class SpooledMessage {
+
+    private static final byte VERSION = 1;
+
+    private final String destination;
+
+    private final String routingKey;
+
+    private final String messageId;
+
+    private final String contentType;
+
+    private final String contentEncoding;
+
+    private final Map<String, Object> headers;
+
+    private final byte[] body;
+
+    public SpooledMessage(String destination, String routingKey, String messageId, String contentType,
+            String contentEncoding, Map<String, Object> headers, byte[] body) {
+        this.destination = destination;
+        this.routingKey = routingKey;
+        this.messageId = messageId;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + body.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            writeString(out, destination);
+            writeString(out, routingKey);
+            writeString(out, messageId);
+            writeString(out, contentType);
+            writeString(out, contentEncoding);
+            out.writeShort(headers.size());
+            for (Map.Entry<String, Object> header : headers.entrySet()) {
+                out.writeUTF(header.getKey());
+                writeValue(out, header.getValue());
+            }
+            out.writeInt(body.length);
+            out.write(body);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static SpooledMessage decode(byte[] record) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        try {
+            if (in.readByte() != VERSION) {
+                throw new IllegalArgumentException("Not a spooled message of version " + VERSION);
+            }
+            String destination = readString(in);
+            String routingKey = readString(in);
+            String messageId = readString(in);
+            String contentType = readString(in);
+            String contentEncoding = readString(in);
+            int count = in.readUnsignedShort();
+            Map<String, Object> headers = new LinkedHashMap<String, Object>(count * 2);
+            for (int i = 0; i < count; i++) {
+                headers.put(in.readUTF(), readValue(in));
+            }
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new SpooledMessage(destination, routingKey, messageId, contentType, contentEncoding, headers,
+                    body);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated spooled message", e);
+        }
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public Map<String, Object> getHeaders() {
+        return headers;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Long) {
+            out.writeByte('J');
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte('I');
+            out.writeInt((Integer) value);
+        } else if (value instanceof Double) {
+            out.writeByte('D');
+            out.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte('Z');
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof byte[]) {
+            out.writeByte('B');
+            out.writeInt(((byte[]) value).length);
+            out.write((byte[]) value);
+        } else {
+            out.writeByte('S');
+            out.writeUTF(String.valueOf(value));
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case 'J':
+            return in.readLong();
+        case 'I':
+            return in.readInt();
+        case 'D':
+            return in.readDouble();
+        case 'Z':
+            return in.readBoolean();
+        case 'B':
+            byte[] value = new byte[in.readInt()];
+            in.readFully(value);
+            return value;
+        case 'S':
+            return in.readUTF();
+        default:
+            throw new IOException("Unknown header type " + (char) type);
+        }
+    }
+}
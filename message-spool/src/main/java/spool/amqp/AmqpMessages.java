@@ -0,0 +1,39 @@
+package spool.amqp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import spool.SpooledMessage;
+
+/**
+ * Converts the Spring AMQP messages to the {@link SpooledMessage} of the spool and back: the message id,
+ * content type, content encoding and headers are kept, the other properties take their defaults.
+ */
+public final class AmqpMessages {
+
+    private AmqpMessages() {
+    }
+
+    public static SpooledMessage spooled(String exchange, String routingKey, Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        return new SpooledMessage(exchange, routingKey, properties.getMessageId(), properties.getContentType(),
+                properties.getContentEncoding(), new LinkedHashMap<String, Object>(properties.getHeaders()),
+                message.getBody());
+    }
+
+    public static Message message(SpooledMessage spooled) {
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId(spooled.getMessageId());
+        if (spooled.getContentType() != null) {
+            properties.setContentType(spooled.getContentType());
+        }
+        properties.setContentEncoding(spooled.getContentEncoding());
+        for (Map.Entry<String, Object> header : spooled.getHeaders().entrySet()) {
+            properties.setHeader(header.getKey(), header.getValue());
+        }
+        return new Message(spooled.getBody(), properties);
+    }
+}
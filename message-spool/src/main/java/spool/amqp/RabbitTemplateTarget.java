@@ -0,0 +1,47 @@
+package spool.amqp;
+
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.CorrelationData;
+
+import spool.SpoolDrainer;
+import spool.SpooledMessage;
+
+/**
+ * Sends the spooled messages with a {@link RabbitTemplate}, whose connection factory must have publisher
+ * confirms enabled; the position of each message is the id of its {@link CorrelationData}. The template's
+ * before publish post processors (compression) run when the message is sent, not when it is spooled.
+ * <br/>
+ * Takes the template's only confirm callback. A channel closed with messages not confirmed rejects them.
+ */
+public class RabbitTemplateTarget implements SpoolDrainer.Target, RabbitTemplate.ConfirmCallback {
+
+    private final RabbitTemplate rabbitTemplate;
+
+    private volatile SpoolDrainer drainer;
+
+    public RabbitTemplateTarget(RabbitTemplate rabbitTemplate) {
+        this.rabbitTemplate = rabbitTemplate;
+        rabbitTemplate.setConfirmCallback(this);
+    }
+
+    @Override
+    public void send(SpooledMessage message, long position, SpoolDrainer drainer) {
+        this.drainer = drainer;
+        rabbitTemplate.send(message.getDestination(), message.getRoutingKey(), AmqpMessages.message(message),
+                new CorrelationData(Long.toString(position)));
+    }
+
+    @Override
+    public void confirm(CorrelationData correlationData, boolean ack, String cause) {
+        SpoolDrainer drainer = this.drainer;
+        if (correlationData == null || drainer == null) {
+            return;
+        }
+        long position = Long.parseLong(correlationData.getId());
+        if (ack) {
+            drainer.confirm(position);
+        } else {
+            drainer.reject(position);
+        }
+    }
+}
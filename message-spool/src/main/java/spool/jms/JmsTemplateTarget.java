@@ -0,0 +1,52 @@
+package spool.jms;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessagePostProcessor;
+
+import spool.SpoolDrainer;
+import spool.SpooledMessage;
+
+/**
+ * Sends the spooled messages with a {@link JmsTemplate}: the UTF-8 body goes through the template's message
+ * converter as a String, so the codec and compression are the ones in use when the message is sent, and the
+ * headers become message properties. JMS has no publisher confirms: a send that returned is confirmed, with
+ * persistent delivery the broker has stored the message by then.
+ */
+public class JmsTemplateTarget implements SpoolDrainer.Target {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final JmsTemplate jmsTemplate;
+
+    public JmsTemplateTarget(JmsTemplate jmsTemplate) {
+        this.jmsTemplate = jmsTemplate;
+    }
+
+    /**
+     * @return the message to spool for a String body sent to a queue
+     */
+    public static SpooledMessage spooled(String destination, String body, Map<String, Object> properties) {
+        return new SpooledMessage(destination, null, null, null, null, properties, body.getBytes(UTF_8));
+    }
+
+    @Override
+    public void send(final SpooledMessage message, long position, SpoolDrainer drainer) {
+        jmsTemplate.convertAndSend(message.getDestination(), new String(message.getBody(), UTF_8),
+                new MessagePostProcessor() {
+                    @Override
+                    public Message postProcessMessage(Message jmsMessage) throws JMSException {
+                        for (Map.Entry<String, Object> property : message.getHeaders().entrySet()) {
+                            jmsMessage.setObjectProperty(property.getKey(), property.getValue());
+                        }
+                        return jmsMessage;
+                    }
+                });
+        drainer.confirm(position);
+    }
+}
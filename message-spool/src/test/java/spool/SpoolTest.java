@@ -0,0 +1,230 @@
+package spool;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SpoolTest extends Assert {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    private Spool spool;
+
+    @Before
+    public void setUp() {
+        directory = new File(folder.getRoot(), "spool");
+    }
+
+    @After
+    public void tearDown() {
+        if (spool != null) {
+            spool.close();
+        }
+    }
+
+    @Test
+    public void pollsTheRecordsInOrderAcrossSegments() throws Exception {
+        spool = new Spool(directory, 64, 16, 1000);
+        for (int i = 0; i < 20; i++) {
+            spool.append(bytes("record-" + i));
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals("record-" + i, text(spool.poll(0).getData()));
+        }
+        assertNull(spool.poll(10));
+    }
+
+    @Test
+    public void deletesTheCommittedSegments() throws Exception {
+        spool = new Spool(directory, 64, 16, 1000);
+        Spool.Record last = null;
+        for (int i = 0; i < 20; i++) {
+            spool.append(bytes("record-" + i));
+        }
+        for (int i = 0; i < 20; i++) {
+            last = spool.poll(0);
+        }
+        assertFalse(spool.isDrained());
+        spool.commit(last.getNextPosition());
+        assertTrue(spool.isDrained());
+        assertEquals(0, spool.getBacklog());
+        assertEquals(1, segmentFiles().length);
+    }
+
+    @Test
+    public void readsAgainAfterARewind() throws Exception {
+        spool = new Spool(directory, 64, 16, 1000);
+        spool.append(bytes("a"));
+        spool.append(bytes("b"));
+        Spool.Record a = spool.poll(0);
+        spool.poll(0);
+        spool.commit(a.getNextPosition());
+        spool.rewind();
+        assertEquals("b", text(spool.poll(0).getData()));
+    }
+
+    @Test(expected = SpoolFullException.class)
+    public void failsWhenTheSegmentsStayFull() throws Exception {
+        spool = new Spool(directory, 64, 2, 50);
+        byte[] record = new byte[40];
+        spool.append(record);
+        spool.append(record);
+        spool.append(record);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesARecordLargerThanASegment() throws Exception {
+        spool = new Spool(directory, 64, 2, 50);
+        spool.append(new byte[57]);
+    }
+
+    @Test
+    public void sendsTheUncommittedRecordsAfterAReopen() throws Exception {
+        spool = new Spool(directory, 64, 16, 1000);
+        for (int i = 0; i < 10; i++) {
+            spool.append(bytes("record-" + i));
+        }
+        Spool.Record first = spool.poll(0);
+        spool.commit(first.getNextPosition());
+        spool.close();
+
+        spool = new Spool(directory, 64, 16, 1000);
+        for (int i = 1; i < 10; i++) {
+            assertEquals("record-" + i, text(spool.poll(0).getData()));
+        }
+        assertNull(spool.poll(10));
+        spool.append(bytes("after"));
+        assertEquals("after", text(spool.poll(0).getData()));
+    }
+
+    @Test
+    public void dropsATornRecordAndWhatFollowsIt() throws Exception {
+        spool = new Spool(directory, 256, 16, 1000);
+        spool.append(bytes("kept"));
+        long torn = spool.append(bytes("torn"));
+        spool.append(bytes("lost"));
+        spool.close();
+        corrupt(torn + 8);
+
+        spool = new Spool(directory, 256, 16, 1000);
+        assertEquals("kept", text(spool.poll(0).getData()));
+        assertNull(spool.poll(10));
+        spool.append(bytes("next"));
+        assertEquals("next", text(spool.poll(0).getData()));
+    }
+
+    @Test
+    public void keepsEveryRecordOfConcurrentAppendersWhileTheSegmentsAreFull() throws Exception {
+        // small segments and few of them: the appenders keep waiting for the drainer and switching segments
+        spool = new Spool(directory, 256, 3, 30000);
+        final int appenders = 8;
+        final int records = 2000;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < appenders; t++) {
+            final int appender = t;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(appender);
+                    try {
+                        start.await();
+                        for (int i = 0; i < records; i++) {
+                            spool.append(record(appender, i, random.nextInt(120)));
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }, "appender-" + t);
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+
+        int[] next = new int[appenders];
+        for (int received = 0; received < appenders * records; received++) {
+            Spool.Record record = spool.poll(10000);
+            if (failure.get() != null) {
+                throw new AssertionError(failure.get());
+            }
+            assertNotNull("record " + received + " never came", record);
+            ByteBuffer data = ByteBuffer.wrap(record.getData());
+            int appender = data.getInt();
+            int sequence = data.getInt();
+            assertEquals("order of appender " + appender, next[appender]++, sequence);
+            assertArrayEquals(record(appender, sequence, record.getData().length - 8), record.getData());
+            spool.commit(record.getNextPosition());
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertNull(spool.poll(10));
+        assertTrue(spool.isDrained());
+    }
+
+    private static byte[] record(int appender, int sequence, int padding) {
+        ByteBuffer record = ByteBuffer.allocate(8 + padding);
+        record.putInt(appender).putInt(sequence);
+        while (record.hasRemaining()) {
+            record.put((byte) (sequence + record.position()));
+        }
+        return record.array();
+    }
+
+    private File[] segmentFiles() {
+        File[] files = directory.listFiles();
+        List<File> segments = new ArrayList<File>();
+        for (File file : files) {
+            if (file.getName().endsWith(".spool")) {
+                segments.add(file);
+            }
+        }
+        return segments.toArray(new File[segments.size()]);
+    }
+
+    // flips a byte of the data of a record in the first segment, its checksum no longer matches
+    private void corrupt(long position) throws IOException {
+        File[] segments = segmentFiles();
+        Arrays.sort(segments);
+        RandomAccessFile file = new RandomAccessFile(segments[0], "rw");
+        try {
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xff);
+        } finally {
+            file.close();
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
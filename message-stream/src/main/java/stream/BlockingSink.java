@@ -0,0 +1,224 @@
+package stream;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link Publisher} fed by the code producing the elements: {@link #next} waits until the subscriber asked for
+ * one more element, so the producer runs at the pace of the subscriber instead of filling a buffer. The elements
+ * reach the subscriber on the thread calling <code>next</code>, one at a time. One subscriber.
+ */
+public class BlockingSink<T> implements Publisher<T> {
+
+    //held while an element or the end of the stream reaches the subscriber, so they arrive one at a time
+    private final ReentrantLock emitLock = new ReentrantLock();
+
+    //guards the state, never held while calling the subscriber: it requests on the threads it likes
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition demanded = lock.newCondition();
+
+    private Subscriber<? super T> subscriber;
+
+    private long requested;
+
+    private boolean cancelled;
+
+    private boolean terminated;
+
+    private Throwable failure;
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        emitLock.lock();
+        try {
+            if (!register(subscriber)) {
+                subscriber.onSubscribe(new Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("The sink already has a subscriber"));
+                return;
+            }
+            subscriber.onSubscribe(new SinkSubscription());
+            signalTermination();
+        } finally {
+            emitLock.unlock();
+        }
+    }
+
+    /**
+     * Sends the element once the subscriber wants it.
+     *
+     * @return false if the subscriber cancelled, the element was not sent
+     * @throws IllegalStateException if the sink was completed
+     */
+    public boolean next(T element) throws InterruptedException {
+        return next(element, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sends the element once the subscriber wants it, waiting at most the given time.
+     *
+     * @return false if the subscriber cancelled or did not want the element in time, the element was not sent
+     * @throws IllegalStateException if the sink was completed
+     */
+    public boolean next(T element, long timeout, TimeUnit unit) throws InterruptedException {
+        emitLock.lockInterruptibly();
+        try {
+            if (!await(unit.toNanos(timeout))) {
+                return false;
+            }
+            subscriber.onNext(element);
+            return true;
+        } finally {
+            emitLock.unlock();
+        }
+    }
+
+    /**
+     * Ends the stream: no more elements. Without a subscriber yet, it is told when it subscribes. Called after
+     * the last <code>next</code> returned.
+     */
+    public void complete() {
+        terminate(null);
+    }
+
+    /**
+     * Ends the stream with a failure.
+     */
+    public void error(Throwable failure) {
+        terminate(failure);
+    }
+
+    /**
+     * @return whether the subscriber cancelled, the producer can stop
+     */
+    public boolean isCancelled() {
+        lock.lock();
+        try {
+            return cancelled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean register(Subscriber<? super T> subscriber) {
+        lock.lock();
+        try {
+            if (this.subscriber != null) {
+                return false;
+            }
+            this.subscriber = subscriber;
+            demanded.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for demand and takes one element of it.
+     *
+     * @return false if the subscriber cancelled or the time ran out
+     */
+    private boolean await(long nanos) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            if (terminated) {
+                throw new IllegalStateException("The sink is completed");
+            }
+            while (!cancelled && (subscriber == null || requested == 0)) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = demanded.awaitNanos(nanos);
+            }
+            if (cancelled) {
+                return false;
+            }
+            if (requested != Long.MAX_VALUE) {
+                requested--;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void terminate(Throwable failure) {
+        emitLock.lock();
+        try {
+            lock.lock();
+            try {
+                if (terminated) {
+                    return;
+                }
+                terminated = true;
+                this.failure = failure;
+            } finally {
+                lock.unlock();
+            }
+            signalTermination();
+        } finally {
+            emitLock.unlock();
+        }
+    }
+
+    /**
+     * Tells the subscriber the stream ended, once, if it did and the subscriber did not cancel. Under the emit lock.
+     */
+    private void signalTermination() {
+        lock.lock();
+        try {
+            if (!terminated || subscriber == null || cancelled) {
+                return;
+            }
+            cancelled = true;
+            demanded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (failure == null) {
+            subscriber.onComplete();
+        } else {
+            subscriber.onError(failure);
+        }
+    }
+
+    private class SinkSubscription implements Subscription {
+
+        @Override
+        public void request(long n) {
+            if (n < 1) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Invalid request: " + n));
+                return;
+            }
+            lock.lock();
+            try {
+                requested = Long.MAX_VALUE - requested < n ? Long.MAX_VALUE : requested + n;
+                demanded.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                cancelled = true;
+                demanded.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package stream;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Handles the elements of a {@link Publisher} on an executor, at most <code>concurrency</code> at once: it requests
+ * that many elements up front and one more each time a handler returns, so the publisher never gets ahead of the
+ * handlers. The <code>flatMap(handler, concurrency)</code> of a reactive pipeline, with the handler blocking on a
+ * thread of its own. A slow handler slows the requests down, nothing waits in memory.
+ */
+public class ConcurrentSubscriber<T> implements Subscriber<T> {
+
+    private static final Log logger = LogFactory.getLog(ConcurrentSubscriber.class);
+
+    private final ElementHandler<? super T> handler;
+
+    private final Executor executor;
+
+    private final int concurrency;
+
+    //elements handed to the executor and not done yet
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    private volatile Subscription subscription;
+
+    //no more elements: the publisher completed or failed, or the subscription was cancelled
+    private volatile boolean done;
+
+    private volatile Throwable failure;
+
+    /**
+     * @param executor with at least <code>concurrency</code> threads, or a queue taking as many tasks
+     */
+    public ConcurrentSubscriber(ElementHandler<? super T> handler, Executor executor, int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Invalid concurrency: " + concurrency);
+        }
+        this.handler = handler;
+        this.executor = executor;
+        this.concurrency = concurrency;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(concurrency);
+    }
+
+    @Override
+    public void onNext(final T element) {
+        active.incrementAndGet();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handle(element);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            completeElement(element, e);
+        }
+    }
+
+    @Override
+    public void onError(Throwable failure) {
+        this.failure = failure;
+        terminate();
+    }
+
+    @Override
+    public void onComplete() {
+        terminate();
+    }
+
+    /**
+     * Stops the elements, the ones being handled still complete; see {@link #awaitTermination}.
+     */
+    public void cancel() {
+        Subscription current = subscription;
+        if (current != null && !done) {
+            current.cancel();
+        }
+        terminate();
+    }
+
+    /**
+     * Waits until the publisher stopped, or the subscription was cancelled, and the last handler returned.
+     *
+     * @return false if the time ran out first
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    /**
+     * @return the failure of the publisher, null if it completed or is still going
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * Called on the thread of the handler once it returned, before the next element is requested.
+     * Logs the failures; the subclasses acknowledge the elements here.
+     *
+     * @param failure what the handler threw, null if it returned normally
+     */
+    protected void completed(T element, Throwable failure) {
+        if (failure != null) {
+            logger.warn("Failed to handle " + element, failure);
+        }
+    }
+
+    private void handle(T element) {
+        Throwable thrown = null;
+        try {
+            handler.handle(element);
+        } catch (Throwable e) {
+            thrown = e;
+        }
+        completeElement(element, thrown);
+    }
+
+    private void completeElement(T element, Throwable thrown) {
+        try {
+            completed(element, thrown);
+        } finally {
+            if (!done) {
+                subscription.request(1);
+            }
+            if (active.decrementAndGet() == 0 && done) {
+                terminated.countDown();
+            }
+        }
+    }
+
+    private void terminate() {
+        done = true;
+        if (active.get() == 0) {
+            terminated.countDown();
+        }
+    }
+}
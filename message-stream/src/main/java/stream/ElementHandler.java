@@ -0,0 +1,10 @@
+package stream;
+
+/**
+ * Does the work of a {@link ConcurrentSubscriber} for each element.
+ */
+public interface ElementHandler<T> {
+
+    void handle(T element) throws Exception;
+
+}
@@ -0,0 +1,12 @@
+package stream;
+
+/**
+ * A source of elements sent to a subscriber only as fast as it asks for them. The same contract as
+ * <code>org.reactivestreams.Publisher</code>: one <code>onSubscribe</code>, then at most as many
+ * <code>onNext</code> as requested, serially, then at most one of <code>onError</code> or <code>onComplete</code>.
+ */
+public interface Publisher<T> {
+
+    void subscribe(Subscriber<? super T> subscriber);
+
+}
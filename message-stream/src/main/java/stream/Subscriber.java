@@ -0,0 +1,17 @@
+package stream;
+
+/**
+ * Receives the elements of a {@link Publisher}, the same contract as <code>org.reactivestreams.Subscriber</code>.
+ * Nothing arrives before it requests it through its {@link Subscription}.
+ */
+public interface Subscriber<T> {
+
+    void onSubscribe(Subscription subscription);
+
+    void onNext(T element);
+
+    void onError(Throwable failure);
+
+    void onComplete();
+
+}
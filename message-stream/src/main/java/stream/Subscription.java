@@ -0,0 +1,20 @@
+package stream;
+
+/**
+ * The demand of a {@link Subscriber}, the same contract as <code>org.reactivestreams.Subscription</code>.
+ */
+public interface Subscription {
+
+    /**
+     * Lets the publisher send <code>n</code> more elements, on top of the ones requested before. Requests add up
+     * to at most <code>Long.MAX_VALUE</code>, which stands for no limit. <code>n</code> below 1 cancels the
+     * subscription with an <code>IllegalArgumentException</code>.
+     */
+    void request(long n);
+
+    /**
+     * Asks the publisher to stop. A few elements already on their way may still arrive.
+     */
+    void cancel();
+
+}
@@ -0,0 +1,48 @@
+package stream.amqp;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import stream.ConcurrentSubscriber;
+import stream.ElementHandler;
+
+/**
+ * Handles the messages of a {@link QueuePublisher} at most <code>concurrency</code> at once and acknowledges each
+ * once its handler returned, or rejects it if the handler failed, before requesting the next one. The queue then
+ * never has more than <code>concurrency</code> messages out to this subscriber.
+ */
+public class AcknowledgingSubscriber extends ConcurrentSubscriber<Delivery> {
+
+    private static final Log logger = LogFactory.getLog(AcknowledgingSubscriber.class);
+
+    private final boolean requeueFailed;
+
+    /**
+     * @param requeueFailed whether the messages whose handler failed go back to the queue, like the default of a
+     *        listener container, else the broker drops or dead-letters them
+     */
+    public AcknowledgingSubscriber(ElementHandler<? super Delivery> handler, Executor executor, int concurrency,
+            boolean requeueFailed) {
+        super(handler, executor, concurrency);
+        this.requeueFailed = requeueFailed;
+    }
+
+    @Override
+    protected void completed(Delivery delivery, Throwable failure) {
+        try {
+            if (failure == null) {
+                delivery.ack();
+            } else {
+                logger.warn("Failed to handle " + delivery + ", " + (requeueFailed ? "requeued" : "rejected"),
+                        failure);
+                delivery.reject(requeueFailed);
+            }
+        } catch (IOException e) {
+            // the channel is gone, the broker requeues the message by itself
+            logger.warn("Failed to settle " + delivery, e);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package stream.amqp;
+
+import java.io.IOException;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import stream.Subscriber;
+import stream.Subscription;
+
+/**
+ * Publishes the messages of a {@link stream.Publisher} on a channel of its own in confirm mode, with at most
+ * <code>window</code> of them not confirmed by the broker: it requests that many up front and one more for each
+ * confirmation, so the publisher slows down to the pace of the broker. A message the broker refuses
+ * (<code>basic.nack</code>) is counted as rejected, not sent again.
+ * <p>
+ * With a {@link stream.BlockingSink} in front, the code producing the messages waits in <code>next</code> while the
+ * window is full. If the channel fails the subscription is cancelled and {@link #awaitConfirms} returns at once.
+ */
+public class ConfirmingSender implements Subscriber<OutboundMessage> {
+
+    private final Connection connection;
+
+    private final int window;
+
+    //sequence numbers of the messages published and not confirmed yet
+    private final NavigableSet<Long> outstanding = new ConcurrentSkipListSet<Long>();
+
+    private final AtomicLong confirmed = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile Channel channel;
+
+    private volatile Subscription subscription;
+
+    private volatile boolean completed;
+
+    private volatile Throwable failure;
+
+    public ConfirmingSender(Connection connection, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Invalid confirm window: " + window);
+        }
+        this.connection = connection;
+        this.window = window;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        try {
+            Channel opened = connection.createChannel();
+            if (opened == null) {
+                throw new IOException("No channel left on the connection");
+            }
+            opened.confirmSelect();
+            opened.addConfirmListener(new ConfirmListener() {
+                @Override
+                public void handleAck(long deliveryTag, boolean multiple) {
+                    settle(deliveryTag, multiple, confirmed);
+                }
+
+                @Override
+                public void handleNack(long deliveryTag, boolean multiple) {
+                    settle(deliveryTag, multiple, rejected);
+                }
+            });
+            opened.addShutdownListener(new ShutdownListener() {
+                @Override
+                public void shutdownCompleted(ShutdownSignalException cause) {
+                    if (!cause.isInitiatedByApplication() || !outstanding.isEmpty()) {
+                        fail(cause);
+                    }
+                }
+            });
+            channel = opened;
+        } catch (IOException e) {
+            fail(e);
+            return;
+        }
+        subscription.request(window);
+    }
+
+    @Override
+    public void onNext(OutboundMessage message) {
+        Channel current = channel;
+        if (current == null || failure != null) {
+            return;
+        }
+        long sequence = current.getNextPublishSeqNo();
+        outstanding.add(sequence);
+        try {
+            current.basicPublish(message.getExchange(), message.getRoutingKey(), message.getProperties(),
+                    message.getBody());
+        } catch (IOException e) {
+            outstanding.remove(sequence);
+            fail(e);
+        }
+    }
+
+    @Override
+    public void onError(Throwable failure) {
+        this.failure = failure;
+        done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+        completed = true;
+        if (outstanding.isEmpty()) {
+            done.countDown();
+        }
+    }
+
+    /**
+     * Waits until the publisher completed and the broker confirmed every message, or the publisher or the
+     * channel failed.
+     *
+     * @return false if the time ran out first
+     */
+    public boolean awaitConfirms(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    /**
+     * Closes the channel; the messages not confirmed yet may or may not have reached the broker.
+     */
+    public void close() throws IOException {
+        Channel current = channel;
+        if (current != null && current.isOpen()) {
+            try {
+                current.close();
+            } catch (ShutdownSignalException e) {
+                // closed meanwhile
+            } catch (TimeoutException e) {
+                throw new IOException("The broker did not close the channel in time", e);
+            }
+        }
+    }
+
+    public long getConfirmed() {
+        return confirmed.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public int getOutstanding() {
+        return outstanding.size();
+    }
+
+    /**
+     * @return the failure of the publisher or of the channel, null if there was none
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    private void settle(long deliveryTag, boolean multiple, AtomicLong counter) {
+        int count = 0;
+        if (multiple) {
+            NavigableSet<Long> settled = outstanding.headSet(deliveryTag, true);
+            // the set is concurrent: count what this thread removed
+            while (settled.pollFirst() != null) {
+                count++;
+            }
+        } else if (outstanding.remove(deliveryTag)) {
+            count = 1;
+        }
+        if (count == 0) {
+            return;
+        }
+        counter.addAndGet(count);
+        if (completed) {
+            if (outstanding.isEmpty()) {
+                done.countDown();
+            }
+        } else if (failure == null) {
+            subscription.request(count);
+        }
+    }
+
+    private void fail(Throwable cause) {
+        failure = cause;
+        Subscription current = subscription;
+        if (current != null) {
+            current.cancel();
+        }
+        done.countDown();
+    }
+}
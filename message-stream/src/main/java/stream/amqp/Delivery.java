@@ -0,0 +1,77 @@
+package stream.amqp;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+
+/**
+ * A message of a {@link QueuePublisher}, acknowledged or rejected once by whoever handled it. Until then it counts
+ * against the prefetch of the channel, so the broker sends no more messages than the subscriber asked for.
+ */
+public final class Delivery {
+
+    private final QueueSubscription subscription;
+
+    private final Envelope envelope;
+
+    private final BasicProperties properties;
+
+    private final byte[] body;
+
+    private final AtomicBoolean settled = new AtomicBoolean();
+
+    Delivery(QueueSubscription subscription, Envelope envelope, BasicProperties properties, byte[] body) {
+        this.subscription = subscription;
+        this.envelope = envelope;
+        this.properties = properties;
+        this.body = body;
+    }
+
+    public Envelope getEnvelope() {
+        return envelope;
+    }
+
+    public BasicProperties getProperties() {
+        return properties;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return the channel the message came on, where a handler publishes what it must send before the
+     *         acknowledgement, a retry of the message for instance
+     */
+    public Channel getChannel() {
+        return subscription.getChannel();
+    }
+
+    /**
+     * Acknowledges the message, nothing if it was already acknowledged or rejected.
+     */
+    public void ack() throws IOException {
+        if (settled.compareAndSet(false, true)) {
+            subscription.ack(envelope.getDeliveryTag());
+        }
+    }
+
+    /**
+     * Rejects the message, nothing if it was already acknowledged or rejected.
+     *
+     * @param requeue whether the broker delivers it again, else it drops or dead-letters it
+     */
+    public void reject(boolean requeue) throws IOException {
+        if (settled.compareAndSet(false, true)) {
+            subscription.reject(envelope.getDeliveryTag(), requeue);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Delivery " + envelope.getDeliveryTag() + " of " + subscription.getQueue();
+    }
+}
@@ -0,0 +1,43 @@
+package stream.amqp;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+/**
+ * A message for a {@link ConfirmingSender}: where it goes, its properties and its body.
+ */
+public final class OutboundMessage {
+
+    private final String exchange;
+
+    private final String routingKey;
+
+    private final BasicProperties properties;
+
+    private final byte[] body;
+
+    /**
+     * @param properties null for none
+     */
+    public OutboundMessage(String exchange, String routingKey, BasicProperties properties, byte[] body) {
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.properties = properties;
+        this.body = body;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    public BasicProperties getProperties() {
+        return properties;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+}
@@ -0,0 +1,61 @@
+package stream.amqp;
+
+import java.io.IOException;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+
+import stream.Publisher;
+import stream.Subscriber;
+import stream.Subscription;
+
+/**
+ * The messages of a queue as a {@link Publisher}: the broker sends each subscriber only the messages it
+ * requested and has not acknowledged or rejected yet, by way of the prefetch of its channel. A slow subscriber
+ * leaves the messages in the queue, where the other consumers can take them, instead of holding them unacknowledged.
+ * <p>
+ * Each subscriber consumes on a channel of its own, so several subscribers share the messages like several
+ * consumers do. A subscription ends with <code>onComplete</code> if the queue is deleted or the connection closed
+ * by the application, with <code>onError</code> if the channel or the connection fails; the messages not
+ * acknowledged yet go back to the queue. Cancelling stops the consumer and closes the channel once the messages
+ * already passed on are settled.
+ */
+public class QueuePublisher implements Publisher<Delivery> {
+
+    private final Connection connection;
+
+    private final String queue;
+
+    public QueuePublisher(Connection connection, String queue) {
+        this.connection = connection;
+        this.queue = queue;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Delivery> subscriber) {
+        Channel channel;
+        try {
+            channel = connection.createChannel();
+            if (channel == null) {
+                throw new IOException("No channel left on the connection");
+            }
+        } catch (IOException e) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(e);
+            return;
+        }
+        subscriber.onSubscribe(new QueueSubscription(channel, queue, subscriber));
+    }
+
+    public String getQueue() {
+        return queue;
+    }
+}
@@ -0,0 +1,261 @@
+package stream.amqp;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import stream.Subscriber;
+import stream.Subscription;
+
+/**
+ * The subscription of a subscriber to a {@link QueuePublisher}: a channel of its own with one consumer on the
+ * queue. The demand not settled yet, requested minus acknowledged or rejected, is the prefetch of the channel,
+ * so the broker holds the messages nobody asked for instead of the subscriber.
+ * <p>
+ * The prefetch follows the demand up at once. It comes down only once the demand fell to half of it, so a
+ * subscriber that acknowledges a message and requests the next one does not cost a <code>basic.qos</code> each,
+ * and never down to zero, which is no limit in AMQP; the few messages the broker sends beyond the demand wait
+ * here until it is requested. The prefetch is global, RabbitMQ then applies it at once to the consumer already
+ * running.
+ */
+final class QueueSubscription implements Subscription {
+
+    private static final Log logger = LogFactory.getLog(QueueSubscription.class);
+
+    //basic.qos takes the prefetch count as an unsigned short
+    static final int MAX_PREFETCH = 65535;
+
+    private final Channel channel;
+
+    private final String queue;
+
+    private final Subscriber<? super Delivery> subscriber;
+
+    private final DefaultConsumer consumer;
+
+    //delivered by the broker and not passed to the subscriber yet
+    private final Queue<Delivery> buffer = new ConcurrentLinkedQueue<Delivery>();
+
+    //drain loop: the thread that raises it from 0 passes the messages on, the others only tell it to look again
+    private final AtomicInteger wip = new AtomicInteger();
+
+    //written under the lock of this, read by the drain loop
+    private volatile long requested;
+
+    private volatile boolean cancelled;
+
+    //written by the drain loop only
+    private volatile long emitted;
+
+    //guarded by this
+    private long settled;
+
+    private int prefetch;
+
+    private String consumerTag;
+
+    //the end of the stream, COMPLETE or the failure, set once
+    private volatile Throwable terminal;
+
+    //drain loop only
+    private boolean terminated;
+
+    private static final Throwable COMPLETE = new Throwable("complete", null, false, false) {
+        private static final long serialVersionUID = 1L;
+    };
+
+    QueueSubscription(Channel channel, String queue, Subscriber<? super Delivery> subscriber) {
+        this.channel = channel;
+        this.queue = queue;
+        this.subscriber = subscriber;
+        this.consumer = new DefaultConsumer(channel) {
+            @Override
+            public void handleDelivery(String consumerTag, Envelope envelope, BasicProperties properties,
+                    byte[] body) {
+                buffer.offer(new Delivery(QueueSubscription.this, envelope, properties, body));
+                drain();
+            }
+
+            @Override
+            public void handleCancel(String consumerTag) {
+                // the queue was deleted
+                terminate(COMPLETE);
+            }
+
+            @Override
+            public void handleShutdownSignal(String consumerTag, ShutdownSignalException signal) {
+                terminate(signal.isInitiatedByApplication() ? COMPLETE : signal);
+            }
+        };
+    }
+
+    String getQueue() {
+        return queue;
+    }
+
+    Channel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public void request(long n) {
+        if (n < 1) {
+            terminate(new IllegalArgumentException("Invalid request: " + n));
+            cancel();
+            return;
+        }
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            requested = Long.MAX_VALUE - requested < n ? Long.MAX_VALUE : requested + n;
+            adjust();
+        }
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        String tag;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            tag = consumerTag;
+            consumerTag = null;
+        }
+        if (tag != null && channel.isOpen()) {
+            try {
+                channel.basicCancel(tag);
+            } catch (IOException e) {
+                logger.debug("Failed to cancel the consumer of " + queue, e);
+            }
+        }
+        // the messages not passed on go back to the queue
+        drain();
+        closeIfSettled();
+    }
+
+    void ack(long deliveryTag) throws IOException {
+        channel.basicAck(deliveryTag, false);
+        settle();
+    }
+
+    void reject(long deliveryTag, boolean requeue) throws IOException {
+        channel.basicReject(deliveryTag, requeue);
+        settle();
+    }
+
+    private void settle() {
+        synchronized (this) {
+            settled++;
+            adjust();
+        }
+        drain();
+        closeIfSettled();
+    }
+
+    /**
+     * Sets the prefetch to the demand not settled, and stops or starts consuming. Under the lock of this.
+     */
+    private void adjust() {
+        if (cancelled || terminal != null) {
+            return;
+        }
+        long window = Math.min(requested - settled, MAX_PREFETCH);
+        try {
+            if (window > prefetch || (window > 0 && window < prefetch / 2)) {
+                channel.basicQos((int) window, true);
+                prefetch = (int) window;
+            }
+            if (consumerTag == null && prefetch > 0) {
+                consumerTag = channel.basicConsume(queue, false, consumer);
+            }
+        } catch (IOException e) {
+            terminal = e;
+        }
+    }
+
+    private void terminate(Throwable end) {
+        if (terminal == null) {
+            terminal = end;
+        }
+        drain();
+    }
+
+    /**
+     * Passes the buffered messages on as far as requested, then the end of the stream once they are all passed
+     * on, or its failure at once. Requeues them once cancelled.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Throwable end = terminal;
+            if (cancelled || (end != null && end != COMPLETE)) {
+                requeueBuffered();
+            } else {
+                Delivery delivery;
+                while (!cancelled && emitted < requested && (delivery = buffer.poll()) != null) {
+                    emitted++;
+                    subscriber.onNext(delivery);
+                }
+            }
+            if (end != null && !terminated && !cancelled && buffer.isEmpty()) {
+                terminated = true;
+                if (end == COMPLETE) {
+                    subscriber.onComplete();
+                } else {
+                    subscriber.onError(end);
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void requeueBuffered() {
+        Delivery delivery;
+        while ((delivery = buffer.poll()) != null) {
+            if (!channel.isOpen()) {
+                // the broker requeues them by itself
+                buffer.clear();
+                return;
+            }
+            try {
+                channel.basicReject(delivery.getEnvelope().getDeliveryTag(), true);
+            } catch (IOException e) {
+                logger.debug("Failed to requeue " + delivery, e);
+            }
+        }
+    }
+
+    /**
+     * Closes the channel of a cancelled subscription once the messages passed on were settled.
+     */
+    private void closeIfSettled() {
+        synchronized (this) {
+            if (!cancelled || settled < emitted || !channel.isOpen()) {
+                return;
+            }
+        }
+        try {
+            channel.close();
+        } catch (Exception e) {
+            // already closed
+            logger.debug("Failed to close the channel of " + queue, e);
+        }
+    }
+}
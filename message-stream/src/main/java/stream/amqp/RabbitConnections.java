@@ -0,0 +1,49 @@
+package stream.amqp;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
+
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+/**
+ * RabbitMQ client connections of their own, outside the Spring AMQP connection factory of a sample, to the
+ * broker of its <code>spring.rabbitmq</code> properties.
+ */
+public final class RabbitConnections {
+
+    private RabbitConnections() {
+    }
+
+    /**
+     * @return a client connection factory with the host, port, credentials and virtual host of the properties
+     */
+    public static ConnectionFactory connectionFactory(RabbitProperties properties) {
+        ConnectionFactory connectionFactory = new ConnectionFactory();
+        connectionFactory.setHost(properties.getHost());
+        connectionFactory.setPort(properties.getPort());
+        if (properties.getUsername() != null) {
+            connectionFactory.setUsername(properties.getUsername());
+        }
+        if (properties.getPassword() != null) {
+            connectionFactory.setPassword(properties.getPassword());
+        }
+        if (properties.getVirtualHost() != null) {
+            connectionFactory.setVirtualHost(properties.getVirtualHost());
+        }
+        return connectionFactory;
+    }
+
+    /**
+     * @throws IOException if the broker cannot be reached or does not answer in time
+     */
+    public static Connection newConnection(RabbitProperties properties) throws IOException {
+        try {
+            return connectionFactory(properties).newConnection();
+        } catch (TimeoutException e) {
+            throw new IOException("RabbitMQ did not answer in time", e);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package sink;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prints lines without making the calling threads wait for the output. {@link #println(CharSequence)} only
+ * puts the line in a bounded ring buffer; a single writer thread drains it in batches, encodes them into one
+ * reused buffer and writes each batch with a single channel write, bypassing the lock of System.out.
+ * When the buffer is full the overflow policy decides: BLOCK waits for room, DROP discards the line and
+ * SAMPLE keeps one line out of every sampleRate once the buffer is half full, dropping the rest.
+ */
+public class AsyncPrintSink implements Closeable {
+
+    public enum Overflow {
+        BLOCK, DROP, SAMPLE
+    }
+
+    private static final int MAX_BATCH = 512;
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final BlockingQueue<String> buffer;
+
+    private final int capacity;
+
+    private final Overflow overflow;
+
+    private final int sampleRate;
+
+    private final WritableByteChannel channel;
+
+    private final boolean closeChannel;
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong sampled = new AtomicLong();
+
+    private final Thread writer;
+
+    private volatile boolean running;
+
+    /**
+     * @param target "stdout" or the path of a file the lines are appended to
+     */
+    public static AsyncPrintSink create(String target, int capacity, Overflow overflow, int sampleRate) throws IOException {
+        if ("stdout".equalsIgnoreCase(target)) {
+            return new AsyncPrintSink(new FileOutputStream(FileDescriptor.out).getChannel(), false, capacity, overflow,
+                    sampleRate);
+        }
+        return new AsyncPrintSink(FileChannel.open(Paths.get(target), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND), true, capacity, overflow, sampleRate);
+    }
+
+    public AsyncPrintSink(WritableByteChannel channel, boolean closeChannel, int capacity, Overflow overflow,
+            int sampleRate) {
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+        this.capacity = capacity;
+        this.buffer = new ArrayBlockingQueue<String>(capacity);
+        this.overflow = overflow;
+        this.sampleRate = Math.max(sampleRate, 1);
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "async-print-sink");
+        this.writer.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        writer.start();
+    }
+
+    /**
+     * @return false if the line was dropped by the overflow policy
+     */
+    public boolean println(CharSequence line) {
+        // the caller may reuse its CharSequence, the writer needs its own copy
+        String text = line.toString();
+        switch (overflow) {
+        case BLOCK:
+            try {
+                buffer.put(text);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        case SAMPLE:
+            if (buffer.remainingCapacity() < capacity / 2 && sampled.incrementAndGet() % sampleRate != 0) {
+                break;
+            }
+            // fall through
+        default:
+            if (buffer.offer(text)) {
+                return true;
+            }
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Writes the lines still in the buffer and stops the writer thread.
+     */
+    @Override
+    public void close() throws IOException {
+        // no interrupt: it would close the channel if the writer is in the middle of a write
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (closeChannel) {
+            channel.close();
+        }
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private void drain() {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(64 * 1024);
+        List<String> batch = new ArrayList<String>(MAX_BATCH);
+        while (running || !buffer.isEmpty()) {
+            try {
+                String first = running ? buffer.poll(100, TimeUnit.MILLISECONDS) : buffer.poll();
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            buffer.drainTo(batch, MAX_BATCH - 1);
+            try {
+                for (String line : batch) {
+                    encode(encoder, CharBuffer.wrap(line), bytes);
+                    if (bytes.remaining() < LINE_SEPARATOR.length) {
+                        flush(bytes);
+                    }
+                    bytes.put(LINE_SEPARATOR);
+                }
+                flush(bytes);
+                written.addAndGet(batch.size());
+            } catch (IOException e) {
+                dropped.addAndGet(batch.size());
+                bytes.clear();
+            }
+            batch.clear();
+        }
+    }
+
+    private void encode(CharsetEncoder encoder, CharBuffer chars, ByteBuffer bytes) throws IOException {
+        encoder.reset();
+        while (encoder.encode(chars, bytes, true).isOverflow()) {
+            flush(bytes);
+        }
+        while (encoder.flush(bytes).isOverflow()) {
+            flush(bytes);
+        }
+    }
+
+    private void flush(ByteBuffer bytes) throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+}
@@ -3,48 +3,245 @@ package hello;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
 import javax.jms.ConnectionFactory;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.Session;
 
 
+import org.springframework.aop.framework.autoproxy.DefaultAdvisorAutoProxyCreator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
 import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.config.DefaultJmsListenerContainerFactory;
 import org.springframework.jms.config.JmsListenerContainerFactory;
 import org.springframework.jms.config.SimpleJmsListenerContainerFactory;
 import org.springframework.jms.core.JmsTemplate;
-import org.springframework.jms.core.MessageCreator;
+import org.springframework.jms.core.MessagePostProcessor;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.util.FileSystemUtils;
 
+import codec.compress.CompressionRegistry;
+import codec.compress.PayloadDecompressor;
+import codec.jms.CompressingJmsMessageConverter;
+import codec.jms.EnvelopeJmsMessageConverter;
+import hello.receiver.Receiver;
+import idempotent.IdempotencyWindow;
+import idempotent.aop.IdempotentReceiverAdvisor;
+import idempotent.aop.IdempotentReceiverInterceptor;
+import sink.AsyncPrintSink;
+import spool.Spool;
+import spool.SpoolDrainer;
+import spool.jms.JmsTemplateTarget;
+
 
 @SpringBootApplication
 @EnableJms
 public class Application {
 
 
-    @Bean // Strictly speaking this bean is not necessary as boot creates a default
-    JmsListenerContainerFactory<?> myJmsContainerFactory(ConnectionFactory connectionFactory) {
-        SimpleJmsListenerContainerFactory factory = new SimpleJmsListenerContainerFactory();
-        factory.setConnectionFactory(connectionFactory);
-        return factory;
+    /**
+     * How the listeners run, see jms.listener.* in application.properties:
+     * session runs them on the JMS session thread, one message at a time per destination;
+     * per-message runs up to jms.listener.permits consumers, each on a thread of its own with its own session,
+     * the message acknowledged once its listener returned;
+     * pooled runs jms.listener.concurrency consumers, each with its own session.
+     */
+    @Bean
+    JmsListenerContainerFactory<?> myJmsContainerFactory(ConnectionFactory connectionFactory,
+            @Value("${jms.listener.mode:session}") String mode,
+            @Value("${jms.listener.concurrency:4-16}") String concurrency,
+            @Value("${jms.listener.permits:64}") int permits, PermitBoundedExecutor listenerExecutor,
+            MessageConverter jmsMessageConverter) {
+        switch (mode) {
+        case "session":
+            SimpleJmsListenerContainerFactory factory = new SimpleJmsListenerContainerFactory();
+            factory.setConnectionFactory(connectionFactory);
+            factory.setMessageConverter(jmsMessageConverter);
+            return factory;
+        case "per-message":
+            // every consumer holds a permit of the executor, so no more consumers than permits
+            DefaultJmsListenerContainerFactory perMessage = new DefaultJmsListenerContainerFactory();
+            perMessage.setConnectionFactory(connectionFactory);
+            perMessage.setTaskExecutor(listenerExecutor);
+            perMessage.setConcurrency("1-" + permits);
+            // AUTO_ACKNOWLEDGE would acknowledge on receive, before the listener runs
+            perMessage.setSessionAcknowledgeMode(Session.CLIENT_ACKNOWLEDGE);
+            perMessage.setMessageConverter(jmsMessageConverter);
+            return perMessage;
+        case "pooled":
+            DefaultJmsListenerContainerFactory pooled = new DefaultJmsListenerContainerFactory();
+            pooled.setConnectionFactory(connectionFactory);
+            pooled.setConcurrency(concurrency);
+            pooled.setMessageConverter(jmsMessageConverter);
+            return pooled;
+        default:
+            throw new IllegalArgumentException("Unknown jms.listener.mode " + mode
+                    + ", expected session, per-message or pooled");
+        }
+    }
+
+    /**
+     * Body of the messages, see jms.codec in application.properties: text sends TextMessages,
+     * envelope sends the binary envelope of message-codec in BytesMessages and still reads TextMessages.
+     * Bodies of jms.compression.threshold bytes or more are compressed with jms.compression, which is also
+     * the only compression read: the receiver gets the messages of this same application. Only that codec is
+     * built, the Zstd dictionary is read for zstd alone.
+     */
+    @Bean
+    MessageConverter jmsMessageConverter(@Value("${jms.codec:text}") String codec,
+            @Value("${jms.compression:none}") String compression,
+            @Value("${jms.compression.threshold:1024}") int threshold,
+            @Value("${jms.compression.level:3}") int level,
+            @Value("${jms.compression.dictionary:}") String dictionary) throws IOException {
+        MessageConverter converter;
+        switch (codec) {
+        case "text":
+            converter = new SimpleMessageConverter();
+            break;
+        case "envelope":
+            converter = new EnvelopeJmsMessageConverter();
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown jms.codec " + codec + ", expected text or envelope");
+        }
+        CompressionRegistry compressions = CompressionRegistry.forSetting(compression, level, dictionary);
+        return new CompressingJmsMessageConverter(converter, compressions.compressor(compression, threshold),
+                new PayloadDecompressor(compressions));
     }
 
+    @Bean
+    JmsTemplate jmsTemplate(ConnectionFactory connectionFactory, MessageConverter jmsMessageConverter) {
+        JmsTemplate jmsTemplate = new JmsTemplate(connectionFactory);
+        jmsTemplate.setMessageConverter(jmsMessageConverter);
+        return jmsTemplate;
+    }
+
+    /**
+     * Threads of the consumers of the per-message listener mode, virtual threads on Java 21 and later
+     */
+    @Bean(destroyMethod = "close")
+    PermitBoundedExecutor listenerExecutor(@Value("${jms.listener.permits:64}") int permits) {
+        return new PermitBoundedExecutor(permits, "jms-listener-");
+    }
+
+
+    /**
+     * Ids of the last messages received, see jms.idempotent.* in application.properties: the
+     * @IdempotentReceiver listener methods skip the redelivered messages already processed
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnExpression("${jms.idempotent.capacity:100000} > 0")
+    IdempotencyWindow idempotencyWindow(@Value("${jms.idempotent.file:}") String file,
+            @Value("${jms.idempotent.capacity:100000}") int capacity,
+            @Value("${jms.idempotent.ttl:3600000}") long ttl) throws IOException {
+        return IdempotencyWindow.open(file, capacity, ttl);
+    }
+
+    @Bean
+    @ConditionalOnExpression("${jms.idempotent.capacity:100000} > 0")
+    IdempotentReceiverAdvisor idempotentReceiverAdvisor(IdempotencyWindow idempotencyWindow) {
+        return new IdempotentReceiverAdvisor(new IdempotentReceiverInterceptor(idempotencyWindow));
+    }
+
+    // proxies the beans the advisors apply to, before the @JmsListener endpoints are registered with them
+    @Bean
+    static DefaultAdvisorAutoProxyCreator advisorAutoProxyCreator() {
+        DefaultAdvisorAutoProxyCreator proxyCreator = new DefaultAdvisorAutoProxyCreator();
+        proxyCreator.setProxyTargetClass(true);
+        proxyCreator.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return proxyCreator;
+    }
+
+    /**
+     * Spool of the messages to send, see jms.spool.* in application.properties: main appends the message and
+     * the drainer sends it with the JmsTemplate, the broker may be down meanwhile
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnExpression("'${jms.spool.dir:}' != ''")
+    Spool spool(@Value("${jms.spool.dir:}") String dir, @Value("${jms.spool.segment-size:16777216}") int segmentSize,
+            @Value("${jms.spool.max-segments:16}") int maxSegments,
+            @Value("${jms.spool.append-timeout:10000}") long appendTimeout) throws IOException {
+        return new Spool(new File(dir), segmentSize, maxSegments, appendTimeout);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @ConditionalOnExpression("'${jms.spool.dir:}' != ''")
+    SpoolDrainer spoolDrainer(Spool spool, JmsTemplate jmsTemplate,
+            @Value("${jms.spool.retry-interval:1000}") long retryInterval) {
+        // the sends are synchronous and confirmed when they return, one message in flight
+        return new SpoolDrainer(spool, new JmsTemplateTarget(jmsTemplate), 1, 60000, retryInterval);
+    }
+
+    /**
+     * Output of the receiver: stdout or a file path, see sink.* in application.properties
+     */
+    @Bean(initMethod = "start", destroyMethod = "close")
+    AsyncPrintSink printSink(@Value("${sink.target:stdout}") String target, @Value("${sink.capacity:8192}") int capacity,
+            @Value("${sink.overflow:BLOCK}") AsyncPrintSink.Overflow overflow,
+            @Value("${sink.sample-rate:100}") int sampleRate) throws IOException {
+        return AsyncPrintSink.create(target, capacity, overflow, sampleRate);
+    }
+
+    /**
+     * Threads of the POST /ingest batches, see ingest.* in application.properties: a batch waits in the queue
+     * while all of them are busy and is refused once the queue is full
+     */
+    @Bean
+    ThreadPoolTaskExecutor ingestExecutor(@Value("${ingest.threads:8}") int threads,
+            @Value("${ingest.queue-capacity:64}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("ingest-");
+        return executor;
+    }
+
+    /**
+     * Writes the greetings of greeting.mode=fast straight into the response, ahead of the Jackson converter
+     */
+    @Bean
+    @ConditionalOnExpression("'${greeting.mode:simple}' == 'fast'")
+    GreetingJsonConverter greetingJsonConverter() {
+        return new GreetingJsonConverter();
+    }
 
     public static void main(String[] args) {
         // Launch the application
         ConfigurableApplicationContext context = SpringApplication.run(Application.class, args);
 
-        // Send a message
-        MessageCreator messageCreator = new MessageCreator() {
+        // Send a message, its body written by the message converter
+        MessagePostProcessor messagePostProcessor = new MessagePostProcessor() {
             @Override
-            public Message createMessage(Session session) throws JMSException {
-                return session.createTextMessage("ping!");
+            public Message postProcessMessage(Message message) throws JMSException {
+                // send time, the receiver measures the end-to-end latency with it
+                message.setLongProperty(Receiver.SEND_TIMESTAMP, System.currentTimeMillis());
+                return message;
             }
         };
         JmsTemplate jmsTemplate = context.getBean(JmsTemplate.class);
         System.out.println("Sending a new message.");
-        jmsTemplate.send("mailbox-destination", messageCreator);
+        if (context.getBeanNamesForType(Spool.class).length > 0) {
+            // sent by the spool drainer, now or once the broker is back
+            try {
+                context.getBean(Spool.class).append(JmsTemplateTarget.spooled("mailbox-destination", "ping!",
+                        Collections.<String, Object> singletonMap(Receiver.SEND_TIMESTAMP, System.currentTimeMillis()))
+                        .encode());
+            } catch (IOException | InterruptedException e) {
+                throw new IllegalStateException("Cannot spool the message", e);
+            }
+        } else {
+            jmsTemplate.convertAndSend("mailbox-destination", "ping!", messagePostProcessor);
+        }
     }
 }
\ No newline at end of file
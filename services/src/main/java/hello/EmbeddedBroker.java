@@ -0,0 +1,150 @@
+package hello;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.leveldb.LevelDBStore;
+import org.apache.activemq.store.PersistenceAdapter;
+import org.apache.activemq.store.kahadb.KahaDBPersistenceAdapter;
+import org.apache.activemq.store.memory.MemoryPersistenceAdapter;
+import org.springframework.util.StringUtils;
+
+/**
+ * Builds the ActiveMQ broker of jms.broker.embedded=true, running in the application. Clients in the same JVM
+ * connect with {@link #vmUrl(String)}: the vm transport hands the message objects to the broker without
+ * marshalling them, and with copyMessageOnSend off the producer does not copy them either, so a sender must not
+ * change a message once sent (JmsTemplate creates one per send). Remote clients connect to the NIO connector,
+ * which serves many connections with a few selector threads instead of a thread per connection.
+ * <p>
+ * The store is MEMORY (nothing survives a restart), KAHADB (journal plus index, the ActiveMQ default) or LEVELDB,
+ * which needs the leveldb store dependencies (scala-library, leveldb, hawtdispatch-scala) on the classpath. The
+ * journal of the persistent stores syncs to disk before a send is acknowledged unless journalSync is off, which
+ * is faster and loses the last messages on a crash of the machine. With producer flow control a producer waits
+ * once a destination holds destinationMemoryLimit bytes, otherwise the broker takes the messages and pages them
+ * to disk.
+ */
+public class EmbeddedBroker {
+
+    public enum Store {
+        MEMORY, KAHADB, LEVELDB
+    }
+
+    private final String name;
+
+    private final Store store;
+
+    private final File dataDirectory;
+
+    private String nioUri = "nio://0.0.0.0:8082";
+
+    private boolean journalSync = true;
+
+    private int journalMaxFileLength = 32 * 1024 * 1024;
+
+    private boolean producerFlowControl = true;
+
+    private long destinationMemoryLimit = 64L * 1024 * 1024;
+
+    private long memoryLimit = 512L * 1024 * 1024;
+
+    public EmbeddedBroker(String name, Store store, File dataDirectory) {
+        this.name = name;
+        this.store = store;
+        this.dataDirectory = dataDirectory;
+    }
+
+    /**
+     * URL of the broker for the clients in this JVM, which wait up to 10 seconds for it to start
+     */
+    public static String vmUrl(String brokerName) {
+        return "vm://" + brokerName + "?create=false&waitForStart=10000&jms.copyMessageOnSend=false";
+    }
+
+    /**
+     * @param nioUri the NIO connector, for instance nio://0.0.0.0:8082; empty for no connector, vm clients only
+     */
+    public void setNioUri(String nioUri) {
+        this.nioUri = nioUri;
+    }
+
+    public void setJournalSync(boolean journalSync) {
+        this.journalSync = journalSync;
+    }
+
+    public void setJournalMaxFileLength(int journalMaxFileLength) {
+        this.journalMaxFileLength = journalMaxFileLength;
+    }
+
+    public void setProducerFlowControl(boolean producerFlowControl) {
+        this.producerFlowControl = producerFlowControl;
+    }
+
+    /**
+     * Bytes of messages a queue or topic holds in memory, producers wait beyond it with producer flow control
+     */
+    public void setDestinationMemoryLimit(long destinationMemoryLimit) {
+        this.destinationMemoryLimit = destinationMemoryLimit;
+    }
+
+    /**
+     * Bytes of messages the whole broker holds in memory
+     */
+    public void setMemoryLimit(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * @return the broker, not started
+     */
+    public BrokerService newBroker() throws Exception {
+        BrokerService broker = new BrokerService();
+        broker.setBrokerName(name);
+        broker.setDataDirectoryFile(dataDirectory);
+        // stopped with the application context
+        broker.setUseShutdownHook(false);
+        if (store == Store.MEMORY) {
+            broker.setPersistent(false);
+            broker.setPersistenceAdapter(new MemoryPersistenceAdapter());
+        } else {
+            broker.setPersistenceAdapter(persistenceAdapter());
+        }
+        PolicyEntry policy = new PolicyEntry();
+        policy.setProducerFlowControl(producerFlowControl);
+        policy.setMemoryLimit(destinationMemoryLimit);
+        PolicyMap policies = new PolicyMap();
+        policies.setDefaultEntry(policy);
+        broker.setDestinationPolicy(policies);
+        broker.getSystemUsage().getMemoryUsage().setLimit(memoryLimit);
+        if (StringUtils.hasText(nioUri)) {
+            broker.addConnector(nioUri);
+        }
+        return broker;
+    }
+
+    private PersistenceAdapter persistenceAdapter() throws IOException {
+        File directory = new File(dataDirectory, store.name().toLowerCase());
+        if (store == Store.KAHADB) {
+            KahaDBPersistenceAdapter kahaDB = new KahaDBPersistenceAdapter();
+            kahaDB.setDirectory(directory);
+            kahaDB.setEnableJournalDiskSyncs(journalSync);
+            kahaDB.setJournalMaxFileLength(journalMaxFileLength);
+            return kahaDB;
+        }
+        try {
+            return levelDB(directory);
+        } catch (LinkageError e) {
+            throw new IllegalStateException("The LEVELDB store needs the activemq-leveldb-store dependencies", e);
+        }
+    }
+
+    private PersistenceAdapter levelDB(File directory) {
+        LevelDBStore levelDB = new LevelDBStore();
+        levelDB.setDirectory(directory);
+        levelDB.setSync(journalSync);
+        levelDB.setLogSize(journalMaxFileLength);
+        return levelDB;
+    }
+}
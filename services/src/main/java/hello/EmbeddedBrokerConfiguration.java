@@ -0,0 +1,67 @@
+package hello;
+
+import java.io.File;
+
+import org.apache.activemq.broker.BrokerService;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.config.JmsListenerConfigUtils;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * The ActiveMQ broker running in the application, jms.broker.embedded=true: no separate broker to start. See
+ * {@link EmbeddedBroker} and jms.broker.* in application.properties; the connection factory of the application
+ * reaches it over vm:// unless jms.broker.client=tcp.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "jms.broker", name = "embedded", havingValue = "true")
+public class EmbeddedBrokerConfiguration {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    BrokerService embeddedBroker(@Value("${jms.broker.name:services}") String name,
+            @Value("${jms.broker.store:KAHADB}") EmbeddedBroker.Store store,
+            @Value("${jms.broker.data-dir:broker-data}") String dataDir,
+            @Value("${jms.broker.nio-uri:nio://0.0.0.0:8082}") String nioUri,
+            @Value("${jms.broker.journal-sync:true}") boolean journalSync,
+            @Value("${jms.broker.journal-max-file-length:33554432}") int journalMaxFileLength,
+            @Value("${jms.broker.producer-flow-control:true}") boolean producerFlowControl,
+            @Value("${jms.broker.destination-memory-limit:67108864}") long destinationMemoryLimit,
+            @Value("${jms.broker.memory-limit:536870912}") long memoryLimit) throws Exception {
+        EmbeddedBroker broker = new EmbeddedBroker(name, store, new File(dataDir));
+        broker.setNioUri(nioUri);
+        broker.setJournalSync(journalSync);
+        broker.setJournalMaxFileLength(journalMaxFileLength);
+        broker.setProducerFlowControl(producerFlowControl);
+        broker.setDestinationMemoryLimit(destinationMemoryLimit);
+        broker.setMemoryLimit(memoryLimit);
+        return broker.newBroker();
+    }
+
+    /**
+     * The listener containers of the registry close their connections before the broker stops, instead of
+     * trying to recover them from a broker gone
+     */
+    @Bean
+    static BeanFactoryPostProcessor embeddedBrokerOutlivesListeners() {
+        return new BeanFactoryPostProcessor() {
+            @Override
+            public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+                String registry = JmsListenerConfigUtils.JMS_LISTENER_ENDPOINT_REGISTRY_BEAN_NAME;
+                String[] beans = { registry, "pooledJmsConnectionFactory", "jmsConnectionFactory" };
+                for (String bean : beans) {
+                    if (beanFactory.containsBeanDefinition(bean)) {
+                        BeanDefinition definition = beanFactory.getBeanDefinition(bean);
+                        definition.setDependsOn(ObjectUtils.addObjectToArray(definition.getDependsOn(),
+                                "embeddedBroker"));
+                    }
+                }
+            }
+        };
+    }
+}
@@ -1,6 +1,8 @@
 package hello;
 
 import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -11,8 +13,35 @@ public class GreetingController {
     private static final String template = "Hello, %s!";
     private final AtomicLong counter = new AtomicLong();
 
+    /**
+     * greeting.mode=fast: the ids come from blocks of the counter reserved per thread and the template is
+     * compiled once, see greeting.* in application.properties
+     */
+    private final boolean fast;
+    private final IdBlockAllocator ids;
+    private final GreetingTemplate compiledTemplate = GreetingTemplate.compile(template);
+
+    @Autowired
+    public GreetingController(@Value("${greeting.mode:simple}") String mode,
+            @Value("${greeting.id-block-size:1024}") int idBlockSize) {
+        switch (mode) {
+        case "simple":
+            fast = false;
+            break;
+        case "fast":
+            fast = true;
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown greeting.mode " + mode + ", expected simple or fast");
+        }
+        this.ids = new IdBlockAllocator(counter, idBlockSize);
+    }
+
     @RequestMapping("/greeting")
     public Greeting greeting(@RequestParam(value="name", defaultValue="World") String name) {
+        if (fast) {
+            return new Greeting(ids.next(), compiledTemplate.render(name));
+        }
         return new Greeting(counter.incrementAndGet(),
                             String.format(template, name));
     }
@@ -0,0 +1,181 @@
+package hello;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+/**
+ * Writes a {@link Greeting} as the same JSON Jackson writes, <code>{"id":1,"content":"Hello, World!"}</code>,
+ * straight into a byte buffer of the thread and from there into the response with one write, with the
+ * Content-Length set: no generator, no introspection of the bean and no intermediate strings. Registered
+ * ahead of the Jackson converter with <code>greeting.mode=fast</code>; it does not read greetings.
+ */
+public class GreetingJsonConverter extends AbstractHttpMessageConverter<Greeting> {
+
+    private static final byte[] ID = "{\"id\":".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] CONTENT = ",\"content\":".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int INITIAL_BUFFER = 256;
+
+    //a buffer grown beyond this by a long greeting is not kept for the next one
+    private static final int MAX_KEPT_BUFFER = 64 * 1024;
+
+    private final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[INITIAL_BUFFER];
+        }
+    };
+
+    public GreetingJsonConverter() {
+        super(new MediaType("application", "json", StandardCharsets.UTF_8),
+                new MediaType("application", "*+json", StandardCharsets.UTF_8));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Greeting.class == clazz;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Greeting readInternal(Class<? extends Greeting> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Greetings are only written");
+    }
+
+    @Override
+    protected void writeInternal(Greeting greeting, HttpOutputMessage outputMessage) throws IOException {
+        byte[] buffer = buffers.get();
+        String content = greeting.getContent();
+        // 6 bytes per char at most, an escaped control char; 20 for the id, the rest for the names and the quotes
+        int bound = 64 + (content == null ? 0 : content.length() * 6);
+        if (buffer.length < bound) {
+            buffer = new byte[bound];
+            if (bound <= MAX_KEPT_BUFFER) {
+                buffers.set(buffer);
+            }
+        }
+        int length = write(greeting.getId(), content, buffer);
+        outputMessage.getHeaders().setContentLength(length);
+        outputMessage.getBody().write(buffer, 0, length);
+    }
+
+    /**
+     * Encodes the greeting into the buffer, large enough for it.
+     *
+     * @return the bytes written
+     */
+    private static int write(long id, String content, byte[] buffer) {
+        int position = copy(ID, buffer, 0);
+        position = writeLong(id, buffer, position);
+        position = copy(CONTENT, buffer, position);
+        if (content == null) {
+            position = copy(NULL, buffer, position);
+        } else {
+            buffer[position++] = '"';
+            position = writeEscaped(content, buffer, position);
+            buffer[position++] = '"';
+        }
+        buffer[position++] = '}';
+        return position;
+    }
+
+    private static int copy(byte[] bytes, byte[] buffer, int position) {
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    private static int writeLong(long value, byte[] buffer, int position) {
+        if (value < 0) {
+            return copy(Long.toString(value).getBytes(StandardCharsets.US_ASCII), buffer, position);
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+    /**
+     * UTF-8 with the escapes of JSON: quote, backslash and the control characters. The surrogates are escaped
+     * one by one like Jackson does, so a character beyond the BMP takes two escapes.
+     */
+    private static int writeEscaped(String text, byte[] buffer, int position) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    buffer[position++] = '\\';
+                }
+                buffer[position++] = (byte) c;
+            } else if (c < 0x20) {
+                position = writeControl(c, buffer, position);
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xc0 | c >> 6);
+                buffer[position++] = (byte) (0x80 | c & 0x3f);
+            } else if (!Character.isSurrogate(c)) {
+                buffer[position++] = (byte) (0xe0 | c >> 12);
+                buffer[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+                buffer[position++] = (byte) (0x80 | c & 0x3f);
+            } else {
+                position = writeUnicodeEscape(c, buffer, position);
+            }
+        }
+        return position;
+    }
+
+    private static int writeControl(char c, byte[] buffer, int position) {
+        byte escape;
+        switch (c) {
+        case '\b':
+            escape = 'b';
+            break;
+        case '\t':
+            escape = 't';
+            break;
+        case '\n':
+            escape = 'n';
+            break;
+        case '\f':
+            escape = 'f';
+            break;
+        case '\r':
+            escape = 'r';
+            break;
+        default:
+            return writeUnicodeEscape(c, buffer, position);
+        }
+        buffer[position++] = '\\';
+        buffer[position++] = escape;
+        return position;
+    }
+
+    private static int writeUnicodeEscape(char c, byte[] buffer, int position) {
+        buffer[position++] = '\\';
+        buffer[position++] = 'u';
+        buffer[position++] = HEX[c >> 12];
+        buffer[position++] = HEX[c >> 8 & 0xf];
+        buffer[position++] = HEX[c >> 4 & 0xf];
+        buffer[position++] = HEX[c & 0xf];
+        return position;
+    }
+}
@@ -0,0 +1,58 @@
+package hello;
+
+/**
+ * A <code>String.format</code> template with one <code>%s</code>, split once into the text before and after it:
+ * {@link #render(String)} concatenates the three parts into a builder of the exact length instead of parsing
+ * the format and going through a <code>Formatter</code> on every call. <code>%%</code> is the only other
+ * conversion it takes.
+ */
+public final class GreetingTemplate {
+
+    private final String prefix;
+
+    private final String suffix;
+
+    private GreetingTemplate(String prefix, String suffix) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the template has another conversion or not exactly one <code>%s</code>
+     */
+    public static GreetingTemplate compile(String template) {
+        StringBuilder prefix = new StringBuilder(template.length());
+        StringBuilder suffix = null;
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            StringBuilder part = suffix == null ? prefix : suffix;
+            if (c != '%') {
+                part.append(c);
+                continue;
+            }
+            char conversion = i + 1 < template.length() ? template.charAt(++i) : 0;
+            if (conversion == '%') {
+                part.append('%');
+            } else if (conversion == 's' && suffix == null) {
+                suffix = new StringBuilder(template.length() - i);
+            } else {
+                throw new IllegalArgumentException("Unsupported template, only one %s and %% are taken: " + template);
+            }
+        }
+        if (suffix == null) {
+            throw new IllegalArgumentException("The template has no %s: " + template);
+        }
+        return new GreetingTemplate(prefix.toString(), suffix.toString());
+    }
+
+    /**
+     * The same text as <code>String.format(template, value)</code>, "null" for a null value
+     */
+    public String render(String value) {
+        if (value == null) {
+            value = "null";
+        }
+        return new StringBuilder(prefix.length() + value.length() + suffix.length()).append(prefix).append(value)
+                .append(suffix).toString();
+    }
+}
@@ -0,0 +1,59 @@
+package hello;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out unique ids from a shared counter without every call updating it: each thread reserves a block of
+ * <code>blockSize</code> ids with one addition to the counter and then takes them one by one from its own block,
+ * so the threads only meet on the counter once per block instead of once per id. The ids of a block are
+ * consecutive and increasing, the ids of different threads interleave: an id no longer tells the order of the
+ * requests across threads. The ids left in the block of a thread that ends are never handed out.
+ */
+public class IdBlockAllocator {
+
+    private final AtomicLong counter;
+
+    private final int blockSize;
+
+    private final ThreadLocal<Block> block = new ThreadLocal<Block>() {
+        @Override
+        protected Block initialValue() {
+            return new Block();
+        }
+    };
+
+    /**
+     * @param counter the last id handed out, the first id is one more, like <code>incrementAndGet</code>
+     */
+    public IdBlockAllocator(AtomicLong counter, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Invalid id block size: " + blockSize);
+        }
+        this.counter = counter;
+        this.blockSize = blockSize;
+    }
+
+    public long next() {
+        Block current = block.get();
+        if (current.next == current.end) {
+            long base = counter.getAndAdd(blockSize);
+            current.next = base + 1;
+            current.end = base + 1 + blockSize;
+        }
+        return current.next++;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * The ids of one thread not handed out yet, <code>next</code> up to <code>end</code> exclusive
+     */
+    private static final class Block {
+
+        long next;
+
+        long end;
+    }
+}
@@ -0,0 +1,79 @@
+package hello;
+
+import javax.jms.ConnectionFactory;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.jms.pool.PooledConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jms.activemq.ActiveMQProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+/**
+ * The JMS connection factory of the application, built from the spring.activemq.* properties.
+ * By default it pools connections and sessions, so JmsTemplate.send borrows an open session and its
+ * cached producer instead of opening and closing a connection, a session and a producer every time.
+ * See jms.pool.* in application.properties, jms.pool.enabled=false goes back to the plain factory.
+ * With jms.broker.embedded=true it connects to the broker of {@link EmbeddedBrokerConfiguration} over vm://,
+ * or over spring.activemq.broker-url with jms.broker.client=tcp.
+ */
+@Configuration
+@EnableConfigurationProperties(ActiveMQProperties.class)
+public class JmsPoolConfiguration {
+
+    @Value("${jms.broker.embedded:false}")
+    boolean embeddedBroker;
+
+    @Value("${jms.broker.client:vm}")
+    String embeddedBrokerClient;
+
+    @Value("${jms.broker.name:services}")
+    String embeddedBrokerName;
+
+    @Bean(destroyMethod = "stop")
+    @ConditionalOnProperty(prefix = "jms.pool", name = "enabled", havingValue = "true", matchIfMissing = true)
+    PooledConnectionFactory pooledJmsConnectionFactory(ActiveMQProperties properties,
+            @Value("${jms.pool.max-connections:1}") int maxConnections,
+            @Value("${jms.pool.max-sessions-per-connection:500}") int maxSessionsPerConnection,
+            @Value("${jms.pool.idle-timeout:30000}") int idleTimeout,
+            @Value("${jms.pool.expiry-check-interval:10000}") long expiryCheckInterval,
+            @Value("${jms.pool.use-anonymous-producers:true}") boolean useAnonymousProducers) {
+        PooledConnectionFactory pool = new PooledConnectionFactory();
+        pool.setConnectionFactory(activeMQConnectionFactory(properties));
+        pool.setMaxConnections(maxConnections);
+        pool.setMaximumActiveSessionPerConnection(maxSessionsPerConnection);
+        // connections without borrowed sessions for longer than this are closed by the expiry check
+        pool.setIdleTimeout(idleTimeout);
+        pool.setTimeBetweenExpirationCheckMillis(expiryCheckInterval);
+        // each pooled session keeps one producer without destination and sends with it to every destination
+        pool.setUseAnonymousProducers(useAnonymousProducers);
+        return pool;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "jms.pool", name = "enabled", havingValue = "false")
+    ConnectionFactory jmsConnectionFactory(ActiveMQProperties properties) {
+        return activeMQConnectionFactory(properties);
+    }
+
+    /**
+     * Same defaults as the Spring Boot ActiveMQ auto-configuration, which backs off for these beans
+     */
+    private ActiveMQConnectionFactory activeMQConnectionFactory(ActiveMQProperties properties) {
+        String brokerUrl = properties.getBrokerUrl();
+        if (embeddedBroker && "vm".equals(embeddedBrokerClient)) {
+            brokerUrl = EmbeddedBroker.vmUrl(embeddedBrokerName);
+        } else if (brokerUrl == null) {
+            brokerUrl = properties.isInMemory() ? "vm://localhost?broker.persistent=false" : "tcp://localhost:61616";
+        }
+        ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(brokerUrl);
+        if (StringUtils.hasLength(properties.getUser())) {
+            connectionFactory.setUserName(properties.getUser());
+            connectionFactory.setPassword(properties.getPassword());
+        }
+        return connectionFactory;
+    }
+}
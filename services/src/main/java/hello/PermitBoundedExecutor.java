@@ -0,0 +1,109 @@
+package hello;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs every task on a thread of its own, with at most <code>permits</code> tasks running at once.
+ * The threads are virtual threads when the JVM has them (Java 21 and later) and daemon platform
+ * threads from a cached pool otherwise, so a task that blocks on I/O only holds its permit.
+ * {@link #execute(Runnable)} waits for a free permit. Used as the task executor of a
+ * DefaultMessageListenerContainer every consumer holds a permit for as long as it runs, so the
+ * container must not have more consumers than permits.
+ */
+public class PermitBoundedExecutor implements Executor, Closeable {
+
+    private final Semaphore permits;
+
+    private final ExecutorService threads;
+
+    /**
+     * Marks the threads of this executor, {@link #close()} must not wait for the task calling it
+     */
+    private final ThreadLocal<Boolean> worker = new ThreadLocal<Boolean>();
+
+    public PermitBoundedExecutor(int permits, String threadNamePrefix) {
+        this.permits = new Semaphore(permits);
+        this.threads = threadPerTaskExecutor(threadNamePrefix);
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a permit", e);
+        }
+        try {
+            threads.execute(new Runnable() {
+                @Override
+                public void run() {
+                    worker.set(Boolean.TRUE);
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the tasks that can start right now without waiting
+     */
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * Stops accepting tasks and waits up to 10 seconds for the running ones.
+     */
+    @Override
+    public void close() {
+        threads.shutdown();
+        if (Boolean.TRUE.equals(worker.get())) {
+            return;
+        }
+        try {
+            threads.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ExecutorService threadPerTaskExecutor(final String threadNamePrefix) {
+        try {
+            // Executors.newVirtualThreadPerTaskExecutor(), looked up at run time because this code targets Java 7
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            // no virtual threads in this JVM
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create the virtual thread executor", e);
+        }
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, threadNamePrefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -0,0 +1,158 @@
+package hello.ingest;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import hello.receiver.Receiver;
+
+/**
+ * Publishes the lines of one request body to a queue, one message per line, as they are read: the body is never
+ * held in memory. The messages are sent on a transacted session committed every <code>commitEvery</code>
+ * messages and at the end of the body, so the broker syncs once per commit instead of once per message and a
+ * failure leaves whole commits behind: the messages sent since the last commit are rolled back. Empty lines are
+ * skipped.
+ * <p>
+ * One batch per request, used by one thread; {@link #cancel} and {@link #result} may be called from another.
+ */
+public class IngestBatch {
+
+    private static final Log logger = LogFactory.getLog(IngestBatch.class);
+
+    private final ConnectionFactory connectionFactory;
+
+    private final MessageConverter messageConverter;
+
+    private final String destination;
+
+    private final int commitEvery;
+
+    private final int maxLineLength;
+
+    private volatile long accepted;
+
+    private volatile int commits;
+
+    private volatile boolean cancelled;
+
+    /**
+     * @param messageConverter writes each line into a message, the one of JmsTemplate so jms.codec applies
+     */
+    public IngestBatch(ConnectionFactory connectionFactory, MessageConverter messageConverter, String destination,
+            int commitEvery, int maxLineLength) {
+        if (commitEvery < 1) {
+            throw new IllegalArgumentException("Invalid ingest.commit-every: " + commitEvery);
+        }
+        this.connectionFactory = connectionFactory;
+        this.messageConverter = messageConverter;
+        this.destination = destination;
+        this.commitEvery = commitEvery;
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Sends every line of the body and commits them.
+     *
+     * @return the messages committed, all of them
+     * @throws JMSException if the broker failed, the messages after the last commit were rolled back
+     * @throws IOException if the body could not be read or has a line too long, same
+     * @throws IllegalStateException if the batch was cancelled, same
+     */
+    public IngestResult publish(Reader body) throws JMSException, IOException {
+        if (cancelled) {
+            throw new IllegalStateException("The batch was cancelled");
+        }
+        LineReader lines = new LineReader(body, maxLineLength);
+        Connection connection = connectionFactory.createConnection();
+        Session session = null;
+        MessageProducer producer = null;
+        boolean committed = false;
+        try {
+            session = connection.createSession(true, Session.SESSION_TRANSACTED);
+            producer = session.createProducer(session.createQueue(destination));
+            int pending = 0;
+            while (true) {
+                // before reading, a cancelled batch does not wait for more of the body
+                if (cancelled) {
+                    throw new IllegalStateException("The batch was cancelled");
+                }
+                String line = lines.readLine();
+                if (line == null) {
+                    break;
+                }
+                if (line.isEmpty()) {
+                    continue;
+                }
+                Message message = messageConverter.toMessage(line, session);
+                // send time, the receiver measures the end-to-end latency with it
+                message.setLongProperty(Receiver.SEND_TIMESTAMP, System.currentTimeMillis());
+                producer.send(message);
+                if (++pending == commitEvery) {
+                    commit(session, pending);
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                commit(session, pending);
+            }
+            committed = true;
+            return result(null);
+        } finally {
+            if (!committed && session != null) {
+                rollback(session);
+            }
+            JmsUtils.closeMessageProducer(producer);
+            JmsUtils.closeSession(session);
+            JmsUtils.closeConnection(connection);
+        }
+    }
+
+    /**
+     * Stops the batch before its next message or commit, the messages after the last commit are rolled back.
+     * Waits for a commit in progress, so no commit follows the result.
+     *
+     * @param error why the batch was cancelled
+     * @return the messages committed, all there will be
+     */
+    public synchronized IngestResult cancel(String error) {
+        cancelled = true;
+        return result(error);
+    }
+
+    /**
+     * @param error why the batch stopped, null if it was all accepted
+     * @return the messages committed so far
+     */
+    public IngestResult result(String error) {
+        return new IngestResult(accepted, commits, error);
+    }
+
+    private synchronized void commit(Session session, int messages) throws JMSException {
+        if (cancelled) {
+            throw new IllegalStateException("The batch was cancelled");
+        }
+        session.commit();
+        accepted += messages;
+        commits++;
+    }
+
+    private void rollback(Session session) {
+        try {
+            session.rollback();
+        } catch (JMSException e) {
+            // the broker drops the uncommitted messages with the session anyway
+            logger.debug("Failed to roll back the ingest session", e);
+        }
+    }
+}
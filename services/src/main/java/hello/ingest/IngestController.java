@@ -0,0 +1,170 @@
+package hello.ingest;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import hello.ingest.LineReader.LineTooLongException;
+
+/**
+ * POST /ingest: the body is a batch of messages, one per line, published to mailbox-destination as it is read,
+ * text/plain or application/x-ndjson (a form body would be read by the filters before it gets here),
+ * see {@link IngestBatch} and ingest.* in application.properties. The response tells how many were committed:
+ * 200 for the whole batch, 503 if the broker failed or it timed out, 400 if the body could not be read.
+ * <p>
+ * The request thread only starts the asynchronous request: the batch runs on the ingestExecutor, so a slow
+ * broker holds ingest threads and not the threads of Tomcat, and the greetings keep being served. When all
+ * ingest threads are busy and their queue is full the batch is refused at once with 503 and Retry-After, before
+ * the asynchronous request starts.
+ */
+@RestController
+public class IngestController {
+
+    static final String destination = "mailbox-destination";
+
+    @Autowired
+    ConnectionFactory connectionFactory;
+
+    @Autowired
+    MessageConverter jmsMessageConverter;
+
+    @Autowired
+    ThreadPoolTaskExecutor ingestExecutor;
+
+    @Value("${ingest.commit-every:100}")
+    int commitEvery;
+
+    @Value("${ingest.max-line-length:1048576}")
+    int maxLineLength;
+
+    @Value("${ingest.timeout:300000}")
+    long timeout;
+
+    @Value("${ingest.threads:8}")
+    int threads;
+
+    @Value("${ingest.queue-capacity:64}")
+    int queueCapacity;
+
+    //one per batch running or waiting for an ingest thread, so the executor never refuses one
+    private Semaphore admitted;
+
+    @PostConstruct
+    void init() {
+        admitted = new Semaphore(threads + queueCapacity);
+    }
+
+    @RequestMapping(value = "/ingest", method = RequestMethod.POST, consumes = { MediaType.TEXT_PLAIN_VALUE,
+            "application/x-ndjson" })
+    public WebAsyncTask<ResponseEntity<IngestResult>> ingest(final HttpServletRequest request) {
+        if (!admitted.tryAcquire()) {
+            throw new IngestBusyException();
+        }
+        final IngestBatch batch = new IngestBatch(connectionFactory, jmsMessageConverter, destination, commitEvery,
+                maxLineLength);
+        // whoever sets it releases the permit: the batch when it starts, else the timeout or the completion of a
+        // request whose batch never ran, as when it timed out waiting for an ingest thread
+        final AtomicBoolean claimed = new AtomicBoolean();
+        WebAsyncTask<ResponseEntity<IngestResult>> task = new WebAsyncTask<ResponseEntity<IngestResult>>(timeout,
+                ingestExecutor, new Callable<ResponseEntity<IngestResult>>() {
+                    @Override
+                    public ResponseEntity<IngestResult> call() {
+                        if (!claimed.compareAndSet(false, true)) {
+                            // the request is over and its permit released, the response was already sent
+                            return new ResponseEntity<IngestResult>(batch.result("The batch was cancelled"),
+                                    HttpStatus.SERVICE_UNAVAILABLE);
+                        }
+                        try {
+                            return publish(batch, request);
+                        } finally {
+                            admitted.release();
+                        }
+                    }
+                });
+        task.onTimeout(new Callable<ResponseEntity<IngestResult>>() {
+            @Override
+            public ResponseEntity<IngestResult> call() {
+                IngestResult result = batch.cancel("Timed out after " + timeout + " ms");
+                releaseUnlessStarted(claimed);
+                return new ResponseEntity<IngestResult>(result, HttpStatus.SERVICE_UNAVAILABLE);
+            }
+        });
+        task.onCompletion(new Runnable() {
+            @Override
+            public void run() {
+                releaseUnlessStarted(claimed);
+            }
+        });
+        return task;
+    }
+
+    /**
+     * All the ingest threads are busy and their queue is full
+     */
+    @ExceptionHandler(IngestBusyException.class)
+    ResponseEntity<IngestResult> busy() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "1");
+        return new ResponseEntity<IngestResult>(new IngestResult(0, 0, "Too many batches in progress"), headers,
+                HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    private void releaseUnlessStarted(AtomicBoolean claimed) {
+        if (claimed.compareAndSet(false, true)) {
+            admitted.release();
+        }
+    }
+
+    private ResponseEntity<IngestResult> publish(IngestBatch batch, HttpServletRequest request) {
+        try {
+            return new ResponseEntity<IngestResult>(batch.publish(body(request)), HttpStatus.OK);
+        } catch (JMSException e) {
+            return new ResponseEntity<IngestResult>(batch.result("Broker failure: " + e.getMessage()),
+                    HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (LineTooLongException e) {
+            return new ResponseEntity<IngestResult>(batch.result(e.getMessage()), HttpStatus.BAD_REQUEST);
+        } catch (IOException e) {
+            return new ResponseEntity<IngestResult>(batch.result("Failed to read the body: " + e.getMessage()),
+                    HttpStatus.BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            // cancelled on timeout, that response was already sent
+            return new ResponseEntity<IngestResult>(batch.result(e.getMessage()), HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    private static Reader body(HttpServletRequest request) throws IOException {
+        String encoding = request.getCharacterEncoding();
+        return encoding != null ? new InputStreamReader(request.getInputStream(), encoding)
+                : new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * No ingest thread nor room in their queue for one more batch
+     */
+    @SuppressWarnings("serial")
+    static class IngestBusyException extends RuntimeException {
+    }
+}
@@ -0,0 +1,36 @@
+package hello.ingest;
+
+/**
+ * The response to one batch: how many of its messages were committed to the destination, in the order of their
+ * lines, and why the rest were not. A client resending a failed batch skips the first <code>accepted</code>
+ * messages.
+ */
+public class IngestResult {
+
+    private final long accepted;
+
+    private final int commits;
+
+    private final String error;
+
+    public IngestResult(long accepted, int commits, String error) {
+        this.accepted = accepted;
+        this.commits = commits;
+        this.error = error;
+    }
+
+    public long getAccepted() {
+        return accepted;
+    }
+
+    public int getCommits() {
+        return commits;
+    }
+
+    /**
+     * @return null if the whole batch was accepted
+     */
+    public String getError() {
+        return error;
+    }
+}
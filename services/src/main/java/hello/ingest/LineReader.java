@@ -0,0 +1,84 @@
+package hello.ingest;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the lines of a stream one at a time through a fixed buffer, like BufferedReader.readLine but with a
+ * limit on the length of a line, so a body without line breaks cannot fill the memory. A line ends at "\n" or
+ * "\r\n"; the last one may have no line break.
+ */
+class LineReader {
+
+    private final Reader reader;
+
+    private final int maxLineLength;
+
+    private final char[] buffer = new char[8192];
+
+    private final StringBuilder line = new StringBuilder(256);
+
+    private int position;
+
+    private int limit;
+
+    LineReader(Reader reader, int maxLineLength) {
+        this.reader = reader;
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * @return the next line without its line break, null at the end of the stream
+     * @throws LineTooLongException if the line is longer than the limit, the rest of the stream is not read
+     */
+    String readLine() throws IOException {
+        line.setLength(0);
+        boolean read = false;
+        while (true) {
+            if (position == limit) {
+                limit = reader.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit == -1) {
+                    limit = 0;
+                    return read ? end() : null;
+                }
+            }
+            read = true;
+            int start = position;
+            while (position < limit && buffer[position] != '\n') {
+                position++;
+            }
+            if (line.length() + position - start > maxLineLength + 1) {
+                throw new LineTooLongException(maxLineLength);
+            }
+            line.append(buffer, start, position - start);
+            if (position < limit) {
+                position++;
+                return end();
+            }
+        }
+    }
+
+    private String end() throws LineTooLongException {
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+            length--;
+        }
+        if (length > maxLineLength) {
+            throw new LineTooLongException(maxLineLength);
+        }
+        return line.substring(0, length);
+    }
+
+    /**
+     * A line of the stream is longer than the limit
+     */
+    static class LineTooLongException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        LineTooLongException(int maxLineLength) {
+            super("Line longer than " + maxLineLength + " characters");
+        }
+    }
+}
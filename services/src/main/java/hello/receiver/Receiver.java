@@ -3,14 +3,27 @@ package hello.receiver;
 import java.io.File;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.jms.annotation.JmsListener;
+import org.springframework.jms.support.JmsHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 import org.springframework.util.FileSystemUtils;
 
+import idempotent.aop.IdempotentReceiver;
+import sink.AsyncPrintSink;
+
 @Component
 public class Receiver {
 
+    /**
+     * Message property with the send time in milliseconds, set by the producer
+     */
+    public static final String SEND_TIMESTAMP = "sendTimestamp";
+
     /**
      * Get a copy of the application context
      */
@@ -18,13 +31,63 @@ public class Receiver {
     ConfigurableApplicationContext context;
 
     /**
-     * When you receive a message, print it out, then shut down the application.
-     * Finally, clean up any ActiveMQ server stuff.
+     * Actuator metrics, exposed at /metrics and through Jolokia at /jolokia
+     */
+    @Autowired
+    CounterService counterService;
+
+    @Autowired
+    GaugeService gaugeService;
+
+    /**
+     * Prints from its own thread, so the listener threads do not contend for System.out
+     */
+    @Autowired
+    AsyncPrintSink out;
+
+    /**
+     * Shut down once the first message was received, see jms.receiver.close-on-message in application.properties
+     */
+    @Value("${jms.receiver.close-on-message:true}")
+    boolean closeOnMessage;
+
+    /**
+     * When you receive a message, record its metrics and print it out, then shut down the application.
+     * Finally, clean up any ActiveMQ server stuff. With jms.receiver.close-on-message=false it keeps receiving.
+     * The metrics are the end-to-end latency (timer.jms.mailbox-destination.latency), the received
+     * messages (meter.jms.mailbox-destination.received), the messages being processed
+     * (counter.jms.mailbox-destination.in-flight) and the redeliveries (counter.jms.mailbox-destination.redelivered).
+     * A redelivered message whose JMSMessageID was already processed does not get here, see jms.idempotent.*
      */
     @JmsListener(destination = "mailbox-destination", containerFactory = "myJmsContainerFactory")
-    public void receiveMessage(String message) {
-        System.out.println("Received <" + message + ">");
-        context.close();
-        FileSystemUtils.deleteRecursively(new File("activemq-data"));
+    @IdempotentReceiver
+    public void receiveMessage(String message, @Header(name = SEND_TIMESTAMP, required = false) Long sendTimestamp,
+            @Header(name = JmsHeaders.REDELIVERED, required = false) Boolean redelivered,
+            @Header(name = JmsHeaders.MESSAGE_ID, required = false) String messageId) {
+        if (sendTimestamp != null) {
+            gaugeService.submit("timer.jms.mailbox-destination.latency",
+                    Math.max(System.currentTimeMillis() - sendTimestamp, 0));
+        }
+        counterService.increment("meter.jms.mailbox-destination.received");
+        if (Boolean.TRUE.equals(redelivered)) {
+            counterService.increment("counter.jms.mailbox-destination.redelivered");
+        }
+        counterService.increment("counter.jms.mailbox-destination.in-flight");
+        try {
+            out.println("Received <" + message + ">");
+        } finally {
+            counterService.decrement("counter.jms.mailbox-destination.in-flight");
+        }
+        if (!closeOnMessage) {
+            return;
+        }
+        // from another thread: the pooled listener container waits for its listener threads when it stops
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                context.close();
+                FileSystemUtils.deleteRecursively(new File("activemq-data"));
+            }
+        }, "shutdown").start();
     }
 }
\ No newline at end of file
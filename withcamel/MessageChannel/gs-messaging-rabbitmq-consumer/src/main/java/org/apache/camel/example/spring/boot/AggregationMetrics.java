@@ -0,0 +1,72 @@
+package org.apache.camel.example.spring.boot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * Records the metrics of the aggregator of a consumer route in the actuator, readable at <code>/metrics</code>
+ * and through Jolokia:
+ * <ul>
+ * <li><code>timer.&lt;route&gt;.completion-latency</code>: milliseconds from the first exchange of a group to
+ * its completion</li>
+ * <li><code>counter.&lt;route&gt;.completed.&lt;reason&gt;</code>: completed groups by reason, size, predicate,
+ * timeout or evicted</li>
+ * <li><code>gauge.&lt;route&gt;.open-groups</code> and <code>.spilled-groups</code>: groups waiting for their
+ * completion, in total and in the spill file</li>
+ * <li><code>gauge.&lt;route&gt;.memory-used</code> and <code>.spill-bytes</code>: bytes of the groups in
+ * direct memory and in the spill file</li>
+ * </ul>
+ * Place it right after the aggregator with <code>.process(aggregationMetrics)</code>.
+ */
+public class AggregationMetrics implements Processor, PublicMetrics {
+
+    private final OffHeapAggregationRepository repository;
+
+    private final CounterService counterService;
+
+    private final GaugeService gaugeService;
+
+    private final String routeId;
+
+    private final String latencyName;
+
+    public AggregationMetrics(String routeId, OffHeapAggregationRepository repository, CounterService counterService,
+            GaugeService gaugeService) {
+        this.repository = repository;
+        this.counterService = counterService;
+        this.gaugeService = gaugeService;
+        this.routeId = routeId;
+        this.latencyName = "timer." + routeId + ".completion-latency";
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        Long created = exchange.getProperty(TextAggregationStrategy.CREATED, Long.class);
+        if (created != null) {
+            gaugeService.submit(latencyName, Math.max(System.currentTimeMillis() - created, 0));
+        }
+        String reason = exchange.getProperty(TextAggregationStrategy.COMPLETED_BY, String.class);
+        if (reason == null) {
+            reason = exchange.getProperty(Exchange.AGGREGATED_COMPLETED_BY, "unknown", String.class);
+        }
+        counterService.increment("counter." + routeId + ".completed." + reason);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>(4);
+        metrics.add(new Metric<Integer>("gauge." + routeId + ".open-groups", repository.getOpenGroups()));
+        metrics.add(new Metric<Integer>("gauge." + routeId + ".spilled-groups", repository.getSpilledGroups()));
+        metrics.add(new Metric<Long>("gauge." + routeId + ".memory-used", repository.getMemoryUsed()));
+        metrics.add(new Metric<Long>("gauge." + routeId + ".spill-bytes", repository.getSpillBytes()));
+        return metrics;
+    }
+}
@@ -0,0 +1,114 @@
+package org.apache.camel.example.spring.boot;
+
+import java.util.Map;
+
+import org.apache.camel.Consumer;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.Producer;
+import org.apache.camel.impl.DefaultComponent;
+import org.apache.camel.impl.DefaultEndpoint;
+import org.apache.camel.impl.DefaultProducer;
+
+import sink.AsyncPrintSink;
+
+/**
+ * Camel component for the {@link AsyncPrintSink}, a non-blocking replacement of <code>stream:out</code>.
+ * The producer hands the body to the sink and returns, the sink thread does the writing.
+ * <br/>
+ * <code>async-out:stdout</code> or <code>async-out:/path/to/file</code>, with the options
+ * <code>capacity</code> (lines, default 8192), <code>overflow</code> (BLOCK, DROP or SAMPLE, default BLOCK)
+ * and <code>sampleRate</code> (default 100).
+ */
+public class AsyncPrintComponent extends DefaultComponent {
+
+    @Override
+    protected Endpoint createEndpoint(String uri, String remaining, Map<String, Object> parameters) throws Exception {
+        AsyncPrintEndpoint endpoint = new AsyncPrintEndpoint(uri, this, remaining);
+        setProperties(endpoint, parameters);
+        return endpoint;
+    }
+
+    public static class AsyncPrintEndpoint extends DefaultEndpoint {
+
+        private final String target;
+
+        private int capacity = 8192;
+
+        private AsyncPrintSink.Overflow overflow = AsyncPrintSink.Overflow.BLOCK;
+
+        private int sampleRate = 100;
+
+        private AsyncPrintSink sink;
+
+        public AsyncPrintEndpoint(String uri, AsyncPrintComponent component, String target) {
+            super(uri, component);
+            this.target = target;
+        }
+
+        @Override
+        public Producer createProducer() throws Exception {
+            return new DefaultProducer(this) {
+                @Override
+                public void process(Exchange exchange) throws Exception {
+                    sink.println(String.valueOf(exchange.getIn().getBody(String.class)));
+                }
+            };
+        }
+
+        @Override
+        public Consumer createConsumer(Processor processor) throws Exception {
+            throw new UnsupportedOperationException("async-out only supports producers: " + getEndpointUri());
+        }
+
+        @Override
+        public boolean isSingleton() {
+            return true;
+        }
+
+        @Override
+        protected void doStart() throws Exception {
+            super.doStart();
+            sink = AsyncPrintSink.create(target, capacity, overflow, sampleRate);
+            sink.start();
+        }
+
+        @Override
+        protected void doStop() throws Exception {
+            if (sink != null) {
+                sink.close();
+                sink = null;
+            }
+            super.doStop();
+        }
+
+        public AsyncPrintSink getSink() {
+            return sink;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public AsyncPrintSink.Overflow getOverflow() {
+            return overflow;
+        }
+
+        public void setOverflow(AsyncPrintSink.Overflow overflow) {
+            this.overflow = overflow;
+        }
+
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        public void setSampleRate(int sampleRate) {
+            this.sampleRate = sampleRate;
+        }
+    }
+}
@@ -16,8 +16,41 @@
  */
 package org.apache.camel.example.spring.boot;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.rabbitmq.RabbitMQConstants;
+import org.apache.camel.ThreadPoolRejectedPolicy;
+import org.apache.camel.builder.ThreadPoolProfileBuilder;
+import org.apache.camel.impl.ThrottlingInflightRoutePolicy;
+import org.apache.camel.model.ProcessorDefinition;
+import org.apache.camel.model.RouteDefinition;
 import org.apache.camel.spring.boot.FatJarRouter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+
+import codec.camel.CompressionDataFormat;
+import codec.camel.EnvelopeDataFormat;
+import codec.compress.CompressionRegistry;
+import codec.compress.PayloadDecompressor;
+import codec.compress.ZstdCompression;
+import idempotent.IdempotencyWindow;
+import idempotent.camel.WindowIdempotentRepository;
+import retry.RetryPolicy;
+import retry.RetryTopology;
+import retry.camel.RetryProcessor;
+import splitter.MalformedBodyException;
+import splitter.RecordFormat;
+import splitter.camel.RecordSplitExpression;
 
 /**
  * 
@@ -35,13 +68,314 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
  * */
 @SpringBootApplication
 public class MySpringBootRouter extends FatJarRouter {
-    
-    
+
+    static final String ROUTE_ID = "rabbitmq-consumer";
+
+    static final String AGGREGATE_URI = "direct:aggregate";
+
+    static final String QUEUE = "spring-boot";
+
+    //RabbitMQ broker, application-local.yml points it to the embedded broker
+    @Value("${rabbitmq.host}")
+    private String rabbitHost;
+
+    @Value("${rabbitmq.port}")
+    private int rabbitPort;
+
+    @Value("${rabbitmq.concurrent-consumers:1}")
+    private int concurrentConsumers;
+
+    @Value("${rabbitmq.prefetch-count:0}")
+    private int prefetchCount;
+
+    //linear or staged, see application.yml
+    @Value("${route.mode:linear}")
+    private String routeMode;
+
+    @Value("${pipeline.backpressure:block}")
+    private String backpressure;
+
+    @Value("${pipeline.max-inflight:2000}")
+    private int maxInflight;
+
+    //text or envelope, the same as the producer
+    @Value("${message.format:text}")
+    private String messageFormat;
+
+    //decompresses the bodies the producer compressed, whatever its compression setting
+    @Autowired
+    private CompressionDataFormat compressionDataFormat;
+
+    //ids of the messages already received, absent with idempotent.capacity 0
+    @Autowired(required = false)
+    private WindowIdempotentRepository idempotentRepository;
+
+    //end-to-end latency, throughput, redeliveries and in-flight exchanges of the route
+    @Autowired
+    private RouteMetrics routeMetrics;
+
+    //none, lines, length-prefixed or json-array, see application.yml
+    @Value("${split.format:none}")
+    private String splitFormat;
+
+    @Value("${split.concurrency:0}")
+    private int splitConcurrency;
+
+    @Value("${split.max-record-bytes:16777216}")
+    private int splitMaxRecordBytes;
+
+    //aggregator: groups the messages by this header, empty for no aggregation, see application.yml
+    @Value("${aggregate.correlation-header:}")
+    private String correlationHeader;
+
+    @Value("${aggregate.completion-size:0}")
+    private int completionSize;
+
+    @Value("${aggregate.completion-predicate:}")
+    private String completionPredicate;
+
+    //open groups of the aggregator and their metrics, absent without aggregate.correlation-header
+    @Autowired(required = false)
+    private OffHeapAggregationRepository aggregationRepository;
+
+    @Autowired(required = false)
+    private AggregationMetrics aggregationMetrics;
+
+    //stages of the staged mode, absent in the linear mode
+    @Autowired(required = false)
+    private PipelineStage transformStage;
+
+    @Autowired(required = false)
+    private PipelineStage outputStage;
+
+    //sends the failed messages to the delay queues, absent with retry.max-retries 0
+    @Autowired(required = false)
+    private RetryProcessor retryProcessor;
+
+    @Autowired(required = false)
+    private RetryTopologyDeclarer retryTopologyDeclarer;
+
     @Override
     public void configure() {
-         from("rabbitmq://185.14.186.49:5672/spring-boot-exchange?queue=spring-boot") 
+        RouteDefinition route = from(rabbitUri())
+        .routeId(ROUTE_ID);
+        if (retryProcessor != null) {
+            //the failure is handled, so the message is acknowledged once a copy waits in a delay queue
+            route
+            .onException(Exception.class).handled(true).useOriginalMessage()
+                .process(retryTopologyDeclarer)
+                .process(retryProcessor)
+                .to(retryProcessor.producerUri(rabbitHost, rabbitPort))
+            .end();
+        }
+        route.process(routeMetrics);
+        if (idempotentRepository != null) {
+            //the id is confirmed when the exchange completes, after the last stage in the staged mode;
+            //duplicates are only marked in the block, so they are stopped after it
+            route
+            .filter(header(RabbitMQConstants.MESSAGE_ID).isNotNull())
+                .idempotentConsumer(header(RabbitMQConstants.MESSAGE_ID), idempotentRepository).skipDuplicate(false)
+                    .filter(exchangeProperty(Exchange.DUPLICATE_MESSAGE).isEqualTo(true))
+                        .stop()
+                    .end()
+                .end()
+            .end();
+        }
+        route.unmarshal(compressionDataFormat);
+        if ("envelope".equals(messageFormat)) {
+            route.unmarshal(new EnvelopeDataFormat());
+        }
+        ProcessorDefinition<?> records = route;
+        if (!"none".equals(splitFormat)) {
+            //each record goes on as an exchange of its own, read from the body as the pool takes them
+            records = route
+            .split(new RecordSplitExpression(RecordFormat.parse(splitFormat), splitMaxRecordBytes))
+                .streaming()
+                .parallelProcessing()
+                .executorService(splitExecutorService())
+                .stopOnException();
+        }
+
+        if (!"staged".equals(routeMode)) {
+            records
+            .transform(simple("${body}"))
+            .to(aggregate("async-out:stdout"));
+            return;
+        }
+
+        if ("throttle".equals(backpressure)) {
+            //suspends the RabbitMQ consumer while the stages hold too many exchanges
+            ThrottlingInflightRoutePolicy policy = new ThrottlingInflightRoutePolicy();
+            policy.setScope(ThrottlingInflightRoutePolicy.ThrottlingScope.Context);
+            policy.setMaxInflightExchanges(maxInflight);
+            route.routePolicy(policy);
+        }
+        records.to(transformStage.getEndpointUri());
+
+        from(transformStage.getEndpointUri())
+        .routeId(ROUTE_ID + "-transform")
         .transform(simple("${body}"))
-        .to("stream:out");
+        .process(transformStage)
+        .to(aggregate(outputStage.getEndpointUri()));
+
+        from(outputStage.getEndpointUri())
+        .routeId(ROUTE_ID + "-output")
+        .to("async-out:stdout")
+        .process(outputStage);
+    }
+
+    /**
+     * Adds the route of the aggregator in front of <code>output</code> when there is one.
+     *
+     * @return the endpoint to send the transformed messages to
+     */
+    private String aggregate(String output) {
+        if (aggregationRepository == null) {
+            return output;
+        }
+        //the timeouts and the limits of the repository complete the groups too; the aggregator wants a
+        //condition of its own, a size of 0 is none and a false predicate is one that never holds
+        String predicate = completionPredicate.isEmpty() ? "false" : completionPredicate;
+        from(AGGREGATE_URI)
+        .routeId(ROUTE_ID + "-aggregate")
+        .choice()
+            .when(header(correlationHeader).isNull())
+                .to(output)
+            .otherwise()
+                .aggregate(header(correlationHeader), new TextAggregationStrategy())
+                .aggregationRepository(aggregationRepository)
+                .completionSize(completionSize)
+                .completionPredicate(simple(predicate))
+                    //a forced completion of a group already completed
+                    .filter(header(OffHeapAggregationRepository.FORCE_COMPLETION).isNull())
+                        .process(aggregationMetrics)
+                        .to(output)
+                    .end()
+                .end()
+        .end();
+        return AGGREGATE_URI;
+    }
+
+    /**
+     * Threads of the splitter, as many queued records as threads: when all are taken the thread reading the
+     * body handles the next record itself, so it reads no further until one is done.
+     */
+    private ExecutorService splitExecutorService() {
+        int threads = splitConcurrency > 0 ? splitConcurrency : Runtime.getRuntime().availableProcessors();
+        return getContext().getExecutorServiceManager().newThreadPool(this, "RecordSplitter",
+                new ThreadPoolProfileBuilder("record-splitter").poolSize(threads).maxPoolSize(threads)
+                        .maxQueueSize(threads).rejectedPolicy(ThreadPoolRejectedPolicy.CallerRuns).build());
+    }
+
+    private String rabbitUri() {
+        StringBuilder uri = new StringBuilder("rabbitmq://").append(rabbitHost).append(':').append(rabbitPort)
+                .append("/spring-boot-exchange?queue=").append(QUEUE)
+                .append("&concurrentConsumers=").append(concurrentConsumers)
+                .append("&threadPoolSize=").append(Math.max(concurrentConsumers, 10));
+        if (prefetchCount > 0) {
+            //the prefetch only limits unacknowledged messages, so the route acknowledges them itself
+            uri.append("&autoAck=false&prefetchEnabled=true&prefetchCount=").append(prefetchCount);
+        }
+        return uri.toString();
+    }
+
+    //reads the compression from rabbitmq.CONTENT_ENCODING, the AMQP content-encoding of the message
+    @Bean
+    static CompressionDataFormat compressionDataFormat(@Value("${compression.dictionary:}") String dictionary)
+            throws IOException {
+        return new CompressionDataFormat(null, new PayloadDecompressor(CompressionRegistry.create(
+                ZstdCompression.DEFAULT_LEVEL, ZstdCompression.readDictionary(dictionary))),
+                RabbitMQConstants.CONTENT_ENCODING);
+    }
+
+    //message ids of the last idempotent.capacity messages received in idempotent.ttl ms, see application.yml
+    @Bean(destroyMethod = "close")
+    @ConditionalOnExpression("${idempotent.capacity:100000} > 0")
+    static IdempotencyWindow idempotencyWindow(@Value("${idempotent.file:}") String file,
+            @Value("${idempotent.capacity:100000}") int capacity, @Value("${idempotent.ttl:3600000}") long ttl)
+            throws IOException {
+        return IdempotencyWindow.open(file, capacity, ttl);
+    }
+
+    @Bean
+    @ConditionalOnExpression("${idempotent.capacity:100000} > 0")
+    static WindowIdempotentRepository idempotentRepository(IdempotencyWindow idempotencyWindow) {
+        return new WindowIdempotentRepository(idempotencyWindow);
+    }
+
+    //non-blocking replacement of stream:out, see AsyncPrintComponent
+    @Bean(name = "async-out")
+    static AsyncPrintComponent asyncPrintComponent() {
+        return new AsyncPrintComponent();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "route.mode", havingValue = "staged")
+    static PipelineStage transformStage(CamelContext camelContext, @Value("${pipeline.queue-size:1000}") int queueSize,
+            @Value("${pipeline.transform.concurrency:0}") int concurrency) {
+        //0: one thread per core
+        return new PipelineStage(camelContext, "transform", queueSize,
+                concurrency > 0 ? concurrency : Runtime.getRuntime().availableProcessors());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "route.mode", havingValue = "staged")
+    static PipelineStage outputStage(CamelContext camelContext, @Value("${pipeline.queue-size:1000}") int queueSize,
+            @Value("${pipeline.output.concurrency:1}") int concurrency) {
+        return new PipelineStage(camelContext, "output", queueSize, concurrency);
+    }
+
+    //open groups of the aggregator in direct memory and a spill file, see application.yml
+    @Bean
+    @ConditionalOnExpression("!'${aggregate.correlation-header:}'.isEmpty()")
+    static OffHeapAggregationRepository aggregationRepository(CamelContext camelContext,
+            @Value("${aggregate.correlation-header}") String correlationHeader,
+            @Value("${aggregate.completion-timeout:0}") long completionTimeout,
+            @Value("${aggregate.max-groups:1000000}") int maxGroups,
+            @Value("${aggregate.memory-size:67108864}") int memorySize,
+            @Value("${aggregate.block-size:256}") int blockSize,
+            @Value("${aggregate.spill-dir:}") String spillDir,
+            @Value("${aggregate.max-spill-bytes:1073741824}") long maxSpillBytes) {
+        File spillFile = new File(spillDir.isEmpty() ? System.getProperty("java.io.tmpdir") : spillDir,
+                ROUTE_ID + "-aggregate.spill");
+        return new OffHeapAggregationRepository(camelContext, AGGREGATE_URI, correlationHeader, completionTimeout,
+                maxGroups, memorySize, blockSize, spillFile, maxSpillBytes);
+    }
+
+    @Bean
+    @ConditionalOnExpression("!'${aggregate.correlation-header:}'.isEmpty()")
+    static AggregationMetrics aggregationMetrics(OffHeapAggregationRepository aggregationRepository,
+            CounterService counterService, GaugeService gaugeService) {
+        return new AggregationMetrics(ROUTE_ID + "-aggregate", aggregationRepository, counterService, gaugeService);
+    }
+
+    //delay queues and dead-letter queue of the route, see application.yml
+    @Bean
+    @ConditionalOnExpression("${retry.max-retries:5} > 0")
+    static RetryTopology retryTopology(@Value("${retry.max-retries:5}") int maxRetries,
+            @Value("${retry.initial-delay:1000}") long initialDelay, @Value("${retry.multiplier:2}") double multiplier,
+            @Value("${retry.max-delay:60000}") long maxDelay) {
+        //a malformed record fails again however often it is retried
+        return new RetryTopology(QUEUE, new RetryPolicy(initialDelay, multiplier, maxDelay, maxRetries)
+                .withFatal(MalformedBodyException.class));
+    }
+
+    @Bean
+    @ConditionalOnExpression("${retry.max-retries:5} > 0")
+    static RetryTopologyDeclarer retryTopologyDeclarer(RetryTopology retryTopology,
+            @Value("${rabbitmq.host}") String host, @Value("${rabbitmq.port}") int port) {
+        return new RetryTopologyDeclarer(retryTopology, host, port);
+    }
+
+    @Bean
+    @ConditionalOnExpression("${retry.max-retries:5} > 0")
+    static RetryProcessor retryProcessor(RetryTopology retryTopology, CounterService counterService) {
+        return new RetryProcessor(retryTopology, new RetryMetrics(ROUTE_ID, counterService));
+    }
+
+    @Bean
+    static RouteMetrics routeMetrics(CamelContext camelContext, CounterService counterService, GaugeService gaugeService) {
+        return new RouteMetrics(camelContext, ROUTE_ID, counterService, gaugeService);
     }
-   
+
 }
@@ -0,0 +1,369 @@
+package org.apache.camel.example.spring.boot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.spi.AggregationRepository;
+import org.apache.camel.support.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregation repository keeping the open groups of the aggregator in an {@link OffHeapGroupStore}: the
+ * aggregated exchange of each group is serialized (id, body, headers and properties) out of the heap, so
+ * a million open groups take direct memory and disk instead of a million exchanges on the heap.
+ * <br/>
+ * The timeouts are the store's too: a background thread takes the oldest groups, those older than
+ * <code>completionTimeout</code> ms and, while there are more than <code>maxGroups</code> open groups or
+ * too many bytes spilled to disk, the oldest whatever their age, and sends to <code>endpointUri</code>, the
+ * aggregator, an empty exchange with the correlation header of the group and {@link #FORCE_COMPLETION}.
+ * {@link TextAggregationStrategy} completes the group with it. So the aggregator needs no
+ * <code>completionTimeout</code>, which would keep an entry per group on the heap.
+ * <br/>
+ * Only bodies of text or bytes and headers and properties of simple types (numbers, booleans, text, dates)
+ * are kept, the others are dropped. The open groups are lost on restart.
+ */
+public class OffHeapAggregationRepository extends ServiceSupport implements AggregationRepository {
+
+    /**
+     * Header of the exchanges forcing the completion of a group, with the reason: timeout or evicted.
+     */
+    public static final String FORCE_COMPLETION = "aggregateForceCompletion";
+
+    public static final String TIMEOUT = "timeout";
+
+    public static final String EVICTED = "evicted";
+
+    private static final Logger LOG = LoggerFactory.getLogger(OffHeapAggregationRepository.class);
+
+    // types of the values of the headers and properties
+    private static final byte NULL = 'N';
+
+    private static final byte STRING = 'S';
+
+    private static final byte BYTES = 'B';
+
+    private static final byte LONG = 'J';
+
+    private static final byte INTEGER = 'I';
+
+    private static final byte DOUBLE = 'D';
+
+    private static final byte BOOLEAN = 'Z';
+
+    private static final byte DATE = 'T';
+
+    private final CamelContext camelContext;
+
+    private final String endpointUri;
+
+    private final String correlationHeader;
+
+    private final long completionTimeout;
+
+    private final int maxGroups;
+
+    private final int memoryBytes;
+
+    private final int blockSize;
+
+    private final File spillFile;
+
+    private final long maxSpillBytes;
+
+    private final AtomicBoolean checking = new AtomicBoolean();
+
+    private final Runnable checker = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                completeExpired();
+            } catch (Exception e) {
+                LOG.warn("Cannot complete the expired aggregation groups", e);
+            } finally {
+                checking.set(false);
+            }
+        }
+    };
+
+    private OffHeapGroupStore store;
+
+    private ScheduledExecutorService executor;
+
+    private ProducerTemplate producer;
+
+    /**
+     * @param endpointUri the endpoint of the aggregator, to force the completion of groups
+     * @param completionTimeout ms after its first exchange a group is completed, 0 for no timeout
+     * @param maxGroups open groups past which the oldest are completed
+     * @param memoryBytes direct memory of the serialized groups, the oldest go to the spill file past it
+     * @param spillFile file of the groups that do not fit in memory
+     * @param maxSpillBytes bytes of groups in the spill file past which the oldest are completed
+     */
+    public OffHeapAggregationRepository(CamelContext camelContext, String endpointUri, String correlationHeader,
+            long completionTimeout, int maxGroups, int memoryBytes, int blockSize, File spillFile,
+            long maxSpillBytes) {
+        this.camelContext = camelContext;
+        this.endpointUri = endpointUri;
+        this.correlationHeader = correlationHeader;
+        this.completionTimeout = completionTimeout;
+        this.maxGroups = maxGroups;
+        this.memoryBytes = memoryBytes;
+        this.blockSize = blockSize;
+        this.spillFile = spillFile;
+        this.maxSpillBytes = maxSpillBytes;
+    }
+
+    /**
+     * @return null, the previous exchange of the group is not read back, the aggregator does not use it
+     */
+    @Override
+    public synchronized Exchange add(CamelContext camelContext, String key, Exchange exchange) {
+        try {
+            store.put(key, encode(exchange), System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot store the aggregation group " + key, e);
+        }
+        if (store.isOverLimit() && checking.compareAndSet(false, true)) {
+            executor.execute(checker);
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized Exchange get(CamelContext camelContext, String key) {
+        try {
+            byte[] data = store.get(key);
+            return data == null ? null : decode(data);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read the aggregation group " + key, e);
+        }
+    }
+
+    @Override
+    public synchronized void remove(CamelContext camelContext, String key, Exchange exchange) {
+        try {
+            store.remove(key);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot remove the aggregation group " + key, e);
+        }
+    }
+
+    /**
+     * Nothing to confirm, the completed groups are not kept for recovery.
+     */
+    @Override
+    public void confirm(CamelContext camelContext, String exchangeId) {
+    }
+
+    @Override
+    public synchronized Set<String> getKeys() {
+        try {
+            return store.keys();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read the aggregation groups", e);
+        }
+    }
+
+    public synchronized int getOpenGroups() {
+        return store == null ? 0 : store.size();
+    }
+
+    public synchronized int getSpilledGroups() {
+        return store == null ? 0 : store.getSpilled();
+    }
+
+    public synchronized long getMemoryUsed() {
+        return store == null ? 0 : store.getMemoryUsed();
+    }
+
+    public synchronized long getSpillBytes() {
+        return store == null ? 0 : store.getSpillBytes();
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        synchronized (this) {
+            store = new OffHeapGroupStore(maxGroups, memoryBytes, blockSize, spillFile, maxSpillBytes);
+        }
+        producer = camelContext.createProducerTemplate();
+        executor = camelContext.getExecutorServiceManager().newSingleThreadScheduledExecutor(this,
+                "AggregationTimeoutChecker");
+        long interval = completionTimeout > 0 ? Math.max(completionTimeout / 10, 100) : 1000;
+        executor.scheduleWithFixedDelay(checker, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        camelContext.getExecutorServiceManager().shutdownNow(executor);
+        producer.stop();
+        synchronized (this) {
+            store.close();
+            store = null;
+        }
+    }
+
+    /**
+     * Sends the completion of each group to complete, without holding the lock of the repository so the
+     * aggregator can take it. Looks at most at the groups open when it starts, the next run goes on.
+     */
+    private void completeExpired() throws IOException {
+        int budget;
+        synchronized (this) {
+            if (store == null) {
+                return;
+            }
+            budget = store.size();
+        }
+        for (int i = 0; i < budget && isRunAllowed(); i++) {
+            String key;
+            String reason;
+            synchronized (this) {
+                boolean over = store.isOverLimit();
+                long createdBefore = completionTimeout > 0
+                        ? System.currentTimeMillis() - completionTimeout : Long.MIN_VALUE;
+                key = store.pollOldest(createdBefore, over);
+                if (key == null) {
+                    return;
+                }
+                reason = over ? EVICTED : TIMEOUT;
+            }
+            Map<String, Object> headers = new HashMap<String, Object>(4);
+            headers.put(correlationHeader, key);
+            headers.put(FORCE_COMPLETION, reason);
+            try {
+                producer.sendBodyAndHeaders(endpointUri, null, headers);
+            } catch (RuntimeException e) {
+                // the group stays open, it is tried again on the next run
+                synchronized (this) {
+                    store.requeue(key);
+                }
+                throw e;
+            }
+        }
+    }
+
+    private static byte[] encode(Exchange exchange) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(exchange.getExchangeId());
+        writeValue(out, exchange.getIn().getBody());
+        writeValues(out, exchange.getIn().getHeaders());
+        writeValues(out, exchange.getProperties());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private Exchange decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        Exchange exchange = new DefaultExchange(camelContext);
+        exchange.setExchangeId(in.readUTF());
+        exchange.getIn().setBody(readValue(in));
+        for (int i = in.readInt(); i > 0; i--) {
+            exchange.getIn().setHeader(in.readUTF(), readValue(in));
+        }
+        for (int i = in.readInt(); i > 0; i--) {
+            exchange.setProperty(in.readUTF(), readValue(in));
+        }
+        return exchange;
+    }
+
+    private static void writeValues(DataOutputStream out, Map<String, Object> values) throws IOException {
+        int count = 0;
+        for (Object value : values.values()) {
+            if (isSupported(value)) {
+                count++;
+            }
+        }
+        out.writeInt(count);
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (isSupported(entry.getValue())) {
+                out.writeUTF(entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        }
+    }
+
+    private static boolean isSupported(Object value) {
+        return value == null || value instanceof String || value instanceof byte[] || value instanceof Long
+                || value instanceof Integer || value instanceof Double || value instanceof Boolean
+                || value instanceof Date;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof String) {
+            // writeUTF is limited to 64 KB
+            byte[] text = ((String) value).getBytes("UTF-8");
+            out.writeByte(STRING);
+            out.writeInt(text.length);
+            out.write(text);
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            out.writeInt(((byte[]) value).length);
+            out.write((byte[]) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value == null) {
+            out.writeByte(NULL);
+        } else {
+            // a body of another type, as text
+            writeValue(out, value.toString());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case STRING:
+            byte[] text = new byte[in.readInt()];
+            in.readFully(text);
+            return new String(text, "UTF-8");
+        case BYTES:
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return bytes;
+        case LONG:
+            return in.readLong();
+        case INTEGER:
+            return in.readInt();
+        case DOUBLE:
+            return in.readDouble();
+        case BOOLEAN:
+            return in.readBoolean();
+        case DATE:
+            return new Date(in.readLong());
+        case NULL:
+            return null;
+        default:
+            throw new IOException("Unknown value type " + type + " in an aggregation group");
+        }
+    }
+}
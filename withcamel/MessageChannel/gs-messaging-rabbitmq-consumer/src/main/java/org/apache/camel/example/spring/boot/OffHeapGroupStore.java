@@ -0,0 +1,544 @@
+package org.apache.camel.example.spring.boot;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import idempotent.MessageIds;
+
+/**
+ * The open groups of the aggregator, as bytes keyed by correlation key, kept out of the Java heap:
+ * <ul>
+ * <li>an index of fixed 32 byte entries (64-bit hash of the key, creation time, location, length), open
+ * addressing with linear probing in a direct buffer of twice <code>maxGroups</code> entries</li>
+ * <li>the records (key and data) in a direct buffer of <code>blockSize</code> byte blocks, each record a
+ * chain of blocks, the free blocks chained to each other</li>
+ * <li>a ring of (hash, creation time) in the order the groups were created, to find the oldest ones</li>
+ * </ul>
+ * When the blocks run out the oldest groups in memory are moved to a spill file, where they stay until
+ * they complete; the file is compacted once most of it is dead. The heap holds no object per group.
+ * <br/>
+ * Not thread safe, {@link OffHeapAggregationRepository} locks around it. The groups are not kept across
+ * restarts.
+ */
+public class OffHeapGroupStore implements Closeable {
+
+    private static final int ENTRY = 32;
+
+    private static final int HASH = 0;
+
+    private static final int CREATED = 8;
+
+    private static final int LOCATION = 16;
+
+    private static final int LENGTH = 24;
+
+    private static final int STATE = 28;
+
+    private static final int USED = 1;
+
+    private static final int SPILLED = 2;
+
+    private static final int RING_ENTRY = 16;
+
+    private static final int NONE = -1;
+
+    // a spill file is compacted when it has more dead bytes than live ones, and at least this many
+    private static final long MIN_COMPACTION = 1024 * 1024;
+
+    private final int maxGroups;
+
+    private final long maxSpillBytes;
+
+    private final ByteBuffer index;
+
+    private final int mask;
+
+    private final ByteBuffer arena;
+
+    private final int blockSize;
+
+    private final int blocks;
+
+    private final ByteBuffer ring;
+
+    private final int ringCapacity;
+
+    private final File spillFile;
+
+    private RandomAccessFile spillAccess;
+
+    private FileChannel spill;
+
+    private int freeHead;
+
+    private int freeBlocks;
+
+    // sequences of the oldest and next ring entries, and of the next one to look at when spilling
+    private long ringHead;
+
+    private long ringTail;
+
+    private long spillCursor;
+
+    private long spillLength;
+
+    private long spillLive;
+
+    private int size;
+
+    private int spilled;
+
+    /**
+     * @param maxGroups open groups past which the oldest are to be completed, see {@link #isOverLimit()}
+     * @param memoryBytes size of the direct buffer of the records
+     * @param blockSize size of a block of a record, the first 4 bytes link to the next block
+     * @param spillFile file of the groups that do not fit in memory, emptied on start
+     * @param maxSpillBytes bytes of live groups in the spill file past which the oldest are to be completed
+     */
+    public OffHeapGroupStore(int maxGroups, int memoryBytes, int blockSize, File spillFile, long maxSpillBytes)
+            throws IOException {
+        if (maxGroups <= 0) {
+            throw new IllegalArgumentException("Max groups " + maxGroups + " is not positive");
+        }
+        if (blockSize < 16 || memoryBytes < blockSize) {
+            throw new IllegalArgumentException("Blocks of " + blockSize + " bytes in " + memoryBytes + " bytes");
+        }
+        // the index is the larger of the buffers sized by maxGroups, 1 << 24 groups at most
+        long indexBytes = (Long.highestOneBit(maxGroups * 2L - 1) << 1) * ENTRY;
+        if (indexBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Max groups " + maxGroups + " need an index of " + indexBytes
+                    + " bytes, a direct buffer holds " + Integer.MAX_VALUE + " at most");
+        }
+        this.maxGroups = maxGroups;
+        this.maxSpillBytes = maxSpillBytes;
+        int tableSize = (int) (indexBytes / ENTRY);
+        this.index = ByteBuffer.allocateDirect((int) indexBytes);
+        this.mask = tableSize - 1;
+        this.blockSize = blockSize;
+        this.blocks = memoryBytes / blockSize;
+        this.arena = ByteBuffer.allocateDirect(blocks * blockSize);
+        for (int block = 0; block < blocks; block++) {
+            arena.putInt(block * blockSize, block + 1 < blocks ? block + 1 : NONE);
+        }
+        this.freeHead = 0;
+        this.freeBlocks = blocks;
+        this.ringCapacity = tableSize;
+        this.ring = ByteBuffer.allocateDirect(ringCapacity * RING_ENTRY);
+        this.spillFile = spillFile;
+        File directory = spillFile.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the directory of " + spillFile);
+        }
+        openSpill(spillFile);
+        spill.truncate(0);
+    }
+
+    /**
+     * @return the data of the group, null if there is none
+     */
+    public byte[] get(String key) throws IOException {
+        int slot = find(key, MessageIds.key(key));
+        if (slot < 0) {
+            return null;
+        }
+        byte[] record = read(slot);
+        int keyLength = ByteBuffer.wrap(record).getInt();
+        byte[] data = new byte[record.length - 4 - keyLength];
+        System.arraycopy(record, 4 + keyLength, data, 0, data.length);
+        return data;
+    }
+
+    public boolean contains(String key) throws IOException {
+        return find(key, MessageIds.key(key)) >= 0;
+    }
+
+    /**
+     * Adds a group or replaces its data, a group moved to the spill file stays there.
+     *
+     * @return true if the group is new
+     * @throws IllegalStateException if the index is three quarters full, the groups are not completed
+     *         fast enough
+     */
+    public boolean put(String key, byte[] data, long now) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] record = ByteBuffer.allocate(4 + keyBytes.length + data.length).putInt(keyBytes.length)
+                .put(keyBytes).put(data).array();
+        long hash = MessageIds.key(key);
+        int slot = find(key, hash);
+        boolean created = slot < 0;
+        if (created) {
+            if (size >= (mask + 1) / 4 * 3) {
+                throw new IllegalStateException("The aggregation store holds " + size + " open groups, "
+                        + maxGroups + " at most");
+            }
+            slot = insert(hash, now);
+            size++;
+            appendRing(hash, now);
+        } else {
+            release(slot);
+        }
+        int state = index.getInt(slot * ENTRY + STATE);
+        if ((state & SPILLED) == 0) {
+            int first = writeMemory(record);
+            if (first != NONE) {
+                setLocation(slot, first, record.length, USED);
+                return created;
+            }
+            spilled++;
+        }
+        setLocation(slot, writeSpill(record), record.length, USED | SPILLED);
+        return created;
+    }
+
+    /**
+     * @return false if there was no such group
+     */
+    public boolean remove(String key) throws IOException {
+        int slot = find(key, MessageIds.key(key));
+        if (slot < 0) {
+            return false;
+        }
+        if ((index.getInt(slot * ENTRY + STATE) & SPILLED) != 0) {
+            spilled--;
+        }
+        release(slot);
+        delete(slot);
+        size--;
+        compactSpill();
+        return true;
+    }
+
+    /**
+     * Takes the oldest group out of the creation order if it was created before <code>createdBefore</code>,
+     * or whatever its age with <code>force</code>. The group itself stays until it is removed.
+     *
+     * @return its key, null if there is none to take
+     */
+    public String pollOldest(long createdBefore, boolean force) throws IOException {
+        while (ringHead < ringTail) {
+            int position = (int) (ringHead % ringCapacity) * RING_ENTRY;
+            long created = ring.getLong(position + 8);
+            int slot = live(ring.getLong(position), created);
+            if (slot >= 0 && created >= createdBefore && !force) {
+                return null;
+            }
+            ringHead++;
+            if (slot >= 0) {
+                return readKey(slot);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Puts back in the creation order a group taken with {@link #pollOldest}, as the newest one.
+     */
+    public void requeue(String key) throws IOException {
+        long hash = MessageIds.key(key);
+        int slot = find(key, hash);
+        if (slot >= 0) {
+            appendRing(hash, index.getLong(slot * ENTRY + CREATED));
+        }
+    }
+
+    /**
+     * @return the keys of the open groups, read from their records
+     */
+    public Set<String> keys() throws IOException {
+        Set<String> keys = new HashSet<String>(size * 2);
+        for (int slot = 0; slot <= mask; slot++) {
+            if (index.getInt(slot * ENTRY + STATE) != 0) {
+                keys.add(readKey(slot));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @return true if there are more than <code>maxGroups</code> open groups or more than
+     *         <code>maxSpillBytes</code> of them in the spill file
+     */
+    public boolean isOverLimit() {
+        return size > maxGroups || spillLive > maxSpillBytes;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getSpilled() {
+        return spilled;
+    }
+
+    /**
+     * @return bytes of the blocks in use, whole blocks
+     */
+    public long getMemoryUsed() {
+        return (long) (blocks - freeBlocks) * blockSize;
+    }
+
+    /**
+     * @return bytes of the groups in the spill file, without the dead ones
+     */
+    public long getSpillBytes() {
+        return spillLive;
+    }
+
+    public int getMaxGroups() {
+        return maxGroups;
+    }
+
+    @Override
+    public void close() throws IOException {
+        spillAccess.close();
+        if (!spillFile.delete()) {
+            spillFile.deleteOnExit();
+        }
+    }
+
+    private int find(String key, long hash) throws IOException {
+        int slot = slotOf(hash);
+        while (index.getInt(slot * ENTRY + STATE) != 0) {
+            if (index.getLong(slot * ENTRY + HASH) == hash && key.equals(readKey(slot))) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NONE;
+    }
+
+    // a ring entry is live if a group with its hash and creation time is in the index
+    private int live(long hash, long created) {
+        int slot = slotOf(hash);
+        while (index.getInt(slot * ENTRY + STATE) != 0) {
+            if (index.getLong(slot * ENTRY + HASH) == hash && index.getLong(slot * ENTRY + CREATED) == created) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NONE;
+    }
+
+    private int insert(long hash, long created) {
+        int slot = slotOf(hash);
+        while (index.getInt(slot * ENTRY + STATE) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index.putLong(slot * ENTRY + HASH, hash);
+        index.putLong(slot * ENTRY + CREATED, created);
+        setLocation(slot, NONE, 0, USED);
+        return slot;
+    }
+
+    // backward shift deletion: the entries after the slot move back if their probe passed through it
+    private void delete(int slot) {
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (index.getInt(next * ENTRY + STATE) != 0) {
+            int ideal = slotOf(index.getLong(next * ENTRY + HASH));
+            if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                for (int i = 0; i < ENTRY; i += 4) {
+                    index.putInt(hole * ENTRY + i, index.getInt(next * ENTRY + i));
+                }
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        for (int i = 0; i < ENTRY; i += 4) {
+            index.putInt(hole * ENTRY + i, 0);
+        }
+    }
+
+    private int slotOf(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void setLocation(int slot, long location, int length, int state) {
+        index.putLong(slot * ENTRY + LOCATION, location);
+        index.putInt(slot * ENTRY + LENGTH, length);
+        index.putInt(slot * ENTRY + STATE, state);
+    }
+
+    // frees the blocks or the spilled bytes of the group, it keeps its slot
+    private void release(int slot) {
+        long location = index.getLong(slot * ENTRY + LOCATION);
+        int state = index.getInt(slot * ENTRY + STATE);
+        if ((state & SPILLED) != 0) {
+            spillLive -= index.getInt(slot * ENTRY + LENGTH);
+        } else if (location != NONE) {
+            int block = (int) location;
+            while (block != NONE) {
+                int next = arena.getInt(block * blockSize);
+                arena.putInt(block * blockSize, freeHead);
+                freeHead = block;
+                freeBlocks++;
+                block = next;
+            }
+        }
+        index.putLong(slot * ENTRY + LOCATION, NONE);
+    }
+
+    private byte[] read(int slot) throws IOException {
+        long location = index.getLong(slot * ENTRY + LOCATION);
+        byte[] record = new byte[index.getInt(slot * ENTRY + LENGTH)];
+        if ((index.getInt(slot * ENTRY + STATE) & SPILLED) != 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            while (buffer.hasRemaining()) {
+                if (spill.read(buffer, location + buffer.position()) < 0) {
+                    throw new IOException("Spill file " + spillFile + " truncated");
+                }
+            }
+            return record;
+        }
+        int payload = blockSize - 4;
+        int block = (int) location;
+        for (int offset = 0; offset < record.length; offset += payload) {
+            ByteBuffer source = arena.duplicate();
+            source.position(block * blockSize + 4);
+            source.get(record, offset, Math.min(payload, record.length - offset));
+            block = arena.getInt(block * blockSize);
+        }
+        return record;
+    }
+
+    private String readKey(int slot) throws IOException {
+        byte[] record = read(slot);
+        return new String(record, 4, ByteBuffer.wrap(record).getInt(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the first block of the record, NONE if it does not fit even after spilling the oldest groups
+     */
+    private int writeMemory(byte[] record) throws IOException {
+        int payload = blockSize - 4;
+        int needed = Math.max(1, (record.length + payload - 1) / payload);
+        if (needed > blocks) {
+            return NONE;
+        }
+        spillOldest(needed);
+        if (freeBlocks < needed) {
+            return NONE;
+        }
+        int first = freeHead;
+        int block = first;
+        for (int offset = 0; ; offset += payload) {
+            int next = arena.getInt(block * blockSize);
+            ByteBuffer target = arena.duplicate();
+            target.position(block * blockSize + 4);
+            target.put(record, offset, Math.min(payload, record.length - offset));
+            freeBlocks--;
+            if (offset + payload >= record.length) {
+                arena.putInt(block * blockSize, NONE);
+                freeHead = next;
+                return first;
+            }
+            block = next;
+        }
+    }
+
+    private long writeSpill(byte[] record) throws IOException {
+        long position = spillLength;
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining()) {
+            spill.write(buffer, position + buffer.position());
+        }
+        spillLength += record.length;
+        spillLive += record.length;
+        return position;
+    }
+
+    // moves the oldest groups still in memory to the spill file until needed blocks are free
+    private void spillOldest(int needed) throws IOException {
+        spillCursor = Math.max(spillCursor, ringHead);
+        while (freeBlocks < needed && spillCursor < ringTail) {
+            int position = (int) (spillCursor++ % ringCapacity) * RING_ENTRY;
+            int slot = live(ring.getLong(position), ring.getLong(position + 8));
+            if (slot < 0 || (index.getInt(slot * ENTRY + STATE) & SPILLED) != 0
+                    || index.getLong(slot * ENTRY + LOCATION) == NONE) {
+                continue;
+            }
+            byte[] record = read(slot);
+            release(slot);
+            setLocation(slot, writeSpill(record), record.length, USED | SPILLED);
+            spilled++;
+        }
+    }
+
+    private void appendRing(long hash, long created) {
+        if (ringTail - ringHead == ringCapacity) {
+            compactRing();
+        }
+        int position = (int) (ringTail++ % ringCapacity) * RING_ENTRY;
+        ring.putLong(position, hash);
+        ring.putLong(position + 8, created);
+    }
+
+    // drops the entries of the groups gone, keeping the order of the others
+    private void compactRing() {
+        long write = ringHead;
+        long cursor = ringTail;
+        for (long read = ringHead; read < ringTail; read++) {
+            if (read == spillCursor) {
+                cursor = write;
+            }
+            int from = (int) (read % ringCapacity) * RING_ENTRY;
+            long hash = ring.getLong(from);
+            long created = ring.getLong(from + 8);
+            if (live(hash, created) >= 0) {
+                int to = (int) (write++ % ringCapacity) * RING_ENTRY;
+                ring.putLong(to, hash);
+                ring.putLong(to + 8, created);
+            }
+        }
+        ringTail = write;
+        spillCursor = Math.min(cursor, write);
+    }
+
+    private void compactSpill() throws IOException {
+        long dead = spillLength - spillLive;
+        if (spilled == 0 && spillLength > 0) {
+            spill.truncate(0);
+            spillLength = 0;
+            spillLive = 0;
+            return;
+        }
+        if (dead < MIN_COMPACTION || dead < spillLive) {
+            return;
+        }
+        File compacted = new File(spillFile.getPath() + ".compact");
+        RandomAccessFile target = new RandomAccessFile(compacted, "rw");
+        try {
+            target.setLength(0);
+            long position = 0;
+            for (int slot = 0; slot <= mask; slot++) {
+                if ((index.getInt(slot * ENTRY + STATE) & SPILLED) != 0) {
+                    byte[] record = read(slot);
+                    target.write(record);
+                    index.putLong(slot * ENTRY + LOCATION, position);
+                    position += record.length;
+                }
+            }
+            spillLength = position;
+            spillLive = position;
+        } finally {
+            target.close();
+        }
+        spillAccess.close();
+        if (!spillFile.delete() || !compacted.renameTo(spillFile)) {
+            throw new IOException("Cannot replace " + spillFile + " with " + compacted);
+        }
+        openSpill(spillFile);
+    }
+
+    private void openSpill(File file) throws IOException {
+        spillAccess = new RandomAccessFile(file, "rw");
+        spill = spillAccess.getChannel();
+    }
+}
@@ -0,0 +1,93 @@
+package org.apache.camel.example.spring.boot;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.component.seda.SedaEndpoint;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.export.naming.SelfNaming;
+
+import com.codahale.metrics.Meter;
+
+/**
+ * One stage of the staged route: a bounded SEDA queue drained by its own pool of
+ * <code>concurrentConsumers</code> threads. A producer that finds the queue full waits for room
+ * (<code>blockWhenFull</code>), so a saturated stage slows down the stage in front of it instead of
+ * growing without limit.
+ * <br/>
+ * Exported to JMX as <code>org.apache.camel.example:type=PipelineStage,name=&lt;stage&gt;</code> with the
+ * queue depth and the throughput of the stage. Place it last in the stage route with <code>.process(stage)</code>
+ * so it counts the exchanges the stage has finished.
+ */
+@ManagedResource(description = "Stage of the staged RabbitMQ consumer route")
+public class PipelineStage implements Processor, SelfNaming {
+
+    private final CamelContext camelContext;
+
+    private final String name;
+
+    private final int queueSize;
+
+    private final int concurrentConsumers;
+
+    private final Meter completed = new Meter();
+
+    public PipelineStage(CamelContext camelContext, String name, int queueSize, int concurrentConsumers) {
+        this.camelContext = camelContext;
+        this.name = name;
+        this.queueSize = queueSize;
+        this.concurrentConsumers = concurrentConsumers;
+    }
+
+    /**
+     * @return the SEDA endpoint in front of the stage, the same URI for its producers and its consumer
+     */
+    public String getEndpointUri() {
+        return "seda:" + name + "?size=" + queueSize + "&concurrentConsumers=" + concurrentConsumers
+                + "&blockWhenFull=true";
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        completed.mark();
+    }
+
+    @ManagedAttribute(description = "Exchanges waiting in the queue of the stage")
+    public int getQueueDepth() {
+        return camelContext.getEndpoint(getEndpointUri(), SedaEndpoint.class).getCurrentQueueSize();
+    }
+
+    @ManagedAttribute(description = "Capacity of the queue of the stage")
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    @ManagedAttribute(description = "Threads taking exchanges from the queue")
+    public int getConcurrentConsumers() {
+        return concurrentConsumers;
+    }
+
+    @ManagedAttribute(description = "Exchanges finished by the stage")
+    public long getExchangesCompleted() {
+        return completed.getCount();
+    }
+
+    @ManagedAttribute(description = "Exchanges per second, average of the last minute")
+    public double getOneMinuteRate() {
+        return completed.getOneMinuteRate();
+    }
+
+    @ManagedAttribute(description = "Exchanges per second since the start")
+    public double getMeanRate() {
+        return completed.getMeanRate();
+    }
+
+    @Override
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        return new ObjectName("org.apache.camel.example:type=PipelineStage,name=" + name);
+    }
+}
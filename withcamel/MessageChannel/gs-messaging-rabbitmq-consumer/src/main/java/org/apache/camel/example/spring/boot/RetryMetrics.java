@@ -0,0 +1,40 @@
+package org.apache.camel.example.spring.boot;
+
+import org.springframework.boot.actuate.metrics.CounterService;
+
+import retry.RetryListener;
+
+/**
+ * Counts the failed messages of a route in Spring Boot Actuator, at <code>/metrics</code>:
+ * <ul>
+ * <li><code>counter.&lt;route&gt;.retried</code> and <code>.retried.&lt;tier&gt;</code>: messages sent to a delay
+ * queue, in total and by tier</li>
+ * <li><code>counter.&lt;route&gt;.poisoned</code>: messages dead-lettered, out of retries or with a fatal
+ * failure</li>
+ * </ul>
+ */
+public class RetryMetrics implements RetryListener {
+
+    private final CounterService counterService;
+
+    private final String retriedName;
+
+    private final String poisonedName;
+
+    public RetryMetrics(String routeId, CounterService counterService) {
+        this.counterService = counterService;
+        this.retriedName = "counter." + routeId + ".retried";
+        this.poisonedName = "counter." + routeId + ".poisoned";
+    }
+
+    @Override
+    public void retried(int retry, int tier, Throwable failure) {
+        counterService.increment(retriedName);
+        counterService.increment(retriedName + "." + tier);
+    }
+
+    @Override
+    public void deadLettered(int retries, Throwable failure) {
+        counterService.increment(poisonedName);
+    }
+}
@@ -0,0 +1,64 @@
+package org.apache.camel.example.spring.boot;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+import retry.RetryTopology;
+
+/**
+ * Declares the exchanges and queues of a {@link RetryTopology} the first time a message fails, on a connection of
+ * its own that it closes right after: the rabbitmq endpoint of Camel 2.15 only declares its own exchange and queue.
+ * Declaring them on the first failure instead of at startup lets the route start without the broker, as its
+ * consumer does. Place it before the {@link retry.camel.RetryProcessor} of the <code>onException()</code>; a
+ * failed declaration fails the exchange, which the broker then redelivers or drops as it does any failed one.
+ */
+public class RetryTopologyDeclarer implements Processor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RetryTopologyDeclarer.class);
+
+    private final RetryTopology topology;
+
+    private final String host;
+
+    private final int port;
+
+    private volatile boolean declared;
+
+    public RetryTopologyDeclarer(RetryTopology topology, String host, int port) {
+        this.topology = topology;
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        if (!declared) {
+            declare();
+        }
+    }
+
+    private synchronized void declare() throws Exception {
+        if (declared) {
+            return;
+        }
+        ConnectionFactory factory = new ConnectionFactory();
+        factory.setHost(host);
+        factory.setPort(port);
+        Connection connection = factory.newConnection();
+        try {
+            Channel channel = connection.createChannel();
+            topology.declare(channel);
+        } finally {
+            connection.close();
+        }
+        declared = true;
+        LOG.info("Declared the retry topology of {}: {} tiers, dead letters in {}", topology.getQueue(),
+                topology.getPolicy().getTiers(), topology.getDeadLetterQueue());
+    }
+}
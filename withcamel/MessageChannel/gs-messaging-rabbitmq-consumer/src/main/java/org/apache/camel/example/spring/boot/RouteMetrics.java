@@ -0,0 +1,75 @@
+package org.apache.camel.example.spring.boot;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * Records the end-to-end metrics of a consumer route in the actuator, readable at <code>/metrics</code>
+ * and through Jolokia:
+ * <ul>
+ * <li><code>timer.&lt;route&gt;.latency</code>: milliseconds from the <code>sendTimestamp</code> header set by the
+ * producer to the arrival in the route, clock differences between hosts below zero are recorded as zero</li>
+ * <li><code>meter.&lt;route&gt;.received</code>: received messages and their 1, 5 and 15 minute rates</li>
+ * <li><code>counter.&lt;route&gt;.redelivered</code>: exchanges redelivered by the Camel error handler</li>
+ * <li><code>gauge.&lt;route&gt;.in-flight</code>: exchanges currently in the route, from the Camel inflight repository</li>
+ * </ul>
+ * Place it first in the route with <code>.process(routeMetrics)</code>.
+ */
+public class RouteMetrics implements Processor, PublicMetrics {
+
+    public static final String SEND_TIMESTAMP = "sendTimestamp";
+
+    private final CamelContext camelContext;
+
+    private final String routeId;
+
+    private final CounterService counterService;
+
+    private final GaugeService gaugeService;
+
+    private final String latencyName;
+
+    private final String receivedName;
+
+    private final String redeliveredName;
+
+    private final String inFlightName;
+
+    public RouteMetrics(CamelContext camelContext, String routeId, CounterService counterService,
+            GaugeService gaugeService) {
+        this.camelContext = camelContext;
+        this.routeId = routeId;
+        this.counterService = counterService;
+        this.gaugeService = gaugeService;
+        this.latencyName = "timer." + routeId + ".latency";
+        this.receivedName = "meter." + routeId + ".received";
+        this.redeliveredName = "counter." + routeId + ".redelivered";
+        this.inFlightName = "gauge." + routeId + ".in-flight";
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        Object sent = exchange.getIn().getHeader(SEND_TIMESTAMP);
+        if (sent instanceof Number) {
+            gaugeService.submit(latencyName, Math.max(System.currentTimeMillis() - ((Number) sent).longValue(), 0));
+        }
+        counterService.increment(receivedName);
+        if (exchange.getIn().getHeader(Exchange.REDELIVERED, false, Boolean.class)) {
+            counterService.increment(redeliveredName);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Collections.<Metric<?>>singleton(
+                new Metric<Integer>(inFlightName, camelContext.getInflightRepository().size(routeId)));
+    }
+}
@@ -0,0 +1,40 @@
+package org.apache.camel.example.spring.boot;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.processor.aggregate.AggregationStrategy;
+
+/**
+ * Joins the text bodies of a group, one per line, into its first exchange, which also keeps when the group
+ * was opened in {@link #CREATED} for the completion latency.
+ * <br/>
+ * An exchange with the {@link OffHeapAggregationRepository#FORCE_COMPLETION} header completes the group
+ * instead, its reason is kept in {@link #COMPLETED_BY}. When the group is already gone it completes on its
+ * own, with the header, and is to be dropped after the aggregator.
+ */
+public class TextAggregationStrategy implements AggregationStrategy {
+
+    public static final String CREATED = "aggregateCreated";
+
+    public static final String COMPLETED_BY = "aggregateCompletedBy";
+
+    @Override
+    public Exchange aggregate(Exchange oldExchange, Exchange newExchange) {
+        String forced = newExchange.getIn().getHeader(OffHeapAggregationRepository.FORCE_COMPLETION, String.class);
+        if (oldExchange == null) {
+            if (forced != null) {
+                newExchange.setProperty(Exchange.AGGREGATION_COMPLETE_CURRENT_GROUP, true);
+            } else {
+                newExchange.setProperty(CREATED, System.currentTimeMillis());
+            }
+            return newExchange;
+        }
+        if (forced != null) {
+            oldExchange.setProperty(Exchange.AGGREGATION_COMPLETE_CURRENT_GROUP, true);
+            oldExchange.setProperty(COMPLETED_BY, forced);
+            return oldExchange;
+        }
+        oldExchange.getIn().setBody(oldExchange.getIn().getBody(String.class) + "\n"
+                + newExchange.getIn().getBody(String.class));
+        return oldExchange;
+    }
+}
@@ -0,0 +1,218 @@
+package org.apache.camel.example.spring.boot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OffHeapGroupStoreTest extends Assert {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private OffHeapGroupStore store;
+
+    @After
+    public void tearDown() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    public void keepsTheLastDataOfAGroup() throws IOException {
+        store = store(16, 4096, 64, Long.MAX_VALUE);
+        assertTrue(store.put("a", bytes("one"), 1));
+        assertFalse(store.put("a", bytes("one, two"), 2));
+        assertTrue(store.contains("a"));
+        assertEquals("one, two", text(store.get("a")));
+        assertEquals(1, store.size());
+        assertTrue(store.remove("a"));
+        assertFalse(store.remove("a"));
+        assertNull(store.get("a"));
+        assertEquals(0, store.size());
+        assertEquals(0, store.getMemoryUsed());
+    }
+
+    @Test
+    public void chainsTheBlocksOfALargeGroup() throws IOException {
+        store = store(16, 4096, 16, Long.MAX_VALUE);
+        byte[] data = random(new Random(1), 1000);
+        store.put("large", data, 1);
+        assertArrayEquals(data, store.get("large"));
+        assertEquals(0, store.getSpilled());
+        store.put("large", new byte[0], 2);
+        assertArrayEquals(new byte[0], store.get("large"));
+        assertEquals(16, store.getMemoryUsed());
+    }
+
+    @Test
+    public void spillsTheOldestGroupsWhenTheBlocksRunOut() throws IOException {
+        // 8 blocks of 60 bytes of record each
+        store = store(64, 512, 64, Long.MAX_VALUE);
+        for (int i = 0; i < 20; i++) {
+            store.put("group-" + i, bytes("data of group " + i), i);
+        }
+        assertEquals(20, store.size());
+        assertEquals(12, store.getSpilled());
+        assertEquals(512, store.getMemoryUsed());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("data of group " + i, text(store.get("group-" + i)));
+        }
+        // the spilled groups stay in the file when their data changes
+        store.put("group-0", bytes("new data of group 0"), 21);
+        assertEquals("new data of group 0", text(store.get("group-0")));
+        assertEquals(12, store.getSpilled());
+
+        for (int i = 0; i < 20; i++) {
+            store.remove("group-" + i);
+        }
+        assertEquals(0, store.getSpilled());
+        assertEquals(0, store.getSpillBytes());
+        assertEquals(0, store.getMemoryUsed());
+    }
+
+    @Test
+    public void spillsAGroupLargerThanTheMemory() throws IOException {
+        store = store(16, 256, 64, Long.MAX_VALUE);
+        byte[] data = random(new Random(2), 1000);
+        store.put("huge", data, 1);
+        assertEquals(1, store.getSpilled());
+        assertArrayEquals(data, store.get("huge"));
+    }
+
+    @Test
+    public void pollsTheGroupsInTheOrderTheyWereCreated() throws IOException {
+        store = store(16, 4096, 64, Long.MAX_VALUE);
+        store.put("a", bytes("1"), 10);
+        store.put("b", bytes("2"), 20);
+        store.put("c", bytes("3"), 30);
+        // updating a group keeps its place
+        store.put("a", bytes("4"), 40);
+        store.remove("b");
+
+        assertNull(store.pollOldest(10, false));
+        assertEquals("a", store.pollOldest(11, false));
+        assertNull(store.pollOldest(11, false));
+        assertEquals("c", store.pollOldest(0, true));
+        assertNull(store.pollOldest(0, true));
+
+        store.requeue("a");
+        assertEquals("a", store.pollOldest(0, true));
+        // a group taken out of the order is still there until it is removed
+        assertEquals(2, store.size());
+        assertEquals(new HashSet<String>(Arrays.asList("a", "c")), store.keys());
+    }
+
+    @Test
+    public void isOverLimitPastTheGroupsOrTheSpillBytes() throws IOException {
+        store = store(2, 4096, 64, Long.MAX_VALUE);
+        store.put("a", bytes("1"), 1);
+        store.put("b", bytes("2"), 2);
+        assertFalse(store.isOverLimit());
+        store.put("c", bytes("3"), 3);
+        assertTrue(store.isOverLimit());
+        store.close();
+
+        store = store(16, 128, 64, 100);
+        store.put("a", new byte[90], 1);
+        store.put("b", new byte[90], 2);
+        assertFalse(store.isOverLimit());
+        store.put("c", new byte[90], 3);
+        assertTrue(store.isOverLimit());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refusesANewGroupWhenTheIndexIsThreeQuartersFull() throws IOException {
+        // an index of 8 entries
+        store = store(4, 4096, 64, Long.MAX_VALUE);
+        for (int i = 0; i < 7; i++) {
+            store.put("group-" + i, bytes("data"), i);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesBlocksLargerThanTheMemory() throws IOException {
+        store(16, 32, 64, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void refusesAnIndexLargerThanADirectBuffer() throws IOException {
+        for (int maxGroups : new int[] { (1 << 24) + 1, 1 << 28, Integer.MAX_VALUE }) {
+            try {
+                store(maxGroups, 4096, 64, Long.MAX_VALUE);
+                fail(String.valueOf(maxGroups));
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("index of"));
+            }
+        }
+    }
+
+    @Test
+    public void matchesAMapUnderRandomPutsAndRemoves() throws IOException {
+        // little memory and large groups, so most groups spill and the spill file is compacted
+        store = store(256, 8192, 128, Long.MAX_VALUE);
+        Map<String, byte[]> groups = new HashMap<String, byte[]>();
+        List<String> order = new ArrayList<String>();
+        Random random = new Random(3);
+        for (int i = 0; i < 20000; i++) {
+            String key = "group-" + random.nextInt(150);
+            int operation = random.nextInt(10);
+            if (operation < 3) {
+                assertEquals(groups.remove(key) != null, store.remove(key));
+                order.remove(key);
+            } else if (operation < 4) {
+                String oldest = store.pollOldest(0, true);
+                assertEquals(order.isEmpty() ? null : order.remove(0), oldest);
+                if (oldest != null) {
+                    store.requeue(oldest);
+                    order.add(oldest);
+                }
+            } else {
+                byte[] data = random(random, random.nextInt(random.nextBoolean() ? 100 : 4000));
+                assertEquals(!groups.containsKey(key), store.put(key, data, i));
+                if (groups.put(key, data) == null) {
+                    order.add(key);
+                }
+            }
+            assertEquals(groups.size(), store.size());
+        }
+        assertEquals(groups.keySet(), store.keys());
+        for (Map.Entry<String, byte[]> group : groups.entrySet()) {
+            assertArrayEquals(group.getKey(), group.getValue(), store.get(group.getKey()));
+        }
+        assertTrue(store.getSpillBytes() <= new File(folder.getRoot(), "spill").length());
+    }
+
+    private OffHeapGroupStore store(int maxGroups, int memoryBytes, int blockSize, long maxSpillBytes)
+            throws IOException {
+        return new OffHeapGroupStore(maxGroups, memoryBytes, blockSize, new File(folder.getRoot(), "spill"),
+                maxSpillBytes);
+    }
+
+    private static byte[] random(Random random, int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        return data;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,109 @@
+package org.apache.camel.example.spring.boot;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.component.rabbitmq.RabbitMQConstants;
+import org.apache.camel.component.rabbitmq.RabbitMQEndpoint;
+import org.apache.camel.support.ServiceSupport;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+
+/**
+ * Publishes a batch of exchanges, the output of <code>.aggregate(..., new GroupedExchangeAggregationStrategy())</code>,
+ * to the exchange and routing key of a <code>rabbitmq:</code> endpoint, then waits for the broker to confirm
+ * the whole batch (publisher confirms). One round trip per batch instead of one per message, and a message the
+ * broker did not take fails the exchange. The camel-rabbitmq producer of this Camel version has neither batches
+ * nor confirms, this uses the connection settings and the declarations of its endpoint.
+ * <br/>
+ * The headers of the messages with a String, Number or Boolean value are copied to the AMQP headers, like the
+ * rabbitmq producer does, and <code>rabbitmq.MESSAGE_ID</code> and <code>rabbitmq.CONTENT_ENCODING</code> to the
+ * message id and the content encoding.
+ * <br/>
+ * The aggregator completes batches on two threads, full ones on the thread of the route and the ones of the
+ * completion interval on its checker thread, so the batches are published one at a time on the single channel.
+ */
+public class ConfirmedBatchPublisher extends ServiceSupport implements Processor {
+
+    private final CamelContext camelContext;
+
+    private final String endpointUri;
+
+    private final long confirmTimeout;
+
+    private RabbitMQEndpoint endpoint;
+
+    private ExecutorService executor;
+
+    private Connection connection;
+
+    private Channel channel;
+
+    /**
+     * @param confirmTimeout milliseconds to wait for the confirms of a batch
+     */
+    public ConfirmedBatchPublisher(CamelContext camelContext, String endpointUri, long confirmTimeout) {
+        this.camelContext = camelContext;
+        this.endpointUri = endpointUri;
+        this.confirmTimeout = confirmTimeout;
+    }
+
+    @Override
+    public synchronized void process(Exchange exchange) throws Exception {
+        @SuppressWarnings("unchecked")
+        List<Exchange> batch = exchange.getProperty(Exchange.GROUPED_EXCHANGE, List.class);
+        String routingKey = endpoint.getRoutingKey() != null ? endpoint.getRoutingKey() : "";
+        for (Exchange message : batch) {
+            channel.basicPublish(endpoint.getExchangeName(), routingKey, properties(message),
+                    message.getIn().getMandatoryBody(byte[].class));
+        }
+        channel.waitForConfirmsOrDie(confirmTimeout);
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        endpoint = camelContext.getEndpoint(endpointUri, RabbitMQEndpoint.class);
+        executor = camelContext.getExecutorServiceManager().newSingleThreadExecutor(this, "RabbitMQConfirms");
+        connection = endpoint.connect(executor);
+        channel = connection.createChannel();
+        if (endpoint.isDeclare()) {
+            endpoint.declareExchangeAndQueue(channel);
+        }
+        channel.confirmSelect();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (connection != null && connection.isOpen()) {
+            connection.close();
+        }
+        connection = null;
+        channel = null;
+        if (executor != null) {
+            camelContext.getExecutorServiceManager().shutdown(executor);
+            executor = null;
+        }
+    }
+
+    private static AMQP.BasicProperties properties(Exchange message) {
+        Map<String, Object> headers = new HashMap<String, Object>();
+        for (Map.Entry<String, Object> header : message.getIn().getHeaders().entrySet()) {
+            Object value = header.getValue();
+            if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+                headers.put(header.getKey(), value);
+            }
+        }
+        return new AMQP.BasicProperties.Builder()
+                .contentEncoding(message.getIn().getHeader(RabbitMQConstants.CONTENT_ENCODING, String.class))
+                .messageId(message.getIn().getHeader(RabbitMQConstants.MESSAGE_ID, String.class))
+                .headers(headers)
+                .build();
+    }
+}
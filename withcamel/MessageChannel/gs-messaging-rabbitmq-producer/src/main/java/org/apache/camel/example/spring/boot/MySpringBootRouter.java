@@ -16,10 +16,28 @@
  */
 package org.apache.camel.example.spring.boot;
 
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.component.rabbitmq.RabbitMQConstants;
+import org.apache.camel.impl.StringDataFormat;
+import org.apache.camel.model.RouteDefinition;
+import org.apache.camel.processor.aggregate.GroupedExchangeAggregationStrategy;
 import org.apache.camel.spring.boot.FatJarRouter;
+import org.apache.camel.spi.DataFormat;
+import org.apache.camel.support.ExpressionAdapter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 
+import codec.camel.CompressionDataFormat;
+import codec.camel.EnvelopeDataFormat;
+import codec.compress.CompressionRegistry;
+import codec.compress.PayloadDecompressor;
+import spool.Spool;
+
 
 /**
  * 
@@ -41,24 +59,152 @@ import org.springframework.context.annotation.Bean;
 @SpringBootApplication
 public class MySpringBootRouter extends FatJarRouter {
 
-	
-	
+	static final String SEND_TIMESTAMP = "sendTimestamp";
+
+	//RabbitMQ broker, application-local.yml points it to the embedded broker
+	@Value("${rabbitmq.host}")
+	private String rabbitHost;
+
+	@Value("${rabbitmq.port}")
+	private int rabbitPort;
+
+	//timer: one message per second; load: paced load source, see application.yml
+	@Value("${producer.mode:timer}")
+	private String producerMode;
+
+	@Value("${load.rate:50000}")
+	private long loadRate;
+
+	@Value("${load.burst:0}")
+	private long loadBurst;
+
+	@Value("${load.batch-size:100}")
+	private int batchSize;
+
+	@Value("${load.batch-timeout:10}")
+	private long batchTimeout;
+
+	@Value("${load.confirm-timeout:5000}")
+	private long confirmTimeout;
+
+	@Value("${load.report-interval:5}")
+	private int reportInterval;
+
+	//text: the String as UTF-8; envelope: the binary envelope of message-codec
+	@Value("${message.format:text}")
+	private String messageFormat;
+
+	//compresses the bodies of compression.threshold bytes or more, see application.yml
+	@Autowired
+	private CompressionDataFormat compressionDataFormat;
+
+	@Value("${compression.algorithm:none}")
+	private String compression;
+
+	//timer mode: the messages go through a spool on disk when spool.dir is set, see application.yml
+	@Value("${spool.dir:}")
+	private String spoolDir;
+
+	@Value("${spool.segment-size:16777216}")
+	private int spoolSegmentSize;
+
+	@Value("${spool.max-segments:16}")
+	private int spoolMaxSegments;
+
+	@Value("${spool.append-timeout:10000}")
+	private long spoolAppendTimeout;
+
+	@Value("${spool.confirm-window:256}")
+	private int spoolConfirmWindow;
+
+	@Value("${spool.confirm-timeout:5000}")
+	private long spoolConfirmTimeout;
+
+	@Value("${spool.retry-interval:1000}")
+	private long spoolRetryInterval;
+
 	//
     @Override
-    public void configure() {
+    public void configure() throws IOException {
+    	String rabbitUri = "rabbitmq://" + rabbitHost + ":" + rabbitPort + "/spring-boot-exchange?queue=spring-boot";
+
+    	if ("load".equals(producerMode)) {
+    		//token bucket paced source, batches of batchSize (or what arrived since the last batchTimeout ms tick)
+    		//published with one publisher confirm round trip each; the pacer logs the achieved rate against the target.
+    		//completionInterval, not completionTimeout: Camel 2.15 checks the timeouts only once a second
+    		RouteDefinition load = from("pacer:load?rate=" + loadRate + "&burst=" + loadBurst + "&reportInterval=" + reportInterval)
+    			.routeId("load-producer")
+    			.setBody().simple("ref:myBean")
+    			.setHeader(SEND_TIMESTAMP, sendTimestamp())
+    			.setHeader(RabbitMQConstants.MESSAGE_ID, simple("${exchangeId}"))
+    			.marshal(dataFormat());
+    		compress(load)
+    			.aggregate(constant(true), new GroupedExchangeAggregationStrategy())
+    				.completionSize(batchSize)
+    				.completionInterval(batchTimeout)
+    			.process(new ConfirmedBatchPublisher(getContext(), rabbitUri, confirmTimeout));
+    		return;
+    	}
     	
     	//The timer component doesn’t receive any message, it only generates messages so the inbound message of the generated exchange is null.
     	//Thus the below statement returns null.
     	//exchange.getIn().getBody();
     	
     	// "timer://simple?period=1000" this alternative instruction send a message every second
-        from("timer:trigger") 
+        RouteDefinition timer = from("timer:trigger") 
                 .transform().simple("ref:myBean")
-                .to("rabbitmq://185.14.186.49:5672/spring-boot-exchange?queue=spring-boot");
+                //send time in milliseconds, the consumer route measures the end-to-end latency with it
+                .setHeader(SEND_TIMESTAMP, sendTimestamp())
+                //unique id, the consumer route drops the messages it already processed
+                .setHeader(RabbitMQConstants.MESSAGE_ID, simple("${exchangeId}"))
+                .marshal(dataFormat());
+        if (spoolDir.isEmpty()) {
+            compress(timer)
+                    .to(rabbitUri);
+        } else {
+            //appended to the spool and published from it with confirms, the route does not wait for the broker
+            compress(timer)
+                    .process(new SpoolingPublisher(getContext(), rabbitUri, new Spool(new File(spoolDir), spoolSegmentSize,
+                            spoolMaxSegments, spoolAppendTimeout), spoolConfirmWindow, spoolConfirmTimeout, spoolRetryInterval));
+        }
         
       //  simple language for evaluating Expression and Predicate without requiring any new dependencies or knowledge of XPath
     }
 
+    private DataFormat dataFormat() {
+        return "envelope".equals(messageFormat) ? new EnvelopeDataFormat() : new StringDataFormat("UTF-8");
+    }
+
+    //without compression the body goes through unchanged
+    private RouteDefinition compress(RouteDefinition route) {
+        return CompressionRegistry.NONE.equals(compression) ? route : route.marshal(compressionDataFormat);
+    }
+
+    private static ExpressionAdapter sendTimestamp() {
+        return new ExpressionAdapter() {
+            @Override
+            public Object evaluate(Exchange exchange) {
+                return System.currentTimeMillis();
+            }
+        };
+    }
+
+    //the compression is written in rabbitmq.CONTENT_ENCODING, the AMQP content-encoding of the message
+    @Bean
+    static CompressionDataFormat compressionDataFormat(@Value("${compression.algorithm:none}") String compression,
+            @Value("${compression.threshold:1024}") int threshold, @Value("${compression.level:3}") int level,
+            @Value("${compression.dictionary:}") String dictionary) throws IOException {
+        CompressionRegistry compressions = CompressionRegistry.forSetting(compression, level, dictionary);
+        return new CompressionDataFormat(compressions.compressor(compression, threshold),
+                new PayloadDecompressor(compressions), RabbitMQConstants.CONTENT_ENCODING);
+    }
+
+    //token bucket load source of the load mode, see PacerComponent
+    @Bean(name = "pacer")
+    static PacerComponent pacerComponent() {
+        return new PacerComponent();
+    }
+
     /**
 	 * Metodo  que crea un bean de tipo String.Esta definici&oacute;n reemplaza la definici&oacute;n de beans por<br/> 
 	 * Spring XML.<br/> 
@@ -0,0 +1,154 @@
+package org.apache.camel.example.spring.boot;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.Consumer;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.Producer;
+import org.apache.camel.impl.DefaultComponent;
+import org.apache.camel.impl.DefaultConsumer;
+import org.apache.camel.impl.DefaultEndpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Load source for routes: <code>from("pacer:name?rate=50000")</code> creates empty exchanges at a target rate,
+ * paced by a {@link TokenBucket} instead of the ticks of <code>timer:</code>. One thread sends the exchanges
+ * through the route, so a route slower than the rate slows the source down instead of queuing exchanges.
+ * <br/>
+ * Options: <code>rate</code> (exchanges per second, default 1000), <code>burst</code> (largest catch-up burst,
+ * default 10 ms worth of the rate) and <code>reportInterval</code> (seconds between the log lines with the
+ * achieved and the target rate, default 5, 0 disables them).
+ */
+public class PacerComponent extends DefaultComponent {
+
+    @Override
+    protected Endpoint createEndpoint(String uri, String remaining, Map<String, Object> parameters)
+            throws Exception {
+        PacerEndpoint endpoint = new PacerEndpoint(uri, this);
+        setProperties(endpoint, parameters);
+        return endpoint;
+    }
+
+    public static class PacerEndpoint extends DefaultEndpoint {
+
+        private long rate = 1000;
+
+        private long burst;
+
+        private int reportInterval = 5;
+
+        public PacerEndpoint(String uri, PacerComponent component) {
+            super(uri, component);
+        }
+
+        @Override
+        public Producer createProducer() throws Exception {
+            throw new UnsupportedOperationException("pacer only supports consumers: " + getEndpointUri());
+        }
+
+        @Override
+        public Consumer createConsumer(Processor processor) throws Exception {
+            return new PacerConsumer(this, processor);
+        }
+
+        @Override
+        public boolean isSingleton() {
+            return true;
+        }
+
+        public long getRate() {
+            return rate;
+        }
+
+        public void setRate(long rate) {
+            this.rate = rate;
+        }
+
+        public long getBurst() {
+            return burst;
+        }
+
+        public void setBurst(long burst) {
+            this.burst = burst;
+        }
+
+        public int getReportInterval() {
+            return reportInterval;
+        }
+
+        public void setReportInterval(int reportInterval) {
+            this.reportInterval = reportInterval;
+        }
+    }
+
+    static class PacerConsumer extends DefaultConsumer implements Runnable {
+
+        private static final Logger LOG = LoggerFactory.getLogger(PacerConsumer.class);
+
+        private final PacerEndpoint endpoint;
+
+        private ExecutorService executor;
+
+        private volatile boolean running;
+
+        PacerConsumer(PacerEndpoint endpoint, Processor processor) {
+            super(endpoint, processor);
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        protected void doStart() throws Exception {
+            super.doStart();
+            running = true;
+            executor = endpoint.getCamelContext().getExecutorServiceManager().newSingleThreadExecutor(this,
+                    endpoint.getEndpointUri());
+            executor.execute(this);
+        }
+
+        @Override
+        protected void doStop() throws Exception {
+            running = false;
+            if (executor != null) {
+                endpoint.getCamelContext().getExecutorServiceManager().shutdownGraceful(executor);
+                executor = null;
+            }
+            super.doStop();
+        }
+
+        @Override
+        public void run() {
+            long rate = endpoint.getRate();
+            TokenBucket bucket = new TokenBucket(rate, endpoint.getBurst() > 0 ? endpoint.getBurst()
+                    : Math.max(rate / 100, 1));
+            long reportNanos = TimeUnit.SECONDS.toNanos(endpoint.getReportInterval());
+            long intervalStart = System.nanoTime();
+            long sent = 0;
+            while (running && isRunAllowed()) {
+                bucket.acquire();
+                Exchange exchange = endpoint.createExchange();
+                try {
+                    getProcessor().process(exchange);
+                } catch (Exception e) {
+                    exchange.setException(e);
+                }
+                if (exchange.getException() != null) {
+                    getExceptionHandler().handleException("Error processing exchange", exchange,
+                            exchange.getException());
+                }
+                sent++;
+                long elapsed = System.nanoTime() - intervalStart;
+                if (reportNanos > 0 && elapsed >= reportNanos) {
+                    LOG.info("{}: {} msgs/sec of the target {} msgs/sec", endpoint.getEndpointUri(),
+                            sent * TimeUnit.SECONDS.toNanos(1) / elapsed, rate);
+                    intervalStart = System.nanoTime();
+                    sent = 0;
+                }
+            }
+        }
+    }
+}
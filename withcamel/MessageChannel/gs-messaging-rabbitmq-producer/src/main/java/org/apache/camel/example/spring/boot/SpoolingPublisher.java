@@ -0,0 +1,189 @@
+package org.apache.camel.example.spring.boot;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.component.rabbitmq.RabbitMQConstants;
+import org.apache.camel.component.rabbitmq.RabbitMQEndpoint;
+import org.apache.camel.support.ServiceSupport;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import spool.Spool;
+import spool.SpoolDrainer;
+import spool.SpooledMessage;
+
+/**
+ * Appends each exchange to a {@link Spool} on local disk and returns at once; a {@link SpoolDrainer} publishes
+ * the spooled messages to the exchange and routing key of a <code>rabbitmq:</code> endpoint with publisher
+ * confirms, so the route goes on while the broker is slow or down. The messages not confirmed when the route
+ * stops stay in the spool directory and are published on the next start.
+ * <br/>
+ * The headers with a String, Number or Boolean value are kept, with <code>rabbitmq.MESSAGE_ID</code> and
+ * <code>rabbitmq.CONTENT_ENCODING</code> as the message id and the content encoding, like
+ * {@link ConfirmedBatchPublisher} does. The channel is opened again after the connection is lost.
+ */
+public class SpoolingPublisher extends ServiceSupport implements Processor, SpoolDrainer.Target {
+
+    private final CamelContext camelContext;
+
+    private final String endpointUri;
+
+    private final Spool spool;
+
+    private final SpoolDrainer drainer;
+
+    private RabbitMQEndpoint endpoint;
+
+    private ExecutorService executor;
+
+    private volatile Connection connection;
+
+    private volatile Channel channel;
+
+    // publish sequence number of the channel -> position of the message in the spool
+    private volatile ConcurrentSkipListMap<Long, Long> unconfirmed;
+
+    /**
+     * @param confirmWindow messages published and not confirmed at most
+     * @param confirmTimeout milliseconds without a confirm before the unconfirmed messages are published again
+     * @param retryInterval milliseconds before publishing again after a failure
+     */
+    public SpoolingPublisher(CamelContext camelContext, String endpointUri, Spool spool, int confirmWindow,
+            long confirmTimeout, long retryInterval) {
+        this.camelContext = camelContext;
+        this.endpointUri = endpointUri;
+        this.spool = spool;
+        this.drainer = new SpoolDrainer(spool, this, confirmWindow, confirmTimeout, retryInterval);
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        Map<String, Object> headers = new HashMap<String, Object>();
+        for (Map.Entry<String, Object> header : exchange.getIn().getHeaders().entrySet()) {
+            Object value = header.getValue();
+            if (value instanceof String || value instanceof Boolean || value instanceof Long
+                    || value instanceof Integer || value instanceof Double) {
+                headers.put(header.getKey(), value);
+            } else if (value instanceof Number) {
+                headers.put(header.getKey(), ((Number) value).longValue());
+            }
+        }
+        spool.append(new SpooledMessage(null, null, exchange.getIn().getHeader(RabbitMQConstants.MESSAGE_ID, String.class),
+                null, exchange.getIn().getHeader(RabbitMQConstants.CONTENT_ENCODING, String.class), headers,
+                exchange.getIn().getMandatoryBody(byte[].class)).encode());
+    }
+
+    @Override
+    public void send(SpooledMessage message, long position, SpoolDrainer drainer) throws IOException {
+        Channel channel = openChannel();
+        String routingKey = endpoint.getRoutingKey() != null ? endpoint.getRoutingKey() : "";
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .messageId(message.getMessageId())
+                .contentEncoding(message.getContentEncoding())
+                .headers(message.getHeaders())
+                .build();
+        // only the drainer thread publishes on the channel
+        unconfirmed.put(channel.getNextPublishSeqNo(), position);
+        channel.basicPublish(endpoint.getExchangeName(), routingKey, properties, message.getBody());
+    }
+
+    public SpoolDrainer getDrainer() {
+        return drainer;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        endpoint = camelContext.getEndpoint(endpointUri, RabbitMQEndpoint.class);
+        executor = camelContext.getExecutorServiceManager().newSingleThreadExecutor(this, "RabbitMQSpool");
+        drainer.start();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        drainer.close();
+        closeChannel();
+        if (executor != null) {
+            camelContext.getExecutorServiceManager().shutdown(executor);
+            executor = null;
+        }
+        spool.close();
+    }
+
+    private Channel openChannel() throws IOException {
+        Channel current = channel;
+        if (current != null && current.isOpen()) {
+            return current;
+        }
+        closeChannel();
+        connection = endpoint.connect(executor);
+        final Channel opened = connection.createChannel();
+        // the sequence numbers start again with each channel
+        final ConcurrentSkipListMap<Long, Long> published = new ConcurrentSkipListMap<Long, Long>();
+        if (endpoint.isDeclare()) {
+            endpoint.declareExchangeAndQueue(opened);
+        }
+        opened.confirmSelect();
+        opened.addConfirmListener(new ConfirmListener() {
+            @Override
+            public void handleAck(long deliveryTag, boolean multiple) {
+                for (long position : confirmed(published, deliveryTag, multiple)) {
+                    drainer.confirm(position);
+                }
+            }
+
+            @Override
+            public void handleNack(long deliveryTag, boolean multiple) {
+                for (long position : confirmed(published, deliveryTag, multiple)) {
+                    drainer.reject(position);
+                }
+            }
+        });
+        opened.addShutdownListener(new ShutdownListener() {
+            @Override
+            public void shutdownCompleted(ShutdownSignalException cause) {
+                // the confirms of this channel will not come
+                for (long position : confirmed(published, Long.MAX_VALUE, true)) {
+                    drainer.reject(position);
+                }
+            }
+        });
+        unconfirmed = published;
+        channel = opened;
+        return opened;
+    }
+
+    private static Long[] confirmed(ConcurrentSkipListMap<Long, Long> published, long deliveryTag,
+            boolean multiple) {
+        ConcurrentNavigableMap<Long, Long> confirmed = multiple ? published.headMap(deliveryTag, true)
+                : published.subMap(deliveryTag, true, deliveryTag, true);
+        Long[] positions = confirmed.values().toArray(new Long[0]);
+        confirmed.clear();
+        return positions;
+    }
+
+    private void closeChannel() {
+        Connection current = connection;
+        connection = null;
+        channel = null;
+        if (current != null && current.isOpen()) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // the connection is gone already
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.apache.camel.example.spring.boot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Token bucket pacer: tokens are added at <code>rate</code> per second up to <code>burst</code>, and
+ * {@link #acquire()} takes one, waiting while the bucket is empty. Sleeping once per message cannot reach
+ * high rates, the sleep granularity of the OS is tens of microseconds; the bucket lets the caller catch up
+ * with a short burst after each sleep, so the average rate holds while no burst exceeds <code>burst</code>.
+ * <br/>
+ * Not thread safe, meant for the single thread of a load source.
+ */
+public class TokenBucket {
+
+    private final double tokensPerNano;
+
+    private final double burst;
+
+    private double tokens;
+
+    private long lastRefill = System.nanoTime();
+
+    public TokenBucket(long rate, long burst) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("The rate must be positive: " + rate);
+        }
+        this.tokensPerNano = rate / (double) TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(burst, 1);
+    }
+
+    public void acquire() {
+        refill();
+        while (tokens < 1) {
+            LockSupport.parkNanos((long) Math.ceil((1 - tokens) / tokensPerNano));
+            refill();
+        }
+        tokens--;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
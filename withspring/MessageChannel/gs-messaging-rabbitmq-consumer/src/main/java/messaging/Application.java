@@ -1,23 +1,65 @@
 package messaging;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import javax.swing.Spring;
 
+import org.aopalliance.aop.Advice;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.MessageListener;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.TopicExchange;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
 import org.springframework.amqp.rabbit.listener.adapter.MessageListenerAdapter;
+import org.springframework.amqp.support.converter.MessageConversionException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import codec.amqp.DecompressingPostProcessor;
+import codec.compress.CompressionRegistry;
+import codec.compress.PayloadDecompressor;
+import codec.compress.ZstdCompression;
+import idempotent.IdempotencyWindow;
+import idempotent.aop.IdempotentReceiverInterceptor;
+import listener.DirectMessageListener;
+import listener.MessageBodyHandler;
+import listener.MessageTextHandler;
+import listener.MeteredMessageListener;
+import partition.PartitionTopology;
+import partition.amqp.PartitionedConsumer;
+import retry.RetryPolicy;
+import retry.RetryTopology;
+import retry.amqp.InPlaceRetryInterceptor;
+import retry.amqp.RetryDeclarables;
+import retry.amqp.RetryInterceptor;
+import sink.AsyncPrintSink;
+import splitter.RecordFormat;
+import splitter.StreamingSplitter;
+import splitter.amqp.SplittingMessageListener;
+import stream.amqp.RabbitConnections;
 
 /**
  * Esta clase tiene como objetivo definir la configuraci&oacute:n de los beans que se comunicaran con<br/>
@@ -48,6 +90,7 @@ import org.springframework.context.annotation.Bean;
 * @see http://www.enterpriseintegrationpatterns.com/patterns/messaging/MessageChannel.html                                       
  * */
 @SpringBootApplication
+@EnableConfigurationProperties(ConsumerProperties.class)
 public class Application implements CommandLineRunner {
 
 	//Define el nombre de la cola donde se enviara el mensaje.
@@ -65,6 +108,10 @@ public class Application implements CommandLineRunner {
 	@Autowired
 	RabbitTemplate rabbitTemplate;
 
+	//Configuracion del grupo de consumidores, ver application.properties
+	@Autowired
+	ConsumerProperties consumerProperties;
+
 	/**
 	 * 
 	 * Define una cola y la ingresa al contexto de Spring.<br/> 
@@ -112,22 +159,287 @@ public class Application implements CommandLineRunner {
 	/**
 	 * Contiene la definicion del protocolo que se comunica con RabbitMQ.<>
 	 * Esta definici&oacute;n reemplaza la definici&oacute;n de beans por<br/> 
-	 * Spring XML. 
+	 * Spring XML.<br/>
+	 * <br/>
+	 * Los mensajes se confirman (ack) en lotes: cada <code>consumer.batch-ack-size</code> mensajes o<br/>
+	 * cuando pasan <code>consumer.batch-ack-timeout-millis</code> sin recibir mensajes. Al detenerse el<br/>
+	 * contenedor espera hasta <code>consumer.shutdown-timeout-millis</code> a que los consumidores terminen<br/>
+	 * los mensajes en proceso; los mensajes entregados y no procesados regresan a la cola.<br/>
+	 * <br/>
+	 * Segun <code>consumer.listener</code> los mensajes llegan al receptor por medio del<br/>
+	 * MessageListenerAdapter (<code>adapter</code>) o del {@link DirectMessageListener} (<code>bytes</code>, <code>text</code>),<br/>
+	 * en ambos casos a traves del {@link MeteredMessageListener} que registra las metricas de la cola.<br/>
+	 * Con <code>reactive</code> el contenedor no se inicia, ver {@link #reactiveConsumer}; tampoco con<br/>
+	 * <code>consumer.partitions</code> mayor que 0, ver {@link #partitionedConsumer}.<br/>
+	 * <br/>
+	 * Los mensajes comprimidos por el productor (content-encoding <code>lz4</code> o <code>zstd</code>) se<br/>
+	 * descomprimen antes de separar los lotes y de llegar al receptor, ver {@link DecompressingPostProcessor}.<br/>
+	 * <br/>
+	 * Con <code>consumer.idempotent-capacity</code> mayor que 0 los mensajes (o lotes) cuyo identificador<br/>
+	 * ya fue procesado se confirman sin llegar al receptor, ver {@link IdempotentReceiverInterceptor}.<br/>
+	 * <br/>
+	 * Con <code>consumer.retry-max-retries</code> mayor que 0 un mensaje cuyo procesamiento falla no regresa a<br/>
+	 * la cola: se publica en una cola de retardo y se confirma, el servidor lo devuelve a la cola cuando expira<br/>
+	 * la espera, ver {@link RetryInterceptor}. El consumidor sigue con el siguiente mensaje sin esperar.<br/>
+	 * <br/>
+	 * Con <code>consumer.split-format</code> distinto de <code>none</code> el cuerpo de cada mensaje se lee<br/>
+	 * registro por registro y cada registro llega al receptor como un mensaje, en paralelo en los hilos del<br/>
+	 * {@link #splitExecutor()}; el mensaje se confirma cuando todos sus registros fueron procesados.<br/>
 	 * 
 	 * @param pConnectionFactory el conector que contiene la definicon del protocolo de definicion<br/> 
 	 *                           de mensajeria con RabbitMQ.<br/>
 	 * @param pListenerAdapter la clase que  constamente estara preguntado por mensajes.<br/>
+	 * @param pCounterService contadores del actuator usados por las metricas.<br/>
+	 * @param pGaugeService valores y tiempos del actuator usados por las metricas.<br/>
 	 *         
 	 * */
 	@Bean
-	SimpleMessageListenerContainer container(final ConnectionFactory pConnectionFactory, final MessageListenerAdapter pListenerAdapter) {
+	SimpleMessageListenerContainer container(final ConnectionFactory pConnectionFactory, final MessageListenerAdapter pListenerAdapter,
+			final CounterService pCounterService, final GaugeService pGaugeService) throws IOException {
 		SimpleMessageListenerContainer container = new SimpleMessageListenerContainer();
 		container.setConnectionFactory(pConnectionFactory);
 		container.setQueueNames(queueName);
-		container.setMessageListener(pListenerAdapter);
+		// con listener=reactive los mensajes llegan por el ReactiveConsumer y con particiones por el
+		// PartitionedConsumer, el contenedor no se inicia
+		container.setAutoStartup(!consumerProperties.isReactive() && !consumerProperties.isPartitioned());
+		container.setMessageListener(receiverListener(pListenerAdapter, pCounterService, pGaugeService));
+		container.setAfterReceivePostProcessors(decompressingPostProcessor());
+		Advice[] adviceChain = adviceChain(pCounterService);
+		if (adviceChain.length > 0) {
+			container.setAdviceChain(adviceChain);
+		}
+		container.setAcknowledgeMode(AcknowledgeMode.AUTO);
+		// sin maxConcurrentConsumers: el QueueDepthScaler es el unico que cambia la cantidad de consumidores,
+		// el escalado propio del contenedor lo contradiria
+		container.setConcurrentConsumers(consumerProperties.getConcurrentConsumers());
+		// el prefetch debe ser mayor o igual al tamano del lote de confirmacion
+		container.setPrefetchCount(Math.max(consumerProperties.getPrefetch(), consumerProperties.getBatchAckSize()));
+		container.setTxSize(consumerProperties.getBatchAckSize());
+		container.setReceiveTimeout(consumerProperties.getBatchAckTimeoutMillis());
+		container.setShutdownTimeout(consumerProperties.getShutdownTimeoutMillis());
 		return container;
 	}
 
+	/**
+	 * Crea los consejos (advice) que envuelven la cadena de listeners: el {@link RetryInterceptor} con<br/>
+	 * <code>consumer.retry-max-retries</code> mayor que 0 y el {@link IdempotentReceiverInterceptor} con<br/>
+	 * <code>consumer.idempotent-capacity</code> mayor que 0. Los usan tanto el contenedor como el<br/>
+	 * {@link ReactiveConsumer}.<br/>
+	 * 
+	 * @param pCounterService contadores del actuator usados por las metricas de los reintentos.<br/>
+	 * @throws IOException si el archivo de la ventana idempotente no puede ser abierto.<br/>
+	 * */
+	private Advice[] adviceChain(final CounterService pCounterService) throws IOException {
+		List<Advice> adviceChain = new ArrayList<Advice>();
+		if (consumerProperties.isRetryEnabled()) {
+			// primero, para que el receptor idempotente vea la falla y olvide el mensaje que se reintenta
+			adviceChain.add(new RetryInterceptor(retryTopology(),
+					new MeteredRetryListener(queueName, retryTopology().getPolicy().getTiers(), pCounterService)));
+		}
+		if (consumerProperties.getIdempotentCapacity() > 0) {
+			adviceChain.add(new IdempotentReceiverInterceptor(idempotencyWindow()));
+		}
+		return adviceChain.toArray(new Advice[adviceChain.size()]);
+	}
+
+	/**
+	 * Crea la cadena de listeners que lleva cada mensaje al receptor, ver <code>consumer.listener</code> y<br/>
+	 * <code>consumer.split-format</code>: las metricas de la cola, el separador de registros y el listener<br/>
+	 * del receptor. La usan tanto el contenedor como el {@link ReactiveConsumer}.<br/>
+	 * 
+	 * @param pListenerAdapter el listener del receptor con <code>adapter</code> y <code>reactive</code>.<br/>
+	 * @param pCounterService contadores del actuator usados por las metricas.<br/>
+	 * @param pGaugeService valores y tiempos del actuator usados por las metricas.<br/>
+	 * */
+	private MessageListener receiverListener(final MessageListenerAdapter pListenerAdapter,
+			final CounterService pCounterService, final GaugeService pGaugeService) throws IOException {
+		MessageListener listener;
+		if ("bytes".equalsIgnoreCase(consumerProperties.getListener())) {
+			listener = new DirectMessageListener((MessageBodyHandler) receiver());
+		} else if ("text".equalsIgnoreCase(consumerProperties.getListener())) {
+			listener = new DirectMessageListener((MessageTextHandler) receiver());
+		} else {
+			listener = pListenerAdapter;
+		}
+		if (consumerProperties.isSplitEnabled()) {
+			listener = new SplittingMessageListener(listener, RecordFormat.parse(consumerProperties.getSplitFormat()),
+					new StreamingSplitter(splitExecutor(), splitExecutor().getMaxPoolSize()),
+					consumerProperties.getSplitMaxRecordBytes());
+		}
+		return new MeteredMessageListener(listener, queueName, pCounterService, pGaugeService);
+	}
+
+	/**
+	 * Crea el post-procesador que descomprime los mensajes comprimidos por el productor.<br/>
+	 * 
+	 * @throws IOException si el diccionario de zstd no puede ser leido.<br/>
+	 * */
+	private DecompressingPostProcessor decompressingPostProcessor() throws IOException {
+		return new DecompressingPostProcessor(new PayloadDecompressor(CompressionRegistry.create(
+				ZstdCompression.DEFAULT_LEVEL, ZstdCompression.readDictionary(consumerProperties.getCompressionDictionary()))));
+	}
+
+	/**
+	 * Crea el consumidor que recibe los mensajes de la cola como un flujo con demanda cuando<br/>
+	 * <code>consumer.listener</code> es <code>reactive</code>, ver {@link ReactiveConsumer}. Se inicia en<br/>
+	 * el metodo run y al detenerse espera hasta <code>consumer.shutdown-timeout-millis</code> a que<br/>
+	 * terminen los mensajes en proceso. Con los mismos reintentos y receptor idempotente que el contenedor, ver<br/>
+	 * {@link #adviceChain}. Solo se crea si se usa.<br/>
+	 * 
+	 * @param pRabbitProperties propiedades de conexi&oacute;n definidas en application.properties.<br/>
+	 * @param pListenerAdapter el listener del receptor.<br/>
+	 * @param pCounterService contadores del actuator usados por las metricas.<br/>
+	 * @param pGaugeService valores y tiempos del actuator usados por las metricas.<br/>
+	 * @throws IOException si no se puede conectar con RabbitMQ.<br/>
+	 * */
+	@Bean(destroyMethod = "stop")
+	@Lazy
+	ReactiveConsumer reactiveConsumer(final RabbitProperties pRabbitProperties, final MessageListenerAdapter pListenerAdapter,
+			final CounterService pCounterService, final GaugeService pGaugeService) throws IOException {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(consumerProperties.getReactiveConcurrency());
+		executor.setMaxPoolSize(consumerProperties.getReactiveConcurrency());
+		executor.setThreadNamePrefix("reactive-");
+		executor.initialize();
+		ReactiveConsumer consumer = new ReactiveConsumer(RabbitConnections.connectionFactory(pRabbitProperties), queueName,
+				receiverListener(pListenerAdapter, pCounterService, pGaugeService), decompressingPostProcessor(),
+				executor, consumerProperties.getReactiveConcurrency(), consumerProperties.getShutdownTimeoutMillis());
+		Advice[] adviceChain = adviceChain(pCounterService);
+		if (adviceChain.length > 0) {
+			// los reintentos se publican por el canal de la entrega, sin ellos el mensaje fallido regresa a la cola
+			consumer.setAdviceChain(adviceChain);
+		}
+		return consumer;
+	}
+
+	/**
+	 * Crea el miembro del grupo de consumidores de la cola particionada cuando <code>consumer.partitions</code><br/>
+	 * es mayor que 0, ver <code>consumer.partition-*</code> en application.properties. Consume las colas<br/>
+	 * <code>spring-boot.p&lt;n&gt;</code> de las particiones que le tocan, cada una con un unico consumidor, de<br/>
+	 * modo que los mensajes de una misma llave se procesan en orden; las particiones se reparten de nuevo<br/>
+	 * cuando otra instancia se une o sale del grupo. Usa la misma cadena de listeners que el contenedor y el<br/>
+	 * receptor idempotente. Con reintentos la partici&oacute;n reintenta el mensaje fallido en el mismo hilo, ver<br/>
+	 * {@link InPlaceRetryInterceptor}: se detiene mientras espera, a lo mas la suma de los retardos, y conserva el<br/>
+	 * orden de la llave. Se inicia en el metodo run y solo se crea si se usa.<br/>
+	 * 
+	 * @param pConnectionFactory la conexi&oacute;n con RabbitMQ.<br/>
+	 * @param pListenerAdapter el listener del receptor.<br/>
+	 * @param pCounterService contadores del actuator usados por las metricas.<br/>
+	 * @param pGaugeService valores y tiempos del actuator usados por las metricas.<br/>
+	 * @throws IOException si el diccionario de zstd no puede ser leido.<br/>
+	 * */
+	@Bean(destroyMethod = "stop")
+	@Lazy
+	PartitionedConsumer partitionedConsumer(final ConnectionFactory pConnectionFactory, final MessageListenerAdapter pListenerAdapter,
+			final CounterService pCounterService, final GaugeService pGaugeService) throws IOException {
+		PartitionedConsumer consumer = new PartitionedConsumer(pConnectionFactory, partitionTopology(),
+				receiverListener(pListenerAdapter, pCounterService, pGaugeService),
+				// pid@host, unico por proceso
+				ManagementFactory.getRuntimeMXBean().getName(), consumerProperties.getPartitionMemberTimeoutMillis());
+		consumer.setVirtualNodes(consumerProperties.getPartitionVirtualNodes());
+		consumer.setHeartbeatMillis(consumerProperties.getPartitionHeartbeatMillis());
+		consumer.setPrefetch(consumerProperties.getPrefetch());
+		consumer.setBatchAckSize(consumerProperties.getBatchAckSize());
+		consumer.setAfterReceivePostProcessors(decompressingPostProcessor());
+		List<Advice> adviceChain = new ArrayList<Advice>();
+		if (consumerProperties.isRetryEnabled()) {
+			// primero, cada reintento vuelve a pasar por el receptor idempotente
+			adviceChain.add(new InPlaceRetryInterceptor(retryTopology(),
+					new MeteredRetryListener(queueName, retryTopology().getPolicy().getTiers(), pCounterService)));
+		}
+		if (consumerProperties.getIdempotentCapacity() > 0) {
+			adviceChain.add(new IdempotentReceiverInterceptor(idempotencyWindow()));
+		}
+		if (!adviceChain.isEmpty()) {
+			consumer.setAdviceChain(adviceChain.toArray(new Advice[adviceChain.size()]));
+		}
+		return consumer;
+	}
+
+	/**
+	 * Las colas de las particiones de <code>spring-boot</code>, enlazadas al intercambio spring-boot-exchange.<br/>
+	 * */
+	private PartitionTopology partitionTopology() {
+		return new PartitionTopology(exchange().getName(), queueName, consumerProperties.getPartitions());
+	}
+
+	/**
+	 * Define las colas de retardo y la cola de mensajes muertos de la cola, ver <code>consumer.retry-*</code><br/>
+	 * en application.properties. Los mensajes mal formados o que no se pueden convertir no se reintentan.<br/>
+	 * */
+	@Bean
+	RetryTopology retryTopology() {
+		return new RetryTopology(queueName, retryPolicy());
+	}
+
+	/**
+	 * La pol&iacute;tica de <code>consumer.retry-*</code>, sin reintentos para los mensajes mal formados o que no<br/>
+	 * se pueden convertir.<br/>
+	 * */
+	private RetryPolicy retryPolicy() {
+		return new RetryPolicy(consumerProperties.getRetryInitialDelayMillis(),
+				consumerProperties.getRetryMultiplier(), consumerProperties.getRetryMaxDelayMillis(),
+				consumerProperties.getRetryMaxRetries())
+				.withFatal(AmqpRejectAndDontRequeueException.class)
+				.withFatal(MessageConversionException.class);
+	}
+
+	/**
+	 * Entrega al RabbitAdmin los exchanges, colas y enlaces de los reintentos para que los declare,<br/>
+	 * ninguno si los reintentos estan desactivados. Las particiones solo usan la cola de mensajes muertos.<br/>
+	 * 
+	 * @param pRetryTopology las colas de los reintentos.<br/>
+	 * */
+	@Bean
+	List<Declarable> retryDeclarables(final RetryTopology pRetryTopology) {
+		if (!consumerProperties.isRetryEnabled()) {
+			return Collections.emptyList();
+		}
+		return RetryDeclarables.of(pRetryTopology);
+	}
+
+	/**
+	 * Crea la ventana con los identificadores de los ultimos mensajes recibidos, ver<br/>
+	 * <code>consumer.idempotent-*</code> en application.properties. Solo se crea si se usa.<br/>
+	 * 
+	 * @throws IOException si el archivo de la ventana no puede ser abierto.<br/>
+	 * */
+	@Bean(destroyMethod = "close")
+	@Lazy
+	IdempotencyWindow idempotencyWindow() throws IOException {
+		return IdempotencyWindow.open(consumerProperties.getIdempotentFile(), consumerProperties.getIdempotentCapacity(),
+				consumerProperties.getIdempotentTtlMillis());
+	}
+
+	/**
+	 * Crea los hilos que procesan los registros de los mensajes separados, ver <code>consumer.split-*</code><br/>
+	 * en application.properties. Cada mensaje tiene a lo sumo tantos registros en proceso como hilos, el<br/>
+	 * resto del cuerpo no se lee hasta que alguno termina. Solo se crea si el contenedor lo usa.<br/>
+	 * */
+	@Bean
+	@Lazy
+	ThreadPoolTaskExecutor splitExecutor() {
+		int threads = consumerProperties.getSplitConcurrency() > 0 ? consumerProperties.getSplitConcurrency()
+				: Runtime.getRuntime().availableProcessors();
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.setThreadNamePrefix("splitter-");
+		return executor;
+	}
+
+	/**
+	 * Crea el bean que ajusta la cantidad de consumidores del contenedor segun los mensajes<br/>
+	 * en espera en la cola. Solo se inicia en el modo <code>pool</code>.<br/>
+	 * 
+	 * @param pContainer el contenedor de consumidores.<br/>
+	 * @param pAmqpAdmin usado para consultar la profundidad de la cola.<br/>
+	 * */
+	@Bean(destroyMethod = "stop")
+	QueueDepthScaler queueDepthScaler(final SimpleMessageListenerContainer pContainer, final AmqpAdmin pAmqpAdmin) {
+		return new QueueDepthScaler(pContainer, pAmqpAdmin, queueName, consumerProperties);
+	}
+
 	/**
      * Crea el bean que contiene la logica que va a procesar la informacion que llega de 
      * de la cola RabbitMQ.<br/>
@@ -135,8 +447,20 @@ public class Application implements CommandLineRunner {
 	 * Spring XML.<br/> 
      * */
     @Bean
-    Receiver receiver() {
-        return new Receiver();
+    Receiver receiver() throws IOException {
+        return new Receiver(printSink());
+    }
+
+    /**
+     * Crea la salida del receptor, que imprime los mensajes desde un hilo propio para que los<br/>
+     * consumidores no compitan por System.out, ver <code>consumer.sink-*</code> en application.properties.<br/>
+     * 
+     * @throws IOException si el archivo de salida no puede ser abierto.<br/>
+     * */
+    @Bean(initMethod = "start", destroyMethod = "close")
+    AsyncPrintSink printSink() throws IOException {
+        return AsyncPrintSink.create(consumerProperties.getSinkTarget(), consumerProperties.getSinkCapacity(),
+                consumerProperties.getSinkOverflow(), consumerProperties.getSinkSampleRate());
     }
 
     /**
@@ -174,6 +498,10 @@ public class Application implements CommandLineRunner {
     /**
      * Metodo que recibira un mensaje de tipo {@link Spring} a una cola de<br/> 
      * mensajeria RabbitMQ.<br/>
+     * <br/>
+     * En el modo <code>pool</code> el metodo no cierra el contexto: los consumidores siguen activos<br/>
+     * hasta que la aplicaci&oacute;n recibe la se&ntilde;al de terminaci&oacute;n (Ctrl+C), momento en el<br/>
+     * cual Spring detiene el contenedor y este termina los mensajes en proceso.<br/>
      * 
      * @param pArgs : definido con el metodo Run pero no es utilizado, durante la ejecuci&iacute;n<br/>
      *               de este c&oacute;digo. Los posibles valores que pueda tener este atributo<br/>
@@ -185,6 +513,29 @@ public class Application implements CommandLineRunner {
      * */
     @Override
     public void run(final String... pArgs) throws Exception {
+        if (consumerProperties.isPartitioned()) {
+            PartitionedConsumer consumer = context.getBean(PartitionedConsumer.class);
+            consumer.start();
+            if (consumerProperties.isPoolMode()) {
+                System.out.println("Consuming the partitions of " + queueName + " owned by " + consumer.getMember()
+                        + " out of " + consumerProperties.getPartitions() + ", press Ctrl+C to stop");
+                return;
+            }
+        } else if (consumerProperties.isReactive()) {
+            // sin el contenedor nadie abre una conexion de Spring, que es cuando el RabbitAdmin declara la cola
+            context.getBean(RabbitAdmin.class).initialize();
+            context.getBean(ReactiveConsumer.class).start();
+            if (consumerProperties.isPoolMode()) {
+                System.out.println("Consuming from " + queueName + " as a stream, " + consumerProperties.getReactiveConcurrency()
+                        + " messages at a time, press Ctrl+C to stop");
+                return;
+            }
+        } else if (consumerProperties.isPoolMode()) {
+            context.getBean(QueueDepthScaler.class).start();
+            System.out.println("Consuming from " + queueName + " with " + consumerProperties.getConcurrentConsumers()
+                    + ".." + consumerProperties.getMaxConcurrentConsumers() + " consumers, press Ctrl+C to stop");
+            return;
+        }
         receiver().getLatch().await(10000, TimeUnit.MILLISECONDS);
         // se elimina el contexto de Spring de la memoria
         context.close();
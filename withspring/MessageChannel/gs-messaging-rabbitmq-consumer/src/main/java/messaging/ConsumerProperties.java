@@ -0,0 +1,400 @@
+package messaging;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import sink.AsyncPrintSink;
+
+/**
+ * Contiene la configuraci&oacute;n del consumidor, tomada de las propiedades con prefijo<br/>
+ * <code>consumer</code> en <code>application.properties</code>.<br/>
+ * <br/>
+ * mode : <code>single</code> consume un unico mensaje y termina (comportamiento original del ejemplo),<br/>
+ *        <code>pool</code> mantiene un grupo de consumidores concurrentes hasta que la aplicaci&oacute;n<br/>
+ *        es detenida.<br/>
+ * <br/>
+ * listener : <code>adapter</code> entrega los mensajes al receptor por medio del MessageListenerAdapter,<br/>
+ *            <code>bytes</code> y <code>text</code> por medio del {@link listener.DirectMessageListener}, sin<br/>
+ *            decodificar el cuerpo o decodificandolo en un buffer reutilizado respectivamente.<br/>
+ *            <code>reactive</code> no usa el contenedor: la cola es un flujo con demanda, ver<br/>
+ *            {@link ReactiveConsumer}.<br/>
+ * <br/>
+ * sinkTarget : <code>stdout</code> o la ruta de un archivo, donde el receptor imprime los mensajes por<br/>
+ *              medio del {@link AsyncPrintSink}.<br/>
+ * <br/>
+ * compressionDictionary : diccionario de zstd con el que el productor comprime los mensajes, los<br/>
+ *                         mensajes comprimidos con lz4 o zstd se descomprimen siempre.<br/>
+ * <br/>
+ * idempotentCapacity : cantidad de identificadores de mensajes recibidos que se recuerdan para descartar<br/>
+ *                      los mensajes repetidos (reentregas), 0 para no descartarlos.<br/>
+ * <br/>
+ * splitFormat : <code>none</code> entrega cada mensaje completo, <code>lines</code>, <code>length-prefixed</code><br/>
+ *               y <code>json-array</code> lo separan en registros que se entregan uno por uno, ver<br/>
+ *               {@link splitter.amqp.SplittingMessageListener}.<br/>
+ * <br/>
+ * retryMaxRetries : reintentos de un mensaje cuyo procesamiento falla, cada uno despues de una espera<br/>
+ *                   exponencial en una cola de retardo; luego el mensaje va a la cola de mensajes muertos.<br/>
+ *                   0 para devolverlo a la cola de inmediato, ver {@link retry.amqp.RetryInterceptor}.<br/>
+ * <br/>
+ * reactiveConcurrency : mensajes que el receptor procesa a la vez con <code>listener=reactive</code>, y<br/>
+ *                       mensajes sin confirmar que el servidor entrega como maximo.<br/>
+ * <br/>
+ * partitions : particiones de la cola, 0 para consumir la cola <code>spring-boot</code>. Con particiones cada<br/>
+ *              instancia del consumidor es un miembro del grupo y consume en orden las particiones que le<br/>
+ *              tocan, ver {@link partition.amqp.PartitionedConsumer}.<br/>
+ *
+ * @author  Carlos Andr&eacute;s Garc&iacute:a Garc&iacute:a
+ * @version 1.0
+ * @since   2016-03-15
+ */
+@ConfigurationProperties(prefix = "consumer")
+public class ConsumerProperties {
+
+	//Modo de consumo: single o pool
+	private String mode = "single";
+
+	//Forma de entregar los mensajes al receptor: adapter, bytes, text o reactive
+	private String listener = "adapter";
+
+	//Cantidad minima de consumidores concurrentes
+	private int concurrentConsumers = 1;
+
+	//Cantidad maxima de consumidores concurrentes
+	private int maxConcurrentConsumers = 1;
+
+	//Cantidad de mensajes que el servidor entrega a cada consumidor sin esperar confirmacion
+	private int prefetch = 250;
+
+	//Cantidad de mensajes procesados antes de enviar una confirmacion (ack) al servidor
+	private int batchAckSize = 50;
+
+	//Tiempo maximo sin recibir mensajes antes de confirmar un lote incompleto
+	private long batchAckTimeoutMillis = 100;
+
+	//Cada cuanto se consulta la profundidad de la cola para ajustar los consumidores
+	private long scaleIntervalMillis = 1000;
+
+	//Mensajes en espera por cada consumidor adicional que se inicia
+	private int messagesPerConsumer = 1000;
+
+	//Tiempo maximo de espera para que los consumidores terminen los mensajes en proceso al detenerse
+	private long shutdownTimeoutMillis = 30000;
+
+	//Salida del receptor: stdout o la ruta de un archivo
+	private String sinkTarget = "stdout";
+
+	//Cantidad maxima de lineas en espera de ser escritas
+	private int sinkCapacity = 8192;
+
+	//Politica cuando el buffer de salida esta lleno: BLOCK, DROP o SAMPLE
+	private AsyncPrintSink.Overflow sinkOverflow = AsyncPrintSink.Overflow.BLOCK;
+
+	//En SAMPLE se conserva una de cada sinkSampleRate lineas
+	private int sinkSampleRate = 100;
+
+	//Archivo con el diccionario de zstd del productor, vacio si no usa uno
+	private String compressionDictionary = "";
+
+	//Identificadores recordados para descartar mensajes repetidos, 0 los procesa todos
+	private int idempotentCapacity = 100000;
+
+	//Tiempo durante el cual se recuerda un identificador
+	private long idempotentTtlMillis = 3600000;
+
+	//Archivo mapeado en memoria donde se guardan los identificadores entre reinicios, vacio para solo memoria
+	private String idempotentFile = "";
+
+	//Formato de los registros del cuerpo de los mensajes: none, lines, length-prefixed o json-array
+	private String splitFormat = "none";
+
+	//Hilos que procesan los registros y registros de un mensaje en proceso a la vez, 0 para uno por procesador
+	private int splitConcurrency = 0;
+
+	//Tamano maximo de un registro, un mensaje con un registro mas grande se rechaza
+	private int splitMaxRecordBytes = 16 * 1024 * 1024;
+
+	//Reintentos de un mensaje fallido antes de enviarlo a la cola de mensajes muertos, 0 sin reintentos
+	private int retryMaxRetries = 5;
+
+	//Espera del primer reintento, se multiplica por retry-multiplier en cada reintento hasta retry-max-delay-millis
+	private long retryInitialDelayMillis = 1000;
+
+	private double retryMultiplier = 2;
+
+	private long retryMaxDelayMillis = 60000;
+
+	//Mensajes en proceso a la vez con listener=reactive
+	private int reactiveConcurrency = 8;
+
+	//Particiones de la cola, 0 sin particiones; el mismo valor que producer.partitions
+	private int partitions = 0;
+
+	//Puntos de cada miembro en el anillo con el que se reparten las particiones
+	private int partitionVirtualNodes = 160;
+
+	//Cada cuanto un miembro anuncia que sigue activo
+	private long partitionHeartbeatMillis = 1000;
+
+	//Tiempo sin anuncios tras el cual un miembro se considera fuera del grupo
+	private long partitionMemberTimeoutMillis = 5000;
+
+	public String getMode() {
+		return mode;
+	}
+
+	public void setMode(final String pMode) {
+		this.mode = pMode;
+	}
+
+	public String getListener() {
+		return listener;
+	}
+
+	public void setListener(final String pListener) {
+		this.listener = pListener;
+	}
+
+	public int getConcurrentConsumers() {
+		return concurrentConsumers;
+	}
+
+	public void setConcurrentConsumers(final int pConcurrentConsumers) {
+		this.concurrentConsumers = pConcurrentConsumers;
+	}
+
+	public int getMaxConcurrentConsumers() {
+		return maxConcurrentConsumers;
+	}
+
+	public void setMaxConcurrentConsumers(final int pMaxConcurrentConsumers) {
+		this.maxConcurrentConsumers = pMaxConcurrentConsumers;
+	}
+
+	public int getPrefetch() {
+		return prefetch;
+	}
+
+	public void setPrefetch(final int pPrefetch) {
+		this.prefetch = pPrefetch;
+	}
+
+	public int getBatchAckSize() {
+		return batchAckSize;
+	}
+
+	public void setBatchAckSize(final int pBatchAckSize) {
+		this.batchAckSize = pBatchAckSize;
+	}
+
+	public long getBatchAckTimeoutMillis() {
+		return batchAckTimeoutMillis;
+	}
+
+	public void setBatchAckTimeoutMillis(final long pBatchAckTimeoutMillis) {
+		this.batchAckTimeoutMillis = pBatchAckTimeoutMillis;
+	}
+
+	public long getScaleIntervalMillis() {
+		return scaleIntervalMillis;
+	}
+
+	public void setScaleIntervalMillis(final long pScaleIntervalMillis) {
+		this.scaleIntervalMillis = pScaleIntervalMillis;
+	}
+
+	public int getMessagesPerConsumer() {
+		return messagesPerConsumer;
+	}
+
+	public void setMessagesPerConsumer(final int pMessagesPerConsumer) {
+		this.messagesPerConsumer = pMessagesPerConsumer;
+	}
+
+	public long getShutdownTimeoutMillis() {
+		return shutdownTimeoutMillis;
+	}
+
+	public void setShutdownTimeoutMillis(final long pShutdownTimeoutMillis) {
+		this.shutdownTimeoutMillis = pShutdownTimeoutMillis;
+	}
+
+	public String getSinkTarget() {
+		return sinkTarget;
+	}
+
+	public void setSinkTarget(final String pSinkTarget) {
+		this.sinkTarget = pSinkTarget;
+	}
+
+	public int getSinkCapacity() {
+		return sinkCapacity;
+	}
+
+	public void setSinkCapacity(final int pSinkCapacity) {
+		this.sinkCapacity = pSinkCapacity;
+	}
+
+	public AsyncPrintSink.Overflow getSinkOverflow() {
+		return sinkOverflow;
+	}
+
+	public void setSinkOverflow(final AsyncPrintSink.Overflow pSinkOverflow) {
+		this.sinkOverflow = pSinkOverflow;
+	}
+
+	public int getSinkSampleRate() {
+		return sinkSampleRate;
+	}
+
+	public void setSinkSampleRate(final int pSinkSampleRate) {
+		this.sinkSampleRate = pSinkSampleRate;
+	}
+
+	public String getCompressionDictionary() {
+		return compressionDictionary;
+	}
+
+	public void setCompressionDictionary(final String pCompressionDictionary) {
+		this.compressionDictionary = pCompressionDictionary;
+	}
+
+	public int getIdempotentCapacity() {
+		return idempotentCapacity;
+	}
+
+	public void setIdempotentCapacity(final int pIdempotentCapacity) {
+		this.idempotentCapacity = pIdempotentCapacity;
+	}
+
+	public long getIdempotentTtlMillis() {
+		return idempotentTtlMillis;
+	}
+
+	public void setIdempotentTtlMillis(final long pIdempotentTtlMillis) {
+		this.idempotentTtlMillis = pIdempotentTtlMillis;
+	}
+
+	public String getIdempotentFile() {
+		return idempotentFile;
+	}
+
+	public void setIdempotentFile(final String pIdempotentFile) {
+		this.idempotentFile = pIdempotentFile;
+	}
+
+	public String getSplitFormat() {
+		return splitFormat;
+	}
+
+	public void setSplitFormat(final String pSplitFormat) {
+		this.splitFormat = pSplitFormat;
+	}
+
+	public int getSplitConcurrency() {
+		return splitConcurrency;
+	}
+
+	public void setSplitConcurrency(final int pSplitConcurrency) {
+		this.splitConcurrency = pSplitConcurrency;
+	}
+
+	public int getSplitMaxRecordBytes() {
+		return splitMaxRecordBytes;
+	}
+
+	public void setSplitMaxRecordBytes(final int pSplitMaxRecordBytes) {
+		this.splitMaxRecordBytes = pSplitMaxRecordBytes;
+	}
+
+	public int getRetryMaxRetries() {
+		return retryMaxRetries;
+	}
+
+	public void setRetryMaxRetries(final int pRetryMaxRetries) {
+		this.retryMaxRetries = pRetryMaxRetries;
+	}
+
+	public long getRetryInitialDelayMillis() {
+		return retryInitialDelayMillis;
+	}
+
+	public void setRetryInitialDelayMillis(final long pRetryInitialDelayMillis) {
+		this.retryInitialDelayMillis = pRetryInitialDelayMillis;
+	}
+
+	public double getRetryMultiplier() {
+		return retryMultiplier;
+	}
+
+	public void setRetryMultiplier(final double pRetryMultiplier) {
+		this.retryMultiplier = pRetryMultiplier;
+	}
+
+	public long getRetryMaxDelayMillis() {
+		return retryMaxDelayMillis;
+	}
+
+	public void setRetryMaxDelayMillis(final long pRetryMaxDelayMillis) {
+		this.retryMaxDelayMillis = pRetryMaxDelayMillis;
+	}
+
+	public int getReactiveConcurrency() {
+		return reactiveConcurrency;
+	}
+
+	public void setReactiveConcurrency(final int pReactiveConcurrency) {
+		this.reactiveConcurrency = pReactiveConcurrency;
+	}
+
+	public int getPartitions() {
+		return partitions;
+	}
+
+	public void setPartitions(final int pPartitions) {
+		this.partitions = pPartitions;
+	}
+
+	public int getPartitionVirtualNodes() {
+		return partitionVirtualNodes;
+	}
+
+	public void setPartitionVirtualNodes(final int pPartitionVirtualNodes) {
+		this.partitionVirtualNodes = pPartitionVirtualNodes;
+	}
+
+	public long getPartitionHeartbeatMillis() {
+		return partitionHeartbeatMillis;
+	}
+
+	public void setPartitionHeartbeatMillis(final long pPartitionHeartbeatMillis) {
+		this.partitionHeartbeatMillis = pPartitionHeartbeatMillis;
+	}
+
+	public long getPartitionMemberTimeoutMillis() {
+		return partitionMemberTimeoutMillis;
+	}
+
+	public void setPartitionMemberTimeoutMillis(final long pPartitionMemberTimeoutMillis) {
+		this.partitionMemberTimeoutMillis = pPartitionMemberTimeoutMillis;
+	}
+
+	public boolean isRetryEnabled() {
+		return retryMaxRetries > 0;
+	}
+
+	public boolean isSplitEnabled() {
+		return !"none".equalsIgnoreCase(splitFormat);
+	}
+
+	public boolean isReactive() {
+		return "reactive".equalsIgnoreCase(listener);
+	}
+
+	public boolean isPartitioned() {
+		return partitions > 0;
+	}
+
+	public boolean isPoolMode() {
+		return "pool".equalsIgnoreCase(mode);
+	}
+
+}
@@ -0,0 +1,56 @@
+package messaging;
+
+import org.springframework.boot.actuate.metrics.CounterService;
+
+import retry.RetryListener;
+
+/**
+ * Cuenta los reintentos y los mensajes muertos de una cola por medio del servicio de contadores de<br/>
+ * Spring Boot Actuator:<br/>
+ * <br/>
+ * counter.rabbit.&lt;cola&gt;.retried : mensajes enviados a una cola de retardo.<br/>
+ * counter.rabbit.&lt;cola&gt;.retried.&lt;nivel&gt; : mensajes enviados a la cola de retardo de cada nivel.<br/>
+ * counter.rabbit.&lt;cola&gt;.poisoned : mensajes enviados a la cola de mensajes muertos.<br/>
+ *
+ * @author  Carlos Andr&eacute;s Garc&iacute:a Garc&iacute:a
+ * @version 1.0
+ * @since   2016-03-15
+ */
+public class MeteredRetryListener implements RetryListener {
+
+	private final CounterService counterService;
+
+	//Los nombres se construyen una sola vez para no concatenar por cada mensaje
+	private final String retriedName;
+
+	private final String[] tierNames;
+
+	private final String poisonedName;
+
+	/**
+	 * @param pQueueName nombre de la cola, forma parte del nombre de las metricas.<br/>
+	 * @param pTiers cantidad de niveles de reintento.<br/>
+	 * @param pCounterService servicio de contadores del actuator.<br/>
+	 */
+	public MeteredRetryListener(final String pQueueName, final int pTiers, final CounterService pCounterService) {
+		this.counterService = pCounterService;
+		this.retriedName = "counter.rabbit." + pQueueName + ".retried";
+		this.tierNames = new String[pTiers];
+		for (int tier = 1; tier <= pTiers; tier++) {
+			tierNames[tier - 1] = retriedName + "." + tier;
+		}
+		this.poisonedName = "counter.rabbit." + pQueueName + ".poisoned";
+	}
+
+	@Override
+	public void retried(final int pRetry, final int pTier, final Throwable pFailure) {
+		counterService.increment(retriedName);
+		counterService.increment(tierNames[pTier - 1]);
+	}
+
+	@Override
+	public void deadLettered(final int pRetries, final Throwable pFailure) {
+		counterService.increment(poisonedName);
+	}
+
+}
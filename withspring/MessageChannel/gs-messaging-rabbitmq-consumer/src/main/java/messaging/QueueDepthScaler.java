@@ -0,0 +1,96 @@
+package messaging;
+
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+/**
+ * Ajusta la cantidad de consumidores de un {@link SimpleMessageListenerContainer} segun la<br/>
+ * cantidad de mensajes en espera en la cola.<br/>
+ * <br/>
+ * Cada <code>intervalMillis</code> consulta la profundidad de la cola e inicia un consumidor<br/>
+ * adicional por cada <code>messagesPerConsumer</code> mensajes en espera, sin salir del rango<br/>
+ * [<code>minConsumers</code>, <code>maxConsumers</code>]. Cuando la cola se vacia el contenedor vuelve<br/>
+ * al minimo.<br/>
+ * El contenedor no debe tener <code>maxConcurrentConsumers</code>: su escalado propio agregaria y quitaria<br/>
+ * consumidores por su cuenta y contradiria al de esta clase.<br/>
+ *
+ * @author  Carlos Andr&eacute;s Garc&iacute:a Garc&iacute:a
+ * @version 1.0
+ * @since   2016-03-15
+ */
+public class QueueDepthScaler implements Runnable {
+
+	private final SimpleMessageListenerContainer container;
+
+	private final AmqpAdmin amqpAdmin;
+
+	private final String queueName;
+
+	private final ConsumerProperties properties;
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+	private int consumers;
+
+	/**
+	 * @param pContainer contenedor cuyos consumidores seran ajustados.<br/>
+	 * @param pAmqpAdmin usado para consultar la cantidad de mensajes de la cola.<br/>
+	 * @param pQueueName nombre de la cola consultada.<br/>
+	 * @param pProperties configuraci&oacute;n del rango de consumidores y del intervalo de consulta.<br/>
+	 */
+	public QueueDepthScaler(final SimpleMessageListenerContainer pContainer, final AmqpAdmin pAmqpAdmin,
+			final String pQueueName, final ConsumerProperties pProperties) {
+		this.container = pContainer;
+		this.amqpAdmin = pAmqpAdmin;
+		this.queueName = pQueueName;
+		this.properties = pProperties;
+		this.consumers = pProperties.getConcurrentConsumers();
+	}
+
+	/**
+	 * Inicia la consulta periodica de la cola.<br/>
+	 */
+	public void start() {
+		scheduler.scheduleWithFixedDelay(this, properties.getScaleIntervalMillis(), properties.getScaleIntervalMillis(),
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Detiene la consulta periodica de la cola.<br/>
+	 */
+	public void stop() {
+		scheduler.shutdownNow();
+	}
+
+	@Override
+	public void run() {
+		if (!container.isRunning()) {
+			return;
+		}
+		Properties queueProperties;
+		try {
+			queueProperties = amqpAdmin.getQueueProperties(queueName);
+		} catch (final AmqpException e) {
+			// el servidor no esta disponible, se conserva la cantidad actual de consumidores
+			return;
+		}
+		if (queueProperties == null) {
+			return;
+		}
+		int depth = ((Number) queueProperties.get(RabbitAdmin.QUEUE_MESSAGE_COUNT)).intValue();
+		int wanted = properties.getConcurrentConsumers() + depth / Math.max(properties.getMessagesPerConsumer(), 1);
+		wanted = Math.min(wanted, properties.getMaxConcurrentConsumers());
+		if (wanted != consumers) {
+			container.setConcurrentConsumers(wanted);
+			consumers = wanted;
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+package messaging;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.aopalliance.aop.Advice;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+import stream.ElementHandler;
+import stream.amqp.AcknowledgingSubscriber;
+import stream.amqp.Delivery;
+import stream.amqp.QueuePublisher;
+
+/**
+ * Consumidor que recibe los mensajes de la cola como un flujo con demanda en lugar del contenedor, con<br/>
+ * <code>consumer.listener=reactive</code>.<br/>
+ * <br/>
+ * El contenedor recibe del servidor hasta <code>consumer.prefetch</code> mensajes por consumidor aunque el<br/>
+ * receptor no alcance a procesarlos, y esperan sin confirmar en memoria. Aqui la cola es un<br/>
+ * {@link QueuePublisher}: el {@link AcknowledgingSubscriber} pide <code>concurrency</code> mensajes, los procesa<br/>
+ * a la vez en los hilos del executor y pide uno mas cada vez que confirma uno. Lo pedido y no confirmado es el<br/>
+ * prefetch del canal, por lo que un receptor lento deja los mensajes en la cola, donde otros consumidores<br/>
+ * los pueden tomar.<br/>
+ * <br/>
+ * Cada mensaje pasa por la misma cadena de listeners que en el contenedor (metricas, separador y receptor)<br/>
+ * despues de descomprimirse, envuelta en los mismos consejos (advice) que el contenedor, ver<br/>
+ * {@link #setAdviceChain}: con reintentos el mensaje que falla se publica en la cola de retardo por el canal<br/>
+ * en que llego y se confirma. Sin consejos que lo atiendan, un mensaje cuyo procesamiento falla regresa a la<br/>
+ * cola.<br/>
+ *
+ * @author  Carlos Andr&eacute;s Garc&iacute:a Garc&iacute:a
+ * @version 1.0
+ * @since   2016-03-15
+ */
+public class ReactiveConsumer implements ElementHandler<Delivery> {
+
+	//Codificacion usada cuando el mensaje no indica la suya
+	private static final String DEFAULT_ENCODING = "UTF-8";
+
+	private final ConnectionFactory connectionFactory;
+
+	private final String queueName;
+
+	private final MessageListener listener;
+
+	private final MessagePostProcessor postProcessor;
+
+	private final ThreadPoolTaskExecutor executor;
+
+	private final long shutdownTimeoutMillis;
+
+	private final AcknowledgingSubscriber subscriber;
+
+	private final MessagePropertiesConverter propertiesConverter = new DefaultMessagePropertiesConverter();
+
+	private ListenerInvoker invoker = new ListenerInvoker() {
+		@Override
+		public void invokeListener(final Channel pChannel, final Message pMessage) {
+			listener.onMessage(pMessage);
+		}
+	};
+
+	private Connection connection;
+
+	/**
+	 * @param pConnectionFactory la conexi&oacute;n propia del flujo se abre al iniciar.<br/>
+	 * @param pQueueName la cola de la que se consume.<br/>
+	 * @param pListener la cadena de listeners que lleva el mensaje al receptor.<br/>
+	 * @param pPostProcessor se aplica a cada mensaje antes del listener, null para ninguno.<br/>
+	 * @param pExecutor los hilos que procesan los mensajes, al menos <code>pConcurrency</code>.<br/>
+	 * @param pConcurrency mensajes procesados a la vez y mensajes sin confirmar como maximo.<br/>
+	 * @param pShutdownTimeoutMillis espera maxima por los mensajes en proceso al detenerse.<br/>
+	 */
+	public ReactiveConsumer(final ConnectionFactory pConnectionFactory, final String pQueueName,
+			final MessageListener pListener, final MessagePostProcessor pPostProcessor,
+			final ThreadPoolTaskExecutor pExecutor, final int pConcurrency, final long pShutdownTimeoutMillis) {
+		this.connectionFactory = pConnectionFactory;
+		this.queueName = pQueueName;
+		this.listener = pListener;
+		this.postProcessor = pPostProcessor;
+		this.executor = pExecutor;
+		this.shutdownTimeoutMillis = pShutdownTimeoutMillis;
+		// como el contenedor por defecto, el mensaje que falla regresa a la cola
+		this.subscriber = new AcknowledgingSubscriber(this, pExecutor, pConcurrency, true);
+	}
+
+	/**
+	 * Envuelve la llamada a la cadena de listeners en los consejos, en orden, como el contenedor. Reciben el<br/>
+	 * canal y el mensaje entre los argumentos de la llamada, como en el contenedor. Se llama antes de<br/>
+	 * {@link #start()}.<br/>
+	 *
+	 * @param pAdviceChain los consejos, por ejemplo el RetryInterceptor y el IdempotentReceiverInterceptor.<br/>
+	 */
+	public void setAdviceChain(final Advice... pAdviceChain) {
+		ProxyFactory factory = new ProxyFactory();
+		for (final Advice advice : pAdviceChain) {
+			factory.addAdvice(advice);
+		}
+		factory.addInterface(ListenerInvoker.class);
+		factory.setTarget(invoker);
+		invoker = (ListenerInvoker) factory.getProxy(ListenerInvoker.class.getClassLoader());
+	}
+
+	/**
+	 * Abre la conexi&oacute;n y empieza a pedir mensajes.<br/>
+	 *
+	 * @throws IOException si no se puede conectar con RabbitMQ.<br/>
+	 */
+	public synchronized void start() throws IOException {
+		if (connection != null) {
+			return;
+		}
+		try {
+			connection = connectionFactory.newConnection();
+		} catch (final TimeoutException e) {
+			throw new IOException("RabbitMQ did not answer in time", e);
+		}
+		new QueuePublisher(connection, queueName).subscribe(subscriber);
+	}
+
+	/**
+	 * Deja de pedir mensajes, espera a que terminen los que estan en proceso y cierra la conexi&oacute;n;<br/>
+	 * los mensajes sin confirmar regresan a la cola.<br/>
+	 *
+	 * @throws InterruptedException si el hilo es interrumpido esperando los mensajes en proceso.<br/>
+	 */
+	public synchronized void stop() throws InterruptedException {
+		subscriber.cancel();
+		subscriber.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS);
+		executor.shutdown();
+		if (connection != null && connection.isOpen()) {
+			try {
+				connection.close();
+			} catch (final IOException e) {
+				// el servidor ya cerro la conexion
+			}
+		}
+	}
+
+	/**
+	 * Convierte la entrega en un mensaje de Spring AMQP y lo entrega a la cadena de listeners a traves de<br/>
+	 * los consejos.<br/>
+	 */
+	@Override
+	public void handle(final Delivery pDelivery) throws Exception {
+		MessageProperties properties = propertiesConverter.toMessageProperties(pDelivery.getProperties(),
+				pDelivery.getEnvelope(), DEFAULT_ENCODING);
+		properties.setConsumerQueue(queueName);
+		Message message = new Message(pDelivery.getBody(), properties);
+		if (postProcessor != null) {
+			message = postProcessor.postProcessMessage(message);
+		}
+		invoker.invokeListener(pDelivery.getChannel(), message);
+	}
+
+	/**
+	 * La llamada a la cadena de listeners que envuelven los consejos, con los argumentos de la del<br/>
+	 * contenedor.<br/>
+	 */
+	interface ListenerInvoker {
+
+		void invokeListener(Channel pChannel, Message pMessage) throws Exception;
+	}
+}
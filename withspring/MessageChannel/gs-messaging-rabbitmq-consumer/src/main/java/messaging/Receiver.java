@@ -1,13 +1,36 @@
 package messaging;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.CountDownLatch;
 
-public class Receiver {
+import listener.MessageBodyHandler;
+import listener.MessageTextHandler;
+import sink.AsyncPrintSink;
+
+public class Receiver implements MessageBodyHandler, MessageTextHandler {
 
 	private CountDownLatch latch = new CountDownLatch(1);
 
+	private final AsyncPrintSink out;
+
+	public Receiver(AsyncPrintSink out) {
+		this.out = out;
+	}
+
 	public void receiveMessage(String message) {
-		System.out.println("Received <" + message + ">");
+		out.println("Received <" + message + ">");
+		latch.countDown();
+	}
+
+	@Override
+	public void handleMessage(ByteBuffer body) {
+		out.println("Received <" + body.remaining() + " bytes>");
+		latch.countDown();
+	}
+
+	@Override
+	public void handleMessage(CharSequence text) {
+		out.println("Received <" + text + ">");
 		latch.countDown();
 	}
 
@@ -1,19 +1,58 @@
 package messaging;
 
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import javax.swing.Spring;
 
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Lazy;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+import codec.amqp.CompressingPostProcessor;
+import codec.compress.CompressionRegistry;
+import codec.compress.PayloadCompressor;
+import idempotent.MessageIds;
+import partition.PartitionTopology;
+import partition.Partitioner;
+import partition.amqp.PartitionDeclarables;
+import router.Destination;
+import router.Routes;
+import router.RoutingRule;
+import router.amqp.ContentBasedRouter;
+import spool.Spool;
+import spool.SpoolDrainer;
+import spool.amqp.AmqpMessages;
+import spool.amqp.RabbitTemplateTarget;
+import stream.BlockingSink;
+import stream.amqp.ConfirmingSender;
+import stream.amqp.OutboundMessage;
+import stream.amqp.RabbitConnections;
 
 /**
  * Esta clase tiene como objectivo definir la configuracion de los beans que se comunicaran con<br/>
@@ -43,6 +82,7 @@ import org.springframework.context.annotation.Bean;
 * @see http://www.enterpriseintegrationpatterns.com/patterns/messaging/MessageChannel.html                                       
  * */
 @SpringBootApplication
+@EnableConfigurationProperties(ProducerProperties.class)
 public class Application implements CommandLineRunner {
 
 	
@@ -50,6 +90,13 @@ public class Application implements CommandLineRunner {
 	//Se declara final para evitar que el nombre sea modificado
 	final static String queueName = "spring-boot";
 
+	//Encabezado con la hora de envio en milisegundos, el consumidor lo usa para medir la
+	//latencia de extremo a extremo
+	final static String sendTimestampHeader = "sendTimestamp";
+
+	//Genera el identificador (messageId) de cada mensaje, con el que el consumidor descarta los repetidos
+	final MessageIds messageIds = new MessageIds();
+
 	//Se obtiene el contexto de Spring, este contexto  fue creado anteriormente
 	//con la anotacion @SpringBootApplication
 	@Autowired
@@ -61,6 +108,106 @@ public class Application implements CommandLineRunner {
 	@Autowired
 	RabbitTemplate rabbitTemplate;
 
+	//Configuracion del modo de envio, ver application.properties
+	@Autowired
+	ProducerProperties producerProperties;
+
+	//Propiedades de conexion con RabbitMQ, para la conexion propia del modo reactive
+	@Autowired
+	RabbitProperties rabbitProperties;
+
+	/**
+	 * Crea la conexi&oacute;n con RabbitMQ a partir de las propiedades <code>spring.rabbitmq</code>,<br/>
+	 * reemplazando la que crea Spring Boot por defecto para habilitar las confirmaciones del<br/>
+	 * servidor (publisher confirms) que necesita el modo de envio por lotes.<br/>
+	 *
+	 * @param pRabbitProperties propiedades de conexi&oacute;n definidas en application.properties.<br/>
+	 */
+	@Bean
+	CachingConnectionFactory connectionFactory(final RabbitProperties pRabbitProperties) {
+		CachingConnectionFactory connectionFactory = new CachingConnectionFactory(pRabbitProperties.getHost(),
+				pRabbitProperties.getPort());
+		if (pRabbitProperties.getUsername() != null) {
+			connectionFactory.setUsername(pRabbitProperties.getUsername());
+		}
+		if (pRabbitProperties.getPassword() != null) {
+			connectionFactory.setPassword(pRabbitProperties.getPassword());
+		}
+		if (pRabbitProperties.getVirtualHost() != null) {
+			connectionFactory.setVirtualHost(pRabbitProperties.getVirtualHost());
+		}
+		connectionFactory.setPublisherConfirms(true);
+		return connectionFactory;
+	}
+
+	/**
+	 * Crea la plantilla de envio, reemplazando la que crea Spring Boot por defecto para comprimir<br/>
+	 * los cuerpos segun <code>producer.compression</code>. Los cuerpos comprimidos llevan en el<br/>
+	 * content-encoding el algoritmo usado, ver {@link CompressingPostProcessor}.<br/>
+	 *
+	 * @param pConnectionFactory la conexi&oacute;n con RabbitMQ.<br/>
+	 * @param pProducerProperties configuraci&oacute;n del productor, ver application.properties.<br/>
+	 * @throws IOException si el diccionario de zstd no puede ser leido.<br/>
+	 */
+	@Bean
+	RabbitTemplate rabbitTemplate(final ConnectionFactory pConnectionFactory, final ProducerProperties pProducerProperties)
+			throws IOException {
+		RabbitTemplate template = new RabbitTemplate(pConnectionFactory);
+		PayloadCompressor compressor = CompressionRegistry.forSetting(pProducerProperties.getCompression(),
+				pProducerProperties.getCompressionLevel(), pProducerProperties.getCompressionDictionary())
+				.compressor(pProducerProperties.getCompression(), pProducerProperties.getCompressionThreshold());
+		if (compressor != null) {
+			template.setBeforePublishPostProcessors(new CompressingPostProcessor(compressor));
+		}
+		return template;
+	}
+
+	/**
+	 * Crea el spool en disco de los mensajes por enviar en el directorio <code>producer.spool-dir</code>,<br/>
+	 * solo se crea si se usa. Los mensajes que quedaron sin confirmar en una ejecuci&oacute;n anterior<br/>
+	 * se envian de nuevo.<br/>
+	 *
+	 * @throws IOException si el directorio o los archivos del spool no pueden ser creados.<br/>
+	 */
+	@Bean(destroyMethod = "close")
+	@Lazy
+	Spool spool() throws IOException {
+		return new Spool(new File(producerProperties.getSpoolDir()), producerProperties.getSpoolSegmentSize(),
+				producerProperties.getSpoolMaxSegments(), producerProperties.getSpoolAppendTimeoutMillis());
+	}
+
+	/**
+	 * Crea e inicia el hilo que envia los mensajes del spool con la plantilla, con a lo sumo<br/>
+	 * <code>producer.confirm-window</code> mensajes sin confirmar, y borra los archivos confirmados.<br/>
+	 * Toma el ConfirmCallback de la plantilla, por lo que no se usa con el {@link BatchingPublisher}.<br/>
+	 *
+	 * @param pSpool el spool de los mensajes por enviar.<br/>
+	 */
+	@Bean(destroyMethod = "close")
+	@Lazy
+	SpoolDrainer spoolDrainer(final Spool pSpool) {
+		SpoolDrainer drainer = new SpoolDrainer(pSpool, new RabbitTemplateTarget(rabbitTemplate),
+				producerProperties.getConfirmWindow(), producerProperties.getConfirmTimeoutMillis(),
+				producerProperties.getSpoolRetryMillis());
+		drainer.start();
+		return drainer;
+	}
+
+	/**
+	 * Crea el enrutador basado en contenido con las reglas de <code>producer.routes</code>, compiladas<br/>
+	 * una sola vez en una tabla de enrutamiento, y declara como topic los intercambios de destino.<br/>
+	 * Los mensajes que no cumplen ninguna regla van a la cola <code>spring-boot</code> como sin<br/>
+	 * enrutador. Solo se crea si se usa.<br/>
+	 */
+	@Bean
+	@Lazy
+	ContentBasedRouter contentBasedRouter() {
+		ContentBasedRouter router = new ContentBasedRouter(rabbitTemplate,
+				RoutingRule.parse(producerProperties.getRoutes()), new Destination("", queueName));
+		router.declareExchanges(new RabbitAdmin(rabbitTemplate.getConnectionFactory()));
+		return router;
+	}
+
 	/**
 	 * 
 	 * Define una cola y la ingresa al contexto de Spring.<br/> 
@@ -107,6 +254,19 @@ public class Application implements CommandLineRunner {
 		return BindingBuilder.bind(pQueue).to(pExchange).with(queueName);
 	}
 
+	/**
+	 * Entrega al RabbitAdmin las colas de las particiones y sus enlaces con el intercambio para que los<br/>
+	 * declare, ninguno si <code>producer.partitions</code> es 0. Sin ellas el servidor descarta los mensajes<br/>
+	 * enviados antes de que inicie el primer consumidor.<br/>
+	 * */
+	@Bean
+	List<Declarable> partitionDeclarables() {
+		if (!producerProperties.isPartitioned()) {
+			return Collections.emptyList();
+		}
+		return PartitionDeclarables.of(partitionTopology());
+	}
+
 	/**
 	 * Es el punto de entrada de la aplicacion y  por medio del parametro <br/>
 	 * Application.class le indica a Spring que tome la configuracion de la clase<br/>
@@ -131,6 +291,24 @@ public class Application implements CommandLineRunner {
     /**
      * Metodo que enviara un mensaje de tipo {@link Spring} a una cola de<br/> 
      * mensajeria RabbitMQ.<br/>
+     * <br/>
+     * Cada mensaje lleva en el encabezado <code>sendTimestamp</code> la hora de envio y un identificador<br/>
+     * unico en <code>messageId</code>; un lote lleva el identificador de su primer mensaje.<br/>
+     * <br/>
+     * Si la propiedad <code>producer.mode</code> es <code>batch</code> se envian los mensajes de un<br/>
+     * {@link PayloadSource} por medio del {@link BatchingPublisher} y el metodo termina cuando el<br/>
+     * servidor confirma todos los mensajes. Si es <code>reactive</code> se envian como un flujo, ver<br/>
+     * {@link #sendStream(PayloadSource)}.<br/>
+     * <br/>
+     * Si la propiedad <code>producer.spool-dir</code> tiene un directorio los mensajes se escriben en el<br/>
+     * spool y se envian desde alli, ver {@link #sendSpooled()}.<br/>
+     * <br/>
+     * Si la propiedad <code>producer.routes</code> tiene reglas cada mensaje se envia a los intercambios<br/>
+     * de las reglas que cumple su llave <code>spring-boot</code> y sus encabezados, ver {@link ContentBasedRouter}.<br/>
+     * <br/>
+     * Si la propiedad <code>producer.partitions</code> es mayor que 0 cada mensaje lleva una llave y su numero<br/>
+     * entre los mensajes de la llave, y se envia a la cola de la partici&oacute;n de la llave, ver<br/>
+     * {@link #partitioner()}. Solo en los modos single y batch, sin spool.<br/>
      * 
      * @param pArgs : definido con el metodo Run pero no es utilizado, durante la ejecuci&iacute;n<br/>
      *               de este c&oacute;digo. Los posibles valores que pueda tener este atributo<br/>
@@ -138,16 +316,250 @@ public class Application implements CommandLineRunner {
      *               
      * @throws Exception : En caso de generarse un error al momento de ejecutarse este metodo.<br/>
      *                     Una posible excepcion es que no se encuentre el servidor RabbitMQ, lo cual <br/>
-     *                     generara un Refused Connection.<br/>
+     *                     generara un Refused Connection; con spool el mensaje queda en disco.<br/>
      * */
     @Override
     public void run(final String... pArgs) throws Exception {
-        System.out.println("Waiting five seconds...");
-        Thread.sleep(5000);
-        
-        System.out.println("Sending message...");
-        rabbitTemplate.convertAndSend(queueName, "Hello from RabbitMQ again!");
+        if (producerProperties.isSpoolEnabled()) {
+            sendSpooled();
+        } else if (producerProperties.isBatchMode()) {
+            sendBatches(new GeneratedPayloadSource(producerProperties.getMessages(), producerProperties.getPayloadSize()));
+        } else if (producerProperties.isReactiveMode()) {
+            sendStream(new GeneratedPayloadSource(producerProperties.getMessages(), producerProperties.getPayloadSize()));
+        } else {
+            System.out.println("Waiting five seconds...");
+            Thread.sleep(5000);
+
+            System.out.println("Sending message...");
+            if (producerProperties.isPartitioned()) {
+                Message message = textMessage("Hello from RabbitMQ again!".getBytes(StandardCharsets.UTF_8),
+                        System.currentTimeMillis(), messageIds.next());
+                int partition = partitioner().partition(partitionKey(message, 0));
+                rabbitTemplate.send(exchange().getName(), partitionTopology().partitionQueue(partition), message);
+                System.out.println(String.format("Sent to partition %d", partition));
+            } else if (producerProperties.isRoutingEnabled()) {
+                MessageProperties properties = new MessageProperties();
+                properties.setHeader(sendTimestampHeader, System.currentTimeMillis());
+                properties.setMessageId(messageIds.next());
+                Message message = rabbitTemplate.getMessageConverter().toMessage("Hello from RabbitMQ again!", properties);
+                int destinations = contentBasedRouter().send(queueName, message);
+                System.out.println(String.format("Routed to %d destinations", destinations));
+            } else {
+                rabbitTemplate.convertAndSend(queueName, (Object) "Hello from RabbitMQ again!", new MessagePostProcessor() {
+                    @Override
+                    public Message postProcessMessage(final Message pMessage) {
+                        pMessage.getMessageProperties().setHeader(sendTimestampHeader, System.currentTimeMillis());
+                        pMessage.getMessageProperties().setMessageId(messageIds.next());
+                        return pMessage;
+                    }
+                });
+            }
+        }
         // se elimina el contexto de Spring de la memoria
         context.close();
     }
+
+    /**
+     * Escribe los mensajes en el spool, sin esperar al servidor, y luego espera hasta<br/>
+     * <code>producer.spool-drain-timeout-millis</code> a que el {@link SpoolDrainer} los envie y el<br/>
+     * servidor los confirme. Los que no fueron confirmados quedan en el spool y se envian al iniciar de<br/>
+     * nuevo el productor. En modo batch se escriben los mensajes de un {@link PayloadSource}, que se<br/>
+     * envian uno por uno (sin lotes).<br/>
+     * 
+     * @throws IOException si el spool esta lleno o no puede ser escrito.<br/>
+     * @throws InterruptedException si el hilo es interrumpido esperando espacio en el spool.<br/>
+     * */
+    private void sendSpooled() throws IOException, InterruptedException {
+        Spool spool = spool();
+        SpoolDrainer drainer = spoolDrainer(spool);
+        long start = System.nanoTime();
+        long count = 0;
+        if (producerProperties.isBatchMode()) {
+            PayloadSource source = new GeneratedPayloadSource(producerProperties.getMessages(), producerProperties.getPayloadSize());
+            byte[] body;
+            while ((body = source.next()) != null) {
+                count += append(spool, textMessage(body, System.currentTimeMillis(), messageIds.next()));
+            }
+        } else {
+            MessageProperties properties = new MessageProperties();
+            properties.setHeader(sendTimestampHeader, System.currentTimeMillis());
+            properties.setMessageId(messageIds.next());
+            Message message = rabbitTemplate.getMessageConverter().toMessage("Hello from RabbitMQ again!", properties);
+            count += append(spool, message);
+        }
+        double spooled = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("Spooled %d messages in %.3f s, sending them...", count, spooled));
+        boolean drained = drainer.awaitDrained(producerProperties.getSpoolDrainTimeoutMillis());
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (drained) {
+            System.out.println(String.format("Confirmed %d messages in %.2f s: %.0f msgs/sec (%d retries)",
+                    count, seconds, count / seconds, drainer.getRetries()));
+        } else {
+            System.out.println(String.format("The broker did not confirm the messages in %d ms, %d bytes stay in %s and are sent on the next start",
+                    producerProperties.getSpoolDrainTimeoutMillis(), spool.getBacklog(), spool.getDirectory()));
+        }
+    }
+
+    /**
+     * Envia todos los mensajes de la fuente agrupados en lotes y reporta la cantidad de mensajes<br/>
+     * por segundo confirmados por el servidor.<br/>
+     * 
+     * @param pSource fuente de los cuerpos de los mensajes.<br/>
+     * @throws InterruptedException si el hilo es interrumpido esperando confirmaciones.<br/>
+     * */
+    private void sendBatches(final PayloadSource pSource) throws InterruptedException {
+        BatchingPublisher publisher = new BatchingPublisher(rabbitTemplate, producerProperties.getBatchSize(),
+                producerProperties.getBufferLimit(), producerProperties.getLingerMillis(),
+                producerProperties.getConfirmWindow());
+        System.out.println("Sending messages in batches...");
+        long start = System.nanoTime();
+        try {
+            Partitioner partitioner = producerProperties.isPartitioned() ? partitioner() : null;
+            ContentBasedRouter router = partitioner == null && producerProperties.isRoutingEnabled() ? contentBasedRouter() : null;
+            String[] partitionQueues = new String[partitioner != null ? partitioner.getPartitions() : 0];
+            for (int i = 0; i < partitionQueues.length; i++) {
+                partitionQueues[i] = partitionTopology().partitionQueue(i);
+            }
+            long sent = 0;
+            byte[] body;
+            while ((body = pSource.next()) != null) {
+                long timestamp = System.currentTimeMillis();
+                String messageId = messageIds.next();
+                Message message = textMessage(body, timestamp, messageId);
+                if (partitioner != null) {
+                    // cada llave es un lote aparte, en el orden de envio: el lote lleva la llave de todos sus
+                    // mensajes y el numero del primero, el consumidor numera los demas
+                    String key = partitionKey(message, sent++);
+                    publisher.publish(exchange().getName(), partitionQueues[partitioner.partition(key)], key, message);
+                    continue;
+                }
+                Routes routes = router != null ? router.route(queueName, message) : null;
+                if (routes == null || routes.size() == 0) {
+                    publisher.publish("", queueName, message);
+                    continue;
+                }
+                for (int i = 0; i < routes.size(); i++) {
+                    Destination destination = routes.get(i);
+                    // el lote toma las propiedades de su primer mensaje: cada destino lleva su propia copia
+                    publisher.publish(destination.getExchange(), destination.routingKey(queueName),
+                            i == 0 ? message : textMessage(body, timestamp, messageId));
+                }
+            }
+            boolean complete = publisher.awaitConfirms(producerProperties.getConfirmTimeoutMillis());
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("Confirmed %d messages (%d rejected, %d batches pending) in %.2f s: %.0f msgs/sec%s",
+                    publisher.getConfirmed(), publisher.getRejected(), publisher.getOutstanding(), seconds,
+                    publisher.getConfirmed() / seconds, complete ? "" : " - timed out waiting for confirms"));
+        } finally {
+            publisher.close();
+        }
+    }
+
+    /**
+     * Envia todos los mensajes de la fuente como un flujo: cada mensaje espera en el {@link BlockingSink}<br/>
+     * a que el {@link ConfirmingSender} lo pida, y este pide uno mas por cada confirmacion del servidor, con<br/>
+     * a lo sumo <code>producer.confirm-window</code> mensajes sin confirmar. El envio avanza al paso del<br/>
+     * servidor sin acumular mensajes en memoria. Reporta la cantidad de mensajes por segundo confirmados.<br/>
+     * 
+     * @param pSource fuente de los cuerpos de los mensajes.<br/>
+     * @throws IOException si no se puede conectar con RabbitMQ.<br/>
+     * @throws InterruptedException si el hilo es interrumpido esperando confirmaciones.<br/>
+     * */
+    private void sendStream(final PayloadSource pSource) throws IOException, InterruptedException {
+        // la conexion propia no pasa por el RabbitAdmin: se declara la cola antes, o el servidor descarta los mensajes
+        context.getBean(RabbitAdmin.class).initialize();
+        com.rabbitmq.client.Connection connection = RabbitConnections.newConnection(rabbitProperties);
+        ConfirmingSender sender = new ConfirmingSender(connection, producerProperties.getConfirmWindow());
+        BlockingSink<OutboundMessage> sink = new BlockingSink<OutboundMessage>();
+        sink.subscribe(sender);
+        System.out.println("Sending messages as a stream...");
+        long start = System.nanoTime();
+        try {
+            byte[] body;
+            while ((body = pSource.next()) != null) {
+                BasicProperties properties = new BasicProperties.Builder()
+                        .contentType(MessageProperties.CONTENT_TYPE_TEXT_PLAIN)
+                        .messageId(messageIds.next())
+                        .headers(Collections.<String, Object>singletonMap(sendTimestampHeader, System.currentTimeMillis()))
+                        .build();
+                // false: el envio fallo y el flujo fue cancelado
+                if (!sink.next(new OutboundMessage("", queueName, properties, body))) {
+                    break;
+                }
+            }
+            sink.complete();
+            boolean complete = sender.awaitConfirms(producerProperties.getConfirmTimeoutMillis(), TimeUnit.MILLISECONDS);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("Confirmed %d messages (%d rejected, %d pending) in %.2f s: %.0f msgs/sec%s",
+                    sender.getConfirmed(), sender.getRejected(), sender.getOutstanding(), seconds,
+                    sender.getConfirmed() / seconds, sender.getFailure() != null ? " - failed: " + sender.getFailure()
+                            : complete ? "" : " - timed out waiting for confirms"));
+        } finally {
+            sender.close();
+            connection.abort();
+        }
+    }
+
+    /**
+     * Escribe en el spool el mensaje con destino la cola <code>spring-boot</code> o, con<br/>
+     * <code>producer.routes</code>, una copia por cada intercambio de las reglas que cumple.<br/>
+     * 
+     * @param pSpool el spool de los mensajes por enviar.<br/>
+     * @param pMessage el mensaje, con la llave <code>spring-boot</code>.<br/>
+     * @return la cantidad de mensajes escritos.<br/>
+     * @throws IOException si el spool esta lleno o no puede ser escrito.<br/>
+     * @throws InterruptedException si el hilo es interrumpido esperando espacio en el spool.<br/>
+     * */
+    private int append(final Spool pSpool, final Message pMessage) throws IOException, InterruptedException {
+        Routes routes = producerProperties.isRoutingEnabled() ? contentBasedRouter().route(queueName, pMessage) : null;
+        if (routes == null || routes.size() == 0) {
+            pSpool.append(AmqpMessages.spooled("", queueName, pMessage).encode());
+            return 1;
+        }
+        for (int i = 0; i < routes.size(); i++) {
+            Destination destination = routes.get(i);
+            pSpool.append(AmqpMessages.spooled(destination.getExchange(), destination.routingKey(queueName), pMessage).encode());
+        }
+        return routes.size();
+    }
+
+    /**
+     * Crea el partidor que asigna cada llave a una de las <code>producer.partitions</code> particiones con un<br/>
+     * anillo de hash consistente: todos los mensajes de una llave van a la misma partici&oacute;n y un solo<br/>
+     * consumidor los procesa, en orden.<br/>
+     * */
+    private Partitioner partitioner() {
+        return new Partitioner(producerProperties.getPartitions(), producerProperties.getPartitionVirtualNodes());
+    }
+
+    /**
+     * Las colas de las particiones de <code>spring-boot</code>, enlazadas al intercambio spring-boot-exchange.<br/>
+     * */
+    private PartitionTopology partitionTopology() {
+        return new PartitionTopology(exchange().getName(), queueName, producerProperties.getPartitions());
+    }
+
+    /**
+     * Agrega al mensaje <code>pCount</code> su llave, <code>key-(pCount % producer.partition-keys)</code>, y su<br/>
+     * numero entre los mensajes de la llave, con el que el consumidor verifica el orden.<br/>
+     * 
+     * @return la llave.<br/>
+     * */
+    private String partitionKey(final Message pMessage, final long pCount) {
+        String key = "key-" + pCount % producerProperties.getPartitionKeys();
+        pMessage.getMessageProperties().setHeader(PartitionTopology.PARTITION_KEY, key);
+        pMessage.getMessageProperties().setHeader(PartitionTopology.KEY_SEQUENCE, pCount / producerProperties.getPartitionKeys());
+        return key;
+    }
+
+    /**
+     * Crea un mensaje de texto con la hora de envio y el identificador dados.<br/>
+     * */
+    private static Message textMessage(final byte[] pBody, final long pTimestamp, final String pMessageId) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_TEXT_PLAIN);
+        properties.setHeader(sendTimestampHeader, pTimestamp);
+        properties.setMessageId(pMessageId);
+        return new Message(pBody, properties);
+    }
 }
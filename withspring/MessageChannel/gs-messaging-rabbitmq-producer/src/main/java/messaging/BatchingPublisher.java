@@ -0,0 +1,373 @@
+package messaging;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.core.support.BatchingStrategy;
+import org.springframework.amqp.rabbit.core.support.MessageBatch;
+import org.springframework.amqp.rabbit.core.support.SimpleBatchingStrategy;
+import org.springframework.amqp.rabbit.support.CorrelationData;
+
+/**
+ * Publicador que agrupa los mensajes en lotes y controla las confirmaciones del servidor<br/>
+ * RabbitMQ de forma asincrona.<br/>
+ * <br/>
+ * Los mensajes se agrupan con un {@link SimpleBatchingStrategy}, un lote se envia cuando alcanza<br/>
+ * <code>batchSize</code> mensajes, <code>bufferLimit</code> bytes o cuando pasan <code>lingerMillis</code><br/>
+ * sin completarse. El formato del lote es el de Spring AMQP, por lo que un<br/>
+ * {@link org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer} lo separa de nuevo en<br/>
+ * mensajes individuales sin configuraci&oacute;n adicional. Cada destino (intercambio y llave) tiene su<br/>
+ * propio lote, los mensajes de un enrutador que van a varios destinos se agrupan por destino.<br/>
+ * <br/>
+ * El lote viaja con las propiedades de su primer mensaje. Los mensajes con encabezados propios que el<br/>
+ * receptor necesita, como la llave de partici&oacute;n, se agrupan ademas por esa llave, ver<br/>
+ * {@link #publish(String, String, String, Message)}: cada lote es de una sola llave.<br/>
+ * <br/>
+ * Solo se guardan los lotes con mensajes, en el orden en que vence su espera: un lote enviado se<br/>
+ * descarta y el envio de los lotes incompletos revisa solo los primeros, los vencidos, sin importar<br/>
+ * cuantas llaves de lote se han usado.<br/>
+ * <br/>
+ * Cada lote viaja con un {@link CorrelationData} propio y ocupa un lugar de la ventana de<br/>
+ * confirmaciones; cuando la ventana esta llena el envio se detiene hasta que el servidor confirme<br/>
+ * alguno de los lotes pendientes. Requiere un ConnectionFactory con <code>publisherConfirms</code>.<br/>
+ *
+ * @author  Carlos Andr&eacute;s Garc&iacute:a Garc&iacute:a
+ * @version 1.0
+ * @since   2016-03-15
+ */
+public class BatchingPublisher implements RabbitTemplate.ConfirmCallback {
+
+	private final RabbitTemplate rabbitTemplate;
+
+	private final int batchSize;
+
+	private final int bufferLimit;
+
+	//Lotes con mensajes de cada destino y llave de lote, en el orden de su plazo: el primero vence antes
+	private final Map<BatchKey, PendingBatch> pendingBatches = new LinkedHashMap<BatchKey, PendingBatch>();
+
+	private final long lingerMillis;
+
+	private final int windowSize;
+
+	//Lugares libres de la ventana de confirmaciones
+	private final Semaphore window;
+
+	//Lotes enviados y no confirmados: id de correlacion -> cantidad de mensajes del lote
+	private final ConcurrentMap<String, Integer> outstanding = new ConcurrentHashMap<String, Integer>();
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private final AtomicLong confirmed = new AtomicLong();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	private final Runnable lingerTask = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				releaseExpired();
+			} catch (final AmqpException e) {
+				failure = e;
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	};
+
+	private ScheduledFuture<?> scheduledLinger;
+
+	private volatile AmqpException failure;
+
+	/**
+	 * @param pRabbitTemplate plantilla usada para el envio, su ConnectionFactory debe tener las<br/>
+	 *                        confirmaciones del servidor habilitadas.<br/>
+	 * @param pBatchSize cantidad maxima de mensajes por lote.<br/>
+	 * @param pBufferLimit tama&ntilde;o maximo en bytes de un lote.<br/>
+	 * @param pLingerMillis tiempo maximo que espera un lote incompleto antes de ser enviado.<br/>
+	 * @param pWindowSize cantidad maxima de lotes enviados sin confirmaci&oacute;n.<br/>
+	 */
+	public BatchingPublisher(final RabbitTemplate pRabbitTemplate, final int pBatchSize, final int pBufferLimit,
+			final long pLingerMillis, final int pWindowSize) {
+		this.rabbitTemplate = pRabbitTemplate;
+		this.batchSize = pBatchSize;
+		this.bufferLimit = pBufferLimit;
+		this.lingerMillis = pLingerMillis;
+		this.windowSize = pWindowSize;
+		this.window = new Semaphore(pWindowSize);
+		this.rabbitTemplate.setConfirmCallback(this);
+	}
+
+	/**
+	 * Agrega un mensaje al lote actual de su destino, enviando el lote si quedo completo.<br/>
+	 * Se bloquea si la ventana de confirmaciones esta llena.<br/>
+	 *
+	 * @param pExchange intercambio de destino.<br/>
+	 * @param pRoutingKey llave de enrutamiento.<br/>
+	 * @param pMessage mensaje a enviar, sus propiedades no deben ser compartidas con otros mensajes<br/>
+	 *                 porque el lote toma las propiedades del primer mensaje.<br/>
+	 * @throws InterruptedException si el hilo es interrumpido esperando un lugar en la ventana.<br/>
+	 */
+	public void publish(final String pExchange, final String pRoutingKey, final Message pMessage)
+			throws InterruptedException {
+		publish(pExchange, pRoutingKey, null, pMessage);
+	}
+
+	/**
+	 * Agrega un mensaje al lote actual de su destino y su llave de lote, enviando el lote si quedo<br/>
+	 * completo. Todos los mensajes de un lote tienen la misma llave de lote, por lo que los encabezados<br/>
+	 * que dependen de ella son los de todos sus mensajes.<br/>
+	 * Se bloquea si la ventana de confirmaciones esta llena.<br/>
+	 *
+	 * @param pExchange intercambio de destino.<br/>
+	 * @param pRoutingKey llave de enrutamiento.<br/>
+	 * @param pBatchKey llave de lote, por ejemplo la llave de partici&oacute;n; null para agrupar solo por destino.<br/>
+	 * @param pMessage mensaje a enviar, sus propiedades no deben ser compartidas con otros mensajes<br/>
+	 *                 porque el lote toma las propiedades del primer mensaje.<br/>
+	 * @throws InterruptedException si el hilo es interrumpido esperando un lugar en la ventana.<br/>
+	 */
+	public synchronized void publish(final String pExchange, final String pRoutingKey, final String pBatchKey,
+			final Message pMessage) throws InterruptedException {
+		checkFailure();
+		BatchKey batchKey = new BatchKey(pExchange, pRoutingKey, pBatchKey);
+		PendingBatch pending = pendingBatches.get(batchKey);
+		if (pending == null) {
+			pending = new PendingBatch(new SimpleBatchingStrategy(batchSize, bufferLimit, lingerMillis),
+					System.currentTimeMillis() + lingerMillis);
+			pendingBatches.put(batchKey, pending);
+		}
+		MessageBatch batch = pending.batchingStrategy.addToBatch(pExchange, pRoutingKey, pMessage);
+		if (batch != null) {
+			pendingBatches.remove(batchKey);
+			if (pending.batchingStrategy.nextRelease() != null) {
+				// el mensaje que no cupo en el lote enviado empieza otro, al final de la cola
+				pending.deadline = System.currentTimeMillis() + lingerMillis;
+				pendingBatches.put(batchKey, pending);
+			}
+			send(batch);
+		}
+		scheduleLinger();
+	}
+
+	/**
+	 * Envia los lotes actuales aunque no esten completos.<br/>
+	 *
+	 * @throws InterruptedException si el hilo es interrumpido esperando un lugar en la ventana.<br/>
+	 */
+	public synchronized void flush() throws InterruptedException {
+		cancelLinger();
+		Iterator<PendingBatch> pending = pendingBatches.values().iterator();
+		while (pending.hasNext()) {
+			BatchingStrategy batchingStrategy = pending.next().batchingStrategy;
+			pending.remove();
+			for (MessageBatch batch : batchingStrategy.releaseBatches()) {
+				send(batch);
+			}
+		}
+	}
+
+	/**
+	 * Envia el lote pendiente y espera a que el servidor confirme todos los lotes enviados.<br/>
+	 *
+	 * @param pTimeoutMillis tiempo maximo de espera.<br/>
+	 * @return <code>true</code> si todas las confirmaciones llegaron dentro del tiempo.<br/>
+	 * @throws InterruptedException si el hilo es interrumpido durante la espera.<br/>
+	 */
+	public boolean awaitConfirms(final long pTimeoutMillis) throws InterruptedException {
+		flush();
+		// cuando todos los lugares de la ventana estan libres no hay lotes pendientes
+		if (!window.tryAcquire(windowSize, pTimeoutMillis, TimeUnit.MILLISECONDS)) {
+			return false;
+		}
+		window.release(windowSize);
+		checkFailure();
+		return true;
+	}
+
+	/**
+	 * Detiene el hilo que envia los lotes incompletos.<br/>
+	 */
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+	@Override
+	public void confirm(final CorrelationData pCorrelationData, final boolean pAck, final String pCause) {
+		if (pCorrelationData == null) {
+			return;
+		}
+		Integer count = outstanding.remove(pCorrelationData.getId());
+		if (count == null) {
+			return;
+		}
+		if (pAck) {
+			confirmed.addAndGet(count);
+		} else {
+			rejected.addAndGet(count);
+		}
+		window.release();
+	}
+
+	/**
+	 * @return cantidad de mensajes confirmados por el servidor.<br/>
+	 */
+	public long getConfirmed() {
+		return confirmed.get();
+	}
+
+	/**
+	 * @return cantidad de mensajes rechazados (nack) por el servidor.<br/>
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return cantidad de lotes enviados que no han sido confirmados.<br/>
+	 */
+	public int getOutstanding() {
+		return outstanding.size();
+	}
+
+	/**
+	 * Envia los lotes cuya espera vencio, los primeros de la cola, y programa el siguiente envio.<br/>
+	 */
+	private synchronized void releaseExpired() throws InterruptedException {
+		scheduledLinger = null;
+		long now = System.currentTimeMillis();
+		Iterator<PendingBatch> pending = pendingBatches.values().iterator();
+		while (pending.hasNext()) {
+			PendingBatch first = pending.next();
+			if (first.deadline > now) {
+				break;
+			}
+			pending.remove();
+			for (MessageBatch batch : first.batchingStrategy.releaseBatches()) {
+				send(batch);
+			}
+		}
+		scheduleLinger();
+	}
+
+	/**
+	 * Programa el envio del primer lote de la cola cuando vence su espera, si no esta programado.<br/>
+	 */
+	private void scheduleLinger() {
+		if (scheduledLinger == null && !pendingBatches.isEmpty()) {
+			long delay = pendingBatches.values().iterator().next().deadline - System.currentTimeMillis();
+			scheduledLinger = scheduler.schedule(lingerTask, Math.max(0, delay), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void send(final MessageBatch pBatch) throws InterruptedException {
+		window.acquire();
+		String id = Long.toString(sequence.incrementAndGet());
+		outstanding.put(id, countMessages(pBatch.getMessage()));
+		try {
+			rabbitTemplate.send(pBatch.getExchange(), pBatch.getRoutingKey(), pBatch.getMessage(), new CorrelationData(id));
+		} catch (final AmqpException e) {
+			outstanding.remove(id);
+			window.release();
+			throw e;
+		}
+	}
+
+	private void cancelLinger() {
+		if (scheduledLinger != null) {
+			scheduledLinger.cancel(false);
+			scheduledLinger = null;
+		}
+	}
+
+	private void checkFailure() {
+		AmqpException e = failure;
+		if (e != null) {
+			failure = null;
+			throw e;
+		}
+	}
+
+	/**
+	 * Cuenta los mensajes de un lote recorriendo los prefijos de longitud del formato<br/>
+	 * <code>lengthHeader4</code>, un mensaje sin el encabezado de lote cuenta como uno.<br/>
+	 */
+	private static int countMessages(final Message pMessage) {
+		if (pMessage.getMessageProperties().getHeaders().get(MessageProperties.SPRING_BATCH_FORMAT) == null) {
+			return 1;
+		}
+		ByteBuffer body = ByteBuffer.wrap(pMessage.getBody());
+		int count = 0;
+		while (body.remaining() >= 4) {
+			int length = body.getInt();
+			body.position(body.position() + length);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Lote con mensajes de una llave de lote y el momento en que vence su espera.<br/>
+	 */
+	private static final class PendingBatch {
+
+		private final BatchingStrategy batchingStrategy;
+
+		private long deadline;
+
+		PendingBatch(final BatchingStrategy pBatchingStrategy, final long pDeadline) {
+			this.batchingStrategy = pBatchingStrategy;
+			this.deadline = pDeadline;
+		}
+	}
+
+	/**
+	 * Destino (intercambio y llave de enrutamiento) y llave de lote de un lote, la ultima puede ser null.<br/>
+	 */
+	private static final class BatchKey {
+
+		private final String exchange;
+
+		private final String routingKey;
+
+		private final String batchKey;
+
+		BatchKey(final String pExchange, final String pRoutingKey, final String pBatchKey) {
+			this.exchange = pExchange;
+			this.routingKey = pRoutingKey;
+			this.batchKey = pBatchKey;
+		}
+
+		@Override
+		public boolean equals(final Object pOther) {
+			if (!(pOther instanceof BatchKey)) {
+				return false;
+			}
+			BatchKey other = (BatchKey) pOther;
+			return exchange.equals(other.exchange) && routingKey.equals(other.routingKey)
+					&& (batchKey == null ? other.batchKey == null : batchKey.equals(other.batchKey));
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = exchange.hashCode() * 31 + routingKey.hashCode();
+			return batchKey == null ? hash : hash * 31 + batchKey.hashCode();
+		}
+	}
+
+}
@@ -0,0 +1,46 @@
+package messaging;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * {@link PayloadSource} que genera una cantidad fija de mensajes de un tama&ntilde;o dado.<br/>
+ * <br/>
+ * El cuerpo se construye una sola vez y se reutiliza en cada llamado a {@link #next()}, de esta<br/>
+ * forma la fuente no genera basura y la medici&oacute;n refleja solo el costo del env&iacute;o.<br/>
+ *
+ * @author  Carlos Andr&eacute;s Garc&iacute:a Garc&iacute:a
+ * @version 1.0
+ * @since   2016-03-15
+ */
+public class GeneratedPayloadSource implements PayloadSource {
+
+	private final byte[] payload;
+
+	private final long count;
+
+	private long generated;
+
+	/**
+	 * @param pCount cantidad de mensajes que entregara la fuente.<br/>
+	 * @param pPayloadSize tama&ntilde;o en bytes de cada mensaje.<br/>
+	 */
+	public GeneratedPayloadSource(final long pCount, final int pPayloadSize) {
+		byte[] text = "Hello from RabbitMQ again!".getBytes(StandardCharsets.UTF_8);
+		this.payload = Arrays.copyOf(text, Math.max(pPayloadSize, 1));
+		if (pPayloadSize > text.length) {
+			Arrays.fill(this.payload, text.length, pPayloadSize, (byte) ' ');
+		}
+		this.count = pCount;
+	}
+
+	@Override
+	public byte[] next() {
+		if (generated >= count) {
+			return null;
+		}
+		generated++;
+		return payload;
+	}
+
+}
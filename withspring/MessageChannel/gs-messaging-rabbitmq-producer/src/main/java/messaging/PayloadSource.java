@@ -0,0 +1,22 @@
+package messaging;
+
+/**
+ * Fuente de los cuerpos de mensaje que el productor enviara a RabbitMQ.<br/>
+ * <br/>
+ * Permite desacoplar el origen de los datos (un generador, un archivo, otro sistema) del<br/>
+ * mecanismo de env&iacute;o por lotes implementado en {@link BatchingPublisher}.<br/>
+ *
+ * @author  Carlos Andr&eacute;s Garc&iacute:a Garc&iacute:a
+ * @version 1.0
+ * @since   2016-03-15
+ */
+public interface PayloadSource {
+
+	/**
+	 * Retorna el siguiente cuerpo de mensaje a enviar.<br/>
+	 *
+	 * @return el cuerpo del mensaje o <code>null</code> cuando la fuente no tiene mas mensajes.<br/>
+	 */
+	byte[] next();
+
+}
@@ -0,0 +1,302 @@
+package messaging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Contiene la configuraci&oacute;n del productor, tomada de las propiedades con prefijo<br/>
+ * <code>producer</code> en <code>application.properties</code>.<br/>
+ * <br/>
+ * mode : <code>single</code> envia un unico mensaje (comportamiento original del ejemplo),<br/>
+ *        <code>batch</code> envia los mensajes de un {@link PayloadSource} por medio del<br/>
+ *        {@link BatchingPublisher}. <code>reactive</code> los envia como un flujo con demanda, uno por<br/>
+ *        uno al paso de las confirmaciones del servidor, ver {@link stream.amqp.ConfirmingSender}.<br/>
+ * <br/>
+ * compression : <code>none</code>, <code>lz4</code> o <code>zstd</code>, comprime los cuerpos de al menos<br/>
+ *               <code>compressionThreshold</code> bytes antes de enviarlos (en modo batch el lote completo),<br/>
+ *               ver {@link codec.amqp.CompressingPostProcessor}.<br/>
+ * <br/>
+ * spoolDir : directorio del spool en disco, vacio para enviar directamente. Con spool los mensajes se<br/>
+ *            escriben en el directorio y un hilo los envia al servidor con confirmaciones, ver<br/>
+ *            {@link spool.Spool}.<br/>
+ * <br/>
+ * routes : reglas del enrutador basado en contenido, vacia para enviar todos los mensajes a la cola<br/>
+ *          <code>spring-boot</code>. Cada regla tiene la forma <code>patron [predicados] -&gt; intercambio [llave]</code>,<br/>
+ *          ver {@link router.RoutingRule}.<br/>
+ * <br/>
+ * partitions : particiones de la cola, 0 para enviar a la cola <code>spring-boot</code>. Con particiones el<br/>
+ *              mensaje <code>i</code> lleva la llave <code>key-(i % partitionKeys)</code> y va a la partici&oacute;n<br/>
+ *              de su llave, ver {@link partition.Partitioner}; el enrutador no se usa.<br/>
+ *
+ * @author  Carlos Andr&eacute;s Garc&iacute:a Garc&iacute:a
+ * @version 1.0
+ * @since   2016-03-15
+ */
+@ConfigurationProperties(prefix = "producer")
+public class ProducerProperties {
+
+	//Modo de envio: single o batch
+	private String mode = "single";
+
+	//Cantidad de mensajes que genera la fuente en modo batch o reactive
+	private long messages = 100000;
+
+	//Tamano en bytes de cada mensaje en modo batch o reactive
+	private int payloadSize = 128;
+
+	//Cantidad maxima de mensajes por lote
+	private int batchSize = 100;
+
+	//Tamano maximo en bytes de un lote
+	private int bufferLimit = 64 * 1024;
+
+	//Tiempo maximo que un lote incompleto espera antes de ser enviado
+	private long lingerMillis = 5;
+
+	//Cantidad maxima de lotes (mensajes en modo reactive) enviados sin confirmacion del servidor
+	private int confirmWindow = 256;
+
+	//Tiempo maximo de espera por las confirmaciones pendientes al final del envio
+	private long confirmTimeoutMillis = 60000;
+
+	//Compresion de los cuerpos: none, lz4 o zstd
+	private String compression = "none";
+
+	//Tamano minimo en bytes de un cuerpo para ser comprimido
+	private int compressionThreshold = 1024;
+
+	//Nivel de compresion de zstd
+	private int compressionLevel = 3;
+
+	//Archivo con el diccionario de zstd entrenado con mensajes de ejemplo, vacio para no usarlo
+	private String compressionDictionary = "";
+
+	//Directorio del spool de los mensajes por enviar, vacio para enviarlos directamente
+	private String spoolDir = "";
+
+	//Tamano en bytes de cada archivo (segmento) del spool
+	private int spoolSegmentSize = 16 * 1024 * 1024;
+
+	//Cantidad maxima de segmentos del spool, limita el espacio usado en disco
+	private int spoolMaxSegments = 16;
+
+	//Tiempo maximo que espera un mensaje por un segmento libre cuando el spool esta lleno
+	private long spoolAppendTimeoutMillis = 10000;
+
+	//Espera antes de enviar de nuevo los mensajes no confirmados
+	private long spoolRetryMillis = 1000;
+
+	//Tiempo maximo que espera el productor a que el servidor confirme los mensajes del spool antes de terminar
+	private long spoolDrainTimeoutMillis = 30000;
+
+	//Reglas de enrutamiento por llave y encabezados, vacia para enviar los mensajes a la cola spring-boot
+	private List<String> routes = new ArrayList<String>();
+
+	//Particiones de la cola, 0 sin particiones; el mismo valor en todos los productores y consumidores
+	private int partitions = 0;
+
+	//Puntos de cada particion en el anillo de hash consistente, el mismo valor en todos los productores
+	private int partitionVirtualNodes = 160;
+
+	//Cantidad de llaves distintas de los mensajes enviados a las particiones
+	private int partitionKeys = 1000;
+
+	public String getMode() {
+		return mode;
+	}
+
+	public void setMode(final String pMode) {
+		this.mode = pMode;
+	}
+
+	public long getMessages() {
+		return messages;
+	}
+
+	public void setMessages(final long pMessages) {
+		this.messages = pMessages;
+	}
+
+	public int getPayloadSize() {
+		return payloadSize;
+	}
+
+	public void setPayloadSize(final int pPayloadSize) {
+		this.payloadSize = pPayloadSize;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(final int pBatchSize) {
+		this.batchSize = pBatchSize;
+	}
+
+	public int getBufferLimit() {
+		return bufferLimit;
+	}
+
+	public void setBufferLimit(final int pBufferLimit) {
+		this.bufferLimit = pBufferLimit;
+	}
+
+	public long getLingerMillis() {
+		return lingerMillis;
+	}
+
+	public void setLingerMillis(final long pLingerMillis) {
+		this.lingerMillis = pLingerMillis;
+	}
+
+	public int getConfirmWindow() {
+		return confirmWindow;
+	}
+
+	public void setConfirmWindow(final int pConfirmWindow) {
+		this.confirmWindow = pConfirmWindow;
+	}
+
+	public long getConfirmTimeoutMillis() {
+		return confirmTimeoutMillis;
+	}
+
+	public void setConfirmTimeoutMillis(final long pConfirmTimeoutMillis) {
+		this.confirmTimeoutMillis = pConfirmTimeoutMillis;
+	}
+
+	public String getCompression() {
+		return compression;
+	}
+
+	public void setCompression(final String pCompression) {
+		this.compression = pCompression;
+	}
+
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	public void setCompressionThreshold(final int pCompressionThreshold) {
+		this.compressionThreshold = pCompressionThreshold;
+	}
+
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	public void setCompressionLevel(final int pCompressionLevel) {
+		this.compressionLevel = pCompressionLevel;
+	}
+
+	public String getCompressionDictionary() {
+		return compressionDictionary;
+	}
+
+	public void setCompressionDictionary(final String pCompressionDictionary) {
+		this.compressionDictionary = pCompressionDictionary;
+	}
+
+	public String getSpoolDir() {
+		return spoolDir;
+	}
+
+	public void setSpoolDir(final String pSpoolDir) {
+		this.spoolDir = pSpoolDir;
+	}
+
+	public int getSpoolSegmentSize() {
+		return spoolSegmentSize;
+	}
+
+	public void setSpoolSegmentSize(final int pSpoolSegmentSize) {
+		this.spoolSegmentSize = pSpoolSegmentSize;
+	}
+
+	public int getSpoolMaxSegments() {
+		return spoolMaxSegments;
+	}
+
+	public void setSpoolMaxSegments(final int pSpoolMaxSegments) {
+		this.spoolMaxSegments = pSpoolMaxSegments;
+	}
+
+	public long getSpoolAppendTimeoutMillis() {
+		return spoolAppendTimeoutMillis;
+	}
+
+	public void setSpoolAppendTimeoutMillis(final long pSpoolAppendTimeoutMillis) {
+		this.spoolAppendTimeoutMillis = pSpoolAppendTimeoutMillis;
+	}
+
+	public long getSpoolRetryMillis() {
+		return spoolRetryMillis;
+	}
+
+	public void setSpoolRetryMillis(final long pSpoolRetryMillis) {
+		this.spoolRetryMillis = pSpoolRetryMillis;
+	}
+
+	public long getSpoolDrainTimeoutMillis() {
+		return spoolDrainTimeoutMillis;
+	}
+
+	public void setSpoolDrainTimeoutMillis(final long pSpoolDrainTimeoutMillis) {
+		this.spoolDrainTimeoutMillis = pSpoolDrainTimeoutMillis;
+	}
+
+	public List<String> getRoutes() {
+		return routes;
+	}
+
+	public void setRoutes(final List<String> pRoutes) {
+		this.routes = pRoutes;
+	}
+
+	public int getPartitions() {
+		return partitions;
+	}
+
+	public void setPartitions(final int pPartitions) {
+		this.partitions = pPartitions;
+	}
+
+	public int getPartitionVirtualNodes() {
+		return partitionVirtualNodes;
+	}
+
+	public void setPartitionVirtualNodes(final int pPartitionVirtualNodes) {
+		this.partitionVirtualNodes = pPartitionVirtualNodes;
+	}
+
+	public int getPartitionKeys() {
+		return partitionKeys;
+	}
+
+	public void setPartitionKeys(final int pPartitionKeys) {
+		this.partitionKeys = pPartitionKeys;
+	}
+
+	public boolean isPartitioned() {
+		return partitions > 0;
+	}
+
+	public boolean isRoutingEnabled() {
+		return routes != null && !routes.isEmpty();
+	}
+
+	public boolean isSpoolEnabled() {
+		return spoolDir != null && !spoolDir.isEmpty();
+	}
+
+	public boolean isBatchMode() {
+		return "batch".equalsIgnoreCase(mode);
+	}
+
+	public boolean isReactiveMode() {
+		return "reactive".equalsIgnoreCase(mode);
+	}
+
+}
@@ -1,10 +1,18 @@
 
 package hello;
 
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.aopalliance.aop.Advice;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.MessagePostProcessor;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.TopicExchange;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
@@ -12,23 +20,85 @@ import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
 import org.springframework.amqp.rabbit.listener.adapter.MessageListenerAdapter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Lazy;
+
+import idempotent.IdempotencyWindow;
+import idempotent.MessageIds;
+import idempotent.aop.IdempotentReceiverInterceptor;
+import listener.DirectMessageListener;
+import listener.MessageBodyHandler;
+import listener.MessageTextHandler;
+import listener.MeteredMessageListener;
+import sink.AsyncPrintSink;
+import stream.amqp.RabbitConnections;
 
 @SpringBootApplication
 public class Application implements CommandLineRunner {
 
 	final static String queueName = "spring-boot";
 
+	final static String requestQueueName = "spring-boot-requests";
+
 	@Autowired
 	AnnotationConfigApplicationContext context;
 
 	@Autowired
 	RabbitTemplate rabbitTemplate;
 
+	// adapter: MessageListenerAdapter, bytes/text: DirectMessageListener
+	@Value("${consumer.listener:adapter}")
+	String listener;
+
+	// where the receiver prints: stdout or a file path, through a buffer of the given capacity
+	@Value("${sink.target:stdout}")
+	String sinkTarget;
+
+	@Value("${sink.capacity:8192}")
+	int sinkCapacity;
+
+	// BLOCK, DROP or SAMPLE when the buffer is full
+	@Value("${sink.overflow:BLOCK}")
+	AsyncPrintSink.Overflow sinkOverflow;
+
+	@Value("${sink.sample-rate:100}")
+	int sinkSampleRate;
+
+	@Value("${idempotent.capacity:100000}")
+	int idempotentCapacity;
+
+	@Value("${idempotent.ttl-millis:3600000}")
+	long idempotentTtlMillis;
+
+	@Value("${idempotent.file:}")
+	String idempotentFile;
+
+	// requests sent through the request-reply client instead of the one message, 0 for none
+	@Value("${request-reply.requests:0}")
+	int requests;
+
+	@Value("${request-reply.max-in-flight:65536}")
+	int requestMaxInFlight;
+
+	@Value("${request-reply.timeout-millis:5000}")
+	long requestTimeoutMillis;
+
+	@Value("${request-reply.consumers:4}")
+	int requestConsumers;
+
+	@Value("${request-reply.prefetch:250}")
+	int requestPrefetch;
+
+	final MessageIds messageIds = new MessageIds();
+
 	@Bean
 	Queue queue() {
 		return new Queue(queueName, false);
@@ -45,17 +115,65 @@ public class Application implements CommandLineRunner {
 	}
 
 	@Bean
-	SimpleMessageListenerContainer container(ConnectionFactory connectionFactory, MessageListenerAdapter listenerAdapter) {
+	SimpleMessageListenerContainer container(ConnectionFactory connectionFactory, MessageListenerAdapter listenerAdapter,
+			CounterService counterService, GaugeService gaugeService) throws IOException {
 		SimpleMessageListenerContainer container = new SimpleMessageListenerContainer();
 		container.setConnectionFactory(connectionFactory);
 		container.setQueueNames(queueName);
-		container.setMessageListener(listenerAdapter);
+		MessageListener messageListener;
+		if ("bytes".equalsIgnoreCase(listener)) {
+			messageListener = new DirectMessageListener((MessageBodyHandler) receiver());
+		} else if ("text".equalsIgnoreCase(listener)) {
+			messageListener = new DirectMessageListener((MessageTextHandler) receiver());
+		} else {
+			messageListener = listenerAdapter;
+		}
+		container.setMessageListener(new MeteredMessageListener(messageListener, queueName, counterService, gaugeService));
+		if (idempotentCapacity > 0) {
+			// redelivered messages whose id was already processed are acknowledged without reaching the listener
+			container.setAdviceChain(new Advice[] { new IdempotentReceiverInterceptor(idempotencyWindow()) });
+		}
 		return container;
 	}
 
+	@Bean
+	Queue requestQueue() {
+		return new Queue(requestQueueName, false);
+	}
+
+	@Bean
+	SimpleMessageListenerContainer requestContainer(ConnectionFactory connectionFactory) throws IOException {
+		SimpleMessageListenerContainer container = new SimpleMessageListenerContainer();
+		container.setConnectionFactory(connectionFactory);
+		container.setQueueNames(requestQueueName);
+		container.setConcurrentConsumers(requestConsumers);
+		container.setPrefetchCount(requestPrefetch);
+		container.setMessageListener(new ReplyingMessageListener(receiver()));
+		return container;
+	}
+
+	@Bean(destroyMethod = "close")
+	@Lazy
+	RequestReplyClient requestReplyClient(RabbitProperties rabbit) {
+		// a connection of its own, the replies do not wait behind the messages of the containers
+		return new RequestReplyClient(RabbitConnections.connectionFactory(rabbit), requestMaxInFlight,
+				requestTimeoutMillis);
+	}
+
+	@Bean(destroyMethod = "close")
+	@Lazy
+	IdempotencyWindow idempotencyWindow() throws IOException {
+		return IdempotencyWindow.open(idempotentFile, idempotentCapacity, idempotentTtlMillis);
+	}
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    AsyncPrintSink printSink() throws IOException {
+        return AsyncPrintSink.create(sinkTarget, sinkCapacity, sinkOverflow, sinkSampleRate);
+    }
+
     @Bean
-    Receiver receiver() {
-        return new Receiver();
+    Receiver receiver() throws IOException {
+        return new Receiver(printSink());
     }
 
 	@Bean
@@ -71,9 +189,49 @@ public class Application implements CommandLineRunner {
     public void run(String... args) throws Exception {
         System.out.println("Waiting five seconds...");
         Thread.sleep(5000);
+        if (requests > 0) {
+            sendRequests();
+            context.close();
+            return;
+        }
         System.out.println("Sending message...");
-        rabbitTemplate.convertAndSend(queueName, "Hello from RabbitMQ!");
+        rabbitTemplate.convertAndSend(queueName, (Object) "Hello from RabbitMQ!", new MessagePostProcessor() {
+            @Override
+            public Message postProcessMessage(Message message) {
+                message.getMessageProperties().setHeader(MeteredMessageListener.SEND_TIMESTAMP, System.currentTimeMillis());
+                message.getMessageProperties().setMessageId(messageIds.next());
+                return message;
+            }
+        });
         receiver().getLatch().await(10000, TimeUnit.MILLISECONDS);
         context.close();
     }
+
+    private void sendRequests() throws InterruptedException {
+        System.out.println("Sending " + requests + " requests...");
+        RequestReplyClient client = context.getBean(RequestReplyClient.class);
+        // the sender waits instead of overflowing the correlation table
+        final Semaphore inFlight = new Semaphore(requestMaxInFlight);
+        final CountDownLatch done = new CountDownLatch(requests);
+        final AtomicLong replies = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            inFlight.acquire();
+            client.sendAndReceive(requestQueueName, "Request " + i).whenComplete((reply, failure) -> {
+                if (failure == null) {
+                    replies.incrementAndGet();
+                } else if (failures.incrementAndGet() == 1) {
+                    System.out.println("Request failed: " + failure);
+                }
+                inFlight.release();
+                done.countDown();
+            });
+        }
+        done.await();
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.out.println("Replies: " + replies + ", failed: " + failures + " (timeouts: " + client.getTimeouts()
+                + "), late replies: " + client.getLateReplies() + ", direct reply-to: " + client.isDirectReplyTo()
+                + ", in " + millis + " ms");
+    }
 }
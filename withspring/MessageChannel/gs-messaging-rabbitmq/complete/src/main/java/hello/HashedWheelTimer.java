@@ -0,0 +1,191 @@
+package hello;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Expires timeouts on a wheel of buckets turned by one thread, a tick at a time: scheduling and cancelling
+ * are constant time whatever the number of pending timeouts, at the price of a precision of one tick. A
+ * timeout is in the bucket of its deadline modulo the wheel, with the number of turns left before it is due.
+ * <br/>
+ * Scheduling hands the timeout to the wheel thread through a lock-free queue, cancelling only marks it: the
+ * wheel thread drops it when it reaches its bucket. {@link Timeout#expire()} runs on the wheel thread and
+ * must be quick.
+ */
+public class HashedWheelTimer implements Closeable {
+
+	private static final Log logger = LogFactory.getLog(HashedWheelTimer.class);
+
+	private static final int PENDING = 0;
+
+	private static final int CANCELLED = 1;
+
+	private static final int EXPIRED = 2;
+
+	private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+			AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+	/**
+	 * Something to do after a delay unless cancelled before, scheduled once.
+	 */
+	public abstract static class Timeout {
+
+		// not private, the updater of the outer class reads it by reflection
+		volatile int state;
+
+		// deadline in nanoseconds from the start of the wheel, then turns of the wheel left
+		private long deadline;
+
+		private long rounds;
+
+		private Timeout previous;
+
+		private Timeout next;
+
+		/**
+		 * @return false if it already expired or was cancelled
+		 */
+		public boolean cancel() {
+			return STATE.compareAndSet(this, PENDING, CANCELLED);
+		}
+
+		public boolean isExpired() {
+			return state == EXPIRED;
+		}
+
+		protected abstract void expire();
+	}
+
+	private final long tickNanos;
+
+	private final Timeout[] buckets;
+
+	private final int mask;
+
+	private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<Timeout>();
+
+	private final long start = System.nanoTime();
+
+	private final Thread worker;
+
+	private volatile boolean running = true;
+
+	private long tick;
+
+	/**
+	 * @param tick duration of a tick, the precision of the timeouts
+	 * @param wheelSize buckets of the wheel, rounded up to a power of two; a turn of the wheel is
+	 *        <code>wheelSize</code> ticks, longer timeouts wait for more turns
+	 */
+	public HashedWheelTimer(String name, long tick, TimeUnit unit, int wheelSize) {
+		this.tickNanos = Math.max(unit.toNanos(tick), 1);
+		int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+		this.buckets = new Timeout[size];
+		this.mask = size - 1;
+		this.worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				turn();
+			}
+		}, name);
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Runs {@link Timeout#expire()} after the delay, within a tick, unless the timeout is cancelled before.
+	 */
+	public void schedule(Timeout timeout, long delay, TimeUnit unit) {
+		timeout.deadline = System.nanoTime() - start + unit.toNanos(delay);
+		scheduled.add(timeout);
+	}
+
+	/**
+	 * Stops the wheel, the pending timeouts never expire.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		worker.interrupt();
+	}
+
+	private void turn() {
+		while (running) {
+			long wait = (tick + 1) * tickNanos - (System.nanoTime() - start);
+			if (wait > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(wait);
+				} catch (InterruptedException e) {
+					if (!running) {
+						return;
+					}
+				}
+				continue;
+			}
+			addScheduled();
+			expireBucket((int) (tick & mask));
+			tick++;
+		}
+	}
+
+	private void addScheduled() {
+		Timeout timeout;
+		while ((timeout = scheduled.poll()) != null) {
+			if (timeout.state != PENDING) {
+				continue;
+			}
+			// a deadline already past goes in the current bucket
+			long due = Math.max(timeout.deadline / tickNanos, tick);
+			timeout.rounds = (due - tick) / buckets.length;
+			int bucket = (int) (due & mask);
+			timeout.previous = null;
+			timeout.next = buckets[bucket];
+			if (buckets[bucket] != null) {
+				buckets[bucket].previous = timeout;
+			}
+			buckets[bucket] = timeout;
+		}
+	}
+
+	private void expireBucket(int bucket) {
+		Timeout timeout = buckets[bucket];
+		while (timeout != null) {
+			Timeout next = timeout.next;
+			if (timeout.state != PENDING) {
+				unlink(bucket, timeout);
+			} else if (timeout.rounds <= 0) {
+				unlink(bucket, timeout);
+				if (STATE.compareAndSet(timeout, PENDING, EXPIRED)) {
+					try {
+						timeout.expire();
+					} catch (RuntimeException e) {
+						// a failed timeout does not stop the others
+						logger.warn("Timeout failed", e);
+					}
+				}
+			} else {
+				timeout.rounds--;
+			}
+			timeout = next;
+		}
+	}
+
+	private void unlink(int bucket, Timeout timeout) {
+		if (timeout.previous != null) {
+			timeout.previous.next = timeout.next;
+		} else {
+			buckets[bucket] = timeout.next;
+		}
+		if (timeout.next != null) {
+			timeout.next.previous = timeout.previous;
+		}
+		timeout.previous = null;
+		timeout.next = null;
+	}
+}
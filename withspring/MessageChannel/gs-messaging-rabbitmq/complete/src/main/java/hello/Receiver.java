@@ -1,16 +1,44 @@
 package hello;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.CountDownLatch;
 
-public class Receiver {
+import listener.MessageBodyHandler;
+import listener.MessageTextHandler;
+import sink.AsyncPrintSink;
+
+public class Receiver implements MessageBodyHandler, MessageTextHandler, RequestHandler {
 
 	private CountDownLatch latch = new CountDownLatch(1);
 
+	private final AsyncPrintSink out;
+
+	public Receiver(AsyncPrintSink out) {
+		this.out = out;
+	}
+
 	public void receiveMessage(String message) {
-		System.out.println("Received <" + message + ">");
+		out.println("Received <" + message + ">");
+		latch.countDown();
+	}
+
+	@Override
+	public void handleMessage(ByteBuffer body) {
+		out.println("Received <" + body.remaining() + " bytes>");
+		latch.countDown();
+	}
+
+	@Override
+	public void handleMessage(CharSequence text) {
+		out.println("Received <" + text + ">");
 		latch.countDown();
 	}
 
+	@Override
+	public String handleRequest(String request) {
+		return "Reply to <" + request + ">";
+	}
+
 	public CountDownLatch getLatch() {
 		return latch;
 	}
@@ -0,0 +1,50 @@
+package hello;
+
+import java.nio.charset.Charset;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.ChannelAwareMessageListener;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+
+/**
+ * Consumer side of {@link RequestReplyClient}: hands the text of each request to a {@link RequestHandler}
+ * and publishes the reply to the reply-to of the request, with its correlation id. The reply goes out on
+ * the channel the request came in on, as direct reply-to requires, through the default exchange. A request
+ * without reply-to is handled and its reply dropped.
+ */
+public class ReplyingMessageListener implements ChannelAwareMessageListener {
+
+	private static final String DEFAULT_ENCODING = "UTF-8";
+
+	private final RequestHandler handler;
+
+	private final MessagePropertiesConverter converter = new DefaultMessagePropertiesConverter();
+
+	public ReplyingMessageListener(RequestHandler handler) {
+		this.handler = handler;
+	}
+
+	@Override
+	public void onMessage(Message message, Channel channel) throws Exception {
+		MessageProperties requestProperties = message.getMessageProperties();
+		String encoding = requestProperties.getContentEncoding() != null ? requestProperties.getContentEncoding()
+				: DEFAULT_ENCODING;
+		String reply = handler.handleRequest(new String(message.getBody(), Charset.forName(encoding)));
+		String replyTo = requestProperties.getReplyTo();
+		if (replyTo == null || reply == null) {
+			return;
+		}
+		MessageProperties properties = new MessageProperties();
+		properties.setContentType(MessageProperties.CONTENT_TYPE_TEXT_PLAIN);
+		properties.setContentEncoding(DEFAULT_ENCODING);
+		properties.setCorrelationId(requestProperties.getCorrelationId());
+		AMQP.BasicProperties basicProperties = converter.fromMessageProperties(properties, DEFAULT_ENCODING);
+		channel.basicPublish("", replyTo, false, basicProperties, reply.getBytes(DEFAULT_ENCODING));
+	}
+
+}
@@ -0,0 +1,11 @@
+package hello;
+
+/**
+ * Answers the text of a request consumed by {@link ReplyingMessageListener}, the reply goes back to the
+ * requester.
+ */
+public interface RequestHandler {
+
+	String handleRequest(String request);
+
+}
@@ -0,0 +1,309 @@
+package hello;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * Sends requests and completes a {@link CompletableFuture} with the reply of each, without blocking a thread
+ * per request. The replies come back through RabbitMQ direct reply-to: the client consumes from the
+ * <code>amq.rabbitmq.reply-to</code> pseudo-queue on the channel it publishes on, so no queue is declared,
+ * neither per request nor per client. The client has a connection of its own, opened on the first request.
+ * <br/>
+ * The pending requests are in a {@link ConcurrentHashMap} keyed by their correlation id, the sequence number
+ * of the request. The reply, the timeout or a failure takes a request out with a conditional remove, the first
+ * one wins, without locks; a slow reply holds only its own entry. A request sent while <code>maxInFlight</code>
+ * requests wait for their reply fails at once with {@link RejectedExecutionException}. A {@link HashedWheelTimer}
+ * fails the requests without a reply after <code>timeoutMillis</code> with {@link TimeoutException}; a reply
+ * arriving after that is dropped.
+ * <br/>
+ * The futures complete on the thread of the RabbitMQ client that delivers the replies, or on the wheel thread
+ * for timeouts: long work on the reply goes to the *Async methods of the future. When the channel closes the
+ * pending requests fail, the next request opens a new one. With a broker without direct reply-to, like the
+ * embedded broker of the local profile, the client consumes from an exclusive queue of its own instead.
+ */
+public class RequestReplyClient implements Closeable {
+
+	static final String DIRECT_REPLY_TO = "amq.rabbitmq.reply-to";
+
+	private static final Log logger = LogFactory.getLog(RequestReplyClient.class);
+
+	private final ConnectionFactory connectionFactory;
+
+	private final HashedWheelTimer timer;
+
+	private final long timeoutMillis;
+
+	private final int maxInFlight;
+
+	private final ConcurrentHashMap<Long, PendingReply> pending;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private final AtomicLong timeouts = new AtomicLong();
+
+	private final AtomicLong lateReplies = new AtomicLong();
+
+	private final MessagePropertiesConverter converter = new DefaultMessagePropertiesConverter();
+
+	// the channel publishing the requests and consuming the replies, and its connection, guarded by this
+	private Connection connection;
+
+	private Channel channel;
+
+	private String replyTo;
+
+	private boolean directReplyTo = true;
+
+	/**
+	 * @param maxInFlight requests waiting for their reply at most
+	 */
+	public RequestReplyClient(ConnectionFactory connectionFactory, int maxInFlight, long timeoutMillis) {
+		this.connectionFactory = connectionFactory;
+		this.timeoutMillis = timeoutMillis;
+		this.maxInFlight = maxInFlight;
+		this.pending = new ConcurrentHashMap<Long, PendingReply>(Math.min(maxInFlight, 1 << 16));
+		// ticks of 10 ms, a turn of the wheel every 5 seconds
+		this.timer = new HashedWheelTimer("request-reply-timeouts", 10, TimeUnit.MILLISECONDS, 512);
+	}
+
+	/**
+	 * Publishes the request with its reply-to and correlation id set.
+	 *
+	 * @return the reply, failed with a {@link TimeoutException}, a {@link RejectedExecutionException} when
+	 *         there are too many requests waiting or the error that prevented sending the request
+	 */
+	public CompletableFuture<Message> sendAndReceive(String exchange, String routingKey, Message request) {
+		PendingReply pendingReply = new PendingReply(sequence.getAndIncrement());
+		if (inFlight.incrementAndGet() > maxInFlight) {
+			inFlight.decrementAndGet();
+			pendingReply.future.completeExceptionally(new RejectedExecutionException(
+					"More than " + maxInFlight + " requests waiting for their reply"));
+			return pendingReply.future;
+		}
+		pending.put(pendingReply.number, pendingReply);
+		timer.schedule(pendingReply, timeoutMillis, TimeUnit.MILLISECONDS);
+		try {
+			publish(exchange, routingKey, request, pendingReply.number);
+		} catch (IOException | AmqpException e) {
+			if (release(pendingReply)) {
+				pendingReply.future.completeExceptionally(e);
+			}
+		}
+		return pendingReply.future;
+	}
+
+	/**
+	 * Sends a text request to a queue through the default exchange.
+	 *
+	 * @return the text of the reply
+	 */
+	public CompletableFuture<String> sendAndReceive(String queue, String text) {
+		MessageProperties properties = new MessageProperties();
+		properties.setContentType(MessageProperties.CONTENT_TYPE_TEXT_PLAIN);
+		properties.setContentEncoding("UTF-8");
+		return sendAndReceive("", queue, new Message(text.getBytes(StandardCharsets.UTF_8), properties))
+				.thenApply(reply -> new String(reply.getBody(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return requests failed for lack of a reply in time
+	 */
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	/**
+	 * @return replies dropped because their request had already timed out
+	 */
+	public long getLateReplies() {
+		return lateReplies.get();
+	}
+
+	public synchronized boolean isDirectReplyTo() {
+		return directReplyTo;
+	}
+
+	@Override
+	public synchronized void close() {
+		timer.close();
+		if (connection != null) {
+			connection.abort();
+			connection = null;
+			channel = null;
+		}
+		failAll(new AmqpException("Request-reply client closed"));
+	}
+
+	private synchronized void publish(String exchange, String routingKey, Message request, long number)
+			throws IOException {
+		if (channel == null) {
+			open();
+		}
+		MessageProperties properties = request.getMessageProperties();
+		properties.setReplyTo(replyTo);
+		properties.setCorrelationId(Long.toString(number).getBytes(StandardCharsets.UTF_8));
+		AMQP.BasicProperties basicProperties = converter.fromMessageProperties(properties, "UTF-8");
+		channel.basicPublish(exchange, routingKey, false, basicProperties, request.getBody());
+	}
+
+	private void open() throws IOException {
+		Connection opened = newConnection();
+		Channel current = opened.createChannel();
+		if (directReplyTo) {
+			try {
+				// the pseudo-queue is consumed without acks, before publishing on the same channel
+				current.basicConsume(DIRECT_REPLY_TO, true, new ReplyConsumer(current));
+				replyTo = DIRECT_REPLY_TO;
+			} catch (IOException e) {
+				// the broker closes the channel, some brokers the whole connection
+				logger.warn("The broker has no direct reply-to, the replies go to a queue of this client");
+				directReplyTo = false;
+				opened.abort();
+				opened = newConnection();
+				current = opened.createChannel();
+			}
+		}
+		if (!directReplyTo) {
+			replyTo = current.queueDeclare().getQueue();
+			current.basicConsume(replyTo, true, new ReplyConsumer(current));
+		}
+		final Channel closing = current;
+		current.addShutdownListener(new ShutdownListener() {
+			@Override
+			public void shutdownCompleted(ShutdownSignalException cause) {
+				closed(closing, cause);
+			}
+		});
+		connection = opened;
+		channel = current;
+	}
+
+	private Connection newConnection() throws IOException {
+		try {
+			return connectionFactory.newConnection();
+		} catch (TimeoutException e) {
+			throw new AmqpConnectException(e);
+		}
+	}
+
+	// the replies of the requests sent on a closed channel can no longer arrive
+	private void closed(Channel closed, ShutdownSignalException cause) {
+		synchronized (this) {
+			if (channel != closed) {
+				return;
+			}
+			connection.abort();
+			connection = null;
+			channel = null;
+		}
+		failAll(new AmqpException("Reply channel closed", cause));
+	}
+
+	private void failAll(Exception cause) {
+		for (PendingReply pendingReply : pending.values()) {
+			if (release(pendingReply)) {
+				pendingReply.future.completeExceptionally(cause);
+			}
+		}
+	}
+
+	/**
+	 * Takes the request out of the pending ones and cancels its timeout.
+	 *
+	 * @return false if its reply, its timeout or a failure took it before
+	 */
+	private boolean release(PendingReply pendingReply) {
+		if (!pending.remove(pendingReply.number, pendingReply)) {
+			return false;
+		}
+		inFlight.decrementAndGet();
+		pendingReply.cancel();
+		return true;
+	}
+
+	private void reply(String correlationId, Message reply) {
+		long number;
+		try {
+			number = Long.parseLong(correlationId);
+		} catch (NumberFormatException e) {
+			lateReplies.incrementAndGet();
+			return;
+		}
+		PendingReply pendingReply = pending.get(number);
+		if (pendingReply != null && release(pendingReply)) {
+			pendingReply.future.complete(reply);
+		} else {
+			lateReplies.incrementAndGet();
+		}
+	}
+
+	/**
+	 * A request waiting for its reply, in the pending ones and on the timer.
+	 */
+	private final class PendingReply extends HashedWheelTimer.Timeout {
+
+		final long number;
+
+		final CompletableFuture<Message> future = new CompletableFuture<Message>();
+
+		PendingReply(long number) {
+			this.number = number;
+		}
+
+		@Override
+		protected void expire() {
+			if (pending.remove(number, this)) {
+				inFlight.decrementAndGet();
+				timeouts.incrementAndGet();
+				future.completeExceptionally(new TimeoutException(
+						"No reply to request " + number + " in " + timeoutMillis + " ms"));
+			}
+		}
+	}
+
+	private final class ReplyConsumer extends DefaultConsumer {
+
+		ReplyConsumer(Channel channel) {
+			super(channel);
+		}
+
+		@Override
+		public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties,
+				byte[] body) {
+			if (properties.getCorrelationId() == null) {
+				lateReplies.incrementAndGet();
+				return;
+			}
+			reply(properties.getCorrelationId(),
+					new Message(body, converter.toMessageProperties(properties, envelope, "UTF-8")));
+		}
+	}
+}
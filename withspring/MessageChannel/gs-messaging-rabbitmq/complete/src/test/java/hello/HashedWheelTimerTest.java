@@ -0,0 +1,136 @@
+package hello;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HashedWheelTimerTest extends Assert {
+
+	private HashedWheelTimer timer;
+
+	@After
+	public void tearDown() {
+		if (timer != null) {
+			timer.close();
+		}
+	}
+
+	@Test
+	public void expiresAfterTheDelayWithinATick() throws InterruptedException {
+		timer = new HashedWheelTimer("test", 10, TimeUnit.MILLISECONDS, 64);
+		RecordingTimeout timeout = new RecordingTimeout();
+		timer.schedule(timeout, 50, TimeUnit.MILLISECONDS);
+		assertTrue(timeout.expired.await(5, TimeUnit.SECONDS));
+		assertTrue(timeout.isExpired());
+		assertFalse(timeout.cancel());
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(timeout.expiredNanos - timeout.scheduledNanos);
+		assertTrue("expired after " + elapsed + " ms", elapsed >= 50);
+	}
+
+	@Test
+	public void neverExpiresACancelledTimeout() throws InterruptedException {
+		timer = new HashedWheelTimer("test", 5, TimeUnit.MILLISECONDS, 64);
+		RecordingTimeout cancelled = new RecordingTimeout();
+		RecordingTimeout other = new RecordingTimeout();
+		timer.schedule(cancelled, 20, TimeUnit.MILLISECONDS);
+		timer.schedule(other, 40, TimeUnit.MILLISECONDS);
+		assertTrue(cancelled.cancel());
+		assertFalse(cancelled.cancel());
+		assertTrue(other.expired.await(5, TimeUnit.SECONDS));
+		assertEquals(1, cancelled.expired.getCount());
+		assertFalse(cancelled.isExpired());
+	}
+
+	@Test
+	public void waitsForMoreTurnsOfTheWheel() throws InterruptedException {
+		// a turn of 4 ticks of 5 ms: the timeout is due after 10 turns
+		timer = new HashedWheelTimer("test", 5, TimeUnit.MILLISECONDS, 4);
+		RecordingTimeout timeout = new RecordingTimeout();
+		timer.schedule(timeout, 200, TimeUnit.MILLISECONDS);
+		assertFalse(timeout.expired.await(150, TimeUnit.MILLISECONDS));
+		assertTrue(timeout.expired.await(5, TimeUnit.SECONDS));
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(timeout.expiredNanos - timeout.scheduledNanos);
+		assertTrue("expired after " + elapsed + " ms", elapsed >= 200);
+	}
+
+	@Test
+	public void expiresEveryTimeoutNeverBeforeItsDelay() throws InterruptedException {
+		timer = new HashedWheelTimer("test", 1, TimeUnit.MILLISECONDS, 32);
+		Random random = new Random(1);
+		List<RecordingTimeout> timeouts = new ArrayList<RecordingTimeout>();
+		for (int i = 0; i < 2000; i++) {
+			RecordingTimeout timeout = new RecordingTimeout();
+			timeout.delayMillis = random.nextInt(300);
+			timer.schedule(timeout, timeout.delayMillis, TimeUnit.MILLISECONDS);
+			timeouts.add(timeout);
+			// some cancelled, a few after they were added to the wheel
+			if (i % 4 == 0) {
+				RecordingTimeout cancelled = timeouts.get(random.nextInt(timeouts.size()));
+				if (cancelled.cancel()) {
+					cancelled.cancelled = true;
+				}
+			}
+		}
+		for (RecordingTimeout timeout : timeouts) {
+			if (timeout.cancelled) {
+				assertFalse(timeout.expired.await(0, TimeUnit.MILLISECONDS));
+			} else {
+				assertTrue(timeout.expired.await(5, TimeUnit.SECONDS));
+				long elapsed = timeout.expiredNanos - timeout.scheduledNanos;
+				assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(timeout.delayMillis));
+			}
+		}
+	}
+
+	@Test
+	public void keepsExpiringAfterAFailedTimeout() throws InterruptedException {
+		timer = new HashedWheelTimer("test", 5, TimeUnit.MILLISECONDS, 64);
+		final CountDownLatch failed = new CountDownLatch(1);
+		timer.schedule(new HashedWheelTimer.Timeout() {
+			@Override
+			protected void expire() {
+				failed.countDown();
+				throw new IllegalStateException("failed on purpose");
+			}
+		}, 10, TimeUnit.MILLISECONDS);
+		assertTrue(failed.await(5, TimeUnit.SECONDS));
+		RecordingTimeout timeout = new RecordingTimeout();
+		timer.schedule(timeout, 10, TimeUnit.MILLISECONDS);
+		assertTrue(timeout.expired.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void stopsExpiringOnceClosed() throws InterruptedException {
+		timer = new HashedWheelTimer("test", 5, TimeUnit.MILLISECONDS, 64);
+		RecordingTimeout timeout = new RecordingTimeout();
+		timer.schedule(timeout, 50, TimeUnit.MILLISECONDS);
+		timer.close();
+		assertFalse(timeout.expired.await(200, TimeUnit.MILLISECONDS));
+		assertTrue(timeout.cancel());
+	}
+
+	private static final class RecordingTimeout extends HashedWheelTimer.Timeout {
+
+		final CountDownLatch expired = new CountDownLatch(1);
+
+		final long scheduledNanos = System.nanoTime();
+
+		volatile long expiredNanos;
+
+		int delayMillis;
+
+		boolean cancelled;
+
+		@Override
+		protected void expire() {
+			expiredNanos = System.nanoTime();
+			expired.countDown();
+		}
+	}
+}